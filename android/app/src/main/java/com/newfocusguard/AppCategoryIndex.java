@@ -0,0 +1,245 @@
+package com.newfocusguard;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Package ID -> category bitmask, so "is this app a game or a social app" is one bit test.
+ *
+ * Categories come from {@link ApplicationInfo#category} (API 26+), replaced by the user's
+ * override for that package when there is one. The index is built once with a
+ * PackageManager scan and then patched per package from install/update/removal
+ * broadcasts, so rules that target a category cover newly installed apps without
+ * anyone expanding package lists.
+ *
+ * The masks are saved after every change and read back synchronously on creation, so
+ * category locks hold from the first foreground check instead of after the scan.
+ */
+final class AppCategoryIndex {
+    private static final String TAG = "FocusGuardCategories";
+    private static final String PREFS_NAME = "FocusGuardCategories";
+    private static final String MASKS_FILE = "focusguard_categories.bin";
+
+    // Bit i is ApplicationInfo category i. Names are what JS uses, never reorder them.
+    static final String[] NAMES = {
+        "game", "audio", "video", "image", "social", "news", "maps", "productivity", "accessibility"
+    };
+    static final int CATEGORY_COUNT = NAMES.length;
+
+    private static AppCategoryIndex instance;
+
+    private final PackageManager packageManager;
+    private final SharedPreferences overrides;
+    private final PackageInterner interner = PackageInterner.getInstance();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final File masksFile;
+    private volatile int[] masks = new int[0]; // indexed by package ID, replaced on every write
+    // IDs written while a full scan runs; the scan's older reading must not replace them
+    private Set<Integer> writtenDuringScan;
+
+    private AppCategoryIndex(Context context) {
+        this.packageManager = context.getPackageManager();
+        this.overrides = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.masksFile = new File(context.getFilesDir(), MASKS_FILE);
+        load();
+    }
+
+    static synchronized AppCategoryIndex getInstance(Context context) {
+        if (instance == null) {
+            instance = new AppCategoryIndex(context.getApplicationContext());
+            instance.refreshAllAsync();
+        }
+        return instance;
+    }
+
+    /** Returns the bit for a category name, or 0 if the name is unknown. */
+    static int bitOf(String name) {
+        for (int i = 0; i < CATEGORY_COUNT; i++) {
+            if (NAMES[i].equals(name)) {
+                return 1 << i;
+            }
+        }
+        return 0;
+    }
+
+    /** Category bitmask of a package, 0 when it has no known category. Lock-free. */
+    int maskOf(int packageId) {
+        int[] current = masks;
+        return packageId >= 0 && packageId < current.length ? current[packageId] : 0;
+    }
+
+    void refreshAllAsync() {
+        executor.execute(this::refreshAll);
+    }
+
+    private void refreshAll() {
+        long start = System.currentTimeMillis();
+        synchronized (this) {
+            writtenDuringScan = new HashSet<>();
+        }
+        List<ApplicationInfo> apps = packageManager.getInstalledApplications(0);
+        int[] ids = new int[apps.size()];
+        int[] detected = new int[apps.size()];
+        for (int i = 0; i < apps.size(); i++) {
+            ApplicationInfo app = apps.get(i);
+            ids[i] = interner.intern(app.packageName);
+            detected[i] = resolve(app.packageName, app);
+        }
+        synchronized (this) {
+            // Packages missing from the scan are gone, except those a broadcast or the
+            // monitor wrote after the scan began: their mask is newer than ours
+            int[] next = new int[Math.max(interner.size(), masks.length)];
+            for (int id : writtenDuringScan) {
+                next[id] = masks[id];
+            }
+            for (int i = 0; i < ids.length; i++) {
+                if (!writtenDuringScan.contains(ids[i])) {
+                    next[ids[i]] = detected[i];
+                }
+            }
+            writtenDuringScan = null;
+            masks = next;
+        }
+        save();
+        Log.d(TAG, "Indexed categories of " + apps.size() + " packages in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /** Re-reads one package after it was installed, updated or changed. */
+    void refreshPackage(String packageName) {
+        ApplicationInfo app;
+        try {
+            app = packageManager.getApplicationInfo(packageName, 0);
+        } catch (PackageManager.NameNotFoundException e) {
+            app = null;
+        }
+        set(interner.intern(packageName), resolve(packageName, app));
+    }
+
+    void removePackage(String packageName) {
+        int id = interner.lookup(packageName);
+        if (id != PackageInterner.NO_ID) {
+            set(id, 0);
+        }
+    }
+
+    /** Replaces the detected categories of a package with {@code mask}; a negative mask clears the override. */
+    void setOverride(String packageName, int mask) {
+        if (mask < 0) {
+            overrides.edit().remove(packageName).apply();
+        } else {
+            overrides.edit().putInt(packageName, mask).apply();
+        }
+        refreshPackage(packageName);
+    }
+
+    /** Sets a package's mask as resolved by the monitor process, which owns the overrides. UI process only. */
+    void applyMask(String packageName, int mask) {
+        if (packageName != null) {
+            set(interner.intern(packageName), mask);
+        }
+    }
+
+    Map<String, ?> overrides() {
+        return overrides.getAll();
+    }
+
+    private void set(int packageId, int mask) {
+        synchronized (this) {
+            int[] next = Arrays.copyOf(masks, Math.max(masks.length, packageId + 1));
+            next[packageId] = mask;
+            masks = next;
+            if (writtenDuringScan != null) {
+                writtenDuringScan.add(packageId);
+            }
+        }
+        executor.execute(this::save);
+    }
+
+    /** Reads the saved masks. Runs once, before anything can query the index. */
+    private void load() {
+        if (!masksFile.exists()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        int[] loaded = new int[0];
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(masksFile)))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                int id = interner.intern(in.readUTF());
+                int mask = in.readInt();
+                if (id >= loaded.length) {
+                    loaded = Arrays.copyOf(loaded, Math.max(id + 1, loaded.length * 2));
+                }
+                loaded[id] = mask;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Ignoring unreadable category masks: " + e.getMessage());
+            return;
+        }
+        masks = loaded;
+        Log.d(TAG, "Loaded saved categories in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /** Writes the non-zero masks through a temp file, so a reader never sees half of one. */
+    private void save() {
+        int[] current = masks;
+        int count = 0;
+        for (int mask : current) {
+            if (mask != 0) {
+                count++;
+            }
+        }
+        // Both processes keep an index, each writes through its own temp file
+        File temp = new File(masksFile.getPath() + "." + Process.myPid() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(count);
+            for (int id = 0; id < current.length; id++) {
+                if (current[id] != 0) {
+                    out.writeUTF(interner.nameOf(id));
+                    out.writeInt(current[id]);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to save category masks", e);
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(masksFile)) {
+            Log.e(TAG, "Failed to replace the saved category masks");
+            temp.delete();
+        }
+    }
+
+    private int resolve(String packageName, ApplicationInfo app) {
+        int override = overrides.getInt(packageName, -1);
+        if (override >= 0) {
+            return override;
+        }
+        if (app == null || Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return 0;
+        }
+        int category = app.category;
+        return category >= 0 && category < CATEGORY_COUNT ? 1 << category : 0;
+    }
+}
@@ -1,44 +1,82 @@
 package com.newfocusguard
 
-import android.content.pm.PackageManager
-import android.graphics.Bitmap
-import android.graphics.Canvas
-import android.util.Base64
+import android.os.SystemClock
+import android.util.Log
 import com.facebook.react.bridge.*
-import java.io.ByteArrayOutputStream
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
 
 class AppIconModule(reactContext: ReactApplicationContext) : ReactContextBaseJavaModule(reactContext) {
 
-    override fun getName(): String = "AppIconModule"
+    companion object {
+        const val NAME = "AppIconModule"
+        private const val TAG = "FocusGuardAppIcon"
+        // Rendering is CPU-bound, leave a core for the UI and JS threads
+        private val THREADS = (Runtime.getRuntime().availableProcessors() - 1).coerceIn(1, 3)
+    }
+
+    private val executor = Executors.newFixedThreadPool(THREADS)
+
+    override fun getName(): String = NAME
+
+    override fun invalidate() {
+        executor.shutdownNow()
+        super.invalidate()
+    }
 
     @ReactMethod
     fun getAppIcon(packageName: String, promise: Promise) {
         try {
-            val pm = reactApplicationContext.packageManager
-            val ai = pm.getApplicationInfo(packageName, 0)
-            val icon = pm.getApplicationIcon(ai)
-            
-            // Convert drawable to bitmap
-            val bitmap = Bitmap.createBitmap(
-                icon.intrinsicWidth,
-                icon.intrinsicHeight,
-                Bitmap.Config.ARGB_8888
-            )
-            val canvas = Canvas(bitmap)
-            icon.setBounds(0, 0, canvas.width, canvas.height)
-            icon.draw(canvas)
-
-            // Convert bitmap to base64
-            val byteArrayOutputStream = ByteArrayOutputStream()
-            bitmap.compress(Bitmap.CompressFormat.PNG, 100, byteArrayOutputStream)
-            val byteArray = byteArrayOutputStream.toByteArray()
-            val base64Icon = Base64.encodeToString(byteArray, Base64.DEFAULT)
+            // Rendered once per version and density, later calls only stat the file
+            val uri = IconDiskCache.getInstance(reactApplicationContext).iconUri(packageName)
 
             val result = Arguments.createMap()
-            result.putString("icon", base64Icon)
+            result.putString("uri", uri)
             promise.resolve(result)
         } catch (e: Exception) {
             promise.reject("ERROR", e.message)
         }
     }
-} 
\ No newline at end of file
+
+    /**
+     * Icons of several packages at sizePx square, rendered in parallel on a small pool.
+     * Resolves with { packageName: uri }; packages without a readable icon are left out.
+     */
+    @ReactMethod
+    fun getAppIcons(packages: ReadableArray, sizePx: Int, promise: Promise) {
+        val names = (0 until packages.size()).mapNotNull { packages.getString(it) }.distinct()
+        if (names.isEmpty()) {
+            promise.resolve(Arguments.createMap())
+            return
+        }
+        val cache = IconDiskCache.getInstance(reactApplicationContext)
+        val uris = ConcurrentHashMap<String, String>()
+        val remaining = AtomicInteger(names.size)
+        val started = SystemClock.elapsedRealtime()
+        try {
+            for (packageName in names) {
+                executor.execute {
+                    try {
+                        uris[packageName] = cache.iconUri(packageName, sizePx)
+                    } catch (e: Exception) {
+                        Log.w(TAG, "No icon for $packageName: ${e.message}")
+                    } finally {
+                        if (remaining.decrementAndGet() == 0) {
+                            val result = Arguments.createMap()
+                            for ((name, uri) in uris) {
+                                result.putString(name, uri)
+                            }
+                            Log.d(TAG, "Resolved ${uris.size}/${names.size} icons at ${sizePx}px in "
+                                + "${SystemClock.elapsedRealtime() - started}ms")
+                            promise.resolve(result)
+                        }
+                    }
+                }
+            }
+        } catch (e: Exception) {
+            // Module torn down while a batch was being queued
+            promise.reject("ERROR", e.message)
+        }
+    }
+}
@@ -1,16 +1,26 @@
 package com.newfocusguard
 
-import com.facebook.react.ReactPackage
+import com.facebook.react.BaseReactPackage
 import com.facebook.react.bridge.NativeModule
 import com.facebook.react.bridge.ReactApplicationContext
-import com.facebook.react.uimanager.ViewManager
+import com.facebook.react.module.model.ReactModuleInfo
+import com.facebook.react.module.model.ReactModuleInfoProvider
 
-class AppIconPackage : ReactPackage {
-    override fun createViewManagers(reactContext: ReactApplicationContext): List<ViewManager<*, *>> {
-        return emptyList()
-    }
+/** Registers [AppIconModule] lazily: it is only constructed when JS first asks for it. */
+class AppIconPackage : BaseReactPackage() {
+    override fun getModule(name: String, reactContext: ReactApplicationContext): NativeModule? =
+        if (name == AppIconModule.NAME) AppIconModule(reactContext) else null
 
-    override fun createNativeModules(reactContext: ReactApplicationContext): List<NativeModule> {
-        return listOf(AppIconModule(reactContext))
+    override fun getReactModuleInfoProvider(): ReactModuleInfoProvider = ReactModuleInfoProvider {
+        mapOf(
+            AppIconModule.NAME to ReactModuleInfo(
+                AppIconModule.NAME,
+                AppIconModule::class.java.name,
+                false, // canOverrideExistingModule
+                false, // needsEagerInit
+                false, // isCxxModule
+                false  // isTurboModule, served through the new architecture's interop layer
+            )
+        )
     }
-} 
\ No newline at end of file
+}
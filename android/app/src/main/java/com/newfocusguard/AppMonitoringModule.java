@@ -1,32 +1,111 @@
 package com.newfocusguard;
 
 import android.content.Intent;
+import android.os.Bundle;
 import android.provider.Settings;
-import android.app.AppOpsManager;
-import android.content.Context;
-import android.os.Process;
 import android.util.Log;
 import android.net.Uri;
 
+import com.facebook.react.bridge.LifecycleEventListener;
 import com.facebook.react.bridge.Promise;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.module.annotations.ReactModule;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
+import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.bridge.Arguments;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @ReactModule(name = AppMonitoringModule.NAME)
-public class AppMonitoringModule extends ReactContextBaseJavaModule {
+public class AppMonitoringModule extends ReactContextBaseJavaModule implements LifecycleEventListener {
     public static final String NAME = "AppMonitoringModule";
     private static final String TAG = "FocusGuardAppMonitor";
+    private static final long MAX_TIMELINE_RANGE_MS = 366L * 24 * 60 * 60 * 1000;
     private final ReactApplicationContext reactContext;
     private Intent serviceIntent;
+    private final LockTable.DiffListener lockDiffListener = this::onLockTableDiff;
+    private final CapabilityMonitor.Listener capabilityListener = this::onCapabilitiesChanged;
+    private final MonitorClient.EventListener monitorEventListener = this::onMonitorEvent;
+    // Timeline and quota queries to the monitor process, kept off the JS bridge thread
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
 
     public AppMonitoringModule(ReactApplicationContext reactContext) {
         super(reactContext);
         this.reactContext = reactContext;
         this.serviceIntent = new Intent(reactContext, AppMonitoringService.class);
+        LockTable.getInstance(reactContext).addDiffListener(lockDiffListener);
+        CapabilityMonitor.getInstance(reactContext).addListener(capabilityListener);
+        reactContext.addLifecycleEventListener(this);
+        // The service runs in the :monitor process, the lock table here mirrors its table
+        MonitorClient monitor = MonitorClient.getInstance(reactContext);
+        monitor.addEventListener(monitorEventListener);
+        // The subscribe call may have to start the monitor process, so it runs on the client's worker
+        monitor.connectInBackground();
+    }
+
+    @Override
+    public void invalidate() {
+        LockTable.getInstance(reactContext).removeDiffListener(lockDiffListener);
+        CapabilityMonitor.getInstance(reactContext).removeListener(capabilityListener);
+        reactContext.removeLifecycleEventListener(this);
+        MonitorClient monitor = MonitorClient.getInstance(reactContext);
+        monitor.removeEventListener(monitorEventListener);
+        monitor.disconnect();
+        ioExecutor.shutdownNow();
+        super.invalidate();
+    }
+
+    @Override
+    public void onHostResume() {
+        // The user may be coming back from a settings screen, and not every ROM reports AppOp changes
+        CapabilityMonitor.getInstance(reactContext).refresh();
+    }
+
+    @Override
+    public void onHostPause() {
+    }
+
+    @Override
+    public void onHostDestroy() {
+    }
+
+    /** {usageStats, overlay, exactAlarms}, from the cache. */
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public WritableMap getCapabilities() {
+        return capabilitiesToMap(CapabilityMonitor.getInstance(reactContext).granted());
+    }
+
+    /** Events of the service (onAppChange, onAppBlocked, onEmergencyUnlock), relayed by the monitor process. */
+    private void onMonitorEvent(String eventName, Bundle params) {
+        if (reactContext.hasActiveReactInstance()) {
+            sendEvent(eventName, Arguments.fromBundle(params));
+        }
+    }
+
+    private void onCapabilitiesChanged(int previous, int current) {
+        if (reactContext.hasActiveReactInstance()) {
+            sendEvent("onCapabilitiesChanged", capabilitiesToMap(current));
+        }
+    }
+
+    private static WritableMap capabilitiesToMap(int granted) {
+        WritableMap map = Arguments.createMap();
+        map.putBoolean("usageStats", (granted & CapabilityMonitor.USAGE_STATS) != 0);
+        map.putBoolean("overlay", (granted & CapabilityMonitor.OVERLAY) != 0);
+        map.putBoolean("exactAlarms", (granted & CapabilityMonitor.EXACT_ALARMS) != 0);
+        return map;
     }
 
     @Override
@@ -34,6 +113,85 @@ public class AppMonitoringModule extends ReactContextBaseJavaModule {
         return NAME;
     }
 
+    /**
+     * Recent enforcement restores after a boot, an app update or a service restart, oldest first:
+     * [{reason, delayMs, timestamp}], delayMs from the trigger (or the unlock) to the first check.
+     */
+    @ReactMethod
+    public void getEnforcementRestores(Promise promise) {
+        try {
+            JSONArray samples = new JSONArray(MonitorClient.getInstance(reactContext).restoreSamplesJson());
+            WritableArray result = Arguments.createArray();
+            for (int i = 0; i < samples.length(); i++) {
+                JSONObject sample = samples.getJSONObject(i);
+                WritableMap map = Arguments.createMap();
+                map.putString("reason", sample.optString("reason"));
+                map.putDouble("delayMs", sample.optLong("delayMs", 0));
+                map.putDouble("timestamp", sample.optLong("timestamp", 0));
+                result.pushMap(map);
+            }
+            promise.resolve(result);
+        } catch (Exception e) {
+            promise.reject("METRICS_ERROR", e.getMessage(), e);
+        }
+    }
+
+    /** Apps the Quick Settings tile locks in one tap, for durationMinutes or until turned off when 0. */
+    @ReactMethod
+    public void setFocusProfile(ReadableArray packageNames, int durationMinutes, Promise promise) {
+        String[] packages = new String[packageNames.size()];
+        for (int i = 0; i < packages.length; i++) {
+            packages[i] = packageNames.getString(i);
+        }
+        String error = FocusProfile.validate(packages, durationMinutes);
+        if (error != null) {
+            promise.reject("INVALID_FOCUS_PROFILE", error);
+            return;
+        }
+        try {
+            MonitorClient.getInstance(reactContext).setFocusProfile(packages, durationMinutes);
+            promise.resolve(null);
+        } catch (Exception e) {
+            promise.reject("FOCUS_PROFILE_ERROR", e.getMessage(), e);
+        }
+    }
+
+    /** Resolves with {packageNames, durationMinutes, active} of the Quick Settings tile's profile. */
+    @ReactMethod
+    public void getFocusProfile(Promise promise) {
+        try {
+            Bundle profile = MonitorClient.getInstance(reactContext).focusProfile();
+            WritableArray packageNames = Arguments.createArray();
+            String[] packages = profile.getStringArray("packages");
+            if (packages != null) {
+                for (String packageName : packages) {
+                    packageNames.pushString(packageName);
+                }
+            }
+            WritableMap result = Arguments.createMap();
+            result.putArray("packageNames", packageNames);
+            result.putInt("durationMinutes", profile.getInt("durationMinutes"));
+            result.putBoolean("active", profile.getBoolean("active"));
+            promise.resolve(result);
+        } catch (Exception e) {
+            promise.reject("FOCUS_PROFILE_ERROR", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Timeout budget of headless JS tasks: baseMs plus perItemMs per batched event, at most maxMs.
+     * Applies to batches started after the call.
+     */
+    @ReactMethod
+    public void setHeadlessTaskBudget(double baseMs, double perItemMs, double maxMs, Promise promise) {
+        if (baseMs <= 0 || perItemMs < 0 || maxMs < baseMs) {
+            promise.reject("INVALID_BUDGET", "Expected baseMs > 0, perItemMs >= 0 and maxMs >= baseMs");
+            return;
+        }
+        FocusGuardHeadlessTaskService.setBudget(reactContext, (long) baseMs, (long) perItemMs, (long) maxMs);
+        promise.resolve(null);
+    }
+
     @ReactMethod
     public void addListener(String eventName) {
         // Set up any upstream listeners or background tasks as necessary
@@ -80,6 +238,10 @@ public class AppMonitoringModule extends ReactContextBaseJavaModule {
                 promise.reject("PERMISSION_DENIED", "Usage stats permission not granted");
                 return;
             }
+            if (PackageRuleMatcher.isRule(packageName) && !PackageRuleMatcher.isValid(packageName)) {
+                promise.reject("INVALID_RULE", "A '*' must be a whole segment or end one: " + packageName);
+                return;
+            }
 
             Intent lockIntent = new Intent(reactContext, AppMonitoringService.class);
             lockIntent.setAction("LOCK_APP");
@@ -107,6 +269,223 @@ public class AppMonitoringModule extends ReactContextBaseJavaModule {
         }
     }
 
+    /** Locks every app in a category (see AppCategoryIndex.NAMES), including apps installed later. */
+    @ReactMethod
+    public void lockCategory(String category, Double duration, Promise promise) {
+        if (AppCategoryIndex.bitOf(category) == 0) {
+            promise.reject("LOCK_ERROR", "Unknown category " + category);
+            return;
+        }
+        try {
+            Intent lockIntent = new Intent(reactContext, AppMonitoringService.class);
+            lockIntent.setAction("LOCK_CATEGORY");
+            lockIntent.putExtra("category", category);
+            if (duration != null) {
+                lockIntent.putExtra("duration", duration.longValue());
+            }
+            reactContext.startService(lockIntent);
+            promise.resolve(null);
+        } catch (Exception e) {
+            promise.reject("LOCK_ERROR", e.getMessage(), e);
+        }
+    }
+
+    @ReactMethod
+    public void unlockCategory(String category, Promise promise) {
+        try {
+            Intent unlockIntent = new Intent(reactContext, AppMonitoringService.class);
+            unlockIntent.setAction("UNLOCK_CATEGORY");
+            unlockIntent.putExtra("category", category);
+            reactContext.startService(unlockIntent);
+            promise.resolve(null);
+        } catch (Exception e) {
+            promise.reject("UNLOCK_ERROR", e.getMessage(), e);
+        }
+    }
+
+    /** Replaces the detected categories of an app with {@code categories}; null restores the detected ones. */
+    @ReactMethod
+    public void setCategoryOverride(String packageName, ReadableArray categories, Promise promise) {
+        try {
+            Intent overrideIntent = new Intent(reactContext, AppMonitoringService.class);
+            overrideIntent.setAction("SET_CATEGORY_OVERRIDE");
+            overrideIntent.putExtra("packageName", packageName);
+            overrideIntent.putExtra("categoryMask", categories != null ? categoryMaskOf(categories) : -1);
+            reactContext.startService(overrideIntent);
+            promise.resolve(null);
+        } catch (Exception e) {
+            promise.reject("CATEGORY_ERROR", e.getMessage(), e);
+        }
+    }
+
+    /** Category names of an installed app, after overrides. */
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public WritableArray getAppCategories(String packageName) {
+        int mask = AppCategoryIndex.getInstance(reactContext).maskOf(PackageInterner.getInstance().lookup(packageName));
+        WritableArray categories = Arguments.createArray();
+        for (int c = 0; c < AppCategoryIndex.CATEGORY_COUNT; c++) {
+            if ((mask & (1 << c)) != 0) {
+                categories.pushString(AppCategoryIndex.NAMES[c]);
+            }
+        }
+        return categories;
+    }
+
+    private static int categoryMaskOf(ReadableArray categories) {
+        int mask = 0;
+        for (int i = 0; i < categories.size(); i++) {
+            mask |= AppCategoryIndex.bitOf(categories.getString(i));
+        }
+        return mask;
+    }
+
+    // Synchronous lock table reads. These run on the JS thread against the current
+    // immutable LockTable snapshot, so they never block on the service and need no Promise.
+
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public boolean isLocked(String packageName) {
+        return LockTable.getInstance(reactContext).snapshot().isLocked(packageName, System.currentTimeMillis());
+    }
+
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public double getRemainingLockTime(String packageName) {
+        return LockTable.getInstance(reactContext).snapshot().remainingMs(packageName, System.currentTimeMillis());
+    }
+
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public WritableMap getLockState() {
+        LockTable.Snapshot snapshot = LockTable.getInstance(reactContext).snapshot();
+        long now = System.currentTimeMillis();
+        PackageInterner interner = PackageInterner.getInstance();
+        WritableMap locks = Arguments.createMap();
+        WritableMap sources = Arguments.createMap();
+        for (Map.Entry<String, Long> entry : snapshot.toMap().entrySet()) {
+            if (snapshot.isLocked(entry.getKey(), now)) {
+                locks.putDouble(entry.getKey(), entry.getValue());
+                int packageId = interner.lookup(entry.getKey());
+                sources.putMap(entry.getKey(),
+                    lockSources(snapshot.manualUnlockTimeOf(packageId), snapshot.scheduleRefsOf(packageId)));
+            }
+        }
+        WritableMap state = Arguments.createMap();
+        state.putDouble("epoch", LockTable.getInstance(reactContext).epoch);
+        state.putDouble("version", snapshot.version);
+        state.putMap("locks", locks);
+        state.putMap("sources", sources);
+        state.putMap("categories", categoriesToMap(snapshot));
+        state.putMap("rules", patternsToMap(snapshot.patterns));
+        return state;
+    }
+
+    /**
+     * Catch-up read for a client that last saw (epoch, version). Returns the missed diffs in
+     * order, or {reset: true, state} when they are no longer buffered or the epoch changed.
+     */
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public WritableMap getLockDiffsSince(double epoch, double version) {
+        LockTable lockTable = LockTable.getInstance(reactContext);
+        List<LockTable.Diff> diffs = (long) epoch == lockTable.epoch ? lockTable.diffsSince((long) version) : null;
+        WritableMap result = Arguments.createMap();
+        if (diffs == null) {
+            result.putBoolean("reset", true);
+            result.putMap("state", getLockState());
+            return result;
+        }
+        WritableArray array = Arguments.createArray();
+        for (LockTable.Diff diff : diffs) {
+            array.pushMap(diffToMap(lockTable.epoch, diff));
+        }
+        result.putBoolean("reset", false);
+        result.putArray("diffs", array);
+        return result;
+    }
+
+    private void onLockTableDiff(LockTable.Diff diff) {
+        if (!reactContext.hasActiveReactInstance()) {
+            return; // JS resumes with getLockDiffsSince when it comes back
+        }
+        sendEvent("onLockTableDiff", diffToMap(LockTable.getInstance(reactContext).epoch, diff));
+    }
+
+    /** {category: {unlockTime, manual, schedules}} for every locked category. */
+    private static WritableMap categoriesToMap(LockTable.Snapshot snapshot) {
+        WritableMap categories = Arguments.createMap();
+        for (int c = 0; c < AppCategoryIndex.CATEGORY_COUNT; c++) {
+            if (snapshot.categoryUnlockTimeOf(c) != LockTable.NOT_LOCKED) {
+                WritableMap entry = lockSources(snapshot.categoryManualUnlockTimeOf(c), snapshot.categoryScheduleRefsOf(c));
+                entry.putDouble("unlockTime", snapshot.categoryUnlockTimeOf(c));
+                categories.putMap(AppCategoryIndex.NAMES[c], entry);
+            }
+        }
+        return categories;
+    }
+
+    /** {rule: {unlockTime, manual, schedules}} for every wildcard rule lock. */
+    private static WritableMap patternsToMap(LockTable.PatternLocks patterns) {
+        WritableMap rules = Arguments.createMap();
+        for (int i = 0; i < patterns.size(); i++) {
+            WritableMap entry = lockSources(patterns.manual[i], patterns.scheduleRefs[i]);
+            entry.putDouble("unlockTime", patterns.unlockTimeAt(i));
+            rules.putMap(patterns.patterns[i], entry);
+        }
+        return rules;
+    }
+
+    private static WritableMap diffToMap(long epoch, LockTable.Diff diff) {
+        PackageInterner interner = PackageInterner.getInstance();
+        WritableMap added = Arguments.createMap();
+        WritableMap changed = Arguments.createMap();
+        WritableArray removed = Arguments.createArray();
+        for (int i = 0; i < diff.size(); i++) {
+            String packageName = interner.nameOf(diff.packageIds[i]);
+            if (diff.after[i] == LockTable.NOT_LOCKED) {
+                removed.pushString(packageName);
+                continue;
+            }
+            WritableMap entry = lockSources(diff.manual[i], diff.scheduleRefs[i]);
+            entry.putDouble("unlockTime", diff.after[i]);
+            if (diff.before[i] == LockTable.NOT_LOCKED) {
+                added.putMap(packageName, entry);
+            } else {
+                changed.putMap(packageName, entry);
+            }
+        }
+        WritableMap map = Arguments.createMap();
+        map.putDouble("epoch", epoch);
+        map.putDouble("version", diff.version);
+        map.putMap("added", added);
+        map.putMap("changed", changed);
+        map.putArray("removed", removed);
+        if (diff.hasCategoryChanges()) {
+            // Few categories, so a changed version carries the full category state
+            WritableMap categories = Arguments.createMap();
+            for (int c = 0; c < AppCategoryIndex.CATEGORY_COUNT; c++) {
+                long unlockTime = diff.categoryScheduleRefs[c] > 0 ? LockTable.INDEFINITE : diff.categoryManual[c];
+                if (unlockTime != LockTable.NOT_LOCKED) {
+                    WritableMap entry = lockSources(diff.categoryManual[c], diff.categoryScheduleRefs[c]);
+                    entry.putDouble("unlockTime", unlockTime);
+                    categories.putMap(AppCategoryIndex.NAMES[c], entry);
+                }
+            }
+            map.putMap("categories", categories);
+        }
+        if (diff.patterns != null) {
+            map.putMap("rules", patternsToMap(diff.patterns));
+        }
+        return map;
+    }
+
+    private static WritableMap lockSources(long manualUnlockTime, int scheduleRefs) {
+        WritableMap source = Arguments.createMap();
+        if (manualUnlockTime == LockTable.NOT_LOCKED) {
+            source.putNull("manual");
+        } else {
+            source.putDouble("manual", manualUnlockTime);
+        }
+        source.putInt("schedules", scheduleRefs);
+        return source;
+    }
+
     @ReactMethod
     public void hasUsageStatsPermission(Promise promise) {
         Log.d(TAG, "Native: ReactMethod hasUsageStatsPermission called, invoking private method.");
@@ -127,21 +506,206 @@ public class AppMonitoringModule extends ReactContextBaseJavaModule {
         }
     }
 
+    /**
+     * Blocking intervals between from and to, computed from the stored schedules:
+     * {apps: {packageName: [[start, end], ...]}, categories: {category: [...]}, combined: [[start, end], ...]},
+     * all merged and sorted.
+     */
+    @ReactMethod
+    public void getBlockingTimeline(double from, double to, Promise promise) {
+        long fromMs = (long) from;
+        long toMs = (long) to;
+        if (toMs <= fromMs || toMs - fromMs > MAX_TIMELINE_RANGE_MS) {
+            promise.reject("TIMELINE_ERROR", "Timeline range must be positive and at most 366 days");
+            return;
+        }
+        ioExecutor.execute(() -> {
+            try {
+                Bundle timeline = MonitorClient.getInstance(reactContext).blockingTimeline(fromMs, toMs);
+                WritableMap result = Arguments.createMap();
+                result.putMap("apps", intervalsByKey(timeline.getBundle("apps")));
+                result.putMap("categories", intervalsByKey(timeline.getBundle("categories")));
+                result.putArray("combined", intervalsToArray(timeline.getLongArray("combined")));
+                promise.resolve(result);
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to compute blocking timeline", e);
+                promise.reject("TIMELINE_ERROR", e.getMessage(), e);
+            }
+        });
+    }
+
+    private static WritableMap intervalsByKey(Bundle bundle) {
+        WritableMap map = Arguments.createMap();
+        for (String key : bundle.keySet()) {
+            map.putArray(key, intervalsToArray(bundle.getLongArray(key)));
+        }
+        return map;
+    }
+
+    /** [[start, end], ...] from flattened start/end pairs. */
+    private static WritableArray intervalsToArray(long[] flat) {
+        WritableArray array = Arguments.createArray();
+        for (int i = 0; i + 1 < flat.length; i += 2) {
+            WritableArray pair = Arguments.createArray();
+            pair.pushDouble(flat[i]);
+            pair.pushDouble(flat[i + 1]);
+            array.pushArray(pair);
+        }
+        return array;
+    }
+
+    /**
+     * Sets the usage quota of an app. rule: {dailyLimitMinutes?, resetMinute?, rollingAllowanceMinutes?,
+     * rollingWindowMinutes?}; a missing or zero allowance disables that part of the quota.
+     */
+    @ReactMethod
+    public void setAppQuota(String packageName, ReadableMap rule, Promise promise) {
+        try {
+            Intent quotaIntent = new Intent(reactContext, AppMonitoringService.class);
+            quotaIntent.setAction("SET_QUOTA");
+            quotaIntent.putExtra("packageName", packageName);
+            quotaIntent.putExtra("dailyLimitMs", minutesToMs(rule, "dailyLimitMinutes"));
+            quotaIntent.putExtra("resetMinute", rule.hasKey("resetMinute") ? rule.getInt("resetMinute") : 0);
+            quotaIntent.putExtra("bucketCapacityMs", minutesToMs(rule, "rollingAllowanceMinutes"));
+            quotaIntent.putExtra("bucketWindowMs", minutesToMs(rule, "rollingWindowMinutes"));
+            reactContext.startService(quotaIntent);
+            Log.d(TAG, "Sent SET_QUOTA intent for " + packageName);
+            promise.resolve(null);
+        } catch (Exception e) {
+            Log.e(TAG, "Error sending SET_QUOTA intent.", e);
+            promise.reject("QUOTA_ERROR", e.getMessage(), e);
+        }
+    }
+
+    @ReactMethod
+    public void removeAppQuota(String packageName, Promise promise) {
+        try {
+            Intent quotaIntent = new Intent(reactContext, AppMonitoringService.class);
+            quotaIntent.setAction("REMOVE_QUOTA");
+            quotaIntent.putExtra("packageName", packageName);
+            reactContext.startService(quotaIntent);
+            Log.d(TAG, "Sent REMOVE_QUOTA intent for " + packageName);
+            promise.resolve(null);
+        } catch (Exception e) {
+            Log.e(TAG, "Error sending REMOVE_QUOTA intent.", e);
+            promise.reject("QUOTA_ERROR", e.getMessage(), e);
+        }
+    }
+
     @ReactMethod
-    public void setScheduledLocks(String schedulesJson, Promise promise) {
+    public void getQuotaStatus(String packageName, Promise promise) {
+        // Usage is tracked by the service; the monitor process is asked off the JS thread
+        ioExecutor.execute(() -> {
+            try {
+                Bundle quota = MonitorClient.getInstance(reactContext).quotaStatus(packageName);
+                WritableMap status = Arguments.createMap();
+                boolean hasQuota = quota.getBoolean("hasQuota");
+                status.putBoolean("hasQuota", hasQuota);
+                if (hasQuota) {
+                    status.putDouble("remainingMs", quota.getLong("remainingMs"));
+                    status.putDouble("usedTodayMs", quota.getLong("usedTodayMs"));
+                }
+                promise.resolve(status);
+            } catch (Exception e) {
+                Log.e(TAG, "Could not read the quota of " + packageName, e);
+                promise.reject("QUOTA_ERROR", e.getMessage(), e);
+            }
+        });
+    }
+
+    private static long minutesToMs(ReadableMap map, String key) {
+        return map.hasKey(key) && !map.isNull(key) ? (long) (map.getDouble(key) * 60 * 1000) : 0;
+    }
+
+    // Schedule operations carry only the schedule that changed, as a Parcelable ScheduleSpec.
+    // The service persists and recompiles just that schedule. Each one is numbered with JS's
+    // (syncEpoch, syncRevision); after a gap the service asks for replaceSchedules.
+
+    @ReactMethod
+    public void upsertSchedule(ReadableMap schedule, String syncEpoch, double syncRevision, Promise promise) {
+        try {
+            ScheduleSpec spec = ScheduleSpec.fromReadableMap(schedule);
+            Intent scheduleIntent = scheduleIntent("UPSERT_SCHEDULE", syncEpoch, syncRevision);
+            scheduleIntent.putExtra("schedule", spec);
+            reactContext.startService(scheduleIntent);
+            Log.d(TAG, "Sent UPSERT_SCHEDULE intent for " + spec.id);
+            promise.resolve(null);
+        } catch (Exception e) {
+            Log.e(TAG, "Error sending UPSERT_SCHEDULE intent.", e);
+            promise.reject("SCHEDULE_ERROR", e.getMessage(), e);
+        }
+    }
+
+    @ReactMethod
+    public void deleteSchedule(String scheduleId, String syncEpoch, double syncRevision, Promise promise) {
+        try {
+            Intent scheduleIntent = scheduleIntent("DELETE_SCHEDULE", syncEpoch, syncRevision);
+            scheduleIntent.putExtra("scheduleId", scheduleId);
+            reactContext.startService(scheduleIntent);
+            Log.d(TAG, "Sent DELETE_SCHEDULE intent for " + scheduleId);
+            promise.resolve(null);
+        } catch (Exception e) {
+            Log.e(TAG, "Error sending DELETE_SCHEDULE intent.", e);
+            promise.reject("SCHEDULE_ERROR", e.getMessage(), e);
+        }
+    }
+
+    @ReactMethod
+    public void setScheduleEnabled(String scheduleId, boolean isEnabled, String syncEpoch, double syncRevision, Promise promise) {
         try {
-            Intent scheduleIntent = new Intent(reactContext, AppMonitoringService.class);
-            scheduleIntent.setAction("SET_SCHEDULES");
-            scheduleIntent.putExtra("schedulesJson", schedulesJson);
+            Intent scheduleIntent = scheduleIntent("ENABLE_SCHEDULE", syncEpoch, syncRevision);
+            scheduleIntent.putExtra("scheduleId", scheduleId);
+            scheduleIntent.putExtra("isEnabled", isEnabled);
             reactContext.startService(scheduleIntent);
-            Log.d(TAG, "Sent SET_SCHEDULES intent with data.");
+            Log.d(TAG, "Sent ENABLE_SCHEDULE intent for " + scheduleId + " -> " + isEnabled);
             promise.resolve(null);
         } catch (Exception e) {
-            Log.e(TAG, "Error sending SET_SCHEDULES intent.", e);
+            Log.e(TAG, "Error sending ENABLE_SCHEDULE intent.", e);
             promise.reject("SCHEDULE_ERROR", e.getMessage(), e);
         }
     }
 
+    /** Replaces the service's schedules with the full list, after a gap in the numbered operations. */
+    @ReactMethod
+    public void replaceSchedules(ReadableArray schedules, String syncEpoch, double syncRevision, Promise promise) {
+        try {
+            ArrayList<ScheduleSpec> specs = new ArrayList<>();
+            for (int i = 0; i < schedules.size(); i++) {
+                specs.add(ScheduleSpec.fromReadableMap(schedules.getMap(i)));
+            }
+            Intent scheduleIntent = scheduleIntent("REPLACE_SCHEDULES", syncEpoch, syncRevision);
+            scheduleIntent.putParcelableArrayListExtra("schedules", specs);
+            reactContext.startService(scheduleIntent);
+            Log.d(TAG, "Sent REPLACE_SCHEDULES intent with " + specs.size() + " schedules");
+            promise.resolve(null);
+        } catch (Exception e) {
+            Log.e(TAG, "Error sending REPLACE_SCHEDULES intent.", e);
+            promise.reject("SCHEDULE_ERROR", e.getMessage(), e);
+        }
+    }
+
+    /** Resolves with {epoch, revision} of the last schedule operation the service applied. */
+    @ReactMethod
+    public void getScheduleSyncState(Promise promise) {
+        try {
+            Bundle state = MonitorClient.getInstance(reactContext).scheduleSyncState();
+            WritableMap result = Arguments.createMap();
+            result.putString("epoch", state.getString("epoch"));
+            result.putDouble("revision", state.getLong("revision"));
+            promise.resolve(result);
+        } catch (Exception e) {
+            promise.reject("SCHEDULE_ERROR", e.getMessage(), e);
+        }
+    }
+
+    private Intent scheduleIntent(String action, String syncEpoch, double syncRevision) {
+        Intent intent = new Intent(reactContext, AppMonitoringService.class);
+        intent.setAction(action);
+        intent.putExtra(AppMonitoringService.EXTRA_SYNC_EPOCH, syncEpoch);
+        intent.putExtra(AppMonitoringService.EXTRA_SYNC_REVISION, (long) syncRevision);
+        return intent;
+    }
+
     @ReactMethod
     public void openAppSettings(Promise promise) {
         Log.d(TAG, "Native: openAppSettings called. Opening app info settings.");
@@ -167,29 +731,9 @@ public class AppMonitoringModule extends ReactContextBaseJavaModule {
         }
     }
 
+    /** Cached by CapabilityMonitor, which watches the AppOp instead of checking it on every call. */
     private boolean hasUsageStatsPermission() {
-        Log.d(TAG, "Native: hasUsageStatsPermission() called");
-        try {
-            AppOpsManager appOps = (AppOpsManager) reactContext.getSystemService(Context.APP_OPS_SERVICE);
-            if (appOps == null) {
-                Log.e(TAG, "Native: AppOpsManager is null, cannot check permission.");
-                return false;
-            }
-            // Note: using getApplicationContext() for getPackageName() just to be absolutely sure about the context.
-            int mode = appOps.checkOpNoThrow(AppOpsManager.OPSTR_GET_USAGE_STATS,
-                    Process.myUid(), reactContext.getApplicationContext().getPackageName());
-            
-            Log.d(TAG, "Native: UsageStats AppOpsManager mode: " + mode + " (MODE_ALLOWED is " + AppOpsManager.MODE_ALLOWED + ")");
-
-            if (mode == AppOpsManager.MODE_ERRORED) {
-                 Log.w(TAG, "Native: AppOpsManager returned MODE_ERRORED. This can happen if the permission is not declared in AndroidManifest.xml");
-            }
-
-            return mode == AppOpsManager.MODE_ALLOWED;
-        } catch (Exception e) {
-            Log.e(TAG, "Native: Exception in hasUsageStatsPermission()", e);
-            return false;
-        }
+        return CapabilityMonitor.getInstance(reactContext).has(CapabilityMonitor.USAGE_STATS);
     }
 
     private void sendEvent(String eventName, WritableMap params) {
@@ -3,14 +3,16 @@ package com.newfocusguard;
 import android.app.Service;
 import android.app.usage.UsageEvents;
 import android.app.usage.UsageStatsManager;
+import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
+import android.content.IntentFilter;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.IBinder;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
 import android.view.WindowManager;
@@ -29,27 +31,17 @@ import android.widget.Space;
 import android.view.Gravity;
 import android.graphics.Typeface;
 
-import com.facebook.react.ReactApplication;
-import com.facebook.react.ReactNativeHost;
 import androidx.core.app.NotificationCompat;
 
-import com.facebook.react.bridge.Arguments;
-import com.facebook.react.bridge.WritableMap;
-import com.facebook.react.HeadlessJsTaskService;
-import com.facebook.react.modules.core.DeviceEventManagerModule;
-
-import org.json.JSONObject;
-import org.json.JSONArray;
-import org.json.JSONException;
-
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.Map;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.List;
 import java.util.TimeZone;
 import java.util.Arrays;
@@ -59,31 +51,105 @@ public class AppMonitoringService extends Service {
     private static final long CHECK_INTERVAL_MS = 1000;
     private static final String NOTIFICATION_CHANNEL_ID = "FocusGuardChannel";
     private static final int NOTIFICATION_ID = 1867;
-    private static final String PREFS_NAME = "FocusGuardLocks";
-    private static final String PREFS_KEY = "lockedAppsMap";
-    private static final String PREFS_KEY_SCHEDULES = "schedulesJson";
+    // How long an emergency unlock lets an app through a category, rule, schedule or quota lock
+    private static final long EMERGENCY_EXEMPTION_MS = 15 * 60 * 1000;
+    // Sequence number of a schedule operation, see ScheduleStore
+    static final String EXTRA_SYNC_EPOCH = "syncEpoch";
+    static final String EXTRA_SYNC_REVISION = "syncRevision";
+    // Sent by FocusTileService
+    static final String ACTION_START_FOCUS = "START_FOCUS";
+    static final String ACTION_STOP_FOCUS = "STOP_FOCUS";
 
     private Handler handler;
     private boolean isRunning = false;
     private String lastForegroundApp = "";
+    private int lastForegroundAppId = PackageInterner.NO_ID;
     private long lastAppChangeTime = 0;
     private UsageStatsManager usageStatsManager;
-    private Map<String, Long> lockedApps = new HashMap<>();
-    private List<ScheduledLock> scheduledLocks = new ArrayList<>();
+    private LockTable lockTable;
+    private ScheduleStore scheduleStore;
+    // Every stored schedule, and the compiled form of the enabled ones
+    private Map<String, ScheduleSpec> scheduleSpecs = new HashMap<>();
+    private Map<String, ScheduledLock> scheduledLocks = new LinkedHashMap<>();
+    private HistoryLog historyLog;
+    private LockLedger lockLedger;
+    private QuotaTracker quotaTracker;
+    // One-shot timer armed when an app with a quota comes to the foreground
+    private final Runnable quotaExhaustedCheck = this::onQuotaTimer;
+    // Earliest wall-clock time at which any schedule can start or end. Until then the
+    // per-tick schedule check is a single comparison.
+    private long nextScheduleBoundary = Long.MIN_VALUE;
+    private long lastScheduleEvaluation = 0;
+    private BroadcastReceiver timeChangeReceiver;
+    private BroadcastReceiver packageChangeReceiver;
+    private AppCategoryIndex categoryIndex;
+    private OverlayContentCache overlayContent;
+    private MonitorBridge bridge;
+    private FocusProfile focusProfile;
+    private FocusSurfaces focusSurfaces;
+    private CapabilityMonitor capabilities;
+    private final CapabilityMonitor.Listener capabilityListener =
+        (previous, current) -> handler.post(() -> onCapabilitiesChanged(previous, current));
+    // Resolves the labels of newly locked apps before their overlay is ever needed
+    private final LockTable.DiffListener labelPrefetcher = this::prefetchLabels;
+    // Expiry runs on its own timer, stopMonitoring clears the loop's handler
+    private final Handler expiryHandler = new Handler(Looper.getMainLooper());
+    private final Runnable expiryCheck = () -> {
+        checkExpiredLocks();
+        armExpiryTimer();
+    };
+    private final LockTable.DiffListener expiryScheduler = diff -> armExpiryTimer();
+    private EnforcementSupervisor supervisor;
+    // False during direct boot, until the user unlocks and the stores can be read
+    private boolean enforcementReady = false;
+    private BroadcastReceiver unlockReceiver;
+    // Set by a RESTORE start, cleared by the first foreground check after it
+    private String restoreReason;
+    private long restoreTriggeredAt;
+    private final Runnable stableRunCheck = () -> supervisor.onStableRun();
 
     private WindowManager windowManager;
     private View overlayView;
     private WindowManager.LayoutParams overlayParams;
     private String currentlyOverlayingPackage = null;
+    // Package ID -> end of its emergency exemption. Locks that an emergency unlock cannot
+    // remove (everything but the manual one) are ignored for the package until then.
+    private final Map<Integer, Long> emergencyExemptions = new HashMap<>();
 
     @Override
     public void onCreate() {
         super.onCreate();
         Log.d(TAG, "Service onCreate");
-        loadLockedApps();
-        loadSchedules();
-        createNotificationChannel();
         handler = new Handler(Looper.getMainLooper());
+        createNotificationChannel();
+        supervisor = EnforcementSupervisor.getInstance(this);
+        if (EnforcementSupervisor.isUserUnlocked(this)) {
+            initEnforcement();
+        } else {
+            waitForUnlock();
+        }
+    }
+
+    /** Loads every store and starts watching. Locks and schedules live in credential storage, so only after unlock. */
+    private void initEnforcement() {
+        historyLog = HistoryLog.getInstance(this);
+        lockLedger = LockLedger.getInstance(this);
+        lockTable = LockTable.getInstance(this);
+        quotaTracker = QuotaTracker.getInstance(this);
+        categoryIndex = AppCategoryIndex.getInstance(this);
+        overlayContent = OverlayContentCache.getInstance(this);
+        bridge = MonitorBridge.getInstance(this);
+        focusProfile = FocusProfile.getInstance(this);
+        focusSurfaces = FocusSurfaces.getInstance(this);
+        lockTable.addDiffListener(labelPrefetcher);
+        lockTable.addDiffListener(expiryScheduler);
+        armExpiryTimer();
+        scheduleStore = ScheduleStore.getInstance(this);
+        loadSchedules();
+        registerTimeChangeReceiver();
+        registerPackageChangeReceiver();
+        capabilities = CapabilityMonitor.getInstance(this);
+        capabilities.addListener(capabilityListener);
         usageStatsManager = (UsageStatsManager) getSystemService(Context.USAGE_STATS_SERVICE);
         windowManager = (WindowManager) getSystemService(Context.WINDOW_SERVICE);
 
@@ -98,15 +164,59 @@ public class AppMonitoringService extends Service {
             WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN,
             PixelFormat.TRANSLUCENT
         );
+        enforcementReady = true;
+    }
+
+    /** Direct boot: hold the foreground and build everything the moment the user unlocks. */
+    private void waitForUnlock() {
+        Log.d(TAG, "User is still locked, enforcement starts at unlock");
+        unlockReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                unregisterReceiver(this);
+                unlockReceiver = null;
+                // The device just became usable, that is what time-to-enforcement counts from
+                restoreTriggeredAt = SystemClock.elapsedRealtime();
+                initEnforcement();
+                isRunning = false; // the waiting notification was not monitoring
+                if (hasWork()) {
+                    startMonitoring();
+                } else {
+                    // Everything was unlocked before the reboot after all
+                    supervisor.setEnforcementExpected(false);
+                    stopForeground(true);
+                    stopSelf();
+                }
+            }
+        };
+        registerReceiver(unlockReceiver, new IntentFilter(Intent.ACTION_USER_UNLOCKED));
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         Log.d(TAG, "Service onStartCommand with action: " + (intent != null ? intent.getAction() : "null"));
+        if (intent != null && EnforcementSupervisor.ACTION_RESTORE.equals(intent.getAction())) {
+            restoreReason = intent.getStringExtra(EnforcementSupervisor.EXTRA_REASON);
+            restoreTriggeredAt = intent.getLongExtra(EnforcementSupervisor.EXTRA_TRIGGERED_AT, SystemClock.elapsedRealtime());
+        }
+        if (!enforcementReady) {
+            // Started at a locked boot: startForeground is still owed within a few seconds
+            try {
+                startForeground(NOTIFICATION_ID, createWaitingNotification());
+                isRunning = true;
+            } catch (Exception e) {
+                Log.e(TAG, "Error starting foreground service before unlock", e);
+            }
+            return START_STICKY;
+        }
         if (intent != null) {
             String action = intent.getAction();
             if (action != null) {
                 switch (action) {
+                    case EnforcementSupervisor.ACTION_RESTORE:
+                        Log.d(TAG, "Received RESTORE (" + restoreReason + ")");
+                        startMonitoring();
+                        break;
                     case "START_SERVICE":
                         Log.d(TAG, "Received START_SERVICE action.");
                         startMonitoring();
@@ -115,12 +225,13 @@ public class AppMonitoringService extends Service {
                         String packageToLock = intent.getStringExtra("packageName");
                         long duration = intent.getLongExtra("duration", -1);
                         Log.d(TAG, "Received LOCK_APP for: " + packageToLock + " with duration: " + duration);
-                        if (duration > 0) {
-                            lockedApps.put(packageToLock, System.currentTimeMillis() + duration * 60 * 1000);
-                        } else {
-                            lockedApps.put(packageToLock, -1L);
-                        }
-                        saveLockedApps();
+                        long unlockTime = duration > 0
+                            ? System.currentTimeMillis() + duration * 60 * 1000
+                            : LockTable.INDEFINITE;
+                        lockTable.putManual(packageToLock, unlockTime);
+                        lockLedger.record(HistoryLog.KIND_LOCKED, packageToLock, unlockTime);
+                        // A lock set by hand is the user's own, stopping the focus must not lift it
+                        focusProfile.release(packageToLock);
                         if (!isRunning) {
                             startMonitoring();
                         }
@@ -128,31 +239,168 @@ public class AppMonitoringService extends Service {
                     case "UNLOCK_APP":
                         String packageToUnlock = intent.getStringExtra("packageName");
                         Log.d(TAG, "Received UNLOCK_APP for: " + packageToUnlock);
-                        lockedApps.remove(packageToUnlock);
-                        saveLockedApps();
-                        if (packageToUnlock != null && packageToUnlock.equals(currentlyOverlayingPackage)) {
-                            hideNativeOverlay();
+                        if (lockTable.removeManual(packageToUnlock) != null) {
+                            lockLedger.record(HistoryLog.KIND_UNLOCKED, packageToUnlock, 0);
                         }
-                        if (lockedApps.isEmpty()) {
+                        focusProfile.release(packageToUnlock);
+                        hideOverlayIfUnlocked();
+                        if (!hasWork()) {
                             stopMonitoring();
                         }
                         break;
-                    case "SET_SCHEDULES":
-                        String schedulesJson = intent.getStringExtra("schedulesJson");
-                        Log.d(TAG, "Received SET_SCHEDULES action.");
-                        
-                        // Persist schedules so they survive service restarts
-                        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-                        prefs.edit().putString(PREFS_KEY_SCHEDULES, schedulesJson).apply();
-                        Log.d(TAG, "Saved schedules to SharedPreferences.");
-
-                        updateSchedules(schedulesJson);
-
+                    case ACTION_START_FOCUS: {
+                        long now = System.currentTimeMillis();
+                        int minutes = focusProfile.durationMinutes();
+                        long until = minutes > 0 ? now + minutes * 60 * 1000L : LockTable.INDEFINITE;
+                        LockTable.Snapshot before = lockTable.snapshot();
+                        Set<String> lockedByFocus = new HashSet<>();
+                        for (String packageName : focusProfile.packages()) {
+                            // An app locked on its own keeps that lock, also after the focus ends
+                            if (before.manualUnlockTimeOf(PackageInterner.getInstance().lookup(packageName)) != LockTable.NOT_LOCKED) {
+                                continue;
+                            }
+                            lockTable.putManual(packageName, until);
+                            lockLedger.record(HistoryLog.KIND_LOCKED, packageName, until);
+                            lockedByFocus.add(packageName);
+                        }
+                        focusProfile.markStarted(lockedByFocus, until);
+                        focusSurfaces.refresh();
+                        Log.d(TAG, "Received START_FOCUS, locked " + lockedByFocus.size() + " apps until " + until);
+                        if (!isRunning) {
+                            startMonitoring();
+                        }
+                        break;
+                    }
+                    case ACTION_STOP_FOCUS: {
+                        Set<String> lockedByFocus = focusProfile.markStopped();
+                        Log.d(TAG, "Received STOP_FOCUS, unlocking " + lockedByFocus.size() + " apps");
+                        for (String packageName : lockedByFocus) {
+                            if (lockTable.removeManual(packageName) != null) {
+                                lockLedger.record(HistoryLog.KIND_UNLOCKED, packageName, 0);
+                            }
+                        }
+                        focusSurfaces.refresh();
+                        hideOverlayIfUnlocked();
+                        if (!hasWork()) {
+                            stopMonitoring();
+                        }
+                        break;
+                    }
+                    case "LOCK_CATEGORY":
+                        String categoryToLock = intent.getStringExtra("category");
+                        long categoryDuration = intent.getLongExtra("duration", -1);
+                        int lockBit = AppCategoryIndex.bitOf(categoryToLock);
+                        Log.d(TAG, "Received LOCK_CATEGORY for: " + categoryToLock + " with duration: " + categoryDuration);
+                        if (lockBit != 0) {
+                            lockTable.putCategoryManual(Integer.numberOfTrailingZeros(lockBit), categoryDuration > 0
+                                ? System.currentTimeMillis() + categoryDuration * 60 * 1000
+                                : LockTable.INDEFINITE);
+                        }
+                        if (!isRunning) {
+                            startMonitoring();
+                        }
+                        break;
+                    case "UNLOCK_CATEGORY":
+                        String categoryToUnlock = intent.getStringExtra("category");
+                        int unlockBit = AppCategoryIndex.bitOf(categoryToUnlock);
+                        Log.d(TAG, "Received UNLOCK_CATEGORY for: " + categoryToUnlock);
+                        if (unlockBit != 0) {
+                            lockTable.removeCategoryManual(Integer.numberOfTrailingZeros(unlockBit));
+                        }
+                        hideOverlayIfUnlocked();
+                        if (!hasWork()) {
+                            stopMonitoring();
+                        }
+                        break;
+                    case "SET_CATEGORY_OVERRIDE":
+                        String overridePackage = intent.getStringExtra("packageName");
+                        int overrideMask = intent.getIntExtra("categoryMask", -1);
+                        Log.d(TAG, "Received SET_CATEGORY_OVERRIDE for: " + overridePackage + " -> " + overrideMask);
+                        if (overridePackage != null) {
+                            categoryIndex.setOverride(overridePackage, overrideMask);
+                            sendCategoryMask(overridePackage);
+                            hideOverlayIfUnlocked();
+                        }
+                        break;
+                    case "SET_QUOTA":
+                        String quotaPackage = intent.getStringExtra("packageName");
+                        Log.d(TAG, "Received SET_QUOTA for: " + quotaPackage);
+                        if (quotaPackage != null) {
+                            quotaTracker.setRule(quotaPackage, new QuotaTracker.Rule(
+                                intent.getLongExtra("dailyLimitMs", 0),
+                                intent.getIntExtra("resetMinute", 0),
+                                intent.getLongExtra("bucketCapacityMs", 0),
+                                intent.getLongExtra("bucketWindowMs", 0)));
+                            onQuotaChanged(quotaPackage);
+                        }
+                        if (!isRunning) {
+                            startMonitoring();
+                        }
+                        break;
+                    case "REMOVE_QUOTA":
+                        String unquotaPackage = intent.getStringExtra("packageName");
+                        Log.d(TAG, "Received REMOVE_QUOTA for: " + unquotaPackage);
+                        if (unquotaPackage != null) {
+                            quotaTracker.removeRule(unquotaPackage);
+                            onQuotaChanged(unquotaPackage);
+                        }
+                        if (isRunning && !hasWork()) {
+                            stopMonitoring();
+                        }
+                        break;
+                    case "REPLACE_SCHEDULES": {
+                        ArrayList<ScheduleSpec> specs = intent.getParcelableArrayListExtra("schedules");
+                        if (specs != null) {
+                            Log.d(TAG, "Received REPLACE_SCHEDULES with " + specs.size() + " schedules");
+                            scheduleStore.replaceAll(specs,
+                                intent.getStringExtra(EXTRA_SYNC_EPOCH), intent.getLongExtra(EXTRA_SYNC_REVISION, -1));
+                            loadSchedules();
+                            hideOverlayIfUnlocked();
+                        }
+                        if (!scheduledLocks.isEmpty() && !isRunning) {
+                            startMonitoring();
+                        }
+                        break;
+                    }
+                    case "UPSERT_SCHEDULE":
+                        ScheduleSpec spec = intent.getParcelableExtra("schedule");
+                        if (spec != null) {
+                            Log.d(TAG, "Received UPSERT_SCHEDULE for: " + spec.id);
+                            scheduleStore.put(spec);
+                            applyScheduleChange(spec.id, spec);
+                        }
+                        checkScheduleSequence(intent);
                         // Ensure monitoring is active if we just set a schedule
                         if (!isRunning) {
                             startMonitoring();
                         }
                         break;
+                    case "DELETE_SCHEDULE":
+                        String scheduleToDelete = intent.getStringExtra("scheduleId");
+                        Log.d(TAG, "Received DELETE_SCHEDULE for: " + scheduleToDelete);
+                        if (scheduleToDelete != null) {
+                            scheduleStore.remove(scheduleToDelete);
+                            applyScheduleChange(scheduleToDelete, null);
+                        }
+                        checkScheduleSequence(intent);
+                        break;
+                    case "ENABLE_SCHEDULE":
+                        String scheduleToToggle = intent.getStringExtra("scheduleId");
+                        boolean enabled = intent.getBooleanExtra("isEnabled", true);
+                        Log.d(TAG, "Received ENABLE_SCHEDULE for: " + scheduleToToggle + " -> " + enabled);
+                        ScheduleSpec existing = scheduleToToggle != null ? scheduleSpecs.get(scheduleToToggle) : null;
+                        if (existing == null) {
+                            Log.w(TAG, "ENABLE_SCHEDULE for unknown schedule " + scheduleToToggle);
+                        } else if (existing.isEnabled != enabled) {
+                            ScheduleSpec toggled = existing.withEnabled(enabled);
+                            scheduleStore.put(toggled);
+                            applyScheduleChange(toggled.id, toggled);
+                        }
+                        checkScheduleSequence(intent);
+                        if (enabled && !isRunning) {
+                            startMonitoring();
+                        }
+                        break;
                     default:
                         Log.w(TAG, "Received unknown action: " + action);
                         if (!isRunning) {
@@ -181,10 +429,30 @@ public class AppMonitoringService extends Service {
     public void onDestroy() {
         Log.d(TAG, "Service onDestroy");
         super.onDestroy();
+        if (!enforcementReady) {
+            if (unlockReceiver != null) {
+                unregisterReceiver(unlockReceiver);
+                unlockReceiver = null;
+            }
+            return;
+        }
         stopMonitoring();
+        if (timeChangeReceiver != null) {
+            unregisterReceiver(timeChangeReceiver);
+            timeChangeReceiver = null;
+        }
+        if (packageChangeReceiver != null) {
+            unregisterReceiver(packageChangeReceiver);
+            packageChangeReceiver = null;
+        }
+        lockTable.removeDiffListener(labelPrefetcher);
+        lockTable.removeDiffListener(expiryScheduler);
+        expiryHandler.removeCallbacks(expiryCheck);
+        capabilities.removeListener(capabilityListener);
+        lockLedger.flush();
         
-        // If we still have locked apps or schedules, schedule a restart
-        if (!lockedApps.isEmpty() || !scheduledLocks.isEmpty()) {
+        // If we still have locks, schedules or quotas, schedule a restart
+        if (hasWork()) {
             Log.d(TAG, "Service destroyed but we still have work to do. Setting up restart...");
             scheduleServiceRestart();
         }
@@ -195,19 +463,28 @@ public class AppMonitoringService extends Service {
         Log.d(TAG, "onTaskRemoved called. App was swiped away.");
         super.onTaskRemoved(rootIntent);
         
-        // If we still have locked apps or schedules, schedule a restart
-        if (!lockedApps.isEmpty() || !scheduledLocks.isEmpty()) {
+        // If we still have locks, schedules or quotas, schedule a restart
+        if (enforcementReady && hasWork()) {
             Log.d(TAG, "Task removed but we still have work to do. Setting up restart...");
             scheduleServiceRestart();
         }
     }
     
+    /** Locks, schedules or quotas left to enforce; with none of them the service can stop. */
+    private boolean hasWork() {
+        return !lockTable.snapshot().isEmpty() || !scheduledLocks.isEmpty() || quotaTracker.hasAnyRule();
+    }
+
     public void stopMonitoring() {
         Log.d(TAG, "Stopping monitoring service (and foreground state)");
         isRunning = false;
         if (handler != null) {
             handler.removeCallbacksAndMessages(null);
         }
+        // A boot restores enforcement before unlock only if it was still needed
+        supervisor.setEnforcementExpected(hasWork());
+        // Charge the running session to its quota before we stop watching
+        quotaTracker.onForegroundChanged(PackageInterner.NO_ID, System.currentTimeMillis());
         // When stopping, record the final app usage
         if (!lastForegroundApp.isEmpty() && lastAppChangeTime > 0) {
             long duration = System.currentTimeMillis() - lastAppChangeTime;
@@ -216,6 +493,7 @@ public class AppMonitoringService extends Service {
             }
         }
         hideNativeOverlay();
+        HeadlessDispatcher.getInstance(this).setForeground(false);
         stopForeground(true);
         Log.d(TAG, "stopForeground(true) called.");
     }
@@ -223,28 +501,40 @@ public class AppMonitoringService extends Service {
     private void scheduleServiceRestart() {
         Log.d(TAG, "Scheduling service restart...");
         
+        // Backs off on repeated restarts, see EnforcementSupervisor
+        long delay = supervisor.nextRestartDelayMs();
+        long triggerAt = SystemClock.elapsedRealtime() + delay;
+
         // Create an intent that will be fired when the alarm goes off
-        Intent restartIntent = new Intent(getApplicationContext(), AppMonitoringService.class);
-        restartIntent.setAction("START_SERVICE");
+        Intent restartIntent = EnforcementSupervisor.restoreIntent(
+            getApplicationContext(), EnforcementSupervisor.REASON_RESTART, triggerAt);
         restartIntent.setPackage(getPackageName());
         
-        // Create a pending intent that will be triggered when the alarm goes off
-        PendingIntent pendingIntent = PendingIntent.getService(
-            getApplicationContext(), 
-            1, 
-            restartIntent, 
-            PendingIntent.FLAG_ONE_SHOT | PendingIntent.FLAG_IMMUTABLE
-        );
+        // Create a pending intent that will be triggered when the alarm goes off.
+        // From the background only a foreground service start is allowed on O+.
+        PendingIntent pendingIntent = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O
+            ? PendingIntent.getForegroundService(getApplicationContext(), 1, restartIntent,
+                PendingIntent.FLAG_ONE_SHOT | PendingIntent.FLAG_IMMUTABLE)
+            : PendingIntent.getService(getApplicationContext(), 1, restartIntent,
+                PendingIntent.FLAG_ONE_SHOT | PendingIntent.FLAG_IMMUTABLE);
         
-        // Schedule the alarm to go off in 1 second
         android.app.AlarmManager alarmManager = (android.app.AlarmManager) getSystemService(Context.ALARM_SERVICE);
         if (alarmManager != null) {
-            alarmManager.set(
-                android.app.AlarmManager.RTC_WAKEUP,
-                System.currentTimeMillis() + 1000,
-                pendingIntent
-            );
-            Log.d(TAG, "Service restart scheduled in 1 second");
+            if (capabilities.has(CapabilityMonitor.EXACT_ALARMS) && Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                alarmManager.setExactAndAllowWhileIdle(
+                    android.app.AlarmManager.ELAPSED_REALTIME_WAKEUP,
+                    triggerAt,
+                    pendingIntent
+                );
+            } else {
+                // Without exact alarms the restart may be deferred, but it still happens
+                alarmManager.set(
+                    android.app.AlarmManager.ELAPSED_REALTIME_WAKEUP,
+                    triggerAt,
+                    pendingIntent
+                );
+            }
+            Log.d(TAG, "Service restart scheduled in " + delay + "ms");
         } else {
             Log.e(TAG, "Failed to get AlarmManager for service restart");
         }
@@ -266,17 +556,22 @@ public class AppMonitoringService extends Service {
             startForeground(NOTIFICATION_ID, notification);
             Log.d(TAG, "startForeground called successfully.");
             isRunning = true;
+            // Headless batches may start from here on, including ones that waited for it
+            HeadlessDispatcher.getInstance(this).setForeground(true);
         } catch (Exception e) {
             Log.e(TAG, "Error starting foreground service", e);
             return;
         }
+        supervisor.setEnforcementExpected(true);
+        handler.postDelayed(stableRunCheck, EnforcementSupervisor.STABLE_RUN_MS);
 
         handler.post(new Runnable() {
             @Override
             public void run() {
                 if (!isRunning) return;
 
-                String foregroundApp = getCurrentForegroundApp();
+                // Without usage access every query comes back empty, don't pretend to detect anything
+                String foregroundApp = capabilities.has(CapabilityMonitor.USAGE_STATS) ? getCurrentForegroundApp() : null;
                 
                 if (foregroundApp != null && !foregroundApp.equals(lastForegroundApp)) {
                     Log.d(TAG, "App changed from " + lastForegroundApp + " to " + foregroundApp);
@@ -294,16 +589,20 @@ public class AppMonitoringService extends Service {
                     }
                     
                     lastForegroundApp = foregroundApp;
+                    // Intern once per app change, every later check in this session is by ID
+                    lastForegroundAppId = PackageInterner.getInstance().intern(foregroundApp);
                     lastAppChangeTime = System.currentTimeMillis();
+                    quotaTracker.onForegroundChanged(lastForegroundAppId, lastAppChangeTime);
+                    armQuotaTimer();
                     
                     // Check if the new foreground app is locked
-                    if (isAppLocked(foregroundApp)) {
+                    if (isAppLocked(lastForegroundAppId)) {
                         Log.d(TAG, "Showing overlay for locked app: " + foregroundApp);
                         showNativeOverlay(foregroundApp);
                         currentlyOverlayingPackage = foregroundApp;
                         sendAppBlockedEvent(foregroundApp);
                     }
-                } else if (foregroundApp != null && currentlyOverlayingPackage == null && isAppLocked(foregroundApp)) {
+                } else if (foregroundApp != null && currentlyOverlayingPackage == null && isAppLocked(lastForegroundAppId)) {
                     // This handles the case where the app was already in foreground when it got locked
                     Log.d(TAG, "Showing overlay for already-foreground locked app: " + foregroundApp);
                     showNativeOverlay(foregroundApp);
@@ -313,6 +612,7 @@ public class AppMonitoringService extends Service {
 
                 checkExpiredLocks();
                 checkScheduledLocks();
+                reportRestore();
 
                 if (isRunning && handler != null) {
                     handler.postDelayed(this, CHECK_INTERVAL_MS);
@@ -321,43 +621,60 @@ public class AppMonitoringService extends Service {
         });
     }
 
-    private void saveLockedApps() {
-        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = prefs.edit();
-        JSONObject json = new JSONObject(lockedApps);
-        String jsonString = json.toString();
-        editor.putString(PREFS_KEY, jsonString);
-        editor.apply();
-        Log.d(TAG, "Saved locked apps to SharedPreferences: " + jsonString);
+    /** Time-to-enforcement of a restore: its first foreground check has just run. */
+    private void reportRestore() {
+        if (restoreReason != null) {
+            supervisor.recordRestore(restoreReason, SystemClock.elapsedRealtime() - restoreTriggeredAt);
+            restoreReason = null;
+        }
     }
 
-    private void loadLockedApps() {
-        lockedApps.clear();
-        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        String jsonString = prefs.getString(PREFS_KEY, null);
-        if (jsonString != null) {
-            try {
-                JSONObject json = new JSONObject(jsonString);
-                Iterator<String> keys = json.keys();
-                while(keys.hasNext()) {
-                    String key = keys.next();
-                    lockedApps.put(key, json.getLong(key));
-                }
-                Log.d(TAG, "Loaded " + lockedApps.size() + " locked apps from SharedPreferences.");
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to load locked apps from SharedPreferences", e);
+    private boolean isAppLocked(int packageId) {
+        long now = System.currentTimeMillis();
+        Long exemptUntil = emergencyExemptions.get(packageId);
+        if (exemptUntil != null) {
+            if (now < exemptUntil) {
+                return false;
             }
-        } else {
-            Log.d(TAG, "No locked apps found in SharedPreferences.");
+            emergencyExemptions.remove(packageId);
+        }
+        return lockTable.snapshot().isLocked(packageId, now) || quotaTracker.isExhausted(packageId, now);
+    }
+
+    /** Arms the quota timer for the foreground app to fire exactly when its allowance runs out. */
+    private void armQuotaTimer() {
+        handler.removeCallbacks(quotaExhaustedCheck);
+        long until = quotaTracker.msUntilExhausted(lastForegroundAppId, System.currentTimeMillis());
+        if (until == QuotaTracker.NO_QUOTA || until <= 0) {
+            return; // no quota, or already exhausted and blocked by the foreground check
+        }
+        handler.postDelayed(quotaExhaustedCheck, until);
+        Log.d(TAG, "Quota timer armed for " + lastForegroundApp + " in " + until + "ms");
+    }
+
+    private void onQuotaTimer() {
+        if (!isRunning) return;
+        long now = System.currentTimeMillis();
+        if (!quotaTracker.isExhausted(lastForegroundAppId, now)) {
+            // The daily period rolled over or the rule changed while the app was open
+            armQuotaTimer();
+            return;
+        }
+        Log.d(TAG, "Quota exhausted for " + lastForegroundApp);
+        lockLedger.record(HistoryLog.KIND_QUOTA_EXHAUSTED, lastForegroundApp,
+            quotaTracker.usedTodayMs(lastForegroundAppId, now));
+        if (currentlyOverlayingPackage == null && isAppLocked(lastForegroundAppId)) {
+            showNativeOverlay(lastForegroundApp);
+            currentlyOverlayingPackage = lastForegroundApp;
+            sendAppBlockedEvent(lastForegroundApp);
         }
     }
 
-    private boolean isAppLocked(String packageName) {
-        if (packageName == null) return false;
-        Long unlockTime = lockedApps.get(packageName);
-        if (unlockTime == null) return false;
-        if (unlockTime == -1L) return true;
-        return System.currentTimeMillis() < unlockTime;
+    private void onQuotaChanged(String packageName) {
+        if (packageName.equals(lastForegroundApp) && isRunning) {
+            armQuotaTimer();
+        }
+        hideOverlayIfUnlocked();
     }
 
     private String getCurrentForegroundApp() {
@@ -376,33 +693,29 @@ public class AppMonitoringService extends Service {
     }
 
     private void sendAppChangeEvent(String packageName, long durationMs) {
-        WritableMap params = Arguments.createMap();
+        historyLog.append(System.currentTimeMillis() - durationMs, HistoryLog.KIND_SESSION, packageName, durationMs);
+        Bundle params = new Bundle();
         params.putString("packageName", packageName);
         params.putDouble("durationMs", durationMs);
         sendEvent("onAppChange", params);
     }
 
     private void sendAppBlockedEvent(String packageName) {
+        lockLedger.record(HistoryLog.KIND_BLOCKED, packageName, 0);
+        focusSurfaces.refresh(); // today's block count
         sendEvent("onAppBlocked", packageName);
     }
 
     private void sendEvent(String eventName, String packageName) {
-        WritableMap params = Arguments.createMap();
+        Bundle params = new Bundle();
         params.putString("packageName", packageName);
         sendEvent(eventName, params);
     }
 
-    private void sendEvent(String eventName, WritableMap params) {
+    /** This process has no React runtime, events reach JS through the UI process. */
+    private void sendEvent(String eventName, Bundle params) {
         try {
-            ReactNativeHost reactNativeHost = ((ReactApplication) getApplication()).getReactNativeHost();
-            if (reactNativeHost.hasInstance()) {
-                reactNativeHost.getReactInstanceManager().getCurrentReactContext()
-                    .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
-                    .emit(eventName, params);
-                Log.d(TAG, "Sent event " + eventName + " with params: " + params.toString());
-            } else {
-                Log.w(TAG, "Cannot send event, no React instance running.");
-            }
+            bridge.sendEvent(eventName, params);
         } catch (Exception e) {
             Log.e(TAG, "Exception while sending event " + eventName, e);
         }
@@ -412,6 +725,17 @@ public class AppMonitoringService extends Service {
         if (overlayView != null) {
             return;
         }
+        // Time spent looking at the overlay is not time in the app
+        quotaTracker.onForegroundBlocked(true, System.currentTimeMillis());
+        if (!capabilities.has(CapabilityMonitor.OVERLAY)) {
+            // addView would throw every time, send the user home instead
+            Log.w(TAG, "No overlay permission, sending " + packageName + " to the background");
+            Intent home = new Intent(Intent.ACTION_MAIN);
+            home.addCategory(Intent.CATEGORY_HOME);
+            home.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+            startActivity(home);
+            return;
+        }
 
         try {
             // Create a layout for our overlay
@@ -462,9 +786,20 @@ public class AppMonitoringService extends Service {
             ));
             contentLayout.addView(space1);
             
+            // Everything shown below comes from memory, the JS runtime is not involved
+            long now = System.currentTimeMillis();
+            final int unlocksRemaining = overlayContent.emergencyUnlocksRemaining(now);
+
             // Create the app name text
-            TextView appNameText = new TextView(this);
-            appNameText.setText(packageName + " is locked");
+            final TextView appNameText = new TextView(this);
+            final View shownOverlay = overlayLayout;
+            // On a miss the package name stands in until the label thread resolves it
+            String label = overlayContent.labelOf(packageName, (resolvedPackage, resolved) -> handler.post(() -> {
+                if (overlayView == shownOverlay) {
+                    appNameText.setText(resolved + " is locked");
+                }
+            }));
+            appNameText.setText((label != null ? label : packageName) + " is locked");
             appNameText.setTextColor(Color.WHITE);
             appNameText.setTextSize(24);
             appNameText.setGravity(Gravity.CENTER);
@@ -485,7 +820,7 @@ public class AppMonitoringService extends Service {
             
             // Create the quote text
             TextView quoteText = new TextView(this);
-            quoteText.setText("\"Focus on what matters most today.\"");
+            quoteText.setText("\"" + overlayContent.nextQuote() + "\"");
             quoteText.setTextColor(Color.WHITE);
             quoteText.setTextSize(18);
             quoteText.setGravity(Gravity.CENTER);
@@ -509,7 +844,9 @@ public class AppMonitoringService extends Service {
             
             // Create the emergency unlock chances text
             TextView chancesText = new TextView(this);
-            chancesText.setText("Emergency unlock chances remaining this week: 3");
+            chancesText.setText(unlocksRemaining > 0
+                ? "Emergency unlock chances remaining this week: " + unlocksRemaining
+                : "No emergency unlocks left this week");
             chancesText.setTextColor(Color.WHITE);
             chancesText.setTextSize(16);
             chancesText.setGravity(Gravity.CENTER);
@@ -539,6 +876,10 @@ public class AppMonitoringService extends Service {
             if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
                 emergencyButton.setBackground(getDrawable(R.drawable.rounded_button));
             }
+            if (unlocksRemaining == 0) {
+                emergencyButton.setEnabled(false);
+                emergencyButton.setAlpha(0.5f);
+            }
             
             // Add onClick listener to the button
             emergencyButton.setOnClickListener(new View.OnClickListener() {
@@ -546,12 +887,28 @@ public class AppMonitoringService extends Service {
                 public void onClick(View v) {
                     // Remove the app from locked apps
                     if (currentlyOverlayingPackage != null) {
-                        lockedApps.remove(currentlyOverlayingPackage);
-                        saveLockedApps();
+                        if (!overlayContent.tryConsumeEmergencyUnlock(System.currentTimeMillis())) {
+                            Log.d(TAG, "Emergency unlock refused, weekly budget used up");
+                            return;
+                        }
+                        // hideNativeOverlay() clears currentlyOverlayingPackage, keep our own copy
+                        String unlockedPackage = currentlyOverlayingPackage;
+                        // Only the manual source is dropped, an active schedule keeps its own reference
+                        lockTable.removeManual(unlockedPackage);
+                        int unlockedId = PackageInterner.getInstance().lookup(unlockedPackage);
+                        if (isAppLocked(unlockedId)) {
+                            // Still held by a category, rule, schedule or quota; without this the
+                            // next check would cover it again and the unlock would be wasted
+                            emergencyExemptions.put(unlockedId, System.currentTimeMillis() + EMERGENCY_EXEMPTION_MS);
+                            Log.d(TAG, unlockedPackage + " exempt from its other locks for "
+                                + EMERGENCY_EXEMPTION_MS / 60000 + " minutes");
+                        }
                         hideNativeOverlay();
+                        armQuotaTimer();
+                        lockLedger.record(HistoryLog.KIND_EMERGENCY_UNLOCK, unlockedPackage, 0);
                         
                         // Send event to React Native
-                        sendEvent("onEmergencyUnlock", currentlyOverlayingPackage);
+                        sendEvent("onEmergencyUnlock", unlockedPackage);
                     }
                 }
             });
@@ -578,7 +935,9 @@ public class AppMonitoringService extends Service {
     }
 
     private void hideNativeOverlay() {
+        quotaTracker.onForegroundBlocked(false, System.currentTimeMillis());
         if (overlayView == null) {
+            currentlyOverlayingPackage = null; // blocked without an overlay, nothing to remove
             return;
         }
         try {
@@ -592,6 +951,16 @@ public class AppMonitoringService extends Service {
         }
     }
 
+    /** Hides the overlay if the app it covers is no longer locked by any source or quota. */
+    private void hideOverlayIfUnlocked() {
+        if (currentlyOverlayingPackage != null && !isAppLocked(PackageInterner.getInstance().lookup(currentlyOverlayingPackage))) {
+            Log.d(TAG, "Hiding overlay for unlocked app: " + currentlyOverlayingPackage);
+            hideNativeOverlay();
+            // The quota paused while blocked, its timer is counting from the wrong point
+            armQuotaTimer();
+        }
+    }
+
     private void createNotificationChannel() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             CharSequence name = "FocusGuard Background Service";
@@ -606,13 +975,51 @@ public class AppMonitoringService extends Service {
         }
     }
     
+    /** Switches detection and blocking to whatever the current permissions still allow. */
+    private void onCapabilitiesChanged(int previous, int current) {
+        int lost = previous & ~current;
+        int gained = current & ~previous;
+        Log.i(TAG, "Capabilities now " + CapabilityMonitor.describe(current));
+        if ((lost & CapabilityMonitor.USAGE_STATS) != 0) {
+            // The foreground app can no longer be known, end its session instead of charging it forever
+            quotaTracker.onForegroundChanged(PackageInterner.NO_ID, System.currentTimeMillis());
+            handler.removeCallbacks(quotaExhaustedCheck);
+            hideNativeOverlay();
+            lastForegroundApp = "";
+            lastForegroundAppId = PackageInterner.NO_ID;
+        }
+        if ((lost & CapabilityMonitor.OVERLAY) != 0) {
+            hideNativeOverlay();
+        }
+        if ((gained & CapabilityMonitor.OVERLAY) != 0 && currentlyOverlayingPackage == null) {
+            lastForegroundApp = ""; // re-check the foreground app on the next tick
+        }
+        if (isRunning) {
+            NotificationManager notificationManager = getSystemService(NotificationManager.class);
+            if (notificationManager != null) {
+                notificationManager.notify(NOTIFICATION_ID, createForegroundNotification());
+            }
+        }
+    }
+
+    private Notification createWaitingNotification() {
+        return new NotificationCompat.Builder(this, NOTIFICATION_CHANNEL_ID)
+            .setContentTitle("FocusGuard Active")
+            .setContentText("Blocking resumes when the device is unlocked")
+            .setSmallIcon(R.drawable.ic_launcher_background)
+            .setPriority(NotificationCompat.PRIORITY_LOW)
+            .build();
+    }
+
     private Notification createForegroundNotification() {
         Intent notificationIntent = new Intent(this, MainActivity.class);
         PendingIntent pendingIntent = PendingIntent.getActivity(this, 0, notificationIntent, PendingIntent.FLAG_IMMUTABLE);
         
         NotificationCompat.Builder builder = new NotificationCompat.Builder(this, NOTIFICATION_CHANNEL_ID)
             .setContentTitle("FocusGuard Active")
-            .setContentText("Monitoring app usage")
+            .setContentText(capabilities.has(CapabilityMonitor.USAGE_STATS)
+                ? "Monitoring app usage"
+                : "Usage access was turned off, tap to restore blocking")
             .setSmallIcon(R.drawable.ic_launcher_background)
             .setContentIntent(pendingIntent)
             .setPriority(NotificationCompat.PRIORITY_LOW);
@@ -620,139 +1027,314 @@ public class AppMonitoringService extends Service {
         return builder.build();
     }
 
-    private void updateSchedules(String jsonString) {
-        if (jsonString == null) {
-            Log.w(TAG, "Received null JSON string for schedules.");
-            return;
+    /**
+     * Applies one schedule change: only the changed schedule is compiled, and its old and new
+     * package references are swapped in the lock table as a single diff. {@code spec} is null
+     * for a deleted schedule.
+     */
+    private void applyScheduleChange(String scheduleId, ScheduleSpec spec) {
+        long now = System.currentTimeMillis();
+        ScheduledLock previous = scheduledLocks.remove(scheduleId);
+        ScheduledLock compiled = null;
+        if (spec != null) {
+            scheduleSpecs.put(scheduleId, spec);
+            if (spec.isEnabled) {
+                compiled = new ScheduledLock(spec);
+                compiled.isActive = compiled.isActiveAt(now);
+                scheduledLocks.put(scheduleId, compiled);
+                nextScheduleBoundary = Math.min(nextScheduleBoundary, compiled.nextTransitionAfter(now));
+            }
+        } else {
+            scheduleSpecs.remove(scheduleId);
         }
-        try {
-            JSONArray jsonArray = new JSONArray(jsonString);
-            scheduledLocks.clear();
-            for (int i = 0; i < jsonArray.length(); i++) {
-                JSONObject jsonObject = jsonArray.getJSONObject(i);
-                // Simple parsing, assuming structure from JS. Robust parsing would be needed for production.
-                ScheduledLock lock = new ScheduledLock(jsonObject);
-                if (lock.isEnabled) {
-                    scheduledLocks.add(lock);
-                }
+
+        boolean wasActive = previous != null && previous.isActive;
+        boolean isActive = compiled != null && compiled.isActive;
+        int[] categoryDeltas = new int[AppCategoryIndex.CATEGORY_COUNT];
+        if (isActive) addCategoryDeltas(categoryDeltas, compiled.categoryMask, 1);
+        if (wasActive) addCategoryDeltas(categoryDeltas, previous.categoryMask, -1);
+        lockTable.applyScheduleTransition(
+            isActive ? compiled.packageIds : new int[0],
+            wasActive ? previous.packageIds : new int[0],
+            categoryDeltas,
+            isActive && compiled.pattern != null ? Collections.singletonList(compiled.pattern) : null,
+            wasActive && previous.pattern != null ? Collections.singletonList(previous.pattern) : null);
+        if (wasActive && !isActive && lockLedger.scheduleEnded(scheduleId)) {
+            for (String packageName : previous.appPackageNames) {
+                lockLedger.record(HistoryLog.KIND_SCHEDULE_END, packageName, 0);
+            }
+        } else if (isActive && lockLedger.scheduleStarted(scheduleId)) {
+            for (String packageName : compiled.appPackageNames) {
+                lockLedger.record(HistoryLog.KIND_SCHEDULE_START, packageName, 0);
             }
-            Log.d(TAG, "Successfully parsed and updated " + scheduledLocks.size() + " schedules.");
-        } catch (JSONException e) {
-            Log.e(TAG, "Failed to parse schedules JSON.", e);
         }
+        hideOverlayIfUnlocked();
+        Log.d(TAG, "Schedule " + scheduleId + (spec == null ? " deleted" : " updated")
+            + ", " + scheduledLocks.size() + " schedules enabled");
     }
-    
+
+    /** Asks JS for the full schedule list when an operation did not follow the last one applied. */
+    private void checkScheduleSequence(Intent intent) {
+        String epoch = intent.getStringExtra(EXTRA_SYNC_EPOCH);
+        long revision = intent.getLongExtra(EXTRA_SYNC_REVISION, -1);
+        if (!scheduleStore.advance(epoch, revision)) {
+            Log.w(TAG, "Schedule operation " + epoch + "/" + revision + " does not follow "
+                + scheduleStore.syncEpoch() + "/" + scheduleStore.syncRevision() + ", asking for a resync");
+            sendEvent("onSchedulesOutOfSync", new Bundle());
+        }
+    }
+
     private void checkScheduledLocks() {
         if (scheduledLocks.isEmpty()) {
-            Log.d(TAG, "No schedules to check");
             return;
         }
+        long now = System.currentTimeMillis();
+        // Nothing can change before the next boundary, unless the clock was moved back
+        if (now < nextScheduleBoundary && now >= lastScheduleEvaluation) {
+            return;
+        }
+        evaluateSchedules(now, false);
+    }
 
-        Calendar now = Calendar.getInstance(TimeZone.getDefault());
-        int dayOfWeek = now.get(Calendar.DAY_OF_WEEK); // Sunday = 1, Saturday = 7
-        int currentHour = now.get(Calendar.HOUR_OF_DAY);
-        int currentMinute = now.get(Calendar.MINUTE);
-
-        Log.d(TAG, String.format("Checking schedules at day %d, time %02d:%02d", dayOfWeek, currentHour, currentMinute));
+    /**
+     * Re-evaluates every schedule at {@code now} and applies the ones that started or ended as a
+     * single diff to the lock table, then computes the next boundary. Runs on a boundary, not every tick.
+     * With {@code rebuild} the schedule references left by a previous service instance are
+     * replaced by the active schedules' in the same snapshot.
+     */
+    private void evaluateSchedules(long now, boolean rebuild) {
+        List<int[]> acquired = new ArrayList<>();
+        List<int[]> released = new ArrayList<>();
+        int[] categoryDeltas = new int[AppCategoryIndex.CATEGORY_COUNT];
+        List<String> acquiredPatterns = new ArrayList<>();
+        List<String> releasedPatterns = new ArrayList<>();
+        long nextBoundary = Long.MAX_VALUE;
 
-        for (ScheduledLock schedule : scheduledLocks) {
-            Log.d(TAG, "Checking schedule: " + schedule.id);
-            Log.d(TAG, String.format("Schedule times: %02d:%02d - %02d:%02d", 
-                schedule.startHour, schedule.startMinute, schedule.endHour, schedule.endMinute));
-            Log.d(TAG, "Selected days: " + Arrays.toString(schedule.selectedDays));
-            
-            if (schedule.isTimeWithinSchedule(now, dayOfWeek, currentHour, currentMinute)) {
-                Log.d(TAG, "Schedule is active now");
-                for (String packageName : schedule.appPackageNames) {
-                    // If app is within a schedule, lock it "indefinitely" (-1L)
-                    // The lock will be lifted when it's no longer within the schedule.
-                    if (!isAppLocked(packageName)) {
-                        Log.d(TAG, "Scheduled lock activating for: " + packageName);
-                        lockedApps.put(packageName, -1L);
-                    }
+        for (ScheduledLock schedule : scheduledLocks.values()) {
+            boolean active = schedule.isActiveAt(now);
+            if (active != schedule.isActive) {
+                schedule.isActive = active;
+                Log.d(TAG, "Schedule " + schedule.id + (active ? " started" : " ended")
+                    + ", " + schedule.packageIds.length + " apps affected");
+                addCategoryDeltas(categoryDeltas, schedule.categoryMask, active ? 1 : -1);
+                if (schedule.pattern != null) {
+                    (active ? acquiredPatterns : releasedPatterns).add(schedule.pattern);
                 }
-            } else {
-                Log.d(TAG, "Schedule is not active now");
-                // If the app is NOT within schedule anymore, but was previously locked by a schedule
-                for (String packageName : schedule.appPackageNames) {
-                    if (isAppLocked(packageName) && lockedApps.get(packageName) == -1L) {
-                        Log.d(TAG, "Scheduled lock de-activating for: " + packageName);
-                        lockedApps.remove(packageName);
-                        if (packageName.equals(currentlyOverlayingPackage)) {
-                            hideNativeOverlay();
+                if (active) {
+                    acquired.add(schedule.packageIds);
+                    if (lockLedger.scheduleStarted(schedule.id)) {
+                        for (String packageName : schedule.appPackageNames) {
+                            lockLedger.record(HistoryLog.KIND_SCHEDULE_START, packageName, 0);
+                        }
+                    }
+                } else {
+                    released.add(schedule.packageIds);
+                    if (lockLedger.scheduleEnded(schedule.id)) {
+                        for (String packageName : schedule.appPackageNames) {
+                            lockLedger.record(HistoryLog.KIND_SCHEDULE_END, packageName, 0);
                         }
                     }
                 }
             }
+            nextBoundary = Math.min(nextBoundary, schedule.nextTransitionAfter(now));
         }
+
+        if (rebuild) {
+            lockTable.replaceScheduleReferences(concat(acquired), categoryDeltas, acquiredPatterns);
+            hideOverlayIfUnlocked();
+        } else if (!acquired.isEmpty() || !released.isEmpty()) {
+            lockTable.applyScheduleTransition(concat(acquired), concat(released), categoryDeltas,
+                acquiredPatterns, releasedPatterns);
+            hideOverlayIfUnlocked();
+        }
+        nextScheduleBoundary = nextBoundary;
+        lastScheduleEvaluation = now;
+        Log.d(TAG, "Next schedule boundary at " + (nextBoundary == Long.MAX_VALUE ? "never" : new Date(nextBoundary).toString()));
     }
 
-    private void loadSchedules() {
-        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        String schedulesJson = prefs.getString(PREFS_KEY_SCHEDULES, null);
-        Log.d(TAG, "Loading schedules from SharedPreferences.");
-        updateSchedules(schedulesJson);
+    private void prefetchLabels(LockTable.Diff diff) {
+        final PackageInterner interner = PackageInterner.getInstance();
+        for (int i = 0; i < diff.size(); i++) {
+            if (diff.before[i] == LockTable.NOT_LOCKED && diff.after[i] != LockTable.NOT_LOCKED) {
+                overlayContent.prefetchLabel(interner.nameOf(diff.packageIds[i]));
+            }
+        }
+        if (diff.hasCategoryChanges() || diff.patterns != null) {
+            // Category and rule locks have no per-package entries; find the packages they now
+            // cover on the label thread, the snapshot and the matcher are lock-free to read
+            overlayContent.runOnLabelThread(() -> {
+                LockTable.Snapshot snapshot = lockTable.snapshot();
+                long now = System.currentTimeMillis();
+                int prefetched = 0;
+                for (int id = 0; id < interner.size(); id++) {
+                    String packageName = interner.nameOf(id);
+                    if (!overlayContent.hasLabel(packageName) && snapshot.isLocked(id, now)) {
+                        overlayContent.loadLabel(packageName);
+                        prefetched++;
+                    }
+                }
+                Log.d(TAG, "Prefetched " + prefetched + " labels for category and rule locks");
+            });
+        }
     }
-    
-    private void checkExpiredLocks() {
-        Log.d(TAG, "Checking for expired locks...");
-        long currentTime = System.currentTimeMillis();
-        List<String> expiredApps = new ArrayList<>();
-        
-        // Log all current locks
-        Log.d(TAG, "Current locks (" + lockedApps.size() + "):");
-        for (Map.Entry<String, Long> entry : lockedApps.entrySet()) {
-            String packageName = entry.getKey();
-            Long unlockTime = entry.getValue();
-            if (unlockTime == -1L) {
-                Log.d(TAG, "  - " + packageName + ": indefinite lock");
-            } else {
-                long remainingMs = unlockTime - currentTime;
-                Log.d(TAG, "  - " + packageName + ": unlock in " + (remainingMs / 1000) + " seconds (at " + new Date(unlockTime) + ")");
+
+    private static void addCategoryDeltas(int[] deltas, int categoryMask, int delta) {
+        for (int bits = categoryMask; bits != 0; bits &= bits - 1) {
+            deltas[Integer.numberOfTrailingZeros(bits)] += delta;
+        }
+    }
+
+    private static int[] concat(List<int[]> arrays) {
+        int length = 0;
+        for (int[] array : arrays) {
+            length += array.length;
+        }
+        int[] result = new int[length];
+        int offset = 0;
+        for (int[] array : arrays) {
+            System.arraycopy(array, 0, result, offset, array.length);
+            offset += array.length;
+        }
+        return result;
+    }
+
+    /** Boundaries are wall-clock instants, so a clock or time zone change invalidates them. */
+    private void registerTimeChangeReceiver() {
+        timeChangeReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                Log.d(TAG, "Clock changed (" + intent.getAction() + "), re-evaluating schedules");
+                nextScheduleBoundary = Long.MIN_VALUE;
             }
+        };
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_TIME_CHANGED);
+        filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+        registerReceiver(timeChangeReceiver, filter);
+    }
+
+    /** Keeps the UI process's copy of the category index in step with ours. */
+    private void sendCategoryMask(String packageName) {
+        bridge.sendCategoryMask(packageName, categoryIndex.maskOf(PackageInterner.getInstance().lookup(packageName)));
+    }
+
+    /** Keeps the category index current, so category rules cover apps installed after they were made. */
+    private void registerPackageChangeReceiver() {
+        packageChangeReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                if (intent.getData() == null) {
+                    return;
+                }
+                String packageName = intent.getData().getSchemeSpecificPart();
+                String action = intent.getAction();
+                if (Intent.ACTION_PACKAGE_REMOVED.equals(action)) {
+                    // An update sends REMOVED then ADDED/REPLACED, keep the entry until then
+                    if (!intent.getBooleanExtra(Intent.EXTRA_REPLACING, false)) {
+                        categoryIndex.removePackage(packageName);
+                        forgetUninstalledApp(packageName);
+                    }
+                } else {
+                    categoryIndex.refreshPackage(packageName);
+                }
+                sendCategoryMask(packageName);
+                overlayContent.invalidateLabel(packageName);
+                IconDiskCache.getInstance(context).invalidate(packageName);
+                Log.d(TAG, "Package " + packageName + " changed (" + action + "), categories refreshed");
+                hideOverlayIfUnlocked();
+            }
+        };
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addDataScheme("package");
+        registerReceiver(packageChangeReceiver, filter);
+    }
+
+    /**
+     * Drops an uninstalled app from manual locks, quotas and schedules, so a reinstall starts
+     * clean and schedules stop carrying a dead package. JS is told to update its own copies.
+     */
+    private void forgetUninstalledApp(String packageName) {
+        boolean wasLocked = lockTable.removeManual(packageName) != null;
+        focusProfile.release(packageName);
+        quotaTracker.removeRule(packageName);
+        List<String> touchedSchedules = new ArrayList<>();
+        for (ScheduleSpec spec : new ArrayList<>(scheduleSpecs.values())) {
+            List<String> remaining = new ArrayList<>(Arrays.asList(spec.appPackageNames));
+            if (!remaining.remove(packageName)) {
+                continue;
+            }
+            ScheduleSpec pruned = new ScheduleSpec(spec.id, spec.isEnabled, remaining.toArray(new String[0]),
+                spec.startMinute, spec.endMinute, spec.daysMask, spec.categoryMask);
+            scheduleStore.put(pruned);
+            applyScheduleChange(pruned.id, pruned);
+            touchedSchedules.add(pruned.id);
         }
-        
-        // Find all apps with expired locks
-        for (Map.Entry<String, Long> entry : lockedApps.entrySet()) {
-            String packageName = entry.getKey();
-            Long unlockTime = entry.getValue();
-            
-            // Skip indefinite locks (-1L)
-            if (unlockTime != null && unlockTime != -1L && currentTime >= unlockTime) {
-                Log.d(TAG, "Lock expired for app: " + packageName + " (current time: " + new Date(currentTime) + ", unlock time: " + new Date(unlockTime) + ")");
-                expiredApps.add(packageName);
+        Log.d(TAG, "Forgot uninstalled " + packageName + " (locked=" + wasLocked + ", schedules=" + touchedSchedules + ")");
+        if (wasLocked || !touchedSchedules.isEmpty()) {
+            Bundle params = new Bundle();
+            params.putString("packageName", packageName);
+            params.putStringArray("scheduleIds", touchedSchedules.toArray(new String[0]));
+            sendEvent("onAppUninstalled", params);
+        }
+        if (isRunning && !hasWork()) {
+            stopMonitoring();
+        }
+    }
+
+    private void loadSchedules() {
+        Log.d(TAG, "Loading schedules from the schedule store.");
+        scheduleSpecs = scheduleStore.loadAll();
+        scheduledLocks.clear();
+        for (ScheduleSpec spec : scheduleSpecs.values()) {
+            if (spec.isEnabled) {
+                scheduledLocks.put(spec.id, new ScheduledLock(spec));
             }
         }
-        
-        // Remove expired locks
-        for (String packageName : expiredApps) {
-            Log.d(TAG, "Removing expired lock for: " + packageName);
-            lockedApps.remove(packageName);
-            
-            // Hide overlay if it's currently showing for this app
-            if (packageName.equals(currentlyOverlayingPackage)) {
-                Log.d(TAG, "Hiding overlay for unlocked app: " + packageName);
-                hideNativeOverlay();
+        evaluateSchedules(System.currentTimeMillis(), true);
+        // Schedules that ended, or were disabled, while the service was down
+        for (String scheduleId : lockLedger.activeSchedules()) {
+            ScheduledLock schedule = scheduledLocks.get(scheduleId);
+            if (schedule != null && schedule.isActive) {
+                continue;
             }
-            
-            // Also call the native module's unlockApp method to ensure it's unlocked
-            try {
-                Intent unlockIntent = new Intent(getApplicationContext(), AppMonitoringService.class);
-                unlockIntent.setAction("UNLOCK_APP");
-                unlockIntent.putExtra("packageName", packageName);
-                startService(unlockIntent);
-                Log.d(TAG, "Sent UNLOCK_APP intent for: " + packageName);
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to send unlock intent", e);
+            lockLedger.scheduleEnded(scheduleId);
+            if (schedule != null) {
+                for (String packageName : schedule.appPackageNames) {
+                    lockLedger.record(HistoryLog.KIND_SCHEDULE_END, packageName, 0);
+                }
             }
         }
-        
-        // Save changes if any locks were removed
-        if (!expiredApps.isEmpty()) {
-            Log.d(TAG, "Removed " + expiredApps.size() + " expired locks");
-            saveLockedApps();
-        } else {
-            Log.d(TAG, "No expired locks found");
+    }
+    
+    private void checkExpiredLocks() {
+        long now = System.currentTimeMillis();
+        if (now < lockTable.snapshot().nextExpiry) {
+            return;
+        }
+        // Packages, rules and categories whose time is up leave the table in one version
+        Map<String, Long> expired = lockTable.expireManual(now);
+        for (Map.Entry<String, Long> entry : expired.entrySet()) {
+            Log.d(TAG, "Lock expired for " + entry.getKey() + " (unlock time " + new Date(entry.getValue()) + ")");
+            lockLedger.record(HistoryLog.KIND_LOCK_EXPIRED, entry.getKey(), entry.getValue());
+        }
+        // Hide overlay if it's currently showing for an expired app and no schedule still holds it
+        hideOverlayIfUnlocked();
+        Log.d(TAG, "Removed " + expired.size() + " expired locks");
+        if (isRunning && !hasWork()) {
+            stopMonitoring();
+        }
+    }
+
+    /** Runs the expiry check at the next unlock time, also while the foreground loop is not ticking. */
+    private void armExpiryTimer() {
+        expiryHandler.removeCallbacks(expiryCheck);
+        long next = lockTable.snapshot().nextExpiry;
+        if (next != Long.MAX_VALUE) {
+            expiryHandler.postDelayed(expiryCheck, Math.max(0, next - System.currentTimeMillis()));
         }
     }
 }
@@ -761,73 +1343,41 @@ public class AppMonitoringService extends Service {
 class ScheduledLock {
     private static final String TAG = "ScheduledLock";
     String id;
-    List<String> appPackageNames = new ArrayList<>();
+    List<String> appPackageNames = new ArrayList<>(); // exact package names only
+    int[] packageIds; // appPackageNames interned, used by the per-tick checks
+    String pattern; // wildcard rule formed by the spec's pattern entries, null if none
+    int categoryMask; // AppCategoryIndex bits held while active
     boolean isEnabled;
+    boolean isActive; // whether this schedule currently holds its references in the LockTable
     // We will simplify time storage for native side
     int startHour, startMinute, endHour, endMinute;
     boolean[] selectedDays = new boolean[7]; // Sun, Mon, Tue, Wed, Thu, Fri, Sat
 
-    ScheduledLock(JSONObject jsonObject) throws JSONException {
-        this.id = jsonObject.getString("id");
-        this.isEnabled = jsonObject.getBoolean("isEnabled");
-        
-        JSONArray packages = jsonObject.getJSONArray("appPackageNames");
-        for(int i=0; i<packages.length(); i++) {
-            appPackageNames.add(packages.getString(i));
+    ScheduledLock(ScheduleSpec spec) {
+        this.id = spec.id;
+        this.isEnabled = spec.isEnabled;
+        for (String packageName : spec.appPackageNames) {
+            if (!PackageRuleMatcher.isRule(packageName)) {
+                this.appPackageNames.add(packageName);
+            }
         }
-        
-        JSONObject scheduleConfig = jsonObject.getJSONObject("scheduleConfig");
-        
-        // Dates are parsed as ISO-8601 strings e.g., "2024-06-05T09:00:00.000Z"
-        String startTimeStr = scheduleConfig.getString("startTime");
-        String endTimeStr = scheduleConfig.getString("endTime");
-
-        try {
-            // Dates are parsed as ISO-8601 strings (e.g., "2024-06-05T09:00:00.000Z") from JS, which are in UTC.
-            // We need to convert them to the phone's local timezone for correct time comparison.
-            SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
-            sdf.setTimeZone(TimeZone.getTimeZone("UTC"));
-
-            Date startDate = sdf.parse(startTimeStr);
-            Date endDate = sdf.parse(endTimeStr);
-
-            Calendar cal = Calendar.getInstance(); // Gets calendar in local timezone
+        this.pattern = PackageRuleMatcher.ruleOf(spec.appPackageNames);
+        this.packageIds = PackageInterner.getInstance().internAll(appPackageNames);
+        this.categoryMask = spec.categoryMask;
 
-            cal.setTime(startDate);
-            this.startHour = cal.get(Calendar.HOUR_OF_DAY);
-            this.startMinute = cal.get(Calendar.MINUTE);
+        // Times arrive already converted to local minutes of the day, nothing to parse here
+        this.startHour = spec.startMinute / 60;
+        this.startMinute = spec.startMinute % 60;
+        this.endHour = spec.endMinute / 60;
+        this.endMinute = spec.endMinute % 60;
 
-            cal.setTime(endDate);
-            this.endHour = cal.get(Calendar.HOUR_OF_DAY);
-            this.endMinute = cal.get(Calendar.MINUTE);
-            
-            Log.d(TAG, "Parsed schedule " + this.id + ": Local start " + this.startHour + ":" + this.startMinute + ", end " + this.endHour + ":" + this.endMinute);
-
-        } catch (ParseException e) {
-            Log.e(TAG, "Failed to parse date string for schedule " + this.id, e);
-            // Fallback to incorrect simple parsing to avoid crash, though schedule will be wrong.
-            this.startHour = Integer.parseInt(startTimeStr.substring(11, 13));
-            this.startMinute = Integer.parseInt(startTimeStr.substring(14, 16));
-            this.endHour = Integer.parseInt(endTimeStr.substring(11, 13));
-            this.endMinute = Integer.parseInt(endTimeStr.substring(14, 16));
+        // Align with Calendar: index 1=Sun, 2=Mon, ..., 7=Sat
+        this.selectedDays = new boolean[8]; // Using 1-based indexing for days
+        for (int day = Calendar.SUNDAY; day <= Calendar.SATURDAY; day++) {
+            this.selectedDays[day] = spec.isDaySelected(day);
         }
 
-        JSONArray days = scheduleConfig.getJSONArray("selectedDays");
-        // The JS boolean array is [Mon, Tue, Wed, Thu, Fri, Sat, Sun]
-        // The Java Calendar day of week is [Sun=1, Mon=2, ..., Sat=7]
-        // We will align our array to match Calendar: index 0=Sun, 1=Mon, etc.
-        this.selectedDays = new boolean[8]; // Using 1-based indexing for days
-        this.selectedDays[2] = days.getBoolean(0); // Mon
-        this.selectedDays[3] = days.getBoolean(1); // Tue
-        this.selectedDays[4] = days.getBoolean(2); // Wed
-        this.selectedDays[5] = days.getBoolean(3); // Thu
-        this.selectedDays[6] = days.getBoolean(4); // Fri
-        this.selectedDays[7] = days.getBoolean(5); // Sat
-        this.selectedDays[1] = days.getBoolean(6); // Sun
-    }
-    
-    boolean isTimeWithinSchedule(Calendar now, int dayOfWeek, int currentHour, int currentMinute) {
-        // Check if any days are selected
+        // If no days are selected, treat all days as selected
         boolean anyDaySelected = false;
         for (int i = 1; i < selectedDays.length; i++) {  // Start from 1 since we use 1-based indexing
             if (selectedDays[i]) {
@@ -835,17 +1385,96 @@ class ScheduledLock {
                 break;
             }
         }
-
-        // If no days are selected, treat all days as selected
         if (!anyDaySelected) {
             Log.d(TAG, "No days selected, treating all days as active");
-            // Create array with 8 elements to match 1-based indexing
-            selectedDays = new boolean[8];
             for (int i = 1; i < 8; i++) {  // Fill indices 1-7 with true
                 selectedDays[i] = true;
             }
         }
+    }
+
+    boolean isActiveAt(long timeMs) {
+        Calendar now = Calendar.getInstance(TimeZone.getDefault());
+        now.setTimeInMillis(timeMs);
+        return isTimeWithinSchedule(now, now.get(Calendar.DAY_OF_WEEK), now.get(Calendar.HOUR_OF_DAY), now.get(Calendar.MINUTE));
+    }
+
+    /**
+     * Returns the first start or end instant of this schedule strictly after {@code timeMs},
+     * or Long.MAX_VALUE if it never becomes active. Boundaries are built with a local
+     * Calendar per day, so DST shifts move them the same way they move the wall clock.
+     */
+    long nextTransitionAfter(long timeMs) {
+        int startTimeInMinutes = startHour * 60 + startMinute;
+        int endTimeInMinutes = endHour * 60 + endMinute;
+        if (startTimeInMinutes == endTimeInMinutes) {
+            return Long.MAX_VALUE; // empty window, never active
+        }
+        boolean isOvernight = startTimeInMinutes > endTimeInMinutes;
 
+        Calendar day = Calendar.getInstance(TimeZone.getDefault());
+        day.setTimeInMillis(timeMs);
+        // Start from yesterday so an overnight window that began then still yields its end
+        day.add(Calendar.DAY_OF_MONTH, -1);
+        long next = Long.MAX_VALUE;
+        for (int i = 0; i < 9; i++) {
+            if (selectedDays[day.get(Calendar.DAY_OF_WEEK)]) {
+                long start = at(day, 0, startHour, startMinute);
+                long end = at(day, isOvernight ? 1 : 0, endHour, endMinute);
+                if (start > timeMs) next = Math.min(next, start);
+                if (end > timeMs) next = Math.min(next, end);
+                if (next != Long.MAX_VALUE) {
+                    return next;
+                }
+            }
+            day.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        return next;
+    }
+
+    /**
+     * Adds every window of this schedule that overlaps [fromMs, toMs) to {@code out} as
+     * {start, end} pairs clipped to the range. Windows are built per local day like
+     * {@link #nextTransitionAfter}, so overnight ranges and DST shifts come out right.
+     */
+    void collectWindows(long fromMs, long toMs, List<long[]> out) {
+        int startTimeInMinutes = startHour * 60 + startMinute;
+        int endTimeInMinutes = endHour * 60 + endMinute;
+        if (startTimeInMinutes == endTimeInMinutes) {
+            return; // empty window, never active
+        }
+        boolean isOvernight = startTimeInMinutes > endTimeInMinutes;
+
+        Calendar day = Calendar.getInstance(TimeZone.getDefault());
+        day.setTimeInMillis(fromMs);
+        // Yesterday's overnight window may still be running at fromMs
+        day.add(Calendar.DAY_OF_MONTH, -1);
+        while (true) {
+            long start = at(day, 0, startHour, startMinute);
+            if (start >= toMs) {
+                return;
+            }
+            if (selectedDays[day.get(Calendar.DAY_OF_WEEK)]) {
+                long end = at(day, isOvernight ? 1 : 0, endHour, endMinute);
+                if (end > fromMs && start < end) {
+                    out.add(new long[] { Math.max(start, fromMs), Math.min(end, toMs) });
+                }
+            }
+            day.add(Calendar.DAY_OF_MONTH, 1);
+        }
+    }
+
+    private static long at(Calendar day, int dayOffset, int hour, int minute) {
+        Calendar cal = (Calendar) day.clone();
+        cal.add(Calendar.DAY_OF_MONTH, dayOffset);
+        cal.set(Calendar.HOUR_OF_DAY, hour);
+        cal.set(Calendar.MINUTE, minute);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        return cal.getTimeInMillis();
+    }
+    
+    boolean isTimeWithinSchedule(Calendar now, int dayOfWeek, int currentHour, int currentMinute) {
         // Check if the schedule is active for the current day of the week
         int currentTimeInMinutes = currentHour * 60 + currentMinute;
         int startTimeInMinutes = startHour * 60 + startMinute;
@@ -0,0 +1,292 @@
+package com.newfocusguard;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.text.CollationKey;
+import java.text.Collator;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Ranked search over the labels and package names of {@link InstalledAppIndex}.
+ *
+ * Text is NFD-normalized, stripped of combining marks and lower-cased, so an accented label
+ * matches the query typed without accents. Every label word and package segment goes into one
+ * sorted token table; a prefix query is two binary searches for the token range, which is what
+ * a trie would give at a fraction of the objects. Queries with several words need every word
+ * to match. When prefixes find too little, a bounded edit distance (1 typo from 4 characters,
+ * 2 from 7, swapped letters counting as one) is tried against token prefixes.
+ *
+ * Ranking is match kind first (whole label prefix, label word, package segment, substring,
+ * typo), then the locale's Collator order precomputed at build time. The structure is
+ * immutable and rebuilt from the app index when it changes, so searches need no lock.
+ */
+final class AppSearchIndex {
+    private static final String TAG = "FocusGuardAppSearch";
+
+    private static final int LABEL_PREFIX = 0;
+    private static final int LABEL_WORD = 1;
+    private static final int PACKAGE_SEGMENT = 2;
+    private static final int SUBSTRING = 3;
+    private static final int TYPO = 4;
+    private static final int NO_MATCH = Integer.MAX_VALUE;
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern WORD_BREAK = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern PACKAGE_BREAK = Pattern.compile("[._]");
+
+    private static AppSearchIndex instance;
+
+    private volatile Table table = Table.EMPTY;
+
+    /** One immutable build: apps in collation order, and the sorted token table pointing into them. */
+    private static final class Table {
+        static final Table EMPTY = new Table(new String[0], new String[0], new String[0], new int[0], new int[0]);
+
+        final String[] packages; // collation order, the index of an app is its rank
+        final String[] labels;   // normalized
+        final String[] tokens;   // sorted
+        final int[] tokenApps;   // app of each token
+        final int[] tokenKinds;  // LABEL_WORD or PACKAGE_SEGMENT
+
+        Table(String[] packages, String[] labels, String[] tokens, int[] tokenApps, int[] tokenKinds) {
+            this.packages = packages;
+            this.labels = labels;
+            this.tokens = tokens;
+            this.tokenApps = tokenApps;
+            this.tokenKinds = tokenKinds;
+        }
+    }
+
+    private AppSearchIndex(Context context) {
+        final InstalledAppIndex appIndex = InstalledAppIndex.getInstance(context);
+        appIndex.addListener(generation -> rebuild(appIndex));
+        rebuild(appIndex);
+    }
+
+    /** A fixed index over {@code entries}, without the app index behind it. */
+    AppSearchIndex(List<InstalledAppIndex.Entry> entries) {
+        table = build(entries);
+    }
+
+    static synchronized AppSearchIndex getInstance(Context context) {
+        if (instance == null) {
+            instance = new AppSearchIndex(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private void rebuild(InstalledAppIndex appIndex) {
+        appIndex.readChangesSince(0, 0, changes -> {
+            long started = SystemClock.elapsedRealtime();
+            table = build(changes.changed);
+            Log.d(TAG, "Search index over " + table.packages.length + " apps, " + table.tokens.length
+                + " tokens built in " + (SystemClock.elapsedRealtime() - started) + "ms");
+        });
+    }
+
+    private static Table build(List<InstalledAppIndex.Entry> entries) {
+        final Collator collator = Collator.getInstance();
+        collator.setStrength(Collator.SECONDARY);
+        int count = entries.size();
+        CollationKey[] keys = new CollationKey[count];
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = collator.getCollationKey(entries.get(i).label);
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> keys[a].compareTo(keys[b]));
+
+        String[] packages = new String[count];
+        String[] labels = new String[count];
+        List<Object[]> tokenRows = new ArrayList<>();
+        for (int rank = 0; rank < count; rank++) {
+            InstalledAppIndex.Entry entry = entries.get(order[rank]);
+            packages[rank] = entry.packageName;
+            labels[rank] = normalize(entry.label);
+            for (String word : WORD_BREAK.split(labels[rank])) {
+                if (!word.isEmpty()) {
+                    tokenRows.add(new Object[] {word, rank, LABEL_WORD});
+                }
+            }
+            for (String segment : PACKAGE_BREAK.split(entry.packageName.toLowerCase(Locale.ROOT))) {
+                if (!segment.isEmpty()) {
+                    tokenRows.add(new Object[] {segment, rank, PACKAGE_SEGMENT});
+                }
+            }
+        }
+        Collections.sort(tokenRows, (a, b) -> ((String) a[0]).compareTo((String) b[0]));
+        String[] tokens = new String[tokenRows.size()];
+        int[] tokenApps = new int[tokens.length];
+        int[] tokenKinds = new int[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            Object[] row = tokenRows.get(i);
+            tokens[i] = (String) row[0];
+            tokenApps[i] = (Integer) row[1];
+            tokenKinds[i] = (Integer) row[2];
+        }
+        return new Table(packages, labels, tokens, tokenApps, tokenKinds);
+    }
+
+    /** Package names matching the query, best first, at most {@code limit}. An empty query matches nothing. */
+    String[] search(String query, int limit) {
+        Table current = table;
+        String normalized = normalize(query).trim();
+        if (normalized.isEmpty() || current.packages.length == 0) {
+            return new String[0];
+        }
+        String[] words = WORD_BREAK.split(normalized);
+        int[] scores = null;
+        for (String word : words) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            int[] wordScores = scoreWord(current, word);
+            if (scores == null) {
+                scores = wordScores;
+            } else {
+                // Every word has to match; the app ranks by its weakest one
+                for (int app = 0; app < scores.length; app++) {
+                    scores[app] = Math.max(scores[app], wordScores[app]);
+                }
+            }
+        }
+        if (scores == null) {
+            return new String[0];
+        }
+        // A query spelling the label's beginning, spaces included, beats word matches
+        for (int app = 0; app < scores.length; app++) {
+            if (current.labels[app].startsWith(normalized)) {
+                scores[app] = LABEL_PREFIX;
+            }
+        }
+
+        // Counting sort by score; apps are already in collation order within a score
+        int[] byScore = new int[TYPO + 2];
+        for (int score : scores) {
+            if (score != NO_MATCH) {
+                byScore[score + 1]++;
+            }
+        }
+        for (int i = 1; i < byScore.length; i++) {
+            byScore[i] += byScore[i - 1];
+        }
+        int total = byScore[byScore.length - 1];
+        int[] ranked = new int[total];
+        for (int app = 0; app < scores.length; app++) {
+            if (scores[app] != NO_MATCH) {
+                ranked[byScore[scores[app]]++] = app;
+            }
+        }
+        String[] result = new String[Math.min(total, limit > 0 ? limit : total)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = current.packages[ranked[i]];
+        }
+        return result;
+    }
+
+    private static int[] scoreWord(Table table, String word) {
+        int[] scores = new int[table.packages.length];
+        Arrays.fill(scores, NO_MATCH);
+        int matched = 0;
+        int from = lowerBound(table.tokens, word);
+        for (int i = from; i < table.tokens.length && table.tokens[i].startsWith(word); i++) {
+            int app = table.tokenApps[i];
+            if (scores[app] == NO_MATCH) {
+                matched++;
+            }
+            scores[app] = Math.min(scores[app], table.tokenKinds[i]);
+        }
+        if (word.length() >= 2) {
+            for (int app = 0; app < scores.length; app++) {
+                if (scores[app] == NO_MATCH && table.labels[app].contains(word)) {
+                    scores[app] = SUBSTRING;
+                    matched++;
+                }
+            }
+        }
+        int maxTypos = word.length() >= 7 ? 2 : word.length() >= 4 ? 1 : 0;
+        if (maxTypos > 0 && matched < 10) {
+            for (int i = 0; i < table.tokens.length; i++) {
+                int app = table.tokenApps[i];
+                if (scores[app] == NO_MATCH && withinDistance(word, table.tokens[i], maxTypos)) {
+                    scores[app] = TYPO;
+                }
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * True when some prefix of {@code token} is within {@code max} edits of {@code word}, a swap
+     * of two neighbouring letters counting as one edit (optimal string alignment distance).
+     */
+    static boolean withinDistance(String word, String token, int max) {
+        int n = word.length();
+        int m = Math.min(token.length(), n + max);
+        if (m < n - max) {
+            return false;
+        }
+        int[] beforePrevious = new int[m + 1];
+        int[] previous = new int[m + 1];
+        int[] current = new int[m + 1];
+        for (int j = 0; j <= m; j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= n; i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            char c = word.charAt(i - 1);
+            for (int j = 1; j <= m; j++) {
+                char t = token.charAt(j - 1);
+                int cost = c == t ? 0 : 1;
+                int best = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && c == token.charAt(j - 2) && word.charAt(i - 2) == t) {
+                    best = Math.min(best, beforePrevious[j - 2] + 1);
+                }
+                current[j] = best;
+                rowMin = Math.min(rowMin, best);
+            }
+            if (rowMin > max) {
+                return false; // every continuation only gets worse
+            }
+            int[] recycled = beforePrevious;
+            beforePrevious = previous;
+            previous = current;
+            current = recycled;
+        }
+        // The whole word against any prefix of the token
+        for (int j = Math.max(0, n - max); j <= m; j++) {
+            if (previous[j] <= max) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int lowerBound(String[] sorted, String key) {
+        int low = 0;
+        int high = sorted.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (sorted[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    static String normalize(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        return MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,156 @@
+package com.newfocusguard;
+
+import android.app.AlarmManager;
+import android.app.AppOpsManager;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Build;
+import android.os.Process;
+import android.provider.Settings;
+import android.util.Log;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Cached state of the special permissions enforcement depends on.
+ *
+ * Usage access and the overlay permission are AppOps, so changes are watched with
+ * {@link AppOpsManager#startWatchingMode} instead of being re-checked on every call;
+ * exact alarms (API 31+) have their own state-changed broadcast. {@link #refresh()} is
+ * also called when the app comes back to the foreground, since some ROMs do not report
+ * every change. Readers get a plain bitmask read and listeners hear about every change.
+ *
+ * FocusGuard has no accessibility service, so accessibility is not tracked.
+ */
+final class CapabilityMonitor {
+    private static final String TAG = "FocusGuardCapabilities";
+    static final int USAGE_STATS = 1;
+    static final int OVERLAY = 1 << 1;
+    static final int EXACT_ALARMS = 1 << 2;
+
+    interface Listener {
+        /** Called on whatever thread noticed the change. */
+        void onCapabilitiesChanged(int previous, int current);
+    }
+
+    private static CapabilityMonitor instance;
+
+    private final Context context;
+    private final AppOpsManager appOps;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile int granted;
+
+    private final AppOpsManager.OnOpChangedListener opListener = this::onOpChanged;
+
+    private CapabilityMonitor(Context context) {
+        this.context = context;
+        this.appOps = (AppOpsManager) context.getSystemService(Context.APP_OPS_SERVICE);
+        this.granted = check();
+        startWatching();
+        Log.d(TAG, "Initial capabilities: " + describe(granted));
+    }
+
+    static synchronized CapabilityMonitor getInstance(Context context) {
+        if (instance == null) {
+            instance = new CapabilityMonitor(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    boolean has(int capability) {
+        return (granted & capability) == capability;
+    }
+
+    int granted() {
+        return granted;
+    }
+
+    void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /** Re-reads every capability and notifies listeners if anything changed. */
+    void refresh() {
+        int previous;
+        int current = check();
+        synchronized (this) {
+            previous = granted;
+            if (previous == current) {
+                return;
+            }
+            granted = current;
+        }
+        Log.i(TAG, "Capabilities changed: " + describe(previous) + " -> " + describe(current));
+        for (Listener listener : listeners) {
+            try {
+                listener.onCapabilitiesChanged(previous, current);
+            } catch (Exception e) {
+                Log.e(TAG, "Capability listener failed", e);
+            }
+        }
+    }
+
+    private void onOpChanged(String op, String packageName) {
+        if (context.getPackageName().equals(packageName)) {
+            refresh();
+        }
+    }
+
+    private void startWatching() {
+        if (appOps != null) {
+            appOps.startWatchingMode(AppOpsManager.OPSTR_GET_USAGE_STATS, context.getPackageName(), opListener);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                appOps.startWatchingMode(AppOpsManager.OPSTR_SYSTEM_ALERT_WINDOW, context.getPackageName(), opListener);
+            }
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            context.registerReceiver(new BroadcastReceiver() {
+                @Override
+                public void onReceive(Context c, Intent intent) {
+                    refresh();
+                }
+            }, new IntentFilter(AlarmManager.ACTION_SCHEDULE_EXACT_ALARM_PERMISSION_STATE_CHANGED));
+        }
+    }
+
+    private int check() {
+        int result = 0;
+        if (checkUsageStats()) result |= USAGE_STATS;
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M || Settings.canDrawOverlays(context)) result |= OVERLAY;
+        if (checkExactAlarms()) result |= EXACT_ALARMS;
+        return result;
+    }
+
+    private boolean checkUsageStats() {
+        if (appOps == null) {
+            return false;
+        }
+        try {
+            int mode = appOps.checkOpNoThrow(AppOpsManager.OPSTR_GET_USAGE_STATS, Process.myUid(), context.getPackageName());
+            return mode == AppOpsManager.MODE_ALLOWED;
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to check usage stats permission", e);
+            return false;
+        }
+    }
+
+    private boolean checkExactAlarms() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.S) {
+            return true;
+        }
+        AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+        return alarmManager != null && alarmManager.canScheduleExactAlarms();
+    }
+
+    static String describe(int capabilities) {
+        return "usageStats=" + ((capabilities & USAGE_STATS) != 0)
+            + " overlay=" + ((capabilities & OVERLAY) != 0)
+            + " exactAlarms=" + ((capabilities & EXACT_ALARMS) != 0);
+    }
+}
@@ -0,0 +1,42 @@
+package com.newfocusguard;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+/**
+ * Restarts enforcement after a reboot or an update of the app, without waiting for the UI.
+ *
+ * Runs in the :monitor process and is direct-boot aware. At LOCKED_BOOT_COMPLETED only the
+ * supervisor's device-protected flag can be read, so the service is started if enforcement
+ * was running before; it holds the foreground until the user unlocks. Once unlocked
+ * (BOOT_COMPLETED, MY_PACKAGE_REPLACED) the persisted locks and schedules decide.
+ */
+public class EnforcementBootReceiver extends BroadcastReceiver {
+    private static final String TAG = "FocusGuardBoot";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        String action = intent.getAction();
+        String reason;
+        if (Intent.ACTION_LOCKED_BOOT_COMPLETED.equals(action)) {
+            reason = EnforcementSupervisor.REASON_LOCKED_BOOT;
+        } else if (Intent.ACTION_BOOT_COMPLETED.equals(action)) {
+            reason = EnforcementSupervisor.REASON_BOOT;
+        } else if (Intent.ACTION_MY_PACKAGE_REPLACED.equals(action)) {
+            reason = EnforcementSupervisor.REASON_PACKAGE_REPLACED;
+        } else {
+            return;
+        }
+        EnforcementSupervisor supervisor = EnforcementSupervisor.getInstance(context);
+        boolean unlocked = EnforcementSupervisor.isUserUnlocked(context);
+        boolean needed = unlocked
+            ? EnforcementSupervisor.hasPersistedWork(context)
+            : supervisor.isEnforcementExpected();
+        Log.d(TAG, "Received " + action + " (unlocked=" + unlocked + ", needed=" + needed + ")");
+        if (needed) {
+            supervisor.restore(context, reason);
+        }
+    }
+}
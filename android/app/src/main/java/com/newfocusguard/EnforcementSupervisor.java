@@ -0,0 +1,174 @@
+package com.newfocusguard;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.SystemClock;
+import android.os.UserManager;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Random;
+
+/**
+ * Brings enforcement back after a reboot, an app update or the monitor process being killed.
+ *
+ * Its state lives in device-protected storage so it is readable before the user unlocks:
+ * whether enforcement was running when the device went down, the restart attempt count,
+ * and recent time-to-enforcement samples. Locks and schedules themselves stay in
+ * credential-protected storage; at a locked boot the service starts in the foreground and
+ * rebuilds them the moment the user unlocks, instead of waiting for BOOT_COMPLETED.
+ *
+ * Restarts after a kill back off exponentially from one second up to five minutes with
+ * jitter, so a crash loop does not spin, and the count resets once the service has run
+ * for a minute.
+ */
+final class EnforcementSupervisor {
+    private static final String TAG = "FocusGuardSupervisor";
+    private static final String PREFS_NAME = "FocusGuardSupervisor";
+    private static final String KEY_EXPECTED = "enforcementExpected";
+    private static final String KEY_RESTART_ATTEMPT = "restartAttempt";
+    private static final String KEY_RESTORES = "restores";
+
+    static final String ACTION_RESTORE = "RESTORE";
+    static final String EXTRA_REASON = "reason";
+    static final String EXTRA_TRIGGERED_AT = "triggeredAt"; // SystemClock.elapsedRealtime()
+
+    static final String REASON_LOCKED_BOOT = "lockedBoot";
+    static final String REASON_BOOT = "boot";
+    static final String REASON_PACKAGE_REPLACED = "packageReplaced";
+    static final String REASON_RESTART = "restart";
+
+    static final long STABLE_RUN_MS = 60 * 1000;
+    private static final long RESTART_BASE_MS = 1000;
+    private static final long RESTART_MAX_MS = 5 * 60 * 1000;
+    private static final int MAX_RESTORE_SAMPLES = 20;
+
+    private static EnforcementSupervisor instance;
+
+    private final SharedPreferences prefs;
+    private final Random random = new Random();
+
+    private EnforcementSupervisor(Context context) {
+        Context storage = Build.VERSION.SDK_INT >= Build.VERSION_CODES.N
+            ? context.createDeviceProtectedStorageContext()
+            : context;
+        this.prefs = storage.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    static synchronized EnforcementSupervisor getInstance(Context context) {
+        if (instance == null) {
+            instance = new EnforcementSupervisor(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    static boolean isUserUnlocked(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.N) {
+            return true;
+        }
+        UserManager userManager = context.getSystemService(UserManager.class);
+        return userManager == null || userManager.isUserUnlocked();
+    }
+
+    /** True when the persisted locks, schedules or quotas need the service. Reads credential storage, so only after unlock. */
+    static boolean hasPersistedWork(Context context) {
+        return !LockTable.getInstance(context).snapshot().isEmpty()
+            || !ScheduleStore.getInstance(context).loadAll().isEmpty()
+            || QuotaTracker.getInstance(context).hasAnyRule();
+    }
+
+    /** Whether enforcement was running last time; the only hint available before the user unlocks. */
+    boolean isEnforcementExpected() {
+        return prefs.getBoolean(KEY_EXPECTED, false);
+    }
+
+    void setEnforcementExpected(boolean expected) {
+        if (prefs.getBoolean(KEY_EXPECTED, false) != expected) {
+            prefs.edit().putBoolean(KEY_EXPECTED, expected).apply();
+        }
+    }
+
+    /** Intent that starts AppMonitoringService to restore enforcement. */
+    static Intent restoreIntent(Context context, String reason, long triggeredAt) {
+        Intent intent = new Intent(context, AppMonitoringService.class);
+        intent.setAction(ACTION_RESTORE);
+        intent.putExtra(EXTRA_REASON, reason);
+        intent.putExtra(EXTRA_TRIGGERED_AT, triggeredAt);
+        return intent;
+    }
+
+    void restore(Context context, String reason) {
+        Intent intent = restoreIntent(context, reason, SystemClock.elapsedRealtime());
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                context.startForegroundService(intent);
+            } else {
+                context.startService(intent);
+            }
+            Log.i(TAG, "Restoring enforcement (" + reason + ")");
+        } catch (Exception e) {
+            Log.e(TAG, "Could not start the monitoring service for " + reason, e);
+        }
+    }
+
+    /** Delay before the next restart attempt: 1s, 2s, 4s ... capped at 5 min, each with up to 25% jitter. */
+    synchronized long nextRestartDelayMs() {
+        int attempt = prefs.getInt(KEY_RESTART_ATTEMPT, 0);
+        prefs.edit().putInt(KEY_RESTART_ATTEMPT, attempt + 1).apply();
+        long delay = Math.min(RESTART_MAX_MS, RESTART_BASE_MS << Math.min(attempt, 20));
+        long jitter = (long) (delay * 0.25 * random.nextDouble());
+        Log.d(TAG, "Restart attempt " + (attempt + 1) + " in " + (delay + jitter) + "ms");
+        return delay + jitter;
+    }
+
+    /** Called once the service has been enforcing for {@link #STABLE_RUN_MS}. */
+    synchronized void onStableRun() {
+        if (prefs.getInt(KEY_RESTART_ATTEMPT, 0) != 0) {
+            prefs.edit().putInt(KEY_RESTART_ATTEMPT, 0).apply();
+            Log.d(TAG, "Service stable, restart backoff reset");
+        }
+    }
+
+    /** Records how long enforcement took to come back, from the trigger to the first foreground check. */
+    synchronized void recordRestore(String reason, long delayMs) {
+        Log.i(TAG, "Enforcement restored after " + reason + " in " + delayMs + "ms");
+        JSONArray samples = restoreSamples();
+        JSONArray kept = new JSONArray();
+        for (int i = Math.max(0, samples.length() - MAX_RESTORE_SAMPLES + 1); i < samples.length(); i++) {
+            try {
+                kept.put(samples.getJSONObject(i));
+            } catch (JSONException e) {
+                // Skip the unreadable sample
+            }
+        }
+        try {
+            JSONObject sample = new JSONObject();
+            sample.put("reason", reason);
+            sample.put("delayMs", delayMs);
+            sample.put("timestamp", System.currentTimeMillis());
+            kept.put(sample);
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to record restore sample", e);
+            return;
+        }
+        prefs.edit().putString(KEY_RESTORES, kept.toString()).apply();
+    }
+
+    /** Recent restores, oldest first, as a JSON array of {reason, delayMs, timestamp}. */
+    synchronized String restoreSamplesJson() {
+        return prefs.getString(KEY_RESTORES, "[]");
+    }
+
+    private JSONArray restoreSamples() {
+        try {
+            return new JSONArray(prefs.getString(KEY_RESTORES, "[]"));
+        } catch (JSONException e) {
+            return new JSONArray();
+        }
+    }
+}
@@ -1,31 +1,107 @@
 package com.newfocusguard;
 
+import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.os.Bundle;
+import android.util.Log;
 import androidx.annotation.Nullable;
 
 import com.facebook.react.HeadlessJsTaskService;
+import com.facebook.react.ReactNativeHost;
 import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.common.LifecycleState;
 import com.facebook.react.jstasks.HeadlessJsTaskConfig;
+import com.facebook.react.modules.core.DeviceEventManagerModule;
 
+import java.util.ArrayList;
+
+/**
+ * Runs a batch of events from {@link HeadlessDispatcher} through one "FocusGuardWork" task.
+ *
+ * The task gets {items: [{eventName, params}]} and a timeout of a base budget plus a share
+ * per item, capped; the budget is set from JS with setHeadlessTaskBudget. When the app is in
+ * the foreground its running JS takes the batch as an "onHeadlessWork" event instead, and no
+ * task is started.
+ */
 public class FocusGuardHeadlessTaskService extends HeadlessJsTaskService {
+    private static final String TAG = "FocusGuardHeadlessTask";
+    private static final String TASK_NAME = "FocusGuardWork"; // registered in headlessTaskRegister.js
+    private static final String FOREGROUND_EVENT = "onHeadlessWork";
+
+    private static final String PREFS_NAME = "FocusGuardHeadless";
+    private static final long DEFAULT_BASE_MS = 3000;
+    private static final long DEFAULT_PER_ITEM_MS = 500;
+    private static final long DEFAULT_MAX_MS = 30000;
+
+    /** Stores the timeout budget of later batches: baseMs + perItemMs * items, at most maxMs. */
+    static void setBudget(Context context, long baseMs, long perItemMs, long maxMs) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+            .putLong("baseMs", baseMs)
+            .putLong("perItemMs", perItemMs)
+            .putLong("maxMs", maxMs)
+            .apply();
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        ArrayList<Bundle> items = intent != null ? intent.<Bundle>getParcelableArrayListExtra(HeadlessDispatcher.EXTRA_ITEMS) : null;
+        if (items != null && !items.isEmpty() && emitToForegroundContext(items)) {
+            stopSelf(startId);
+            return START_NOT_STICKY;
+        }
+        return super.onStartCommand(intent, flags, startId);
+    }
 
     @Override
     protected @Nullable HeadlessJsTaskConfig getTaskConfig(Intent intent) {
-        Bundle extras = intent.getExtras();
-        if (extras != null) {
-            // Retrieve the task name passed from AppMonitoringService.java
-            // We used "AppBlocked" as the registered JS task name.
-            // We also passed "originalEventNameFired" and "eventType" in the bundle from AppMonitoringService.
-            String taskKey = extras.getString("taskName", "AppBlocked"); // Default to AppBlocked if not specified
-
-            return new HeadlessJsTaskConfig(
-                taskKey, // The key registered in AppRegistry.registerHeadlessTask
-                Arguments.fromBundle(extras), // The data bundle for the JS task
-                5000, // Timeout for the task in milliseconds
-                true // Whether or not the task is allowed to run in foreground
-            );
+        ArrayList<Bundle> items = intent.<Bundle>getParcelableArrayListExtra(HeadlessDispatcher.EXTRA_ITEMS);
+        if (items == null || items.isEmpty()) {
+            return null;
+        }
+        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        long timeoutMs = Math.min(
+            prefs.getLong("baseMs", DEFAULT_BASE_MS) + prefs.getLong("perItemMs", DEFAULT_PER_ITEM_MS) * items.size(),
+            prefs.getLong("maxMs", DEFAULT_MAX_MS));
+        Log.d(TAG, "Headless task for " + items.size() + " item(s), timeout " + timeoutMs + "ms");
+        return new HeadlessJsTaskConfig(
+            TASK_NAME, // The key registered in AppRegistry.registerHeadlessTask
+            toBatch(items), // The data bundle for the JS task
+            timeoutMs, // Timeout for the task in milliseconds
+            true // Whether or not the task is allowed to run in foreground
+        );
+    }
+
+    /** Hands the batch to a resumed React context, false if there is none. */
+    private boolean emitToForegroundContext(ArrayList<Bundle> items) {
+        ReactNativeHost host = getReactNativeHost();
+        if (!host.hasInstance()) {
+            return false;
+        }
+        ReactContext context = host.getReactInstanceManager().getCurrentReactContext();
+        if (context == null || !context.hasActiveReactInstance()
+                || context.getLifecycleState() != LifecycleState.RESUMED) {
+            return false;
+        }
+        context.getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
+            .emit(FOREGROUND_EVENT, toBatch(items));
+        Log.d(TAG, "App is in the foreground, emitted " + items.size() + " item(s) without a task");
+        return true;
+    }
+
+    private static WritableMap toBatch(ArrayList<Bundle> items) {
+        WritableArray array = Arguments.createArray();
+        for (Bundle item : items) {
+            WritableMap entry = Arguments.createMap();
+            entry.putString("eventName", item.getString(MonitorBridge.KEY_EVENT_NAME));
+            entry.putMap("params", Arguments.fromBundle(item.getBundle(HeadlessDispatcher.KEY_PARAMS)));
+            array.pushMap(entry);
         }
-        return null;
+        WritableMap batch = Arguments.createMap();
+        batch.putArray("items", array);
+        return batch;
     }
-} 
\ No newline at end of file
+}
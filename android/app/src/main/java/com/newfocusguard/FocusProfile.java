@@ -0,0 +1,108 @@
+package com.newfocusguard;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The set of apps the Quick Settings tile locks in one tap, and whether that focus is on.
+ *
+ * JS picks the apps and a duration (0 for until turned off). Starting the profile locks the
+ * apps that had no manual lock of their own and remembers them, so stopping it unlocks only
+ * those and leaves locks the user set separately alone. A lock the user changes by hand while
+ * the focus runs becomes theirs, see {@link #release}. Monitor process only, like LockTable.
+ */
+final class FocusProfile {
+    private static final String PREFS_NAME = "FocusGuardFocusProfile";
+    private static final String KEY_PACKAGES = "packages";
+    private static final String KEY_DURATION_MINUTES = "durationMinutes";
+    private static final String KEY_ACTIVE_PACKAGES = "activePackages";
+    private static final String KEY_ACTIVE_UNTIL = "activeUntil";
+
+    private static FocusProfile instance;
+
+    private final SharedPreferences prefs;
+
+    private FocusProfile(Context context) {
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    static synchronized FocusProfile getInstance(Context context) {
+        if (instance == null) {
+            instance = new FocusProfile(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /** Why a profile cannot be stored, or null when it can. */
+    static String validate(String[] packages, int durationMinutes) {
+        if (packages == null) {
+            return "packages missing";
+        }
+        for (String packageName : packages) {
+            if (packageName == null || packageName.isEmpty()) {
+                return "empty package name";
+            }
+        }
+        if (durationMinutes < 0) {
+            return "durationMinutes must be 0 or more";
+        }
+        return null;
+    }
+
+    synchronized void set(String[] packages, int durationMinutes) {
+        prefs.edit()
+            .putStringSet(KEY_PACKAGES, new HashSet<>(Arrays.asList(packages)))
+            .putInt(KEY_DURATION_MINUTES, Math.max(0, durationMinutes))
+            .apply();
+    }
+
+    synchronized Set<String> packages() {
+        return new HashSet<>(prefs.getStringSet(KEY_PACKAGES, new HashSet<String>()));
+    }
+
+    synchronized int durationMinutes() {
+        return prefs.getInt(KEY_DURATION_MINUTES, 0);
+    }
+
+    synchronized boolean isActive(long now) {
+        long until = prefs.getLong(KEY_ACTIVE_UNTIL, LockTable.NOT_LOCKED);
+        return until == LockTable.INDEFINITE || (until != LockTable.NOT_LOCKED && now < until);
+    }
+
+    /** Unlock time of the running focus, INDEFINITE until turned off, NOT_LOCKED when it is off. */
+    synchronized long activeUntil() {
+        return prefs.getLong(KEY_ACTIVE_UNTIL, LockTable.NOT_LOCKED);
+    }
+
+    synchronized void markStarted(Set<String> lockedPackages, long until) {
+        prefs.edit()
+            .putStringSet(KEY_ACTIVE_PACKAGES, new HashSet<>(lockedPackages))
+            .putLong(KEY_ACTIVE_UNTIL, until)
+            .apply();
+    }
+
+    /**
+     * Takes a package out of the running focus's locks after the user locked or unlocked it by
+     * hand, so stopping the focus leaves that lock alone.
+     */
+    synchronized void release(String packageName) {
+        Set<String> locked = new HashSet<>(prefs.getStringSet(KEY_ACTIVE_PACKAGES, new HashSet<String>()));
+        if (locked.remove(packageName)) {
+            prefs.edit().putStringSet(KEY_ACTIVE_PACKAGES, locked).apply();
+        }
+    }
+
+    /** Ends the focus and returns the packages it locked. */
+    synchronized Set<String> markStopped() {
+        Set<String> locked = new HashSet<>(prefs.getStringSet(KEY_ACTIVE_PACKAGES, new HashSet<String>()));
+        prefs.edit()
+            .remove(KEY_ACTIVE_PACKAGES)
+            .remove(KEY_ACTIVE_UNTIL)
+            .apply();
+        return locked;
+    }
+}
@@ -0,0 +1,83 @@
+package com.newfocusguard;
+
+import android.appwidget.AppWidgetManager;
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.service.quicksettings.TileService;
+import android.util.Log;
+import android.widget.RemoteViews;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps the home-screen widget and the Quick Settings tile in step with the monitor's state.
+ *
+ * Both live in the ":monitor" process and read LockTable, LockLedger and FocusProfile
+ * directly, so neither starts the UI process or React. Nothing polls: lock table diffs,
+ * block events and profile changes schedule one render, coalesced over {@link #DEBOUNCE_MS}.
+ * Unlock times are shown as a time of day rather than a countdown, so a timed lock needs no
+ * redraw until it actually ends.
+ */
+final class FocusSurfaces {
+    private static final String TAG = "FocusGuardSurfaces";
+    private static final long DEBOUNCE_MS = 500;
+
+    private static FocusSurfaces instance;
+
+    private final Context context;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    // Widget rendering scans today's history, keep it off the main thread
+    private final ExecutorService renderer = Executors.newSingleThreadExecutor();
+    private final Runnable update = this::update;
+
+    private FocusSurfaces(Context context) {
+        this.context = context;
+        LockTable.getInstance(context).addDiffListener(diff -> refresh());
+    }
+
+    static synchronized FocusSurfaces getInstance(Context context) {
+        if (instance == null) {
+            instance = new FocusSurfaces(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /** Something the widget or tile shows changed. */
+    void refresh() {
+        handler.removeCallbacks(update);
+        handler.postDelayed(update, DEBOUNCE_MS);
+    }
+
+    private void update() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            // An active tile is bound only on request, it renders itself in onStartListening
+            TileService.requestListeningState(context, new ComponentName(context, FocusTileService.class));
+        }
+        final int[] widgetIds = AppWidgetManager.getInstance(context)
+            .getAppWidgetIds(new ComponentName(context, FocusWidgetProvider.class));
+        if (widgetIds.length > 0) {
+            renderWidgets(widgetIds, null);
+        }
+    }
+
+    /** Renders the given widgets in the background, then runs {@code done} if there is one. */
+    void renderWidgets(final int[] widgetIds, final Runnable done) {
+        renderer.execute(() -> {
+            try {
+                RemoteViews views = FocusWidgetProvider.buildViews(context);
+                AppWidgetManager.getInstance(context).updateAppWidget(widgetIds, views);
+                Log.d(TAG, "Rendered " + widgetIds.length + " widget(s)");
+            } catch (Exception e) {
+                Log.e(TAG, "Widget render failed", e);
+            } finally {
+                if (done != null) {
+                    done.run();
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,81 @@
+package com.newfocusguard;
+
+import android.content.Intent;
+import android.os.Build;
+import android.service.quicksettings.Tile;
+import android.service.quicksettings.TileService;
+import android.text.format.DateFormat;
+import android.util.Log;
+
+import java.util.Date;
+
+/**
+ * Quick Settings tile that turns the focus profile on and off.
+ *
+ * An active tile in the ":monitor" process: the system binds it only when {@link FocusSurfaces}
+ * asks after a state change, and a tap goes straight to AppMonitoringService, so neither
+ * showing nor toggling it starts React.
+ */
+public class FocusTileService extends TileService {
+    private static final String TAG = "FocusGuardTile";
+
+    @Override
+    public void onStartListening() {
+        Tile tile = getQsTile();
+        if (tile == null) {
+            return;
+        }
+        FocusProfile profile = FocusProfile.getInstance(this);
+        String subtitle;
+        if (profile.packages().isEmpty()) {
+            tile.setState(Tile.STATE_UNAVAILABLE);
+            subtitle = getString(R.string.focus_tile_set_up);
+        } else if (profile.isActive(System.currentTimeMillis())) {
+            tile.setState(Tile.STATE_ACTIVE);
+            long until = profile.activeUntil();
+            subtitle = until == LockTable.INDEFINITE
+                ? getString(R.string.focus_tile_on)
+                : getString(R.string.focus_tile_until, DateFormat.getTimeFormat(this).format(new Date(until)));
+        } else {
+            tile.setState(Tile.STATE_INACTIVE);
+            int apps = profile.packages().size();
+            subtitle = getResources().getQuantityString(R.plurals.focus_tile_apps, apps, apps);
+        }
+        tile.setLabel(getString(R.string.focus_tile_label));
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            tile.setSubtitle(subtitle);
+        }
+        tile.updateTile();
+    }
+
+    @Override
+    public void onClick() {
+        FocusProfile profile = FocusProfile.getInstance(this);
+        if (profile.packages().isEmpty()) {
+            Log.d(TAG, "No focus profile set up, ignoring the tap");
+            return;
+        }
+        boolean start = !profile.isActive(System.currentTimeMillis());
+        Intent intent = new Intent(this, AppMonitoringService.class);
+        intent.setAction(start ? AppMonitoringService.ACTION_START_FOCUS : AppMonitoringService.ACTION_STOP_FOCUS);
+        try {
+            if (start && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                // Starting always puts the service in the foreground
+                startForegroundService(intent);
+            } else {
+                // The service is already up for the profile's locks
+                startService(intent);
+            }
+            Log.d(TAG, (start ? "Starting" : "Stopping") + " the focus profile");
+        } catch (Exception e) {
+            Log.e(TAG, "Could not reach the monitoring service", e);
+            return;
+        }
+        // Show the tap at once; the lock table diff brings the real state through FocusSurfaces
+        Tile tile = getQsTile();
+        if (tile != null) {
+            tile.setState(start ? Tile.STATE_ACTIVE : Tile.STATE_INACTIVE);
+            tile.updateTile();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.newfocusguard;
+
+import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
+import android.appwidget.AppWidgetProvider;
+import android.content.Context;
+import android.content.Intent;
+import android.content.res.Resources;
+import android.text.format.DateFormat;
+import android.util.Log;
+import android.view.View;
+import android.widget.RemoteViews;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Home-screen widget with the active locks, when the next one ends and today's block count.
+ *
+ * Runs in the ":monitor" process with no update period; {@link FocusSurfaces} redraws it when
+ * the state it shows changes. Tapping it opens the app.
+ */
+public class FocusWidgetProvider extends AppWidgetProvider {
+    private static final String TAG = "FocusGuardWidget";
+    private static final int MAX_NAMED_APPS = 3;
+
+    @Override
+    public void onUpdate(Context context, AppWidgetManager appWidgetManager, int[] appWidgetIds) {
+        final PendingResult result = goAsync();
+        FocusSurfaces.getInstance(context).renderWidgets(appWidgetIds, result::finish);
+    }
+
+    static RemoteViews buildViews(Context context) {
+        long now = System.currentTimeMillis();
+        FocusProfile profile = FocusProfile.getInstance(context);
+        RemoteViews views = new RemoteViews(context.getPackageName(), R.layout.focus_widget);
+
+        String title = context.getString(R.string.app_name);
+        if (profile.isActive(now)) {
+            long until = profile.activeUntil();
+            title = until == LockTable.INDEFINITE
+                ? context.getString(R.string.focus_widget_title_on)
+                : context.getString(R.string.focus_widget_title_on_until, formatTime(context, until));
+        }
+        views.setTextViewText(R.id.widget_title, title);
+
+        String locks = describeLocks(context, LockTable.getInstance(context).snapshot(), now);
+        views.setViewVisibility(R.id.widget_locks, locks != null ? View.VISIBLE : View.GONE);
+        views.setViewVisibility(R.id.widget_empty, locks != null ? View.GONE : View.VISIBLE);
+        if (locks != null) {
+            views.setTextViewText(R.id.widget_locks, locks);
+        }
+        views.setTextViewText(R.id.widget_stats, describeToday(context, now));
+
+        Intent open = new Intent(context, MainActivity.class);
+        open.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+        views.setOnClickPendingIntent(R.id.widget_root, PendingIntent.getActivity(
+            context, 0, open, PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT));
+        return views;
+    }
+
+    /** "Instagram, YouTube, Reddit +2 more", locked categories and the next unlock, null if nothing is locked. */
+    private static String describeLocks(Context context, LockTable.Snapshot snapshot, final long now) {
+        final OverlayContentCache labels = OverlayContentCache.getInstance(context);
+        final PackageInterner interner = PackageInterner.getInstance();
+        final List<String> names = new ArrayList<>();
+        final int[] count = {0};
+        final long[] nextUnlock = {Long.MAX_VALUE};
+        snapshot.forEach((packageId, unlockTime) -> {
+            if (unlockTime != LockTable.INDEFINITE && unlockTime <= now) {
+                return; // expired, the service drops it on its next pass
+            }
+            count[0]++;
+            if (names.size() < MAX_NAMED_APPS) {
+                names.add(labels.loadLabel(interner.nameOf(packageId))); // render thread, may look it up
+            }
+            if (unlockTime != LockTable.INDEFINITE) {
+                nextUnlock[0] = Math.min(nextUnlock[0], unlockTime);
+            }
+        });
+        int categories = Integer.bitCount(snapshot.lockedCategoryMask());
+        int patterns = snapshot.patterns.size();
+        if (count[0] == 0 && categories == 0 && patterns == 0) {
+            return null;
+        }
+
+        Resources resources = context.getResources();
+        StringBuilder text = new StringBuilder();
+        if (count[0] > 0) {
+            String named = String.join(", ", names);
+            text.append(count[0] > names.size()
+                ? context.getString(R.string.focus_widget_more, named, count[0] - names.size())
+                : named);
+        }
+        if (categories + patterns > 0) {
+            if (text.length() > 0) {
+                text.append('\n');
+            }
+            int rules = categories + patterns;
+            text.append(resources.getQuantityString(R.plurals.focus_widget_rules, rules, rules));
+        }
+        if (nextUnlock[0] != Long.MAX_VALUE) {
+            text.append('\n').append(context.getString(R.string.focus_widget_next_unlock,
+                formatTime(context, nextUnlock[0])));
+        }
+        return text.toString();
+    }
+
+    private static String describeToday(Context context, long now) {
+        Calendar midnight = Calendar.getInstance();
+        midnight.setTimeInMillis(now);
+        midnight.set(Calendar.HOUR_OF_DAY, 0);
+        midnight.set(Calendar.MINUTE, 0);
+        midnight.set(Calendar.SECOND, 0);
+        midnight.set(Calendar.MILLISECOND, 0);
+        try {
+            LockLedger.Counters today = LockLedger.getInstance(context).query(midnight.getTimeInMillis(), now + 1).total;
+            Resources resources = context.getResources();
+            return context.getString(R.string.focus_widget_today,
+                resources.getQuantityString(R.plurals.focus_widget_blocks, today.blocks, today.blocks),
+                resources.getQuantityString(R.plurals.focus_widget_emergency_unlocks,
+                    today.emergencyUnlocks, today.emergencyUnlocks));
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot read today's history", e);
+            return "";
+        }
+    }
+
+    private static String formatTime(Context context, long time) {
+        return DateFormat.getTimeFormat(context).format(new Date(time));
+    }
+}
@@ -0,0 +1,188 @@
+package com.newfocusguard;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+/**
+ * Hands events to a headless JS task when no UI process is subscribed to take them live.
+ *
+ * Items are buffered and flushed {@link #COALESCE_MS} after the first one, or as soon as
+ * {@link #MAX_BATCH} are waiting, as a single start of {@link FocusGuardHeadlessTaskService}
+ * carrying the whole batch. A burst of blocked-app events then wakes the JS runtime once
+ * instead of once per event. Runs in the ":monitor" process.
+ *
+ * A batch is only started while AppMonitoringService is in the foreground
+ * ({@link #setForeground}): from Android O a background process may not start the task
+ * service, and an uninstall broadcast can arrive while monitoring is stopped or before
+ * startForeground. Items wait until then, and a batch the system refused goes back to
+ * the front of the buffer. Uninstall cleanups are also written through to preferences and
+ * reloaded when the process starts again, so neither a refused start nor the death of the
+ * process loses them; the other events only matter while they are fresh.
+ */
+final class HeadlessDispatcher {
+    private static final String TAG = "FocusGuardHeadless";
+    private static final long COALESCE_MS = 2000;
+    private static final int MAX_BATCH = 64;
+
+    // Intent and item keys, shared with FocusGuardHeadlessTaskService
+    static final String EXTRA_ITEMS = "items";
+    static final String KEY_PARAMS = "params";
+
+    private static final String EVENT_UNINSTALLED = "onAppUninstalled";
+    // Package name -> JSON array of the schedule ids it was dropped from, until handed to a task
+    private static final String PREFS_NAME = "FocusGuardPendingUninstalls";
+
+    private static HeadlessDispatcher instance;
+
+    private final Context context;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable flush = this::flush;
+    private final ArrayList<Bundle> pending = new ArrayList<>();
+    private final SharedPreferences durable;
+    private boolean flushScheduled;
+    private boolean foreground;
+
+    private HeadlessDispatcher(Context context) {
+        this.context = context;
+        this.durable = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        restoreUninstalls();
+    }
+
+    static synchronized HeadlessDispatcher getInstance(Context context) {
+        if (instance == null) {
+            instance = new HeadlessDispatcher(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    synchronized void enqueue(String eventName, Bundle params) {
+        if (EVENT_UNINSTALLED.equals(eventName)) {
+            persistUninstall(params);
+        }
+        pending.add(item(eventName, params));
+        if (pending.size() >= MAX_BATCH) {
+            handler.removeCallbacks(flush);
+            flushScheduled = true;
+            handler.post(flush);
+        } else if (!flushScheduled) {
+            flushScheduled = true;
+            handler.postDelayed(flush, COALESCE_MS);
+        }
+    }
+
+    /**
+     * Called by AppMonitoringService after startForeground and before stopForeground, on the
+     * main thread. Items that waited go out at once, and items still coalescing are handed
+     * over before the service leaves the foreground rather than held until it returns.
+     */
+    void setForeground(boolean inForeground) {
+        if (!inForeground) {
+            flush();
+        }
+        synchronized (this) {
+            foreground = inForeground;
+            if (!inForeground || pending.isEmpty()) {
+                return;
+            }
+            handler.removeCallbacks(flush);
+            flushScheduled = true;
+        }
+        handler.post(flush);
+    }
+
+    private static Bundle item(String eventName, Bundle params) {
+        Bundle item = new Bundle();
+        item.putString(MonitorBridge.KEY_EVENT_NAME, eventName);
+        item.putBundle(KEY_PARAMS, new Bundle(params));
+        return item;
+    }
+
+    private void flush() {
+        ArrayList<Bundle> batch;
+        synchronized (this) {
+            handler.removeCallbacks(flush);
+            flushScheduled = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            if (!foreground) {
+                Log.d(TAG, "Monitoring service not in the foreground, keeping " + pending.size() + " item(s)");
+                return;
+            }
+            batch = new ArrayList<>(pending);
+            pending.clear();
+        }
+        Intent intent = new Intent(context, FocusGuardHeadlessTaskService.class);
+        intent.putParcelableArrayListExtra(EXTRA_ITEMS, batch);
+        try {
+            context.startService(intent);
+            Log.d(TAG, "Started a headless task for " + batch.size() + " item(s)");
+        } catch (Exception e) {
+            // Retried on the next enqueue or the next time the service enters the foreground
+            Log.e(TAG, "Cannot start the headless task, keeping " + batch.size() + " item(s)", e);
+            synchronized (this) {
+                pending.addAll(0, batch);
+            }
+            return;
+        }
+        SharedPreferences.Editor editor = durable.edit();
+        for (Bundle item : batch) {
+            if (EVENT_UNINSTALLED.equals(item.getString(MonitorBridge.KEY_EVENT_NAME))) {
+                editor.remove(item.getBundle(KEY_PARAMS).getString("packageName"));
+            }
+        }
+        editor.apply();
+    }
+
+    private void persistUninstall(Bundle params) {
+        String packageName = params.getString("packageName");
+        if (packageName == null) {
+            return;
+        }
+        JSONArray scheduleIds = new JSONArray();
+        String[] ids = params.getStringArray("scheduleIds");
+        if (ids != null) {
+            for (String id : ids) {
+                scheduleIds.put(id);
+            }
+        }
+        // commit, not apply: the point is to survive the process dying right after
+        durable.edit().putString(packageName, scheduleIds.toString()).commit();
+    }
+
+    /** Queues the uninstall cleanups a previous process did not get to hand over. */
+    private void restoreUninstalls() {
+        for (Map.Entry<String, ?> entry : durable.getAll().entrySet()) {
+            String[] scheduleIds;
+            try {
+                JSONArray array = new JSONArray(String.valueOf(entry.getValue()));
+                scheduleIds = new String[array.length()];
+                for (int i = 0; i < scheduleIds.length; i++) {
+                    scheduleIds[i] = array.getString(i);
+                }
+            } catch (JSONException e) {
+                Log.w(TAG, "Dropping unreadable pending uninstall of " + entry.getKey());
+                durable.edit().remove(entry.getKey()).apply();
+                continue;
+            }
+            Bundle params = new Bundle();
+            params.putString("packageName", entry.getKey());
+            params.putStringArray("scheduleIds", scheduleIds);
+            pending.add(item(EVENT_UNINSTALLED, params));
+        }
+        if (!pending.isEmpty()) {
+            Log.d(TAG, "Restored " + pending.size() + " pending uninstall cleanup(s)");
+        }
+    }
+}
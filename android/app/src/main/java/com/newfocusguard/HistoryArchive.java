@@ -0,0 +1,322 @@
+package com.newfocusguard;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact columnar export format for {@link HistoryLog}.
+ *
+ * Layout: a 5 byte header ("FGHC" + version) followed by blocks of up to
+ * BLOCK_ROWS rows and a terminating zero row count. Each block is
+ *
+ *   varint rowCount
+ *   varint newDictEntries, then (varint length, UTF-8 bytes) per new package name
+ *   timestamps: zigzag varint deltas, chained across blocks
+ *   kinds:      one byte per row
+ *   packages:   varint dictionary ids
+ *   values:     zigzag varint
+ *
+ * Both directions go through a fixed-size NIO buffer, so memory use is bounded by
+ * one block plus the package dictionary regardless of how much history is exported.
+ */
+final class HistoryArchive {
+    private static final byte[] MAGIC = {'F', 'G', 'H', 'C'};
+    private static final byte VERSION = 1;
+    private static final int BLOCK_ROWS = 4096;
+    private static final int IO_BUFFER_SIZE = 64 * 1024;
+
+    private HistoryArchive() {}
+
+    /** Exports every record of the log in [fromMs, toMs) and returns the number of rows written. */
+    static int export(HistoryLog log, long fromMs, long toMs, File target) throws IOException {
+        return export(log, fromMs, toMs, Collections.<HistoryLog.Record>emptyList(), target);
+    }
+
+    /**
+     * Exports the log's records in [fromMs, toMs) together with {@code extra} rows kept outside
+     * the log (e.g. history the JS side stored before the native log existed). Extra rows are
+     * sorted and written ahead of the first log record with a later timestamp.
+     */
+    static int export(HistoryLog log, long fromMs, long toMs, List<HistoryLog.Record> extra, File target)
+            throws IOException {
+        final List<HistoryLog.Record> rows = new ArrayList<>();
+        for (HistoryLog.Record record : extra) {
+            if (record.timestamp >= fromMs && record.timestamp < toMs) {
+                rows.add(record);
+            }
+        }
+        Collections.sort(rows, (a, b) -> Long.compare(a.timestamp, b.timestamp));
+        try (FileOutputStream stream = new FileOutputStream(target);
+             FileChannel channel = stream.getChannel()) {
+            final Writer writer = new Writer(channel);
+            final int[] next = {0};
+            log.scan(fromMs, toMs, (timestamp, kind, packageName, value) -> {
+                while (next[0] < rows.size() && rows.get(next[0]).timestamp <= timestamp) {
+                    writer.add(rows.get(next[0]++));
+                }
+                writer.add(timestamp, kind, packageName, value);
+            });
+            while (next[0] < rows.size()) {
+                writer.add(rows.get(next[0]++));
+            }
+            writer.finish();
+            return writer.totalRows;
+        }
+    }
+
+    /** Reads a whole export into memory, for merging it into the log. */
+    static List<HistoryLog.Record> readAll(File source) throws IOException {
+        final List<HistoryLog.Record> records = new ArrayList<>();
+        importFile(source, (timestamp, kind, packageName, value) ->
+            records.add(new HistoryLog.Record(timestamp, kind, packageName, value)));
+        return records;
+    }
+
+    /** Streams every row of an exported file into the sink and returns the number of rows read. */
+    static int importFile(File source, HistoryLog.RecordSink sink) throws IOException {
+        try (FileInputStream stream = new FileInputStream(source);
+             FileChannel channel = stream.getChannel()) {
+            Reader reader = new Reader(channel);
+            return reader.readAll(sink);
+        }
+    }
+
+    private static final class Writer {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(IO_BUFFER_SIZE);
+        private final Map<String, Integer> dictionary = new HashMap<>();
+        private final List<String> pendingDictionary = new ArrayList<>();
+
+        private final long[] timestamps = new long[BLOCK_ROWS];
+        private final byte[] kinds = new byte[BLOCK_ROWS];
+        private final int[] packageIds = new int[BLOCK_ROWS];
+        private final long[] values = new long[BLOCK_ROWS];
+        private int rows = 0;
+        private long previousTimestamp = 0;
+        int totalRows = 0;
+
+        Writer(FileChannel channel) throws IOException {
+            this.channel = channel;
+            buffer.put(MAGIC);
+            buffer.put(VERSION);
+        }
+
+        void add(HistoryLog.Record record) throws IOException {
+            add(record.timestamp, record.kind, record.packageName, record.value);
+        }
+
+        void add(long timestamp, byte kind, String packageName, long value) throws IOException {
+            Integer id = dictionary.get(packageName);
+            if (id == null) {
+                id = dictionary.size();
+                dictionary.put(packageName, id);
+                pendingDictionary.add(packageName);
+            }
+            timestamps[rows] = timestamp;
+            kinds[rows] = kind;
+            packageIds[rows] = id;
+            values[rows] = value;
+            rows++;
+            totalRows++;
+            if (rows == BLOCK_ROWS) {
+                writeBlock();
+            }
+        }
+
+        void finish() throws IOException {
+            if (rows > 0) {
+                writeBlock();
+            }
+            putVarint(0);
+            drain();
+        }
+
+        private void writeBlock() throws IOException {
+            putVarint(rows);
+            putVarint(pendingDictionary.size());
+            for (String name : pendingDictionary) {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                putVarint(bytes.length);
+                putBytes(bytes);
+            }
+            pendingDictionary.clear();
+
+            for (int i = 0; i < rows; i++) {
+                putVarint(zigzag(timestamps[i] - previousTimestamp));
+                previousTimestamp = timestamps[i];
+            }
+            for (int i = 0; i < rows; i++) {
+                ensure(1);
+                buffer.put(kinds[i]);
+            }
+            for (int i = 0; i < rows; i++) {
+                putVarint(packageIds[i]);
+            }
+            for (int i = 0; i < rows; i++) {
+                putVarint(zigzag(values[i]));
+            }
+            rows = 0;
+        }
+
+        private void putVarint(long value) throws IOException {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buffer.put((byte) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            buffer.put((byte) value);
+        }
+
+        private void putBytes(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensure(1);
+                int count = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, count);
+                offset += count;
+            }
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                drain();
+            }
+        }
+
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    private static final class Reader {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(IO_BUFFER_SIZE);
+        private final List<String> dictionary = new ArrayList<>();
+        private boolean endOfFile = false;
+
+        private final long[] timestamps = new long[BLOCK_ROWS];
+        private final byte[] kinds = new byte[BLOCK_ROWS];
+        private final int[] packageIds = new int[BLOCK_ROWS];
+        private final long[] values = new long[BLOCK_ROWS];
+
+        Reader(FileChannel channel) {
+            this.channel = channel;
+            buffer.flip(); // start empty
+        }
+
+        int readAll(HistoryLog.RecordSink sink) throws IOException {
+            fill(MAGIC.length + 1);
+            for (byte b : MAGIC) {
+                if (buffer.get() != b) {
+                    throw new IOException("Not a FocusGuard history export");
+                }
+            }
+            byte version = buffer.get();
+            if (version != VERSION) {
+                throw new IOException("Unsupported history export version " + version);
+            }
+
+            int total = 0;
+            long previousTimestamp = 0;
+            while (true) {
+                int rows = (int) getVarint();
+                if (rows == 0) {
+                    break;
+                }
+                if (rows > BLOCK_ROWS) {
+                    throw new IOException("Corrupt history export: block of " + rows + " rows");
+                }
+                int newEntries = (int) getVarint();
+                for (int i = 0; i < newEntries; i++) {
+                    dictionary.add(getString((int) getVarint()));
+                }
+                for (int i = 0; i < rows; i++) {
+                    previousTimestamp += unzigzag(getVarint());
+                    timestamps[i] = previousTimestamp;
+                }
+                for (int i = 0; i < rows; i++) {
+                    fill(1);
+                    kinds[i] = buffer.get();
+                }
+                for (int i = 0; i < rows; i++) {
+                    packageIds[i] = (int) getVarint();
+                    if (packageIds[i] >= dictionary.size()) {
+                        throw new IOException("Corrupt history export: unknown package id " + packageIds[i]);
+                    }
+                }
+                for (int i = 0; i < rows; i++) {
+                    values[i] = unzigzag(getVarint());
+                }
+                for (int i = 0; i < rows; i++) {
+                    sink.onRecord(timestamps[i], kinds[i], dictionary.get(packageIds[i]), values[i]);
+                }
+                total += rows;
+            }
+            return total;
+        }
+
+        private long getVarint() throws IOException {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                fill(1);
+                byte b = buffer.get();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IOException("Corrupt history export: varint too long");
+        }
+
+        private String getString(int length) throws IOException {
+            byte[] bytes = new byte[length];
+            int offset = 0;
+            while (offset < length) {
+                fill(1);
+                int count = Math.min(buffer.remaining(), length - offset);
+                buffer.get(bytes, offset, count);
+                offset += count;
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        /** Makes sure at least {@code bytes} bytes are buffered, failing on a truncated file. */
+        private void fill(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return;
+            }
+            buffer.compact();
+            while (buffer.position() < bytes && !endOfFile) {
+                if (channel.read(buffer) < 0) {
+                    endOfFile = true;
+                }
+            }
+            buffer.flip();
+            if (buffer.remaining() < bytes) {
+                throw new IOException("Truncated history export");
+            }
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
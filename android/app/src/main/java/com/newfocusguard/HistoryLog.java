@@ -0,0 +1,292 @@
+package com.newfocusguard;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Append-only native log of usage sessions and lock events.
+ *
+ * Records are written by AppMonitoringService as they happen, so history keeps
+ * growing even when the React runtime is not alive. Each record is
+ * (timestamp, kind, packageName, value) and is read back with a streaming scan,
+ * never by loading the whole file.
+ *
+ * The file is compacted when it passes {@link #MAX_BYTES}: records older than
+ * {@link #RETENTION_MS} go first, then the oldest ones until it is back under
+ * {@link #COMPACT_TARGET_BYTES}. Imports are merged in by timestamp, skipping
+ * records the log already has.
+ */
+class HistoryLog {
+    private static final String TAG = "FocusGuardHistory";
+    private static final String FILE_NAME = "focusguard_history.log";
+    private static final int BUFFER_SIZE = 8 * 1024;
+    static final long MAX_BYTES = 8L * 1024 * 1024;
+    private static final long RETENTION_MS = 400L * 24 * 60 * 60 * 1000; // a year of insights, with slack
+
+    // Record kinds. Values are persisted, never renumber them.
+    static final byte KIND_SESSION = 1;          // value = foreground duration in ms
+    static final byte KIND_BLOCKED = 2;          // value unused
+    static final byte KIND_EMERGENCY_UNLOCK = 3; // value unused
+    static final byte KIND_LOCK_EXPIRED = 4;     // value = original unlock time
+    static final byte KIND_SCHEDULE_START = 5;   // value unused
+    static final byte KIND_SCHEDULE_END = 6;     // value unused
+    static final byte KIND_LOCKED = 7;           // value = unlock time, -1 for indefinite
+    static final byte KIND_UNLOCKED = 8;         // value unused
+    static final byte KIND_QUOTA_EXHAUSTED = 9;  // value = daily usage in ms when it ran out
+
+    interface RecordSink {
+        void onRecord(long timestamp, byte kind, String packageName, long value) throws IOException;
+    }
+
+    /** One record held in memory, for imports and rows coming from outside the log. */
+    static final class Record {
+        final long timestamp;
+        final byte kind;
+        final String packageName;
+        final long value;
+
+        Record(long timestamp, byte kind, String packageName, long value) {
+            this.timestamp = timestamp;
+            this.kind = kind;
+            this.packageName = packageName;
+            this.value = value;
+        }
+
+        /** Two records with the same key are the same event, whatever their value. */
+        static String key(long timestamp, byte kind, String packageName) {
+            return timestamp + "|" + kind + "|" + packageName;
+        }
+    }
+
+    private static HistoryLog instance;
+
+    private final File file;
+    private final long maxBytes;
+    private final long retentionMs;
+    private DataOutputStream out;
+    private long length = -1; // bytes in the file, -1 until the first append reads it
+
+    private HistoryLog(Context context) {
+        this(new File(context.getFilesDir(), FILE_NAME), MAX_BYTES, RETENTION_MS);
+    }
+
+    HistoryLog(File file, long maxBytes, long retentionMs) {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.retentionMs = retentionMs;
+    }
+
+    static synchronized HistoryLog getInstance(Context context) {
+        if (instance == null) {
+            instance = new HistoryLog(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    synchronized void append(long timestamp, byte kind, String packageName, long value) {
+        if (packageName == null) {
+            return;
+        }
+        try {
+            if (out == null) {
+                out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true), BUFFER_SIZE));
+                length = file.length();
+            }
+            write(out, timestamp, kind, packageName, value);
+            // Flush per record so a killed process loses at most the record being written.
+            out.flush();
+            length += recordSize(packageName);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to append history record for " + packageName, e);
+            closeQuietly();
+            return;
+        }
+        if (length > maxBytes) {
+            try {
+                compact(System.currentTimeMillis());
+            } catch (IOException e) {
+                Log.e(TAG, "History compaction failed", e);
+            }
+        }
+    }
+
+    /**
+     * Drops records older than the retention window, then the oldest remaining ones until
+     * the file is under three quarters of the size limit. Records keep their file order.
+     */
+    synchronized void compact(long now) throws IOException {
+        closeQuietly();
+        if (!file.exists()) {
+            return;
+        }
+        final long cutoff = now - retentionMs;
+        final long target = maxBytes / 4 * 3;
+        final long[] retained = {0};
+        scanAll(file, (timestamp, kind, packageName, value) -> {
+            if (timestamp >= cutoff) {
+                retained[0] += recordSize(packageName);
+            }
+        });
+        final long before = file.length();
+        final long[] remaining = {retained[0]};
+        final File temp = new File(file.getPath() + ".tmp");
+        try (final DataOutputStream compacted = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE))) {
+            scanAll(file, (timestamp, kind, packageName, value) -> {
+                if (timestamp < cutoff) {
+                    return;
+                }
+                if (remaining[0] > target) {
+                    remaining[0] -= recordSize(packageName);
+                    return;
+                }
+                write(compacted, timestamp, kind, packageName, value);
+            });
+        }
+        replaceWith(temp);
+        Log.d(TAG, "Compacted history from " + before + " to " + file.length() + " bytes");
+    }
+
+    /**
+     * Merges records into the log in timestamp order and returns how many were new. Records
+     * whose (timestamp, kind, package) the log already holds, or that repeat within
+     * {@code records}, are skipped, so importing the same export twice adds nothing.
+     */
+    synchronized int merge(List<Record> records) throws IOException {
+        closeQuietly();
+        final Set<String> wanted = new HashSet<>();
+        for (Record record : records) {
+            wanted.add(Record.key(record.timestamp, record.kind, record.packageName));
+        }
+        if (file.exists()) {
+            scanAll(file, (timestamp, kind, packageName, value) -> wanted.remove(Record.key(timestamp, kind, packageName)));
+        }
+        final List<Record> added = new ArrayList<>();
+        for (Record record : records) {
+            if (wanted.remove(Record.key(record.timestamp, record.kind, record.packageName))) {
+                added.add(record);
+            }
+        }
+        if (added.isEmpty()) {
+            return 0;
+        }
+        Collections.sort(added, (a, b) -> Long.compare(a.timestamp, b.timestamp));
+
+        final File temp = new File(file.getPath() + ".tmp");
+        final int[] next = {0};
+        try (final DataOutputStream merged = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE))) {
+            if (file.exists()) {
+                scanAll(file, (timestamp, kind, packageName, value) -> {
+                    while (next[0] < added.size() && added.get(next[0]).timestamp <= timestamp) {
+                        Record record = added.get(next[0]++);
+                        write(merged, record.timestamp, record.kind, record.packageName, record.value);
+                    }
+                    write(merged, timestamp, kind, packageName, value);
+                });
+            }
+            while (next[0] < added.size()) {
+                Record record = added.get(next[0]++);
+                write(merged, record.timestamp, record.kind, record.packageName, record.value);
+            }
+        }
+        replaceWith(temp);
+        if (file.length() > maxBytes) {
+            compact(System.currentTimeMillis());
+        }
+        return added.size();
+    }
+
+    private void replaceWith(File temp) throws IOException {
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot replace " + file);
+        }
+        length = file.length();
+    }
+
+    private static void write(DataOutputStream stream, long timestamp, byte kind, String packageName, long value)
+            throws IOException {
+        stream.writeLong(timestamp);
+        stream.writeByte(kind);
+        stream.writeUTF(packageName);
+        stream.writeLong(value);
+    }
+
+    /** Bytes one record takes on disk: timestamp, kind, modified UTF-8 name with its length, value. */
+    private static long recordSize(String packageName) {
+        int utf = 0;
+        for (int i = 0; i < packageName.length(); i++) {
+            char c = packageName.charAt(i);
+            utf += c >= 0x0001 && c <= 0x007F ? 1 : c > 0x07FF ? 3 : 2;
+        }
+        return 8 + 1 + 2 + utf + 8;
+    }
+
+    /**
+     * Streams every record with fromMs <= timestamp < toMs into the sink, in file order.
+     * A truncated trailing record (process killed mid-write) simply ends the scan.
+     */
+    void scan(long fromMs, long toMs, RecordSink sink) throws IOException {
+        synchronized (this) {
+            if (out != null) {
+                out.flush();
+            }
+        }
+        if (!file.exists()) {
+            return;
+        }
+        scanAll(file, (timestamp, kind, packageName, value) -> {
+            if (timestamp >= fromMs && timestamp < toMs) {
+                sink.onRecord(timestamp, kind, packageName, value);
+            }
+        });
+    }
+
+    private static void scanAll(File source, RecordSink sink) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(source), BUFFER_SIZE))) {
+            while (true) {
+                long timestamp;
+                byte kind;
+                String packageName;
+                long value;
+                try {
+                    timestamp = in.readLong();
+                    kind = in.readByte();
+                    packageName = in.readUTF();
+                    value = in.readLong();
+                } catch (EOFException e) {
+                    break;
+                }
+                sink.onRecord(timestamp, kind, packageName, value);
+            }
+        }
+    }
+
+    private void closeQuietly() {
+        if (out == null) {
+            return;
+        }
+        try {
+            out.close();
+        } catch (IOException ignored) {
+            // Nothing useful to do, the next append reopens the file.
+        }
+        out = null;
+    }
+}
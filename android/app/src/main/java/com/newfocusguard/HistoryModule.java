@@ -0,0 +1,170 @@
+package com.newfocusguard;
+
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.bridge.ReactContextBaseJavaModule;
+import com.facebook.react.bridge.ReactMethod;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.module.annotations.ReactModule;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@ReactModule(name = HistoryModule.NAME)
+public class HistoryModule extends ReactContextBaseJavaModule {
+    public static final String NAME = "HistoryModule";
+    private static final String TAG = "FocusGuardHistory";
+    private static final String EXPORT_DIR = "exports";
+    private static final String EXPORT_EXTENSION = ".fgh";
+
+    private final ReactApplicationContext reactContext;
+    // Export and import are long-running file jobs, keep them off the bridge thread and serialized.
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    public HistoryModule(ReactApplicationContext reactContext) {
+        super(reactContext);
+        this.reactContext = reactContext;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @ReactMethod
+    public void exportHistory(final Double fromMs, final Double toMs, final ReadableArray extraRows, final Promise promise) {
+        executor.execute(() -> {
+            try {
+                long from = fromMs != null ? fromMs.longValue() : 0L;
+                long to = toMs != null ? toMs.longValue() : Long.MAX_VALUE;
+                List<HistoryLog.Record> extra = toRecords(extraRows);
+
+                File dir = reactContext.getExternalFilesDir(EXPORT_DIR);
+                if (dir == null) {
+                    dir = new File(reactContext.getFilesDir(), EXPORT_DIR);
+                }
+                if (!dir.exists() && !dir.mkdirs()) {
+                    promise.reject("EXPORT_ERROR", "Cannot create export directory " + dir);
+                    return;
+                }
+                File target = new File(dir, "history-" + System.currentTimeMillis() + EXPORT_EXTENSION);
+
+                long started = System.currentTimeMillis();
+                int rows = HistoryArchive.export(HistoryLog.getInstance(reactContext), from, to, extra, target);
+                Log.d(TAG, "Exported " + rows + " history rows (" + target.length() + " bytes) in "
+                        + (System.currentTimeMillis() - started) + " ms to " + target);
+
+                WritableMap result = Arguments.createMap();
+                result.putString("path", target.getAbsolutePath());
+                result.putInt("rows", rows);
+                result.putDouble("bytes", target.length());
+                promise.resolve(result);
+            } catch (Exception e) {
+                Log.e(TAG, "History export failed", e);
+                promise.reject("EXPORT_ERROR", e.getMessage(), e);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void importHistory(final String path, final Promise promise) {
+        executor.execute(() -> {
+            try {
+                File source = new File(path);
+                if (!source.isFile()) {
+                    promise.reject("IMPORT_ERROR", "No export file at " + path);
+                    return;
+                }
+                // The monitor process is the only writer of the history log
+                int rows = MonitorClient.getInstance(reactContext).importHistory(path);
+                Log.d(TAG, "Imported " + rows + " history rows from " + path);
+                promise.resolve(rows);
+            } catch (Exception e) {
+                Log.e(TAG, "History import failed", e);
+                promise.reject("IMPORT_ERROR", e.getMessage(), e);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void getLockStats(final Double fromMs, final Double toMs, final Promise promise) {
+        executor.execute(() -> {
+            try {
+                long from = fromMs != null ? fromMs.longValue() : 0L;
+                long to = toMs != null ? toMs.longValue() : Long.MAX_VALUE;
+                LockLedger.Stats stats = LockLedger.getInstance(reactContext).query(from, to);
+
+                WritableMap result = countersToMap(stats.total);
+                WritableArray perHour = Arguments.createArray();
+                for (int count : stats.blockCountByHourOfDay) {
+                    perHour.pushInt(count);
+                }
+                result.putArray("blockCountByHourOfDay", perHour);
+                result.putArray("apps", perAppToArray(stats.perApp));
+                promise.resolve(result);
+            } catch (Exception e) {
+                Log.e(TAG, "Lock stats query failed", e);
+                promise.reject("STATS_ERROR", e.getMessage(), e);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void getLifetimeLockCounters(Promise promise) {
+        try {
+            // Counters are kept by the service in the :monitor process
+            String json = MonitorClient.getInstance(reactContext).lifetimeCountersJson();
+            promise.resolve(perAppToArray(LockLedger.parseCounters(json)));
+        } catch (Exception e) {
+            promise.reject("STATS_ERROR", e.getMessage(), e);
+        }
+    }
+
+    /** Rows of {timestamp, kind, packageName, value} from JS; null means none. */
+    private static List<HistoryLog.Record> toRecords(ReadableArray rows) {
+        List<HistoryLog.Record> records = new ArrayList<>();
+        if (rows == null) {
+            return records;
+        }
+        for (int i = 0; i < rows.size(); i++) {
+            ReadableMap row = rows.getMap(i);
+            records.add(new HistoryLog.Record(
+                (long) row.getDouble("timestamp"),
+                (byte) row.getInt("kind"),
+                row.getString("packageName"),
+                (long) row.getDouble("value")));
+        }
+        return records;
+    }
+
+    private static WritableArray perAppToArray(Map<String, LockLedger.Counters> perApp) {
+        WritableArray apps = Arguments.createArray();
+        for (Map.Entry<String, LockLedger.Counters> entry : perApp.entrySet()) {
+            WritableMap app = countersToMap(entry.getValue());
+            app.putString("packageName", entry.getKey());
+            apps.pushMap(app);
+        }
+        return apps;
+    }
+
+    private static WritableMap countersToMap(LockLedger.Counters counters) {
+        WritableMap map = Arguments.createMap();
+        map.putInt("blocks", counters.blocks);
+        map.putInt("emergencyUnlocks", counters.emergencyUnlocks);
+        map.putInt("expiries", counters.expiries);
+        map.putInt("scheduleActivations", counters.scheduleActivations);
+        map.putInt("manualLocks", counters.manualLocks);
+        map.putDouble("bypassRate", counters.bypassRate());
+        return map;
+    }
+}
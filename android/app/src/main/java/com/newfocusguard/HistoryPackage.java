@@ -0,0 +1,29 @@
+package com.newfocusguard;
+
+import com.facebook.react.BaseReactPackage;
+import com.facebook.react.bridge.NativeModule;
+import com.facebook.react.bridge.ReactApplicationContext;
+import com.facebook.react.module.model.ReactModuleInfo;
+import com.facebook.react.module.model.ReactModuleInfoProvider;
+
+import java.util.Collections;
+
+/** Registers {@link HistoryModule} lazily: it is only constructed when JS first asks for it. */
+public class HistoryPackage extends BaseReactPackage {
+    @Override
+    public NativeModule getModule(String name, ReactApplicationContext reactContext) {
+        return HistoryModule.NAME.equals(name) ? new HistoryModule(reactContext) : null;
+    }
+
+    @Override
+    public ReactModuleInfoProvider getReactModuleInfoProvider() {
+        return () -> Collections.singletonMap(HistoryModule.NAME, new ReactModuleInfo(
+            HistoryModule.NAME,
+            HistoryModule.class.getName(),
+            false, // canOverrideExistingModule
+            false, // needsEagerInit
+            false, // isCxxModule
+            false  // isTurboModule, served through the new architecture's interop layer
+        ));
+    }
+}
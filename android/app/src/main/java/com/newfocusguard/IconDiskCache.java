@@ -0,0 +1,267 @@
+package com.newfocusguard;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * App icons rendered once and kept as files, handed to JS as file:// URIs.
+ *
+ * Icons are drawn straight into a bitmap of the requested size, so an adaptive or vector icon
+ * is never rasterized at its full 432px first, and stored as lossy WebP. The bitmaps come from
+ * a small pool per size, there being only as many in use as threads rendering.
+ *
+ * Entries are named {package}_{versionCode}_{densityDpi}_{sizePx}.webp, so an update or a
+ * density change is a different file and a different URI, and the image pipeline's own caches
+ * cannot show the old icon. Lookups always read the current versionCode first; files of an
+ * earlier version are deleted when a replacement is written, and the monitor process drops a
+ * package's files when it sees the package change. The directory is kept under {@link #MAX_BYTES} by evicting
+ * the least recently used files, recency surviving restarts through the files' mtime, which a
+ * hit refreshes at most once a day.
+ */
+final class IconDiskCache {
+    private static final String TAG = "FocusGuardIconCache";
+    private static final String DIR_NAME = "app_icons";
+    private static final String EXTENSION = ".webp";
+    private static final int WEBP_QUALITY = 85;
+    static final long MAX_BYTES = 16L * 1024 * 1024;
+    // What the app's lists show icons at; callers that know better pass a size in pixels
+    static final int DEFAULT_SIZE_DP = 48;
+    private static final int MAX_SIZE_PX = 512;
+    private static final int POOLED_PER_SIZE = 4;
+    // mtime only orders eviction across restarts, a day's precision is plenty
+    private static final long TOUCH_INTERVAL_MS = 24L * 60 * 60 * 1000;
+
+    private static IconDiskCache instance;
+
+    private final PackageManager packageManager;
+    private final File dir;
+    private final int densityDpi;
+    private final int defaultSizePx;
+    private final Map<Integer, ArrayDeque<Bitmap>> bitmapPool = new HashMap<>();
+    // File name -> size, least recently used first; loaded from the directory on first use
+    private LinkedHashMap<String, Long> index;
+    private long totalBytes;
+
+    private IconDiskCache(Context context) {
+        this.packageManager = context.getPackageManager();
+        this.dir = new File(context.getCacheDir(), DIR_NAME);
+        this.densityDpi = context.getResources().getDisplayMetrics().densityDpi;
+        this.defaultSizePx = Math.round(DEFAULT_SIZE_DP * context.getResources().getDisplayMetrics().density);
+    }
+
+    static synchronized IconDiskCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new IconDiskCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /** file:// URI of the package's current icon at {@link #DEFAULT_SIZE_DP}. */
+    String iconUri(String packageName) throws PackageManager.NameNotFoundException, IOException {
+        return iconUri(packageName, defaultSizePx);
+    }
+
+    /** file:// URI of the package's current icon, sizePx square, rendering and storing it on a miss. */
+    String iconUri(String packageName, int sizePx) throws PackageManager.NameNotFoundException, IOException {
+        int size = sizePx > 0 ? Math.min(sizePx, MAX_SIZE_PX) : defaultSizePx;
+        PackageInfo info = packageManager.getPackageInfo(packageName, 0);
+        String version = versionPrefix(packageName, versionCodeOf(info), densityDpi);
+        String name = version + size + EXTENSION;
+        File file = new File(dir, name);
+        synchronized (this) {
+            ensureIndex();
+            if (index.get(name) != null && file.exists()) {
+                // The in-memory index already recorded the access, only persist it now and then
+                long now = System.currentTimeMillis();
+                if (now - file.lastModified() > TOUCH_INTERVAL_MS) {
+                    file.setLastModified(now);
+                }
+                return Uri.fromFile(file).toString();
+            }
+        }
+
+        // Render outside the lock, two threads racing on one package both write the same bytes
+        Drawable icon = packageManager.getApplicationIcon(info.applicationInfo);
+        File temp = new File(dir, name + ".tmp" + Thread.currentThread().getId());
+        if (!dir.exists() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+        Bitmap bitmap = acquireBitmap(size);
+        try (OutputStream out = new FileOutputStream(temp)) {
+            render(icon, bitmap);
+            bitmap.compress(webpFormat(), WEBP_QUALITY, out);
+        } finally {
+            releaseBitmap(bitmap);
+        }
+        synchronized (this) {
+            if (!temp.renameTo(file)) {
+                temp.delete();
+                throw new IOException("Cannot store icon of " + packageName);
+            }
+            removeOtherVersions(packageName, version);
+            Long previous = index.put(name, file.length());
+            totalBytes += file.length() - (previous != null ? previous : 0);
+            trim();
+        }
+        Log.d(TAG, "Cached icon of " + packageName + " (" + file.length() + " bytes)");
+        return Uri.fromFile(file).toString();
+    }
+
+    /** Drops every cached icon of a package, after it was updated, changed or removed. */
+    synchronized void invalidate(String packageName) {
+        if (index != null) {
+            removeOtherVersions(packageName, null);
+            return;
+        }
+        // Not loaded in this process, the directory is the index
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (packageName.equals(packageOf(file.getName()))) {
+                file.delete();
+            }
+        }
+    }
+
+    /** Removes the package's files not starting with keepPrefix, all of them when it is null. */
+    private void removeOtherVersions(String packageName, String keepPrefix) {
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            String name = entry.getKey();
+            if ((keepPrefix == null || !name.startsWith(keepPrefix)) && packageName.equals(packageOf(name))) {
+                new File(dir, name).delete();
+                totalBytes -= entry.getValue();
+                it.remove();
+            }
+        }
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Long>> it = index.entrySet().iterator();
+        while (totalBytes > MAX_BYTES && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            new File(dir, eldest.getKey()).delete();
+            totalBytes -= eldest.getValue();
+            it.remove();
+        }
+    }
+
+    private void ensureIndex() {
+        if (index != null) {
+            return;
+        }
+        index = new LinkedHashMap<>(64, 0.75f, true);
+        totalBytes = 0;
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (!file.getName().endsWith(EXTENSION)) {
+                file.delete(); // a temp file left by a killed process
+                continue;
+            }
+            index.put(file.getName(), file.length());
+            totalBytes += file.length();
+        }
+        Log.d(TAG, "Loaded " + index.size() + " cached icons, " + totalBytes + " bytes");
+        trim();
+    }
+
+    private Bitmap acquireBitmap(int size) {
+        synchronized (bitmapPool) {
+            ArrayDeque<Bitmap> free = bitmapPool.get(size);
+            Bitmap bitmap = free != null ? free.poll() : null;
+            if (bitmap != null) {
+                bitmap.eraseColor(Color.TRANSPARENT);
+                return bitmap;
+            }
+        }
+        return Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+    }
+
+    private void releaseBitmap(Bitmap bitmap) {
+        synchronized (bitmapPool) {
+            ArrayDeque<Bitmap> free = bitmapPool.get(bitmap.getWidth());
+            if (free == null) {
+                free = new ArrayDeque<>(POOLED_PER_SIZE);
+                bitmapPool.put(bitmap.getWidth(), free);
+            }
+            if (free.size() < POOLED_PER_SIZE) {
+                free.push(bitmap);
+                return;
+            }
+        }
+        bitmap.recycle();
+    }
+
+    /** Draws the icon scaled into the square bitmap, centered and keeping its aspect ratio. */
+    private static void render(Drawable drawable, Bitmap target) {
+        int size = target.getWidth();
+        // Some drawables (colors, insets) have no intrinsic size, those just fill the square
+        int width = drawable.getIntrinsicWidth();
+        int height = drawable.getIntrinsicHeight();
+        int drawWidth = size;
+        int drawHeight = size;
+        if (width > 0 && height > 0 && width != height) {
+            if (width > height) {
+                drawHeight = Math.max(1, size * height / width);
+            } else {
+                drawWidth = Math.max(1, size * width / height);
+            }
+        }
+        int left = (size - drawWidth) / 2;
+        int top = (size - drawHeight) / 2;
+        drawable.setBounds(left, top, left + drawWidth, top + drawHeight);
+        drawable.draw(new Canvas(target));
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat webpFormat() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+            ? Bitmap.CompressFormat.WEBP_LOSSY
+            : Bitmap.CompressFormat.WEBP;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static long versionCodeOf(PackageInfo info) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.P ? info.getLongVersionCode() : info.versionCode;
+    }
+
+    /** File names are this followed by {sizePx}.webp; every size of one version shares it. */
+    static String versionPrefix(String packageName, long versionCode, int densityDpi) {
+        return packageName + "_" + versionCode + "_" + densityDpi + "_";
+    }
+
+    /** Package of a cache file name; package names may contain '_', so count from the end. */
+    static String packageOf(String fileName) {
+        int sep = fileName.length();
+        for (int fields = 0; fields < 3 && sep > 0; fields++) {
+            sep = fileName.lastIndexOf('_', sep - 1);
+        }
+        return sep > 0 ? fileName.substring(0, sep) : null;
+    }
+}
@@ -0,0 +1,605 @@
+package com.newfocusguard;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.ChangedPackages;
+import android.content.pm.LauncherActivityInfo;
+import android.content.pm.LauncherApps;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.UserHandle;
+import android.os.UserManager;
+import android.provider.Settings;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The apps the picker lists, with labels and versions, kept in memory for the UI process.
+ *
+ * Built once with two PackageManager calls (all packages, all launcher activities) instead of
+ * one launch-intent lookup per system app, then patched per package from LauncherApps
+ * callbacks. Every change bumps a generation number and stamps the entries it touched, removed
+ * packages staying behind as tombstones, so JS asks only for what changed since the generation
+ * it holds. Generations restart with the process; {@link #epoch} tells JS when to read it all again.
+ *
+ * The index is also written to a small binary snapshot. At a cold start that snapshot is
+ * memory-mapped and served as generation 1 straight away, while a full scan runs on a second
+ * thread; whatever the scan finds different becomes generation 2, so JS renders the stale list
+ * at once and receives the corrections as an ordinary delta. Labels are those of the locale
+ * in the snapshot's header, a snapshot from another locale is ignored.
+ *
+ * Apps installed only in a work profile are listed too, read through LauncherApps for each
+ * profile of the user, so rules can name them. Rules match package names, so a package in both
+ * profiles is one entry, the personal one. PackageManager cannot read another profile's
+ * packages, so those entries carry the launcher label and no version.
+ *
+ * The full scan only runs when the snapshot is stale or dirty: missing, from another locale,
+ * boot or format, or older than {@link #SNAPSHOT_MAX_AGE_MS}. Otherwise the packages
+ * PackageManager reports changed since the snapshot's sequence number (API 26+) are patched in
+ * one by one, and a snapshot nothing changed since is served as it is.
+ *
+ * Snapshot layout: "FGAI", a version byte, the boot count, the package change sequence number,
+ * the write time, the locale tag, an entry count, then per entry the
+ * package name, label and versionName (u16 length + UTF-8 each), the versionCode (which is also
+ * the version part of the icon cache key) and a flag byte (1 system, 2 work profile).
+ */
+final class InstalledAppIndex {
+    private static final String TAG = "FocusGuardAppIndex";
+    private static final String SNAPSHOT_FILE = "installed_apps.idx";
+    private static final byte[] MAGIC = {'F', 'G', 'A', 'I'};
+    private static final byte VERSION = 2;
+    private static final long SNAPSHOT_MAX_AGE_MS = 7L * 24 * 60 * 60 * 1000;
+
+    interface Listener {
+        /** Called on the index thread after the generation moved. */
+        void onAppsChanged(long generation);
+    }
+
+    interface ChangesReader {
+        /** Called on the index thread. */
+        void onChanges(Changes changes);
+    }
+
+    static final class Entry {
+        final String packageName;
+        final String label;
+        final String versionName;
+        final long versionCode;
+        final boolean system;
+        final boolean workProfile;
+        final boolean removed;
+        final long generation;
+
+        Entry(String packageName, String label, String versionName, long versionCode, boolean system,
+              boolean workProfile, boolean removed, long generation) {
+            this.packageName = packageName;
+            this.label = label;
+            this.versionName = versionName;
+            this.versionCode = versionCode;
+            this.system = system;
+            this.workProfile = workProfile;
+            this.removed = removed;
+            this.generation = generation;
+        }
+
+        Entry withGeneration(long newGeneration) {
+            return new Entry(packageName, label, versionName, versionCode, system, workProfile, removed,
+                newGeneration);
+        }
+
+        Entry tombstone(long newGeneration) {
+            return new Entry(packageName, label, versionName, versionCode, system, workProfile, true, newGeneration);
+        }
+
+        /** Same content as another entry, whatever the generations. */
+        boolean sameAs(Entry other) {
+            return other != null && removed == other.removed && system == other.system
+                && workProfile == other.workProfile && versionCode == other.versionCode
+                && label.equals(other.label) && versionName.equals(other.versionName);
+        }
+    }
+
+    /** Entries changed after a generation; {@code reset} when the caller's generation is from another epoch. */
+    static final class Changes {
+        final long epoch;
+        final long generation;
+        final boolean reset;
+        final List<Entry> changed;
+
+        Changes(long epoch, long generation, boolean reset, List<Entry> changed) {
+            this.epoch = epoch;
+            this.generation = generation;
+            this.reset = reset;
+            this.changed = changed;
+        }
+    }
+
+    private static InstalledAppIndex instance;
+
+    final long epoch = System.currentTimeMillis();
+
+    private final PackageManager packageManager;
+    private final LauncherApps launcherApps;
+    private final UserManager userManager;
+    private final File snapshotFile;
+    private final UserHandle user = Process.myUserHandle();
+    private final int bootCount; // -1 when unknown, then every start rescans
+    // Index thread: every change and every read run on it in order. Entries are only touched here.
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // The full PackageManager scan runs here, so reads are not queued behind it
+    private final ExecutorService scanExecutor = Executors.newSingleThreadExecutor();
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Map<String, Entry> entries = new HashMap<>(); // live and tombstones
+    private final List<Runnable> waitingReads = new ArrayList<>();
+    private long generation;
+    private boolean ready; // a snapshot was loaded or the first scan is in
+    // PackageManager change sequence the entries are known to be current with, this boot
+    private int sequenceNumber;
+    private int snapshotBootCount = -1;
+    private long snapshotWrittenAt;
+
+    private InstalledAppIndex(Context context) {
+        this.packageManager = context.getPackageManager();
+        this.launcherApps = context.getSystemService(LauncherApps.class);
+        this.userManager = context.getSystemService(UserManager.class);
+        this.snapshotFile = new File(context.getFilesDir(), SNAPSHOT_FILE);
+        this.bootCount = Settings.Global.getInt(context.getContentResolver(), Settings.Global.BOOT_COUNT, -1);
+    }
+
+    static synchronized InstalledAppIndex getInstance(Context context) {
+        if (instance == null) {
+            instance = new InstalledAppIndex(context.getApplicationContext());
+            instance.start();
+        }
+        return instance;
+    }
+
+    void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Runs {@code reader} on the index thread, as soon as there is a snapshot or a scan to read,
+     * with the entries changed after {@code sinceGeneration} of {@code sinceEpoch}, or every live
+     * entry after a reset.
+     */
+    void readChangesSince(final long sinceEpoch, final long sinceGeneration, final ChangesReader reader) {
+        executor.execute(() -> {
+            Runnable read = () -> {
+                boolean reset = sinceEpoch != epoch || sinceGeneration > generation;
+                List<Entry> changed = new ArrayList<>();
+                for (Entry entry : entries.values()) {
+                    if (reset ? !entry.removed : entry.generation > sinceGeneration) {
+                        changed.add(entry);
+                    }
+                }
+                reader.onChanges(new Changes(epoch, generation, reset, changed));
+            };
+            if (ready) {
+                read.run();
+            } else {
+                waitingReads.add(read);
+            }
+        });
+    }
+
+    private void start() {
+        executor.execute(() -> {
+            loadSnapshot();
+            if (!patchChangedSinceSnapshot()) {
+                scanExecutor.execute(this::scan);
+            }
+        });
+        if (launcherApps != null) {
+            // Callbacks only post to our thread, the main looper is never blocked by them
+            launcherApps.registerCallback(new LauncherApps.Callback() {
+                @Override
+                public void onPackageAdded(String packageName, UserHandle changedUser) {
+                    onPackagesChanged(changedUser, false, packageName);
+                }
+
+                @Override
+                public void onPackageChanged(String packageName, UserHandle changedUser) {
+                    onPackagesChanged(changedUser, false, packageName);
+                }
+
+                @Override
+                public void onPackageRemoved(String packageName, UserHandle changedUser) {
+                    onPackagesChanged(changedUser, true, packageName);
+                }
+
+                @Override
+                public void onPackagesAvailable(String[] packageNames, UserHandle changedUser, boolean replacing) {
+                    onPackagesChanged(changedUser, false, packageNames);
+                }
+
+                @Override
+                public void onPackagesUnavailable(String[] packageNames, UserHandle changedUser, boolean replacing) {
+                    if (!replacing) {
+                        onPackagesChanged(changedUser, true, packageNames);
+                    }
+                }
+            }, new Handler(Looper.getMainLooper()));
+        }
+    }
+
+    private void onPackagesChanged(UserHandle changedUser, final boolean removed, final String... packageNames) {
+        // Gone from a work profile may still mean installed in this one, so those are re-read
+        final boolean removedEverywhere = removed && user.equals(changedUser);
+        executor.execute(() -> applyPackageChanges(removedEverywhere, packageNames));
+    }
+
+    /** Re-reads each package, or tombstones it when {@code removed} or gone; on the index thread. */
+    private void applyPackageChanges(boolean removed, String... packageNames) {
+        long next = generation + 1;
+        for (String packageName : packageNames) {
+            Entry entry = removed ? null : readEntry(packageName, next);
+            if (entry == null) {
+                Entry previous = entries.get(packageName);
+                if (previous == null || previous.removed) {
+                    continue;
+                }
+                entry = previous.tombstone(next);
+            } else if (entry.sameAs(entries.get(packageName))) {
+                continue;
+            }
+            entries.put(packageName, entry);
+            generation = next;
+            Log.d(TAG, (entry.removed ? "Removed " : "Updated ") + packageName + ", generation " + generation);
+        }
+        if (generation == next) {
+            notifyListeners();
+            if (ready) {
+                writeSnapshot(); // otherwise the first scan writes it
+            }
+        }
+    }
+
+    /**
+     * Brings a fresh snapshot up to date from PackageManager's change log instead of a full scan.
+     * Returns false when the snapshot is stale or dirty and only a scan can be trusted.
+     */
+    private boolean patchChangedSinceSnapshot() {
+        if (!ready || Build.VERSION.SDK_INT < Build.VERSION_CODES.O || bootCount < 0
+                || snapshotBootCount != bootCount) {
+            return false;
+        }
+        long age = System.currentTimeMillis() - snapshotWrittenAt;
+        if (age < 0 || age > SNAPSHOT_MAX_AGE_MS) {
+            return false;
+        }
+        ChangedPackages changes = packageManager.getChangedPackages(sequenceNumber);
+        if (changes != null) {
+            List<String> changed = changes.getPackageNames();
+            sequenceNumber = changes.getSequenceNumber();
+            Log.d(TAG, changed.size() + " packages changed since the snapshot, patching them");
+            applyPackageChanges(false, changed.toArray(new String[0]));
+        } else {
+            Log.d(TAG, "Snapshot is current at sequence " + sequenceNumber);
+        }
+        // The change log only covers this profile; the work profile's launcher list is cheap to re-read
+        patchWorkProfileApps();
+        if (changes != null) {
+            writeSnapshot(); // records the new sequence number even when no listed package changed
+        }
+        return true;
+    }
+
+    /** Brings the work-profile-only entries in line with the other profiles' launcher lists. */
+    private void patchWorkProfileApps() {
+        Map<String, Entry> current = new HashMap<>();
+        addWorkProfileApps(current);
+        long next = generation + 1;
+        for (Entry entry : current.values()) {
+            Entry previous = entries.get(entry.packageName);
+            boolean personal = previous != null && !previous.removed && !previous.workProfile;
+            if (!personal && !entry.sameAs(previous)) {
+                entries.put(entry.packageName, entry.withGeneration(next));
+                generation = next;
+            }
+        }
+        for (Entry entry : new ArrayList<>(entries.values())) {
+            if (entry.workProfile && !entry.removed && !current.containsKey(entry.packageName)) {
+                entries.put(entry.packageName, entry.tombstone(next));
+                generation = next;
+            }
+        }
+        if (generation == next) {
+            Log.d(TAG, "Work profile apps changed, generation " + generation);
+            notifyListeners();
+            writeSnapshot();
+        }
+    }
+
+    /** Launchable apps of the user's other profiles that {@code apps} does not already hold. */
+    private void addWorkProfileApps(Map<String, Entry> apps) {
+        if (launcherApps == null || userManager == null) {
+            return;
+        }
+        for (UserHandle profile : userManager.getUserProfiles()) {
+            if (user.equals(profile)) {
+                continue;
+            }
+            for (LauncherActivityInfo activity : launcherApps.getActivityList(null, profile)) {
+                String packageName = activity.getComponentName().getPackageName();
+                if (!apps.containsKey(packageName)) {
+                    apps.put(packageName, toWorkProfileEntry(activity, 0));
+                }
+            }
+        }
+    }
+
+    /** Full PackageManager scan on the scan thread, merged into the index on the index thread. */
+    private void scan() {
+        long started = SystemClock.elapsedRealtime();
+        // Read before the scan, so a change racing it is patched again at the next start
+        final int scanSequence = currentSequenceNumber();
+        Set<String> launchable = launchablePackages();
+        List<PackageInfo> packages = packageManager.getInstalledPackages(0);
+        final Map<String, Entry> scanned = new HashMap<>();
+        for (PackageInfo info : packages) {
+            Entry entry = toEntry(info, launchable.contains(info.packageName), 0);
+            if (entry != null) {
+                scanned.put(info.packageName, entry);
+            }
+        }
+        addWorkProfileApps(scanned);
+        Log.d(TAG, "Scanned " + scanned.size() + " of " + packages.size() + " packages in "
+            + (SystemClock.elapsedRealtime() - started) + "ms");
+        executor.execute(() -> applyScan(scanned, scanSequence));
+    }
+
+    private int currentSequenceNumber() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            return 0;
+        }
+        ChangedPackages changes = packageManager.getChangedPackages(0);
+        return changes != null ? changes.getSequenceNumber() : 0;
+    }
+
+    /** Revalidates what the snapshot said: only entries that differ get the new generation. */
+    private void applyScan(Map<String, Entry> scanned, int scanSequence) {
+        long next = generation + 1;
+        int changed = 0;
+        for (Entry entry : scanned.values()) {
+            if (!entry.sameAs(entries.get(entry.packageName))) {
+                entries.put(entry.packageName, entry.withGeneration(next));
+                changed++;
+            }
+        }
+        for (Entry entry : new ArrayList<>(entries.values())) {
+            if (!entry.removed && !scanned.containsKey(entry.packageName)) {
+                entries.put(entry.packageName, entry.tombstone(next));
+                changed++;
+            }
+        }
+        sequenceNumber = scanSequence;
+        // Published before the waiting reads run, so they report the generation they were served
+        if (changed > 0) {
+            generation = next;
+        }
+        boolean wasReady = ready;
+        ready = true;
+        for (Runnable read : waitingReads) {
+            read.run();
+        }
+        waitingReads.clear();
+        if (changed > 0) {
+            Log.d(TAG, (wasReady ? "Snapshot was stale, " : "No snapshot, ") + changed
+                + " entries changed, generation " + generation);
+            notifyListeners();
+        }
+        writeSnapshot(); // also refreshes the sequence number and write time of an unchanged one
+    }
+
+    private void loadSnapshot() {
+        if (!snapshotFile.exists()) {
+            return;
+        }
+        long started = SystemClock.elapsedRealtime();
+        try (FileInputStream stream = new FileInputStream(snapshotFile);
+             FileChannel channel = stream.getChannel()) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            for (byte b : MAGIC) {
+                if (buffer.get() != b) {
+                    throw new IOException("Not an app index snapshot");
+                }
+            }
+            if (buffer.get() != VERSION) {
+                return;
+            }
+            int snapshotBoot = buffer.getInt();
+            int snapshotSequence = buffer.getInt();
+            long writtenAt = buffer.getLong();
+            String locale = readString(buffer);
+            if (!locale.equals(Locale.getDefault().toLanguageTag())) {
+                Log.d(TAG, "Snapshot labels are " + locale + ", waiting for the scan");
+                return;
+            }
+            int count = buffer.getInt();
+            long snapshotGeneration = generation + 1;
+            for (int i = 0; i < count; i++) {
+                String packageName = readString(buffer);
+                String label = readString(buffer);
+                String versionName = readString(buffer);
+                long versionCode = buffer.getLong();
+                byte flags = buffer.get();
+                entries.put(packageName, new Entry(packageName, label, versionName, versionCode, (flags & 1) != 0,
+                    (flags & 2) != 0, false, snapshotGeneration));
+            }
+            generation = snapshotGeneration;
+            sequenceNumber = snapshotSequence;
+            snapshotBootCount = snapshotBoot;
+            snapshotWrittenAt = writtenAt;
+            ready = true;
+            Log.d(TAG, "Loaded " + count + " apps from the snapshot in "
+                + (SystemClock.elapsedRealtime() - started) + "ms");
+        } catch (Exception e) {
+            Log.w(TAG, "Ignoring unreadable app index snapshot: " + e.getMessage());
+            entries.clear();
+        }
+    }
+
+    /** Rewrites the snapshot from the live entries, through a temp file so a reader never sees half of one. */
+    private void writeSnapshot() {
+        List<byte[]> fields = new ArrayList<>();
+        int size = MAGIC.length + 1 + 4 + 4 + 8 + 4;
+        byte[] locale = Locale.getDefault().toLanguageTag().getBytes(StandardCharsets.UTF_8);
+        size += 2 + locale.length;
+        int count = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.removed) {
+                continue;
+            }
+            count++;
+            for (String field : new String[] {entry.packageName, entry.label, entry.versionName}) {
+                byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+                fields.add(bytes);
+                size += 2 + Math.min(bytes.length, 0xFFFF);
+            }
+            size += 8 + 1;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(MAGIC).put(VERSION);
+        buffer.putInt(bootCount).putInt(sequenceNumber).putLong(System.currentTimeMillis());
+        putString(buffer, locale);
+        buffer.putInt(count);
+        int field = 0;
+        for (Entry entry : entries.values()) {
+            if (entry.removed) {
+                continue;
+            }
+            putString(buffer, fields.get(field++));
+            putString(buffer, fields.get(field++));
+            putString(buffer, fields.get(field++));
+            buffer.putLong(entry.versionCode);
+            buffer.put((byte) ((entry.system ? 1 : 0) | (entry.workProfile ? 2 : 0)));
+        }
+        buffer.flip();
+        File temp = new File(snapshotFile.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp);
+             FileChannel channel = stream.getChannel()) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write the app index snapshot", e);
+            return;
+        }
+        if (!temp.renameTo(snapshotFile)) {
+            Log.e(TAG, "Failed to replace the app index snapshot");
+        }
+    }
+
+    private static void putString(ByteBuffer buffer, byte[] bytes) {
+        int length = Math.min(bytes.length, 0xFFFF);
+        buffer.putShort((short) length);
+        buffer.put(bytes, 0, length);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Current entry of one package, from this profile or else a work profile, or null when it is
+     * gone or not something the picker lists.
+     */
+    private Entry readEntry(String packageName, long entryGeneration) {
+        Entry entry = null;
+        try {
+            PackageInfo info = packageManager.getPackageInfo(packageName, 0);
+            boolean launchable = launcherApps != null
+                ? !launcherApps.getActivityList(packageName, user).isEmpty()
+                : packageManager.getLaunchIntentForPackage(packageName) != null;
+            entry = toEntry(info, launchable, entryGeneration);
+        } catch (PackageManager.NameNotFoundException e) {
+            // Not in this profile
+        }
+        if (entry != null || launcherApps == null || userManager == null) {
+            return entry;
+        }
+        for (UserHandle profile : userManager.getUserProfiles()) {
+            if (user.equals(profile)) {
+                continue;
+            }
+            List<LauncherActivityInfo> activities = launcherApps.getActivityList(packageName, profile);
+            if (!activities.isEmpty()) {
+                return toWorkProfileEntry(activities.get(0), entryGeneration);
+            }
+        }
+        return null;
+    }
+
+    /** Same rule as streamInstalledApps: user apps, and system apps with a launcher entry. */
+    private Entry toEntry(PackageInfo info, boolean launchable, long entryGeneration) {
+        ApplicationInfo app = info.applicationInfo;
+        if (app == null) {
+            return null;
+        }
+        boolean system = (app.flags & ApplicationInfo.FLAG_SYSTEM) != 0;
+        if (system && !launchable) {
+            return null;
+        }
+        return new Entry(info.packageName, packageManager.getApplicationLabel(app).toString(),
+            info.versionName != null ? info.versionName : "", versionCodeOf(info), system, false, false,
+            entryGeneration);
+    }
+
+    private static Entry toWorkProfileEntry(LauncherActivityInfo activity, long entryGeneration) {
+        ApplicationInfo app = activity.getApplicationInfo();
+        boolean system = app != null && (app.flags & ApplicationInfo.FLAG_SYSTEM) != 0;
+        return new Entry(activity.getComponentName().getPackageName(), activity.getLabel().toString(), "", 0,
+            system, true, false, entryGeneration);
+    }
+
+    private Set<String> launchablePackages() {
+        Set<String> launchable = new HashSet<>();
+        if (launcherApps != null) {
+            for (LauncherActivityInfo activity : launcherApps.getActivityList(null, user)) {
+                launchable.add(activity.getComponentName().getPackageName());
+            }
+        }
+        return launchable;
+    }
+
+    private void notifyListeners() {
+        for (Listener listener : listeners) {
+            listener.onAppsChanged(generation);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static long versionCodeOf(PackageInfo info) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.P ? info.getLongVersionCode() : info.versionCode;
+    }
+}
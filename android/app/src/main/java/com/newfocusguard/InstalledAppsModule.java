@@ -2,8 +2,8 @@ package com.newfocusguard;
 
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
-import android.graphics.drawable.Drawable;
-import android.util.Base64;
+import android.os.SystemClock;
+import android.util.Log;
 
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.Promise;
@@ -15,19 +15,41 @@ import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
 import com.facebook.react.module.annotations.ReactModule;
 
-import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
 import java.util.List;
-import android.graphics.Bitmap;
-import android.graphics.Canvas;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @ReactModule(name = InstalledAppsModule.NAME)
 public class InstalledAppsModule extends ReactContextBaseJavaModule {
     public static final String NAME = "InstalledApps";
+    private static final String TAG = "FocusGuardInstalledApps";
+    private static final String EVENT_APPS_PAGE = "onInstalledAppsPage";
+    private static final String EVENT_APPS_CHANGED = "onInstalledAppsChanged";
+    // Roughly the first screen of the 4-column picker, so it can render before the rest is read
+    private static final int FIRST_PAGE_SIZE = 16;
+    private static final int DEFAULT_PAGE_SIZE = 32;
+
     private final ReactApplicationContext reactContext;
+    // Labels and package info are binder calls into system_server; a few run in parallel, not one per app
+    private final ExecutorService pageExecutor = Executors.newFixedThreadPool(
+        Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() - 1)));
+    private final Map<Integer, List<Future<?>>> streams = new ConcurrentHashMap<>();
+    private final InstalledAppIndex appIndex;
+    private final AppSearchIndex searchIndex;
+    private final InstalledAppIndex.Listener appIndexListener = this::onAppIndexChanged;
 
     public InstalledAppsModule(ReactApplicationContext reactContext) {
         super(reactContext);
         this.reactContext = reactContext;
+        this.appIndex = InstalledAppIndex.getInstance(reactContext);
+        appIndex.addListener(appIndexListener);
+        // Built now from the app index, so it is ready before the first keystroke
+        this.searchIndex = AppSearchIndex.getInstance(reactContext);
     }
 
     @Override
@@ -45,48 +67,170 @@ public class InstalledAppsModule extends ReactContextBaseJavaModule {
         // Required for RN built in Event Emitter
     }
 
+    @Override
+    public void invalidate() {
+        appIndex.removeListener(appIndexListener);
+        pageExecutor.shutdownNow();
+        super.invalidate();
+    }
+
+    /**
+     * Apps added, updated or removed since {@code generation} of {@code epoch}, from the in-memory
+     * index: {epoch, generation, reset, apps: [{appName, packageName, versionName, workProfile}],
+     * removed: [packageName]}.
+     * Pass 0, 0 for everything. With reset set, apps is the full list and the caller drops what it had.
+     */
     @ReactMethod
-    public void getInstalledApps(Promise promise) {
-        try {
-            PackageManager pm = reactContext.getPackageManager();
-            List<ApplicationInfo> apps = pm.getInstalledApplications(PackageManager.GET_META_DATA);
-            WritableArray appList = Arguments.createArray();
-
-            for (ApplicationInfo app : apps) {
-                // Skip system apps if they don't have a launcher
-                if ((app.flags & ApplicationInfo.FLAG_SYSTEM) != 0) {
-                    if (pm.getLaunchIntentForPackage(app.packageName) == null) {
-                        continue;
-                    }
+    public void getAppChangesSince(double epoch, double generation, Promise promise) {
+        appIndex.readChangesSince((long) epoch, (long) generation, changes -> {
+            WritableArray apps = Arguments.createArray();
+            WritableArray removed = Arguments.createArray();
+            for (InstalledAppIndex.Entry entry : changes.changed) {
+                if (entry.removed) {
+                    removed.pushString(entry.packageName);
+                    continue;
                 }
-
                 WritableMap appInfo = Arguments.createMap();
-                appInfo.putString("appName", pm.getApplicationLabel(app).toString());
-                appInfo.putString("packageName", app.packageName);
-                
-                try {
-                    String versionName = pm.getPackageInfo(app.packageName, 0).versionName;
-                    appInfo.putString("versionName", versionName);
-                } catch (Exception e) {
-                    appInfo.putString("versionName", "");
-                }
+                appInfo.putString("appName", entry.label);
+                appInfo.putString("packageName", entry.packageName);
+                appInfo.putString("versionName", entry.versionName);
+                appInfo.putBoolean("workProfile", entry.workProfile);
+                apps.pushMap(appInfo);
+            }
+            WritableMap result = Arguments.createMap();
+            result.putDouble("epoch", changes.epoch);
+            result.putDouble("generation", changes.generation);
+            result.putBoolean("reset", changes.reset);
+            result.putArray("apps", apps);
+            result.putArray("removed", removed);
+            promise.resolve(result);
+        });
+    }
 
-                // Convert app icon to Base64 string
-                try {
-                    Drawable icon = pm.getApplicationIcon(app.packageName);
-                    String base64Icon = drawableToBase64(icon);
-                    appInfo.putString("icon", base64Icon);
-                } catch (Exception e) {
-                    appInfo.putString("icon", "");
+    /** Package names of the apps matching a search query, best match first. Sub-millisecond, so synchronous. */
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public WritableArray searchApps(String query, int limit) {
+        WritableArray result = Arguments.createArray();
+        for (String packageName : searchIndex.search(query, limit)) {
+            result.pushString(packageName);
+        }
+        return result;
+    }
+
+    private void onAppIndexChanged(long generation) {
+        if (!reactContext.hasActiveReactInstance()) {
+            return;
+        }
+        WritableMap params = Arguments.createMap();
+        params.putDouble("epoch", appIndex.epoch);
+        params.putDouble("generation", generation);
+        sendEvent(EVENT_APPS_CHANGED, params);
+    }
+
+    /**
+     * Streams app metadata without icons. Pages of {appName, packageName, versionName} arrive as
+     * onInstalledAppsPage events tagged with streamId, in whatever order the workers finish them;
+     * the promise resolves with the number of apps once the last page is out. Icons are loaded
+     * separately, per visible row, through AppIconModule. This reads PackageManager directly, for
+     * a listing that does not wait on the app index; screens read the index through getAppChangesSince.
+     */
+    @ReactMethod
+    public void streamInstalledApps(final int streamId, int pageSize, Promise promise) {
+        final long started = SystemClock.elapsedRealtime();
+        final int size = pageSize > 0 ? pageSize : DEFAULT_PAGE_SIZE;
+        try {
+            final PackageManager pm = reactContext.getPackageManager();
+            // No GET_META_DATA: the bundles are not used and make this listing much bigger
+            List<ApplicationInfo> apps = pm.getInstalledApplications(0);
+            final int pageCount = apps.size() <= FIRST_PAGE_SIZE
+                ? 1
+                : 1 + (apps.size() - FIRST_PAGE_SIZE + size - 1) / size;
+            final AtomicInteger pagesLeft = new AtomicInteger(pageCount);
+            final AtomicInteger appCount = new AtomicInteger();
+            final List<Future<?>> futures = new ArrayList<>(pageCount);
+            streams.put(streamId, futures);
+
+            for (int page = 0, from = 0; page < pageCount; page++) {
+                final int index = page;
+                final List<ApplicationInfo> slice =
+                    apps.subList(from, Math.min(apps.size(), from + (page == 0 ? FIRST_PAGE_SIZE : size)));
+                from += slice.size();
+                synchronized (futures) {
+                    futures.add(pageExecutor.submit(() -> {
+                        WritableArray rows = Arguments.createArray();
+                        for (ApplicationInfo app : slice) {
+                            if (Thread.currentThread().isInterrupted()) {
+                                return;
+                            }
+                            try {
+                                WritableMap appInfo = appMetadata(pm, app);
+                                if (appInfo != null) {
+                                    rows.pushMap(appInfo);
+                                    appCount.incrementAndGet();
+                                }
+                            } catch (Exception e) {
+                                // Uninstalled while we were listing, the page goes out without it
+                                Log.w(TAG, "Skipping " + app.packageName + ": " + e.getMessage());
+                            }
+                        }
+                        WritableMap params = Arguments.createMap();
+                        params.putInt("streamId", streamId);
+                        params.putInt("page", index);
+                        params.putArray("apps", rows);
+                        sendEvent(EVENT_APPS_PAGE, params);
+                        if (index == 0) {
+                            Log.d(TAG, "First page of stream " + streamId + " in "
+                                + (SystemClock.elapsedRealtime() - started) + "ms");
+                        }
+                        if (pagesLeft.decrementAndGet() == 0) {
+                            streams.remove(streamId);
+                            Log.d(TAG, "Streamed " + appCount.get() + " apps in " + pageCount + " pages in "
+                                + (SystemClock.elapsedRealtime() - started) + "ms");
+                            promise.resolve(appCount.get());
+                        }
+                    }));
                 }
+            }
+        } catch (Exception e) {
+            streams.remove(streamId);
+            promise.reject("ERROR", e.getMessage());
+        }
+    }
+
+    /** Stops a stream started by streamInstalledApps. Its promise is left unresolved. */
+    @ReactMethod
+    public void cancelInstalledAppsStream(int streamId) {
+        List<Future<?>> futures = streams.remove(streamId);
+        if (futures == null) {
+            return;
+        }
+        synchronized (futures) {
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+        Log.d(TAG, "Cancelled stream " + streamId);
+    }
 
-                appList.pushMap(appInfo);
+    /** {appName, packageName, versionName}, or null for a system app the user cannot launch. */
+    private static WritableMap appMetadata(PackageManager pm, ApplicationInfo app) {
+        // Skip system apps if they don't have a launcher
+        if ((app.flags & ApplicationInfo.FLAG_SYSTEM) != 0) {
+            if (pm.getLaunchIntentForPackage(app.packageName) == null) {
+                return null;
             }
+        }
 
-            promise.resolve(appList);
+        WritableMap appInfo = Arguments.createMap();
+        appInfo.putString("appName", pm.getApplicationLabel(app).toString());
+        appInfo.putString("packageName", app.packageName);
+        try {
+            String versionName = pm.getPackageInfo(app.packageName, 0).versionName;
+            appInfo.putString("versionName", versionName);
         } catch (Exception e) {
-            promise.reject("ERROR", e.getMessage());
+            appInfo.putString("versionName", "");
         }
+        return appInfo;
     }
 
     private void sendEvent(String eventName, WritableMap params) {
@@ -94,17 +238,4 @@ public class InstalledAppsModule extends ReactContextBaseJavaModule {
             .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
             .emit(eventName, params);
     }
-
-    private String drawableToBase64(Drawable drawable) {
-        Bitmap bitmap = Bitmap.createBitmap(drawable.getIntrinsicWidth(),
-                drawable.getIntrinsicHeight(), Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bitmap);
-        drawable.setBounds(0, 0, canvas.getWidth(), canvas.getHeight());
-        drawable.draw(canvas);
-
-        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.PNG, 100, byteStream);
-        byte[] byteArray = byteStream.toByteArray();
-        return Base64.encodeToString(byteArray, Base64.DEFAULT);
-    }
-} 
\ No newline at end of file
+}
@@ -1,24 +1,29 @@
 package com.newfocusguard;
 
-import com.facebook.react.ReactPackage;
+import com.facebook.react.BaseReactPackage;
 import com.facebook.react.bridge.NativeModule;
 import com.facebook.react.bridge.ReactApplicationContext;
-import com.facebook.react.uimanager.ViewManager;
+import com.facebook.react.module.model.ReactModuleInfo;
+import com.facebook.react.module.model.ReactModuleInfoProvider;
 
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.List;
 
-public class InstalledAppsPackage implements ReactPackage {
+/** Registers {@link InstalledAppsModule} lazily: it is only constructed when JS first asks for it. */
+public class InstalledAppsPackage extends BaseReactPackage {
     @Override
-    public List<ViewManager> createViewManagers(ReactApplicationContext reactContext) {
-        return Collections.emptyList();
+    public NativeModule getModule(String name, ReactApplicationContext reactContext) {
+        return InstalledAppsModule.NAME.equals(name) ? new InstalledAppsModule(reactContext) : null;
     }
 
     @Override
-    public List<NativeModule> createNativeModules(ReactApplicationContext reactContext) {
-        List<NativeModule> modules = new ArrayList<>();
-        modules.add(new InstalledAppsModule(reactContext));
-        return modules;
+    public ReactModuleInfoProvider getReactModuleInfoProvider() {
+        return () -> Collections.singletonMap(InstalledAppsModule.NAME, new ReactModuleInfo(
+            InstalledAppsModule.NAME,
+            InstalledAppsModule.class.getName(),
+            false, // canOverrideExistingModule
+            false, // needsEagerInit
+            false, // isCxxModule
+            false  // isTurboModule, served through the new architecture's interop layer
+        ));
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,241 @@
+package com.newfocusguard;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * Native ledger of lock enforcement events.
+ *
+ * Every event is appended to {@link HistoryLog} and also folded into per-app
+ * lifetime counters, so "all time" effectiveness numbers are a map lookup and
+ * range queries are a single streaming pass over the log. The counters are written
+ * back at most every {@link #SAVE_DELAY_MS} rather than per event; {@link #flush}
+ * writes them at once when the service goes away.
+ */
+class LockLedger {
+    private static final String TAG = "FocusGuardLedger";
+    private static final String PREFS_NAME = "FocusGuardLedger";
+    private static final String PREFS_KEY_COUNTERS = "counters";
+    private static final String PREFS_KEY_ACTIVE_SCHEDULES = "activeSchedules";
+    private static final long SAVE_DELAY_MS = 10_000;
+    private static final long HOUR_MS = 60 * 60 * 1000;
+
+    /** Event counts for one app, either lifetime or for a queried range. */
+    static final class Counters {
+        int blocks;
+        int emergencyUnlocks;
+        int expiries;
+        int scheduleActivations;
+        int manualLocks;
+
+        void add(byte kind) {
+            switch (kind) {
+                case HistoryLog.KIND_BLOCKED: blocks++; break;
+                case HistoryLog.KIND_EMERGENCY_UNLOCK: emergencyUnlocks++; break;
+                case HistoryLog.KIND_LOCK_EXPIRED: expiries++; break;
+                case HistoryLog.KIND_SCHEDULE_START: scheduleActivations++; break;
+                case HistoryLog.KIND_LOCKED: manualLocks++; break;
+                default: break;
+            }
+        }
+
+        /** Share of block events the user escaped with an emergency unlock. */
+        double bypassRate() {
+            return blocks > 0 ? Math.min(1.0, (double) emergencyUnlocks / blocks) : 0.0;
+        }
+
+        JSONArray toJson() {
+            return new JSONArray()
+                .put(blocks).put(emergencyUnlocks).put(expiries).put(scheduleActivations).put(manualLocks);
+        }
+
+        static Counters fromJson(JSONArray json) throws JSONException {
+            Counters counters = new Counters();
+            counters.blocks = json.getInt(0);
+            counters.emergencyUnlocks = json.getInt(1);
+            counters.expiries = json.getInt(2);
+            counters.scheduleActivations = json.getInt(3);
+            counters.manualLocks = json.getInt(4);
+            return counters;
+        }
+    }
+
+    /** Aggregates for a time range. */
+    static final class Stats {
+        final Counters total = new Counters();
+        final Map<String, Counters> perApp = new HashMap<>();
+        final int[] blockCountByHourOfDay = new int[24];
+    }
+
+    private static LockLedger instance;
+
+    private final HistoryLog log;
+    private final SharedPreferences prefs;
+    private final Map<String, Counters> lifetime = new HashMap<>();
+    // Schedules whose start is recorded and whose end is not yet, kept across restarts
+    private final Set<String> activeSchedules;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable save = this::flush;
+    private boolean dirty;
+
+    private LockLedger(Context context) {
+        this.log = HistoryLog.getInstance(context);
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.activeSchedules = new HashSet<>(prefs.getStringSet(PREFS_KEY_ACTIVE_SCHEDULES, new HashSet<String>()));
+        loadCounters();
+    }
+
+    static synchronized LockLedger getInstance(Context context) {
+        if (instance == null) {
+            instance = new LockLedger(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    void record(byte kind, String packageName, long value) {
+        if (packageName == null) {
+            return;
+        }
+        log.append(System.currentTimeMillis(), kind, packageName, value);
+        synchronized (this) {
+            Counters counters = lifetime.get(packageName);
+            if (counters == null) {
+                counters = new Counters();
+                lifetime.put(packageName, counters);
+            }
+            counters.add(kind);
+            if (!dirty) {
+                dirty = true;
+                handler.postDelayed(save, SAVE_DELAY_MS);
+            }
+        }
+    }
+
+    /** Writes pending counter changes now. */
+    synchronized void flush() {
+        handler.removeCallbacks(save);
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+        prefs.edit().putString(PREFS_KEY_COUNTERS, countersToJson()).apply();
+    }
+
+    /** Marks a schedule started, false if its start was already recorded (e.g. before a restart). */
+    synchronized boolean scheduleStarted(String scheduleId) {
+        if (!activeSchedules.add(scheduleId)) {
+            return false;
+        }
+        prefs.edit().putStringSet(PREFS_KEY_ACTIVE_SCHEDULES, new HashSet<>(activeSchedules)).apply();
+        return true;
+    }
+
+    /** Marks a schedule ended, false if no start was recorded for it. */
+    synchronized boolean scheduleEnded(String scheduleId) {
+        if (!activeSchedules.remove(scheduleId)) {
+            return false;
+        }
+        prefs.edit().putStringSet(PREFS_KEY_ACTIVE_SCHEDULES, new HashSet<>(activeSchedules)).apply();
+        return true;
+    }
+
+    synchronized Set<String> activeSchedules() {
+        return new HashSet<>(activeSchedules);
+    }
+
+    synchronized Map<String, Counters> getLifetimeCounters() {
+        Map<String, Counters> copy = new HashMap<>();
+        for (Map.Entry<String, Counters> entry : lifetime.entrySet()) {
+            Counters source = entry.getValue();
+            Counters counters = new Counters();
+            counters.blocks = source.blocks;
+            counters.emergencyUnlocks = source.emergencyUnlocks;
+            counters.expiries = source.expiries;
+            counters.scheduleActivations = source.scheduleActivations;
+            counters.manualLocks = source.manualLocks;
+            copy.put(entry.getKey(), counters);
+        }
+        return copy;
+    }
+
+    /** Aggregates every lock event in [fromMs, toMs) with one streaming pass over the log. */
+    Stats query(long fromMs, long toMs) throws IOException {
+        final Stats stats = new Stats();
+        final TimeZone timeZone = TimeZone.getDefault();
+        log.scan(fromMs, toMs, (timestamp, kind, packageName, value) -> {
+            if (kind == HistoryLog.KIND_SESSION) {
+                return;
+            }
+            stats.total.add(kind);
+            Counters counters = stats.perApp.get(packageName);
+            if (counters == null) {
+                counters = new Counters();
+                stats.perApp.put(packageName, counters);
+            }
+            counters.add(kind);
+            if (kind == HistoryLog.KIND_BLOCKED) {
+                long local = timestamp + timeZone.getOffset(timestamp);
+                stats.blockCountByHourOfDay[(int) ((local / HOUR_MS) % 24)]++;
+            }
+        });
+        return stats;
+    }
+
+    /** Lifetime counters in their persisted JSON form, for handing them to the UI process. */
+    synchronized String lifetimeCountersJson() {
+        return countersToJson();
+    }
+
+    /** Parses counters written by {@link #lifetimeCountersJson}. */
+    static Map<String, Counters> parseCounters(String json) throws JSONException {
+        Map<String, Counters> counters = new HashMap<>();
+        JSONObject object = new JSONObject(json);
+        Iterator<String> keys = object.keys();
+        while (keys.hasNext()) {
+            String packageName = keys.next();
+            counters.put(packageName, Counters.fromJson(object.getJSONArray(packageName)));
+        }
+        return counters;
+    }
+
+    private void loadCounters() {
+        String json = prefs.getString(PREFS_KEY_COUNTERS, null);
+        if (json == null) {
+            return;
+        }
+        try {
+            lifetime.putAll(parseCounters(json));
+            Log.d(TAG, "Loaded lock counters for " + lifetime.size() + " apps");
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to load lock counters, starting from zero", e);
+            lifetime.clear();
+        }
+    }
+
+    private String countersToJson() {
+        JSONObject object = new JSONObject();
+        try {
+            for (Map.Entry<String, Counters> entry : lifetime.entrySet()) {
+                object.put(entry.getKey(), entry.getValue().toJson());
+            }
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to serialize lock counters", e);
+        }
+        return object.toString();
+    }
+}
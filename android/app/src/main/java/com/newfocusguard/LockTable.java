@@ -0,0 +1,1004 @@
+package com.newfocusguard;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.os.Build;
+import android.provider.Settings;
+import android.telecom.TelecomManager;
+import android.util.Log;
+
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Process-wide table of locked apps.
+ *
+ * Every lock records where it comes from: a manual lock (indefinite, or timed with an
+ * unlock time) and a reference count of the active schedules that cover the package.
+ * The effective unlock time is INDEFINITE while any schedule holds the package, and the
+ * manual unlock time otherwise, so a schedule ending never removes a manual lock and
+ * overlapping schedules simply stack references.
+ *
+ * A lock can also target a whole category ({@link AppCategoryIndex}), with the same two
+ * sources per category. Category locks are never expanded into per-package entries: a
+ * package's unlock time folds in the categories whose bit is set in both its category
+ * mask and the snapshot's locked-category mask, which is a single AND when no category
+ * is locked.
+ *
+ * Lock keys that are wildcard rules ({@link PackageRuleMatcher}, e.g. {@code com.facebook.*})
+ * work the same way: they keep their own sources in {@link PatternLocks}, and a package
+ * folds in the rules it matches, which the compiled matcher caches per package.
+ *
+ * Packages are keyed by their {@link PackageInterner} ID and all state lives in
+ * primitive arrays indexed by that ID, so evaluating a lock is an array read with no
+ * string hashing and no boxing.
+ *
+ * Writers are serialized and publish a new immutable {@link Snapshot} with a bumped
+ * version on every change. Readers (the monitoring loop, the overlay click listener,
+ * synchronous JS getters) just read the volatile reference and never take a lock.
+ * Manual locks are loaded from and persisted to SharedPreferences, so they can be read
+ * before AppMonitoringService has started. Schedule references are runtime state,
+ * rebuilt from the schedules whenever the service starts.
+ *
+ * Every published version also produces a {@link Diff} of the packages it changed.
+ * Diffs are pushed to listeners and kept in a short ring buffer, so a client that
+ * knows (epoch, version) can catch up on what it missed instead of re-reading the table.
+ * Timed locks leave the table through {@link #expireManual}, which publishes a diff like
+ * any other change, so mirrors drop expired entries without tracking time themselves.
+ *
+ * The table is owned by the ":monitor" process, which runs AppMonitoringService. The UI
+ * process keeps a read-only mirror fed by {@link MonitorClient} through
+ * {@link #applyMirror}; it never writes or persists locks of its own.
+ */
+final class LockTable {
+    private static final String TAG = "FocusGuardLockTable";
+    static final String PREFS_NAME = "FocusGuardLocks";
+    static final String PREFS_KEY = "lockedAppsMap";
+    static final String CATEGORY_PREFS_KEY = "lockedCategories";
+    static final long INDEFINITE = -1L;
+    /** Unlock time slot value for packages that are not locked. */
+    static final long NOT_LOCKED = Long.MIN_VALUE;
+    private static final int DIFF_HISTORY = 128;
+
+    /**
+     * Packages a rule never locks, so a broad rule like "*" cannot lock the user out of the phone
+     * or away from an emergency call. The default launcher, dialer and keyboard are added at runtime.
+     */
+    private static final String[] NEVER_PATTERN_LOCKED = {
+        "com.android.systemui", "com.android.settings",
+        "com.android.phone", "com.android.server.telecom", "com.android.emergency"
+    };
+
+    interface LockVisitor {
+        void visit(int packageId, long unlockTime);
+    }
+
+    interface DiffListener {
+        /**
+         * Called on the writer's thread once the new snapshot is published and the table's lock is
+         * released, in version order. The table may already be at a later version.
+         */
+        void onDiff(Diff diff);
+    }
+
+    /**
+     * Packages changed by one version. For entry i, {@code before[i]} and {@code after[i]} are the
+     * effective unlock times (NOT_LOCKED when absent); manual and scheduleRefs are the new sources.
+     * Package entries only cover per-package sources. When a category lock changed, the new
+     * category sources are in categoryManual/categoryScheduleRefs, otherwise those are null;
+     * likewise {@code patterns} holds every rule lock when one of them changed.
+     */
+    static final class Diff {
+        final long version;
+        final int[] packageIds;
+        final long[] before;
+        final long[] after;
+        final long[] manual;
+        final int[] scheduleRefs;
+        final long[] categoryManual;
+        final int[] categoryScheduleRefs;
+        final PatternLocks patterns;
+
+        Diff(long version, int[] packageIds, long[] before, long[] after, long[] manual, int[] scheduleRefs,
+             long[] categoryManual, int[] categoryScheduleRefs, PatternLocks patterns) {
+            this.version = version;
+            this.packageIds = packageIds;
+            this.before = before;
+            this.after = after;
+            this.manual = manual;
+            this.scheduleRefs = scheduleRefs;
+            this.categoryManual = categoryManual;
+            this.categoryScheduleRefs = categoryScheduleRefs;
+            this.patterns = patterns;
+        }
+
+        int size() {
+            return packageIds.length;
+        }
+
+        boolean hasCategoryChanges() {
+            return categoryManual != null;
+        }
+
+        boolean isEmpty() {
+            return packageIds.length == 0 && categoryManual == null && patterns == null;
+        }
+    }
+
+    /**
+     * Immutable set of rule locks, each with the same two sources as a package. Only rules
+     * with a source are kept, so every entry is an effective lock.
+     */
+    static final class PatternLocks {
+        final String[] patterns;
+        final long[] manual;
+        final int[] scheduleRefs;
+        private final long[] effective;
+        private final PackageRuleMatcher matcher;
+
+        PatternLocks(String[] patterns, long[] manual, int[] scheduleRefs, PackageRuleMatcher matcher) {
+            this.patterns = patterns;
+            this.manual = manual;
+            this.scheduleRefs = scheduleRefs;
+            this.matcher = matcher;
+            this.effective = new long[patterns.length];
+            for (int i = 0; i < patterns.length; i++) {
+                effective[i] = scheduleRefs[i] > 0 ? INDEFINITE : manual[i];
+            }
+        }
+
+        int size() {
+            return patterns.length;
+        }
+
+        int indexOf(String pattern) {
+            return Arrays.asList(patterns).indexOf(pattern);
+        }
+
+        long unlockTimeAt(int index) {
+            return effective[index];
+        }
+
+        /** Strongest unlock time of the rules matching a package. */
+        long unlockTimeOf(int packageId) {
+            long unlockTime = NOT_LOCKED;
+            for (int rule : matcher.matchesOf(packageId)) {
+                unlockTime = stronger(unlockTime, effective[rule]);
+            }
+            return unlockTime;
+        }
+
+        boolean sameSourcesAs(PatternLocks other) {
+            return Arrays.equals(patterns, other.patterns)
+                && Arrays.equals(manual, other.manual)
+                && Arrays.equals(scheduleRefs, other.scheduleRefs);
+        }
+    }
+
+    static final class Snapshot {
+        final long version;
+        private final long[] effective;    // indexed by package ID, NOT_LOCKED when absent
+        private final long[] manual;       // manual/timed source, NOT_LOCKED when absent
+        private final int[] scheduleRefs;  // number of active schedules holding the package
+        private final int count;
+        private final AppCategoryIndex categories;
+        private final long[] categoryEffective;     // indexed by category bit, NOT_LOCKED when absent
+        private final long[] categoryManual;
+        private final int[] categoryScheduleRefs;
+        private final int lockedCategoryMask;       // bit set for every category with an effective lock
+        final PatternLocks patterns;
+        /** Earliest unlock time of a timed manual lock (package, category or rule), Long.MAX_VALUE if none. */
+        final long nextExpiry;
+
+        Snapshot(long version, long[] effective, long[] manual, int[] scheduleRefs, int count,
+                 AppCategoryIndex categories, long[] categoryManual, int[] categoryScheduleRefs,
+                 PatternLocks patterns) {
+            this.version = version;
+            this.effective = effective;
+            this.manual = manual;
+            this.scheduleRefs = scheduleRefs;
+            this.count = count;
+            this.categories = categories;
+            this.categoryManual = categoryManual;
+            this.categoryScheduleRefs = categoryScheduleRefs;
+            this.categoryEffective = new long[AppCategoryIndex.CATEGORY_COUNT];
+            int mask = 0;
+            for (int c = 0; c < categoryEffective.length; c++) {
+                categoryEffective[c] = categoryScheduleRefs[c] > 0 ? INDEFINITE : categoryManual[c];
+                if (categoryEffective[c] != NOT_LOCKED) {
+                    mask |= 1 << c;
+                }
+            }
+            this.lockedCategoryMask = mask;
+            this.patterns = patterns;
+            long next = Long.MAX_VALUE;
+            for (long unlockTime : manual) {
+                next = earlierExpiry(next, unlockTime);
+            }
+            for (long unlockTime : categoryManual) {
+                next = earlierExpiry(next, unlockTime);
+            }
+            for (long unlockTime : patterns.manual) {
+                next = earlierExpiry(next, unlockTime);
+            }
+            this.nextExpiry = next;
+        }
+
+        /** Effective unlock time of a package, counting the locks on its categories and matching rules. */
+        long unlockTimeOf(int packageId) {
+            long unlockTime = packageUnlockTimeOf(packageId);
+            if (unlockTime == INDEFINITE) {
+                return unlockTime;
+            }
+            int bits = lockedCategoryMask;
+            if (bits != 0) {
+                bits &= categories.maskOf(packageId);
+                while (bits != 0) {
+                    int category = Integer.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    unlockTime = stronger(unlockTime, categoryEffective[category]);
+                }
+            }
+            if (patterns.size() > 0) {
+                unlockTime = stronger(unlockTime, patterns.unlockTimeOf(packageId));
+            }
+            return unlockTime;
+        }
+
+        /** Unlock time from the package's own sources only, ignoring its categories. */
+        long packageUnlockTimeOf(int packageId) {
+            return packageId >= 0 && packageId < effective.length ? effective[packageId] : NOT_LOCKED;
+        }
+
+        long categoryUnlockTimeOf(int category) {
+            return categoryEffective[category];
+        }
+
+        long categoryManualUnlockTimeOf(int category) {
+            return categoryManual[category];
+        }
+
+        int categoryScheduleRefsOf(int category) {
+            return categoryScheduleRefs[category];
+        }
+
+        int lockedCategoryMask() {
+            return lockedCategoryMask;
+        }
+
+        long manualUnlockTimeOf(int packageId) {
+            return packageId >= 0 && packageId < manual.length ? manual[packageId] : NOT_LOCKED;
+        }
+
+        int scheduleRefsOf(int packageId) {
+            return packageId >= 0 && packageId < scheduleRefs.length ? scheduleRefs[packageId] : 0;
+        }
+
+        boolean contains(int packageId) {
+            return unlockTimeOf(packageId) != NOT_LOCKED;
+        }
+
+        boolean isLocked(int packageId, long now) {
+            long unlockTime = unlockTimeOf(packageId);
+            if (unlockTime == NOT_LOCKED) return false;
+            if (unlockTime == INDEFINITE) return true;
+            return now < unlockTime;
+        }
+
+        boolean isLocked(String packageName, long now) {
+            return isLocked(PackageInterner.getInstance().lookup(packageName), now);
+        }
+
+        /** Remaining lock time in ms, INDEFINITE for an indefinite lock, 0 when not locked. */
+        long remainingMs(String packageName, long now) {
+            long unlockTime = unlockTimeOf(PackageInterner.getInstance().lookup(packageName));
+            if (unlockTime == NOT_LOCKED) return 0;
+            if (unlockTime == INDEFINITE) return INDEFINITE;
+            return Math.max(0, unlockTime - now);
+        }
+
+        int size() {
+            return count;
+        }
+
+        boolean isEmpty() {
+            return count == 0 && lockedCategoryMask == 0 && patterns.size() == 0;
+        }
+
+        /** Visits every package with a lock of its own. Category locks are not expanded. */
+        void forEach(LockVisitor visitor) {
+            for (int id = 0; id < effective.length; id++) {
+                if (effective[id] != NOT_LOCKED) {
+                    visitor.visit(id, effective[id]);
+                }
+            }
+        }
+
+        /** Visits every manual or timed lock, ignoring schedule references. */
+        void forEachManual(LockVisitor visitor) {
+            for (int id = 0; id < manual.length; id++) {
+                if (manual[id] != NOT_LOCKED) {
+                    visitor.visit(id, manual[id]);
+                }
+            }
+        }
+
+        /** Boxed copy of the effective locks keyed by package name, for the JS bridge only. */
+        Map<String, Long> toMap() {
+            final Map<String, Long> map = new HashMap<>();
+            final PackageInterner interner = PackageInterner.getInstance();
+            forEach((packageId, unlockTime) -> map.put(interner.nameOf(packageId), unlockTime));
+            return map;
+        }
+    }
+
+    private static long earlierExpiry(long next, long unlockTime) {
+        return unlockTime != NOT_LOCKED && unlockTime != INDEFINITE ? Math.min(next, unlockTime) : next;
+    }
+
+    private static boolean isExpired(long unlockTime, long now) {
+        return unlockTime != NOT_LOCKED && unlockTime != INDEFINITE && now >= unlockTime;
+    }
+
+    /** INDEFINITE beats any timed lock, a later unlock time beats an earlier one, anything beats NOT_LOCKED. */
+    static long stronger(long a, long b) {
+        if (a == INDEFINITE || b == INDEFINITE) return INDEFINITE;
+        return Math.max(a, b);
+    }
+
+    private static LockTable instance;
+
+    private final SharedPreferences prefs;
+    private final PackageInterner interner = PackageInterner.getInstance();
+    private final AppCategoryIndex categories;
+    private final String[] neverPatternLocked;
+    private volatile Snapshot current;
+    /** Identifies this process's version sequence; versions restart at 0 with every new epoch. */
+    final long epoch = System.currentTimeMillis();
+    private final ArrayDeque<Diff> recentDiffs = new ArrayDeque<>(DIFF_HISTORY);
+    private final CopyOnWriteArrayList<DiffListener> listeners = new CopyOnWriteArrayList<>();
+    // Diffs published but not yet handed to the listeners, guarded by this
+    private final ArrayDeque<Diff> pendingDiffs = new ArrayDeque<>();
+    private final Object dispatchLock = new Object();
+
+    private LockTable(Context context) {
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.categories = AppCategoryIndex.getInstance(context);
+        this.neverPatternLocked = neverPatternLocked(context);
+        this.current = load();
+    }
+
+    /** The fixed exclusions plus this app and the user's current home, dialer and input method. */
+    private static String[] neverPatternLocked(Context context) {
+        List<String> packages = new ArrayList<>(Arrays.asList(NEVER_PATTERN_LOCKED));
+        packages.add(context.getPackageName());
+        try {
+            Intent home = new Intent(Intent.ACTION_MAIN).addCategory(Intent.CATEGORY_HOME);
+            ResolveInfo launcher = context.getPackageManager().resolveActivity(home, PackageManager.MATCH_DEFAULT_ONLY);
+            if (launcher != null && launcher.activityInfo != null) {
+                packages.add(launcher.activityInfo.packageName);
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                TelecomManager telecom = context.getSystemService(TelecomManager.class);
+                if (telecom != null && telecom.getDefaultDialerPackage() != null) {
+                    packages.add(telecom.getDefaultDialerPackage());
+                }
+            }
+            String inputMethod = Settings.Secure.getString(context.getContentResolver(), Settings.Secure.DEFAULT_INPUT_METHOD);
+            ComponentName keyboard = inputMethod != null ? ComponentName.unflattenFromString(inputMethod) : null;
+            if (keyboard != null) {
+                packages.add(keyboard.getPackageName());
+            }
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Could not resolve the default apps, only the fixed exclusions apply", e);
+        }
+        return packages.toArray(new String[0]);
+    }
+
+    static synchronized LockTable getInstance(Context context) {
+        if (instance == null) {
+            instance = new LockTable(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /** Current snapshot. Never blocks. */
+    Snapshot snapshot() {
+        return current;
+    }
+
+    void addDiffListener(DiffListener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    void removeDiffListener(DiffListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the diffs after {@code version} up to the current version, in order, or null if the
+     * caller is too far behind (or ahead) for the ring buffer and has to re-read the snapshot.
+     */
+    synchronized List<Diff> diffsSince(long version) {
+        long latest = current.version;
+        if (version == latest) {
+            return new ArrayList<>();
+        }
+        if (version > latest || recentDiffs.isEmpty() || recentDiffs.peekFirst().version > version + 1) {
+            return null;
+        }
+        List<Diff> result = new ArrayList<>();
+        for (Diff diff : recentDiffs) {
+            if (diff.version > version) {
+                result.add(diff);
+            }
+        }
+        return result;
+    }
+
+    /** Adds or replaces a manual lock. {@code packageName} may also be a wildcard rule. */
+    void putManual(String packageName, long unlockTime) {
+        if (packageName == null) return;
+        if (PackageRuleMatcher.isRule(packageName)) {
+            if (!PackageRuleMatcher.isValid(packageName)) {
+                Log.w(TAG, "Ignoring unsupported rule " + packageName);
+                return;
+            }
+            putPatternManual(PackageRuleMatcher.normalize(packageName), unlockTime);
+            return;
+        }
+        putManual(interner.intern(packageName), unlockTime);
+    }
+
+    void putManual(int packageId, long unlockTime) {
+        try {
+            synchronized (this) {
+                if (current.manualUnlockTimeOf(packageId) == unlockTime) return;
+                Builder builder = new Builder(current, packageId);
+                builder.manual[packageId] = unlockTime;
+                builder.recompute(packageId);
+                publish(builder, true);
+            }
+        } finally {
+            dispatchPending();
+        }
+    }
+
+    /** Removes the manual/timed source of a lock and returns its unlock time, or null if there was none. */
+    Long removeManual(String packageName) {
+        if (PackageRuleMatcher.isRule(packageName)) {
+            return removePatternManual(PackageRuleMatcher.normalize(packageName));
+        }
+        return removeManual(interner.lookup(packageName));
+    }
+
+    private void putPatternManual(String pattern, long unlockTime) {
+        try {
+            synchronized (this) {
+                Builder builder = new Builder(current, -1);
+                long[] sources = builder.pattern(pattern);
+                if (sources[0] == unlockTime) return;
+                sources[0] = unlockTime;
+                publish(builder, true);
+            }
+        } finally {
+            dispatchPending();
+        }
+    }
+
+    private Long removePatternManual(String pattern) {
+        try {
+            synchronized (this) {
+                int index = current.patterns.indexOf(pattern);
+                if (index < 0 || current.patterns.manual[index] == NOT_LOCKED) return null;
+                long existing = current.patterns.manual[index];
+                Builder builder = new Builder(current, -1);
+                builder.pattern(pattern)[0] = NOT_LOCKED;
+                publish(builder, true);
+                return existing;
+            }
+        } finally {
+            dispatchPending();
+        }
+    }
+
+    Long removeManual(int packageId) {
+        try {
+            synchronized (this) {
+                long existing = current.manualUnlockTimeOf(packageId);
+                if (existing == NOT_LOCKED) return null;
+                Builder builder = new Builder(current, packageId);
+                builder.manual[packageId] = NOT_LOCKED;
+                builder.recompute(packageId);
+                publish(builder, true);
+                return existing;
+            }
+        } finally {
+            dispatchPending();
+        }
+    }
+
+    void putCategoryManual(int category, long unlockTime) {
+        try {
+            synchronized (this) {
+                if (current.categoryManual[category] == unlockTime) return;
+                Builder builder = new Builder(current, -1);
+                builder.categoryManual[category] = unlockTime;
+                publish(builder, true);
+            }
+        } finally {
+            dispatchPending();
+        }
+    }
+
+    /** Removes the manual/timed lock of a category and returns its unlock time, or null if there was none. */
+    Long removeCategoryManual(int category) {
+        try {
+            synchronized (this) {
+                long existing = current.categoryManual[category];
+                if (existing == NOT_LOCKED) return null;
+                Builder builder = new Builder(current, -1);
+                builder.categoryManual[category] = NOT_LOCKED;
+                publish(builder, true);
+                return existing;
+            }
+        } finally {
+            dispatchPending();
+        }
+    }
+
+    /**
+     * Removes every timed manual lock whose unlock time has passed, packages, rules and categories
+     * alike, in a single snapshot. Returns the expired packages and rules with their unlock times.
+     * Monitor process only.
+     */
+    Map<String, Long> expireManual(long now) {
+        Map<String, Long> expired = new LinkedHashMap<>();
+        try {
+            synchronized (this) {
+                if (now < current.nextExpiry) return expired;
+                Builder builder = new Builder(current, -1);
+                for (int id = 0; id < builder.manual.length; id++) {
+                    if (isExpired(builder.manual[id], now)) {
+                        expired.put(interner.nameOf(id), builder.manual[id]);
+                        builder.manual[id] = NOT_LOCKED;
+                        builder.recompute(id);
+                    }
+                }
+                PatternLocks patterns = current.patterns;
+                for (int i = 0; i < patterns.size(); i++) {
+                    if (isExpired(patterns.manual[i], now)) {
+                        expired.put(patterns.patterns[i], patterns.manual[i]);
+                        builder.pattern(patterns.patterns[i])[0] = NOT_LOCKED;
+                    }
+                }
+                for (int c = 0; c < builder.categoryManual.length; c++) {
+                    if (isExpired(builder.categoryManual[c], now)) {
+                        Log.d(TAG, "Lock expired for category: " + AppCategoryIndex.NAMES[c]);
+                        builder.categoryManual[c] = NOT_LOCKED;
+                    }
+                }
+                publish(builder, true);
+                return expired;
+            }
+        } finally {
+            dispatchPending();
+        }
+    }
+
+    void applyScheduleTransition(int[] acquiredIds, int[] releasedIds) {
+        applyScheduleTransition(acquiredIds, releasedIds, null, null, null);
+    }
+
+    /**
+     * Applies one schedule transition as a diff: adds a reference for every package of a
+     * schedule that became active and drops one for every package of a schedule that ended.
+     * {@code categoryDeltas}, when not null, holds the net reference change per category, and
+     * the pattern lists the wildcard rules acquired and released. Touches only those packages,
+     * categories and rules and publishes a single snapshot.
+     */
+    void applyScheduleTransition(int[] acquiredIds, int[] releasedIds, int[] categoryDeltas,
+                                              List<String> acquiredPatterns, List<String> releasedPatterns) {
+        try {
+            synchronized (this) {
+                int maxId = -1;
+                for (int id : acquiredIds) maxId = Math.max(maxId, id);
+                for (int id : releasedIds) maxId = Math.max(maxId, id);
+                boolean categoriesChanged = false;
+                if (categoryDeltas != null) {
+                    for (int delta : categoryDeltas) categoriesChanged |= delta != 0;
+                }
+                boolean patternsChanged = (acquiredPatterns != null && !acquiredPatterns.isEmpty())
+                    || (releasedPatterns != null && !releasedPatterns.isEmpty());
+                if (maxId < 0 && !categoriesChanged && !patternsChanged) return;
+
+                Builder builder = new Builder(current, maxId);
+                if (categoriesChanged) {
+                    for (int c = 0; c < categoryDeltas.length; c++) {
+                        builder.categoryScheduleRefs[c] = Math.max(0, builder.categoryScheduleRefs[c] + categoryDeltas[c]);
+                    }
+                }
+                if (patternsChanged) {
+                    if (acquiredPatterns != null) {
+                        for (String pattern : acquiredPatterns) {
+                            builder.pattern(pattern)[1]++;
+                        }
+                    }
+                    if (releasedPatterns != null) {
+                        for (String pattern : releasedPatterns) {
+                            long[] sources = builder.pattern(pattern);
+                            sources[1] = Math.max(0, sources[1] - 1);
+                        }
+                    }
+                }
+                for (int id : acquiredIds) {
+                    builder.scheduleRefs[id]++;
+                    builder.recompute(id);
+                }
+                for (int id : releasedIds) {
+                    if (builder.scheduleRefs[id] > 0) {
+                        builder.scheduleRefs[id]--;
+                    } else {
+                        Log.w(TAG, "Schedule released " + interner.nameOf(id) + " without holding it");
+                    }
+                    builder.recompute(id);
+                }
+                publish(builder, false);
+            }
+        } finally {
+            dispatchPending();
+        }
+    }
+
+    /**
+     * Replaces every schedule reference with the given ones, e.g. when the schedule set is
+     * rebuilt from scratch on service start. Dropping the old references and taking the new
+     * ones is a single snapshot, so mirrors never see schedule locks lift in between.
+     */
+    void replaceScheduleReferences(int[] acquiredIds, int[] categoryRefs, List<String> patterns) {
+        try {
+            synchronized (this) {
+                int maxId = -1;
+                for (int id : acquiredIds) maxId = Math.max(maxId, id);
+                Builder builder = new Builder(current, maxId);
+                Arrays.fill(builder.scheduleRefs, 0);
+                for (int c = 0; c < builder.categoryScheduleRefs.length; c++) {
+                    builder.categoryScheduleRefs[c] = Math.max(0, categoryRefs[c]);
+                }
+                for (int i = 0; i < current.patterns.size(); i++) {
+                    builder.pattern(current.patterns.patterns[i])[1] = 0;
+                }
+                for (String pattern : patterns) {
+                    builder.pattern(pattern)[1]++;
+                }
+                for (int id : acquiredIds) {
+                    builder.scheduleRefs[id]++;
+                }
+                for (int id = 0; id < builder.effective.length; id++) {
+                    builder.recompute(id);
+                }
+                publish(builder, false);
+            }
+        } finally {
+            dispatchPending();
+        }
+    }
+
+    /**
+     * Applies lock sources received from the monitor process, in the UI process's mirror only.
+     * Nothing is persisted, the monitor process owns the stored locks. With {@code full} every
+     * package that is not listed loses its sources, otherwise only the listed packages change.
+     * Null category or rule arrays leave those sources as they are.
+     */
+    void applyMirror(boolean full, String[] packages, long[] manual, int[] scheduleRefs,
+                                  long[] categoryManual, int[] categoryScheduleRefs,
+                                  String[] patterns, long[] patternManual, int[] patternRefs) {
+        try {
+            synchronized (this) {
+                int[] ids = new int[packages.length];
+                for (int i = 0; i < packages.length; i++) {
+                    ids[i] = interner.intern(packages[i]);
+                }
+                Builder builder = new Builder(current, -1);
+                if (full) {
+                    for (int id = 0; id < builder.effective.length; id++) {
+                        if (builder.manual[id] != NOT_LOCKED || builder.scheduleRefs[id] != 0) {
+                            builder.manual[id] = NOT_LOCKED;
+                            builder.scheduleRefs[id] = 0;
+                            builder.recompute(id);
+                        }
+                    }
+                }
+                for (int i = 0; i < ids.length; i++) {
+                    builder.manual[ids[i]] = manual[i];
+                    builder.scheduleRefs[ids[i]] = scheduleRefs[i];
+                    builder.recompute(ids[i]);
+                }
+                if (categoryManual != null) {
+                    System.arraycopy(categoryManual, 0, builder.categoryManual, 0, AppCategoryIndex.CATEGORY_COUNT);
+                    System.arraycopy(categoryScheduleRefs, 0, builder.categoryScheduleRefs, 0, AppCategoryIndex.CATEGORY_COUNT);
+                }
+                if (patterns != null) {
+                    builder.replacePatterns(patterns, patternManual, patternRefs);
+                }
+                publish(builder, false);
+            }
+        } finally {
+            dispatchPending();
+        }
+    }
+
+    /** Mutable copy of a snapshot's arrays, sized to cover every interned package. */
+    private final class Builder {
+        final Snapshot base;
+        final long[] effective;
+        final long[] manual;
+        final int[] scheduleRefs;
+        final long[] categoryManual;
+        final int[] categoryScheduleRefs;
+        private Map<String, long[]> patterns; // rule -> {manual, scheduleRefs}, copied on first rule write
+        int count;
+        private int[] touched = new int[8];
+        private int touchedCount = 0;
+
+        Builder(Snapshot snapshot, int packageId) {
+            int length = Math.max(snapshot.effective.length, Math.max(interner.size(), packageId + 1));
+            base = snapshot;
+            effective = grow(snapshot.effective, length);
+            manual = grow(snapshot.manual, length);
+            scheduleRefs = Arrays.copyOf(snapshot.scheduleRefs, length);
+            categoryManual = snapshot.categoryManual.clone();
+            categoryScheduleRefs = snapshot.categoryScheduleRefs.clone();
+            count = snapshot.count;
+        }
+
+        /** Mutable {manual, scheduleRefs} of a rule, added empty if it has no lock yet. */
+        long[] pattern(String pattern) {
+            if (patterns == null) {
+                patterns = new LinkedHashMap<>();
+                PatternLocks locks = base.patterns;
+                for (int i = 0; i < locks.size(); i++) {
+                    patterns.put(locks.patterns[i], new long[] { locks.manual[i], locks.scheduleRefs[i] });
+                }
+            }
+            long[] sources = patterns.get(pattern);
+            if (sources == null) {
+                sources = new long[] { NOT_LOCKED, 0 };
+                patterns.put(pattern, sources);
+            }
+            return sources;
+        }
+
+        void replacePatterns(String[] names, long[] manualLocks, int[] refs) {
+            patterns = new LinkedHashMap<>();
+            for (int i = 0; i < names.length; i++) {
+                patterns.put(names[i], new long[] { manualLocks[i], refs[i] });
+            }
+        }
+
+        /** The builder's rule locks, dropping rules left without a source. Reuses the base when nothing changed. */
+        PatternLocks patternLocks() {
+            if (patterns == null) {
+                return base.patterns;
+            }
+            List<String> keys = new ArrayList<>();
+            List<long[]> values = new ArrayList<>();
+            for (Map.Entry<String, long[]> entry : patterns.entrySet()) {
+                if (entry.getValue()[0] != NOT_LOCKED || entry.getValue()[1] > 0) {
+                    keys.add(entry.getKey());
+                    values.add(entry.getValue());
+                }
+            }
+            String[] names = keys.toArray(new String[0]);
+            long[] manualLocks = new long[names.length];
+            int[] refs = new int[names.length];
+            for (int i = 0; i < names.length; i++) {
+                manualLocks[i] = values.get(i)[0];
+                refs[i] = (int) values.get(i)[1];
+            }
+            // The compiled matcher and its per-package cache only depend on the rule set
+            PackageRuleMatcher matcher = Arrays.equals(names, base.patterns.patterns)
+                ? base.patterns.matcher
+                : PackageRuleMatcher.compile(names, neverPatternLocked);
+            return new PatternLocks(names, manualLocks, refs, matcher);
+        }
+
+        void recompute(int packageId) {
+            if (touchedCount == touched.length) {
+                touched = Arrays.copyOf(touched, touched.length * 2);
+            }
+            touched[touchedCount++] = packageId;
+            boolean wasLocked = effective[packageId] != NOT_LOCKED;
+            effective[packageId] = scheduleRefs[packageId] > 0 ? INDEFINITE : manual[packageId];
+            boolean isLocked = effective[packageId] != NOT_LOCKED;
+            if (isLocked != wasLocked) {
+                count += isLocked ? 1 : -1;
+            }
+        }
+
+        /** Packages whose effective lock or sources differ from the base snapshot. */
+        Diff diff(long version, PatternLocks patternLocks) {
+            int[] ids = new int[touchedCount];
+            int n = 0;
+            boolean[] seen = new boolean[effective.length];
+            for (int i = 0; i < touchedCount; i++) {
+                int id = touched[i];
+                if (seen[id]) continue;
+                seen[id] = true;
+                if (effective[id] != base.packageUnlockTimeOf(id)
+                        || manual[id] != base.manualUnlockTimeOf(id)
+                        || scheduleRefs[id] != base.scheduleRefsOf(id)) {
+                    ids[n++] = id;
+                }
+            }
+            ids = Arrays.copyOf(ids, n);
+            long[] before = new long[n];
+            long[] after = new long[n];
+            long[] manualAfter = new long[n];
+            int[] refsAfter = new int[n];
+            for (int i = 0; i < n; i++) {
+                before[i] = base.packageUnlockTimeOf(ids[i]);
+                after[i] = effective[ids[i]];
+                manualAfter[i] = manual[ids[i]];
+                refsAfter[i] = scheduleRefs[ids[i]];
+            }
+            boolean categoriesChanged = !Arrays.equals(categoryManual, base.categoryManual)
+                || !Arrays.equals(categoryScheduleRefs, base.categoryScheduleRefs);
+            return new Diff(version, ids, before, after, manualAfter, refsAfter,
+                categoriesChanged ? categoryManual.clone() : null,
+                categoriesChanged ? categoryScheduleRefs.clone() : null,
+                patternLocks.sameSourcesAs(base.patterns) ? null : patternLocks);
+        }
+
+        private long[] grow(long[] source, int length) {
+            long[] copy = Arrays.copyOf(source, length);
+            if (length > source.length) {
+                Arrays.fill(copy, source.length, length, NOT_LOCKED);
+            }
+            return copy;
+        }
+    }
+
+    private void publish(Builder builder, boolean manualChanged) {
+        long version = current.version + 1;
+        PatternLocks patternLocks = builder.patternLocks();
+        Diff diff = builder.diff(version, patternLocks);
+        if (diff.isEmpty()) {
+            return; // nothing observable changed, keep the current version
+        }
+        Snapshot snapshot = new Snapshot(version,
+            builder.effective, builder.manual, builder.scheduleRefs, builder.count,
+            categories, builder.categoryManual, builder.categoryScheduleRefs, patternLocks);
+        current = snapshot;
+        if (recentDiffs.size() == DIFF_HISTORY) {
+            recentDiffs.pollFirst();
+        }
+        recentDiffs.addLast(diff);
+        if (manualChanged) {
+            // Only manual/timed locks are persisted, schedule references are derived state.
+            final Map<String, Long> manualLocks = new HashMap<>();
+            snapshot.forEachManual((packageId, unlockTime) -> manualLocks.put(interner.nameOf(packageId), unlockTime));
+            // Rules share the package map, their keys can never be mistaken for a package name
+            for (int i = 0; i < patternLocks.size(); i++) {
+                if (patternLocks.manual[i] != NOT_LOCKED) {
+                    manualLocks.put(patternLocks.patterns[i], patternLocks.manual[i]);
+                }
+            }
+            final Map<String, Long> categoryLocks = new HashMap<>();
+            for (int c = 0; c < AppCategoryIndex.CATEGORY_COUNT; c++) {
+                if (builder.categoryManual[c] != NOT_LOCKED) {
+                    categoryLocks.put(AppCategoryIndex.NAMES[c], builder.categoryManual[c]);
+                }
+            }
+            prefs.edit()
+                .putString(PREFS_KEY, new JSONObject(manualLocks).toString())
+                .putString(CATEGORY_PREFS_KEY, new JSONObject(categoryLocks).toString())
+                .apply();
+        }
+        Log.d(TAG, "Published lock table v" + snapshot.version + " with " + snapshot.count + " locked apps, "
+            + Integer.bitCount(snapshot.lockedCategoryMask) + " locked categories, " + patternLocks.size()
+            + " rule locks, " + diff.size() + " changed");
+        pendingDiffs.addLast(diff);
+    }
+
+    /**
+     * Hands published diffs to the listeners. Writers call it after leaving the table's lock, so
+     * a slow listener never holds up other writers or diffsSince; dispatchLock keeps the diffs of
+     * concurrent writers in version order.
+     */
+    private void dispatchPending() {
+        synchronized (dispatchLock) {
+            while (true) {
+                Diff diff;
+                synchronized (this) {
+                    diff = pendingDiffs.pollFirst();
+                }
+                if (diff == null) {
+                    return;
+                }
+                for (DiffListener listener : listeners) {
+                    try {
+                        listener.onDiff(diff);
+                    } catch (Exception e) {
+                        Log.e(TAG, "Lock table diff listener failed", e);
+                    }
+                }
+            }
+        }
+    }
+
+    private Snapshot load() {
+        Map<String, Long> locks = readLockMap(PREFS_KEY);
+        List<String> patternKeys = new ArrayList<>();
+        Iterator<Map.Entry<String, Long>> entries = locks.entrySet().iterator();
+        List<Long> patternUnlockTimes = new ArrayList<>();
+        while (entries.hasNext()) {
+            Map.Entry<String, Long> entry = entries.next();
+            if (PackageRuleMatcher.isRule(entry.getKey())) {
+                patternKeys.add(entry.getKey());
+                patternUnlockTimes.add(entry.getValue());
+                entries.remove();
+            }
+        }
+        String[] patternNames = patternKeys.toArray(new String[0]);
+        long[] patternManual = new long[patternNames.length];
+        for (int i = 0; i < patternNames.length; i++) {
+            patternManual[i] = patternUnlockTimes.get(i);
+        }
+        Log.d(TAG, "Loaded " + locks.size() + " locked apps from SharedPreferences.");
+        long[] categoryManual = new long[AppCategoryIndex.CATEGORY_COUNT];
+        Arrays.fill(categoryManual, NOT_LOCKED);
+        for (Map.Entry<String, Long> entry : readLockMap(CATEGORY_PREFS_KEY).entrySet()) {
+            int bit = AppCategoryIndex.bitOf(entry.getKey());
+            if (bit != 0) {
+                categoryManual[Integer.numberOfTrailingZeros(bit)] = entry.getValue();
+            }
+        }
+        for (String packageName : locks.keySet()) {
+            interner.intern(packageName);
+        }
+        int length = interner.size();
+        long[] manual = new long[length];
+        Arrays.fill(manual, NOT_LOCKED);
+        for (Map.Entry<String, Long> entry : locks.entrySet()) {
+            manual[interner.lookup(entry.getKey())] = entry.getValue();
+        }
+        return new Snapshot(0, Arrays.copyOf(manual, length), manual, new int[length], locks.size(),
+            categories, categoryManual, new int[AppCategoryIndex.CATEGORY_COUNT],
+            new PatternLocks(patternNames, patternManual, new int[patternNames.length],
+                PackageRuleMatcher.compile(patternNames, neverPatternLocked)));
+    }
+
+    private Map<String, Long> readLockMap(String key) {
+        Map<String, Long> locks = new HashMap<>();
+        String jsonString = prefs.getString(key, null);
+        if (jsonString == null) {
+            return locks;
+        }
+        try {
+            JSONObject json = new JSONObject(jsonString);
+            Iterator<String> keys = json.keys();
+            while (keys.hasNext()) {
+                String name = keys.next();
+                locks.put(name, json.getLong(name));
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to load " + key + " from SharedPreferences", e);
+            locks.clear();
+        }
+        return locks;
+    }
+}
@@ -21,19 +21,26 @@ import com.newfocusguard.AppMonitoringPackage
 import com.newfocusguard.OverlayPermissionPackage
 import com.newfocusguard.InstalledAppsPackage
 import com.newfocusguard.OverlayPackage
+import com.newfocusguard.HistoryPackage
+import com.newfocusguard.AppIconPackage
 
 class MainApplication : Application(), ReactApplication {
 
-  override val reactNativeHost: ReactNativeHost = ReactNativeHostWrapper(
+  // Lazy so the :monitor process, which never starts React, does not build the host either
+  override val reactNativeHost: ReactNativeHost by lazy {
+      ReactNativeHostWrapper(
         this,
         object : DefaultReactNativeHost(this) {
           override fun getPackages(): List<ReactPackage> {
             val packages = PackageList(this).packages
-            // Add our custom packages
+            // Add our custom packages. Each one is a BaseReactPackage, so its module is
+            // only constructed the first time JS uses it.
             packages.add(OverlayPermissionPackage())
             packages.add(AppMonitoringPackage())
             packages.add(InstalledAppsPackage())
             packages.add(OverlayPackage())
+            packages.add(HistoryPackage())
+            packages.add(AppIconPackage())
             return packages
           }
 
@@ -44,23 +51,34 @@ class MainApplication : Application(), ReactApplication {
           override val isNewArchEnabled: Boolean = BuildConfig.IS_NEW_ARCHITECTURE_ENABLED
           override val isHermesEnabled: Boolean = BuildConfig.IS_HERMES_ENABLED
       }
-  )
+    )
+  }
 
   override val reactHost: ReactHost
     get() = ReactNativeHostWrapper.createReactHost(applicationContext, reactNativeHost)
 
   override fun onCreate() {
     super.onCreate()
+    if (MonitorBridge.isMonitorProcess()) {
+      // Enforcement process: AppMonitoringService and its stores only, no SoLoader, Hermes or Expo modules
+      return
+    }
     SoLoader.init(this, OpenSourceMergedSoMapping)
     if (BuildConfig.IS_NEW_ARCHITECTURE_ENABLED) {
       // If you opted-in for the New Architecture, we load the native entry point for this app.
       load()
     }
     ApplicationLifecycleDispatcher.onApplicationCreate(this)
+    // Loads the snapshot on its own thread and rescans only when it is stale or dirty,
+    // so the app picker usually finds the list ready
+    InstalledAppIndex.getInstance(this)
   }
 
   override fun onConfigurationChanged(newConfig: Configuration) {
     super.onConfigurationChanged(newConfig)
+    if (MonitorBridge.isMonitorProcess()) {
+      return
+    }
     ApplicationLifecycleDispatcher.onConfigurationChanged(this, newConfig)
   }
 }
@@ -0,0 +1,225 @@
+package com.newfocusguard;
+
+import android.app.Application;
+import android.content.Context;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.util.Log;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Monitor-process end of the link to the UI process.
+ *
+ * AppMonitoringService and the stores it writes live in the ":monitor" process, which never
+ * starts React. The UI process subscribes through {@link MonitorStateProvider} with a
+ * {@link Messenger}; from then on every lock table diff, JS event and category change is
+ * pushed to it as a one-way Binder message. Package IDs are per process, so everything on
+ * the wire is keyed by package name.
+ */
+final class MonitorBridge {
+    private static final String TAG = "FocusGuardMonitorBridge";
+
+    // Message codes, shared with MonitorClient
+    static final int MSG_LOCK_DIFF = 1;
+    static final int MSG_EVENT = 2;
+    static final int MSG_CATEGORY_MASK = 3;
+
+    // Bundle keys of the lock state and diffs
+    static final String KEY_EPOCH = "epoch";
+    static final String KEY_VERSION = "version";
+    static final String KEY_FULL = "full";
+    static final String KEY_PACKAGES = "packages";
+    static final String KEY_MANUAL = "manual";
+    static final String KEY_SCHEDULE_REFS = "scheduleRefs";
+    static final String KEY_CATEGORY_MANUAL = "categoryManual";
+    static final String KEY_CATEGORY_SCHEDULE_REFS = "categoryScheduleRefs";
+    static final String KEY_PATTERNS = "patterns";
+    static final String KEY_PATTERN_MANUAL = "patternManual";
+    static final String KEY_PATTERN_REFS = "patternRefs";
+
+    static final String KEY_EVENT_NAME = "eventName";
+    static final String KEY_PACKAGE_NAME = "packageName";
+    static final String KEY_CATEGORY_MASK = "categoryMask";
+
+    /** Events JS must see even when the UI process is not running; they go to a headless task then. */
+    private static final Set<String> HEADLESS_EVENTS =
+        new HashSet<>(Arrays.asList("onAppBlocked", "onAppUninstalled"));
+
+    /** Suffix of the process AppMonitoringService and MonitorStateProvider run in, see the manifest. */
+    static final String PROCESS_SUFFIX = ":monitor";
+
+    private static MonitorBridge instance;
+
+    private final LockTable lockTable;
+    private final HeadlessDispatcher headless;
+    private final CopyOnWriteArrayList<Messenger> subscribers = new CopyOnWriteArrayList<>();
+
+    private MonitorBridge(Context context) {
+        this.lockTable = LockTable.getInstance(context);
+        this.headless = HeadlessDispatcher.getInstance(context);
+        lockTable.addDiffListener(this::onLockTableDiff);
+    }
+
+    static synchronized MonitorBridge getInstance(Context context) {
+        if (instance == null) {
+            instance = new MonitorBridge(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /** True in the ":monitor" process, where MainApplication must not initialize React. */
+    static boolean isMonitorProcess() {
+        String name = null;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            name = Application.getProcessName();
+        } else {
+            try (FileInputStream in = new FileInputStream("/proc/self/cmdline")) {
+                byte[] buffer = new byte[256];
+                int length = in.read(buffer);
+                int end = 0;
+                while (end < Math.max(length, 0) && buffer[end] != 0) {
+                    end++;
+                }
+                name = new String(buffer, 0, end, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                Log.e(TAG, "Cannot read the process name", e);
+            }
+        }
+        return name != null && name.endsWith(PROCESS_SUFFIX);
+    }
+
+    /**
+     * Registers a UI process and returns the full lock state. The subscriber is added before the
+     * snapshot is read, so a diff racing with the call is at worst delivered twice, never lost;
+     * the client drops versions it already has.
+     */
+    Bundle subscribe(Messenger messenger) {
+        if (messenger != null) {
+            subscribers.addIfAbsent(messenger);
+            Log.d(TAG, "UI process subscribed, " + subscribers.size() + " subscriber(s)");
+        }
+        return lockState();
+    }
+
+    Bundle lockState() {
+        return snapshotToBundle(lockTable.epoch, lockTable.snapshot());
+    }
+
+    /** Forwards an event to JS in the UI process. Dropped when no UI process is listening. */
+    void sendEvent(String eventName, Bundle params) {
+        if (subscribers.isEmpty()) {
+            if (HEADLESS_EVENTS.contains(eventName)) {
+                headless.enqueue(eventName, params);
+                return;
+            }
+            Log.w(TAG, "Cannot send event " + eventName + ", no UI process subscribed.");
+            return;
+        }
+        Bundle data = new Bundle(params);
+        data.putString(KEY_EVENT_NAME, eventName);
+        send(MSG_EVENT, data);
+        Log.d(TAG, "Sent event " + eventName + " with params: " + params);
+    }
+
+    /** Tells the UI process a package's categories changed, so its category index stays in step. */
+    void sendCategoryMask(String packageName, int mask) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        Bundle data = new Bundle();
+        data.putString(KEY_PACKAGE_NAME, packageName);
+        data.putInt(KEY_CATEGORY_MASK, mask);
+        send(MSG_CATEGORY_MASK, data);
+    }
+
+    private void onLockTableDiff(LockTable.Diff diff) {
+        if (!subscribers.isEmpty()) {
+            send(MSG_LOCK_DIFF, diffToBundle(lockTable.epoch, diff));
+        }
+    }
+
+    private void send(int what, Bundle data) {
+        for (Messenger messenger : subscribers) {
+            Message message = Message.obtain(null, what);
+            message.setData(data);
+            try {
+                messenger.send(message);
+            } catch (RemoteException e) {
+                // The UI process died; it subscribes again when it comes back
+                subscribers.remove(messenger);
+                Log.d(TAG, "Dropped a dead subscriber, " + subscribers.size() + " left");
+            }
+        }
+    }
+
+    private static Bundle snapshotToBundle(long epoch, LockTable.Snapshot snapshot) {
+        final int size = snapshot.size();
+        final String[] packages = new String[size];
+        final long[] manual = new long[size];
+        final int[] scheduleRefs = new int[size];
+        final int[] count = new int[1];
+        final PackageInterner interner = PackageInterner.getInstance();
+        snapshot.forEach((packageId, unlockTime) -> {
+            int i = count[0]++;
+            packages[i] = interner.nameOf(packageId);
+            manual[i] = snapshot.manualUnlockTimeOf(packageId);
+            scheduleRefs[i] = snapshot.scheduleRefsOf(packageId);
+        });
+        long[] categoryManual = new long[AppCategoryIndex.CATEGORY_COUNT];
+        int[] categoryScheduleRefs = new int[AppCategoryIndex.CATEGORY_COUNT];
+        for (int c = 0; c < AppCategoryIndex.CATEGORY_COUNT; c++) {
+            categoryManual[c] = snapshot.categoryManualUnlockTimeOf(c);
+            categoryScheduleRefs[c] = snapshot.categoryScheduleRefsOf(c);
+        }
+        Bundle state = new Bundle();
+        state.putBoolean(KEY_FULL, true);
+        state.putLong(KEY_EPOCH, epoch);
+        state.putLong(KEY_VERSION, snapshot.version);
+        state.putStringArray(KEY_PACKAGES, packages);
+        state.putLongArray(KEY_MANUAL, manual);
+        state.putIntArray(KEY_SCHEDULE_REFS, scheduleRefs);
+        state.putLongArray(KEY_CATEGORY_MANUAL, categoryManual);
+        state.putIntArray(KEY_CATEGORY_SCHEDULE_REFS, categoryScheduleRefs);
+        putPatterns(state, snapshot.patterns);
+        return state;
+    }
+
+    private static Bundle diffToBundle(long epoch, LockTable.Diff diff) {
+        PackageInterner interner = PackageInterner.getInstance();
+        String[] packages = new String[diff.size()];
+        for (int i = 0; i < packages.length; i++) {
+            packages[i] = interner.nameOf(diff.packageIds[i]);
+        }
+        Bundle bundle = new Bundle();
+        bundle.putBoolean(KEY_FULL, false);
+        bundle.putLong(KEY_EPOCH, epoch);
+        bundle.putLong(KEY_VERSION, diff.version);
+        bundle.putStringArray(KEY_PACKAGES, packages);
+        bundle.putLongArray(KEY_MANUAL, diff.manual);
+        bundle.putIntArray(KEY_SCHEDULE_REFS, diff.scheduleRefs);
+        if (diff.hasCategoryChanges()) {
+            bundle.putLongArray(KEY_CATEGORY_MANUAL, diff.categoryManual);
+            bundle.putIntArray(KEY_CATEGORY_SCHEDULE_REFS, diff.categoryScheduleRefs);
+        }
+        if (diff.patterns != null) {
+            putPatterns(bundle, diff.patterns);
+        }
+        return bundle;
+    }
+
+    private static void putPatterns(Bundle bundle, LockTable.PatternLocks patterns) {
+        bundle.putStringArray(KEY_PATTERNS, patterns.patterns);
+        bundle.putLongArray(KEY_PATTERN_MANUAL, patterns.manual);
+        bundle.putIntArray(KEY_PATTERN_REFS, patterns.scheduleRefs);
+    }
+}
@@ -0,0 +1,340 @@
+package com.newfocusguard;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Message;
+import android.os.Messenger;
+import android.os.RemoteException;
+import android.util.Log;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * UI-process end of the link to the ":monitor" process.
+ *
+ * Once connected, the UI process's {@link LockTable} is a mirror of the monitor's: the full
+ * state comes back from the subscribe call and every later version arrives as a pushed diff.
+ * A gap in the version sequence, or a new epoch after the monitor process restarted, is
+ * answered by re-reading the full state on a worker thread; diffs arriving meanwhile are
+ * covered by that read.
+ *
+ * Subscribing, reconnecting and re-reading all call the provider on the worker, and hold this
+ * object's lock only to apply the reply. Pushed diffs are applied on the main thread under the
+ * same lock, so the main thread never waits on the monitor process. Events the service used
+ * to emit to JS directly are handed to {@link EventListener}s. The typed calls below front the
+ * stores that only the monitor process writes; they block their caller, so callers make them
+ * off the main and JS threads.
+ */
+final class MonitorClient {
+    private static final String TAG = "FocusGuardMonitorClient";
+    private static final long RECONNECT_DELAY_MS = 1000;
+
+    interface EventListener {
+        /** Called on the main thread. */
+        void onMonitorEvent(String eventName, Bundle params);
+    }
+
+    private static MonitorClient instance;
+
+    private final Context context;
+    private final Uri uri;
+    private final Handler handler = new Handler(Looper.getMainLooper(), this::handleMessage);
+    private final Messenger messenger = new Messenger(handler);
+    private final CopyOnWriteArrayList<EventListener> listeners = new CopyOnWriteArrayList<>();
+    private final IBinder.DeathRecipient monitorDeath = this::onMonitorDied;
+    // Provider calls made on our own initiative (reconnects, re-reads), off the main thread
+    private final ExecutorService worker = Executors.newSingleThreadExecutor();
+    private final Runnable reconnect = this::connectInBackground;
+
+    private boolean wanted;
+    private boolean connected;
+    private boolean connecting; // a subscribe call is out, on the worker
+    private IBinder monitorToken;
+    private long remoteEpoch = -1;
+    private long remoteVersion = -1;
+    private boolean resyncing; // a full re-read is queued, diffs until then are skipped
+
+    private MonitorClient(Context context) {
+        this.context = context;
+        this.uri = Uri.parse("content://" + MonitorStateProvider.authorityOf(context));
+    }
+
+    static synchronized MonitorClient getInstance(Context context) {
+        if (instance == null) {
+            instance = new MonitorClient(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    void addEventListener(EventListener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    void removeEventListener(EventListener listener) {
+        listeners.remove(listener);
+    }
+
+    /** Subscribes to the monitor process on the worker thread, see {@link #connect}. */
+    void connectInBackground() {
+        worker.execute(this::connect);
+    }
+
+    /**
+     * Subscribes to the monitor process, starting it if needed, and brings the lock table mirror
+     * up to date. Blocks until the monitor answers, so call it off the main thread.
+     */
+    void connect() {
+        synchronized (this) {
+            wanted = true;
+            if (connected || connecting) {
+                return;
+            }
+            connecting = true;
+        }
+        Bundle extras = new Bundle();
+        extras.putParcelable(MonitorStateProvider.KEY_MESSENGER, messenger);
+        Bundle state = tryCall(MonitorStateProvider.METHOD_SUBSCRIBE, null, extras);
+        IBinder token = state != null ? state.getBinder(MonitorStateProvider.KEY_TOKEN) : null;
+        boolean linked = false;
+        if (token != null) {
+            try {
+                token.linkToDeath(monitorDeath, 0);
+                linked = true;
+            } catch (RemoteException e) {
+                // Died between the reply and now
+            }
+        }
+        synchronized (this) {
+            connecting = false;
+            if (!wanted) {
+                // Disconnected while the call was out
+                if (linked) {
+                    token.unlinkToDeath(monitorDeath, 0);
+                }
+                return;
+            }
+            if (!linked || !token.isBinderAlive()) {
+                handler.postDelayed(reconnect, RECONNECT_DELAY_MS);
+                return;
+            }
+            monitorToken = token;
+            connected = true;
+            long epoch = state.getLong(MonitorBridge.KEY_EPOCH);
+            // A diff pushed after the subscribe may already have moved the mirror past this state
+            if (epoch != remoteEpoch || state.getLong(MonitorBridge.KEY_VERSION) > remoteVersion) {
+                applyLockState(state);
+            }
+            Log.d(TAG, "Connected to the monitor process, lock table v" + remoteVersion + " of epoch " + remoteEpoch);
+        }
+    }
+
+    /** Stops reconnecting when the monitor process goes away. The monitor drops our messenger on its next send. */
+    synchronized void disconnect() {
+        wanted = false;
+        connected = false;
+        handler.removeCallbacksAndMessages(null);
+        if (monitorToken != null) {
+            monitorToken.unlinkToDeath(monitorDeath, 0);
+            monitorToken = null;
+        }
+    }
+
+    private synchronized void onMonitorDied() {
+        Log.w(TAG, "Monitor process died");
+        connected = false;
+        monitorToken = null;
+        if (wanted) {
+            // START_STICKY brings the service back; the provider call restarts the process either way
+            handler.postDelayed(reconnect, RECONNECT_DELAY_MS);
+        }
+    }
+
+    private boolean handleMessage(Message message) {
+        Bundle data = message.getData();
+        switch (message.what) {
+            case MonitorBridge.MSG_LOCK_DIFF:
+                onLockDiff(data);
+                break;
+            case MonitorBridge.MSG_EVENT:
+                String eventName = data.getString(MonitorBridge.KEY_EVENT_NAME);
+                data.remove(MonitorBridge.KEY_EVENT_NAME);
+                for (EventListener listener : listeners) {
+                    listener.onMonitorEvent(eventName, data);
+                }
+                break;
+            case MonitorBridge.MSG_CATEGORY_MASK:
+                AppCategoryIndex.getInstance(context).applyMask(
+                    data.getString(MonitorBridge.KEY_PACKAGE_NAME), data.getInt(MonitorBridge.KEY_CATEGORY_MASK));
+                break;
+            default:
+                return false;
+        }
+        return true;
+    }
+
+    private synchronized void onLockDiff(Bundle diff) {
+        if (resyncing) {
+            return; // the queued full read includes this version
+        }
+        long epoch = diff.getLong(MonitorBridge.KEY_EPOCH);
+        long version = diff.getLong(MonitorBridge.KEY_VERSION);
+        if (epoch == remoteEpoch && version <= remoteVersion) {
+            return; // already in the state we read when subscribing
+        }
+        if (epoch != remoteEpoch || version != remoteVersion + 1) {
+            Log.d(TAG, "Missed lock table versions (have " + remoteEpoch + "/" + remoteVersion
+                + ", got " + epoch + "/" + version + "), re-reading the full state");
+            resyncing = true;
+            worker.execute(this::resync);
+            return;
+        }
+        applyLockState(diff);
+    }
+
+    private void resync() {
+        Bundle state = tryCall(MonitorStateProvider.METHOD_LOCK_STATE, null, null);
+        synchronized (this) {
+            resyncing = false;
+            // On failure the next diff finds the same gap and queues another read
+            if (state != null) {
+                applyLockState(state);
+            }
+        }
+    }
+
+    private void applyLockState(Bundle state) {
+        remoteEpoch = state.getLong(MonitorBridge.KEY_EPOCH);
+        remoteVersion = state.getLong(MonitorBridge.KEY_VERSION);
+        LockTable.getInstance(context).applyMirror(
+            state.getBoolean(MonitorBridge.KEY_FULL),
+            state.getStringArray(MonitorBridge.KEY_PACKAGES),
+            state.getLongArray(MonitorBridge.KEY_MANUAL),
+            state.getIntArray(MonitorBridge.KEY_SCHEDULE_REFS),
+            state.getLongArray(MonitorBridge.KEY_CATEGORY_MANUAL),
+            state.getIntArray(MonitorBridge.KEY_CATEGORY_SCHEDULE_REFS),
+            state.getStringArray(MonitorBridge.KEY_PATTERNS),
+            state.getLongArray(MonitorBridge.KEY_PATTERN_MANUAL),
+            state.getIntArray(MonitorBridge.KEY_PATTERN_REFS));
+    }
+
+    // Monitor-owned stores
+
+    /** {hasQuota, remainingMs, usedTodayMs} of a package. */
+    Bundle quotaStatus(String packageName) {
+        return call(MonitorStateProvider.METHOD_QUOTA_STATUS, packageName, null);
+    }
+
+    /** {apps, categories, combined} blocked intervals from the monitor's schedules, flattened start/end pairs. */
+    Bundle blockingTimeline(long fromMs, long toMs) {
+        Bundle extras = new Bundle();
+        extras.putLong("from", fromMs);
+        extras.putLong("to", toMs);
+        return call(MonitorStateProvider.METHOD_BLOCKING_TIMELINE, null, extras);
+    }
+
+    /** {epoch, revision} of the last schedule operation the monitor applied, see ScheduleStore. */
+    Bundle scheduleSyncState() {
+        return call(MonitorStateProvider.METHOD_SCHEDULE_SYNC_STATE, null, null);
+    }
+
+    String quotesRevision() {
+        return call(MonitorStateProvider.METHOD_QUOTES_REVISION, null, null).getString("revision");
+    }
+
+    void setQuotes(String[] quotes, String revision) {
+        Bundle extras = new Bundle();
+        extras.putStringArray("quotes", quotes);
+        extras.putString("revision", revision);
+        call(MonitorStateProvider.METHOD_SET_QUOTES, null, extras);
+    }
+
+    void updateQuotes(String[] added, String[] removed, String revision) {
+        Bundle extras = new Bundle();
+        extras.putStringArray("added", added);
+        extras.putStringArray("removed", removed);
+        extras.putString("revision", revision);
+        call(MonitorStateProvider.METHOD_UPDATE_QUOTES, null, extras);
+    }
+
+    void setAppLabels(String[] packages, String[] labels) {
+        Bundle extras = new Bundle();
+        extras.putStringArray("packages", packages);
+        extras.putStringArray("labels", labels);
+        call(MonitorStateProvider.METHOD_SET_APP_LABELS, null, extras);
+    }
+
+    void setEmergencyUnlockAllowance(int perWeek) {
+        Bundle extras = new Bundle();
+        extras.putInt("perWeek", perWeek);
+        call(MonitorStateProvider.METHOD_SET_EMERGENCY_ALLOWANCE, null, extras);
+    }
+
+    /** {allowance, remaining} of this week's emergency unlocks. */
+    Bundle emergencyUnlockStatus() {
+        return call(MonitorStateProvider.METHOD_EMERGENCY_STATUS, null, null);
+    }
+
+    boolean tryConsumeEmergencyUnlock() {
+        return call(MonitorStateProvider.METHOD_CONSUME_EMERGENCY_UNLOCK, null, null).getBoolean("consumed");
+    }
+
+    /** Lifetime lock counters in LockLedger's JSON form. */
+    String lifetimeCountersJson() {
+        return call(MonitorStateProvider.METHOD_LIFETIME_COUNTERS, null, null).getString("counters");
+    }
+
+    /** Imports an export file into the monitor's history log and returns the number of rows. */
+    int importHistory(String path) {
+        Bundle result = call(MonitorStateProvider.METHOD_IMPORT_HISTORY, path, null);
+        String error = result.getString(MonitorStateProvider.KEY_ERROR);
+        if (error != null) {
+            throw new IllegalStateException(error);
+        }
+        return result.getInt("rows");
+    }
+
+    /** Recent time-to-enforcement samples, a JSON array of {reason, delayMs, timestamp}. */
+    String restoreSamplesJson() {
+        return call(MonitorStateProvider.METHOD_RESTORE_SAMPLES, null, null).getString("restores");
+    }
+
+    /** Apps the Quick Settings tile locks, for durationMinutes or until turned off when 0. */
+    void setFocusProfile(String[] packages, int durationMinutes) {
+        Bundle extras = new Bundle();
+        extras.putStringArray("packages", packages);
+        extras.putInt("durationMinutes", durationMinutes);
+        String error = call(MonitorStateProvider.METHOD_SET_FOCUS_PROFILE, null, extras)
+            .getString(MonitorStateProvider.KEY_ERROR);
+        if (error != null) {
+            throw new IllegalArgumentException(error);
+        }
+    }
+
+    /** {packages, durationMinutes, active} of the tile's focus profile. */
+    Bundle focusProfile() {
+        return call(MonitorStateProvider.METHOD_FOCUS_PROFILE, null, null);
+    }
+
+    private Bundle call(String method, String arg, Bundle extras) {
+        Bundle result = context.getContentResolver().call(uri, method, arg, extras);
+        if (result == null) {
+            throw new IllegalStateException("No reply from the monitor process to " + method);
+        }
+        return result;
+    }
+
+    private Bundle tryCall(String method, String arg, Bundle extras) {
+        try {
+            return context.getContentResolver().call(uri, method, arg, extras);
+        } catch (Exception e) {
+            Log.e(TAG, "Monitor process call " + method + " failed", e);
+            return null;
+        }
+    }
+}
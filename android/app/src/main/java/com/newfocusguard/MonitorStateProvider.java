@@ -0,0 +1,222 @@
+package com.newfocusguard;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Binder;
+import android.os.Bundle;
+import android.os.Messenger;
+import android.util.Log;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Call-only provider through which the UI process reaches the ":monitor" process.
+ *
+ * It runs in the monitor process next to AppMonitoringService, and hosting it is enough
+ * to bring that process up, so the UI can read and write monitor-owned state whether or
+ * not the service is running. Commands that change enforcement still go to the service
+ * as intents; this covers the subscription ({@link MonitorBridge}) and the stores the
+ * JS modules used to touch directly. Not exported, only our own UID can call it.
+ */
+public class MonitorStateProvider extends ContentProvider {
+    private static final String TAG = "FocusGuardMonitorProvider";
+
+    static final String METHOD_SUBSCRIBE = "subscribe";
+    static final String METHOD_LOCK_STATE = "lockState";
+    static final String METHOD_QUOTA_STATUS = "quotaStatus";
+    static final String METHOD_QUOTES_REVISION = "quotesRevision";
+    static final String METHOD_SET_QUOTES = "setQuotes";
+    static final String METHOD_UPDATE_QUOTES = "updateQuotes";
+    static final String METHOD_SET_APP_LABELS = "setAppLabels";
+    static final String METHOD_SET_EMERGENCY_ALLOWANCE = "setEmergencyAllowance";
+    static final String METHOD_EMERGENCY_STATUS = "emergencyStatus";
+    static final String METHOD_CONSUME_EMERGENCY_UNLOCK = "consumeEmergencyUnlock";
+    static final String METHOD_LIFETIME_COUNTERS = "lifetimeCounters";
+    static final String METHOD_IMPORT_HISTORY = "importHistory";
+    static final String METHOD_RESTORE_SAMPLES = "restoreSamples";
+    static final String METHOD_SET_FOCUS_PROFILE = "setFocusProfile";
+    static final String METHOD_FOCUS_PROFILE = "focusProfile";
+    static final String METHOD_SCHEDULE_SYNC_STATE = "scheduleSyncState";
+    static final String METHOD_BLOCKING_TIMELINE = "blockingTimeline";
+
+    static final String KEY_MESSENGER = "messenger";
+    static final String KEY_TOKEN = "token";
+    static final String KEY_ERROR = "error";
+
+    /** Lives as long as this process; the UI process links to its death to know when to resubscribe. */
+    private static final Binder PROCESS_TOKEN = new Binder();
+
+    static String authorityOf(Context context) {
+        return context.getPackageName() + ".monitor";
+    }
+
+    @Override
+    public boolean onCreate() {
+        Log.d(TAG, "Monitor state provider created");
+        return true;
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        Context context = getContext();
+        Bundle result = new Bundle();
+        switch (method) {
+            case METHOD_SUBSCRIBE: {
+                Messenger messenger = extras != null ? extras.getParcelable(KEY_MESSENGER) : null;
+                result = MonitorBridge.getInstance(context).subscribe(messenger);
+                result.putBinder(KEY_TOKEN, PROCESS_TOKEN);
+                break;
+            }
+            case METHOD_LOCK_STATE:
+                result = MonitorBridge.getInstance(context).lockState();
+                break;
+            case METHOD_QUOTA_STATUS: {
+                QuotaTracker quotaTracker = QuotaTracker.getInstance(context);
+                int packageId = PackageInterner.getInstance().lookup(arg);
+                long now = System.currentTimeMillis();
+                boolean hasQuota = quotaTracker.hasRule(packageId);
+                result.putBoolean("hasQuota", hasQuota);
+                if (hasQuota) {
+                    result.putLong("remainingMs", quotaTracker.remainingMs(packageId, now));
+                    result.putLong("usedTodayMs", quotaTracker.usedTodayMs(packageId, now));
+                }
+                break;
+            }
+            case METHOD_SCHEDULE_SYNC_STATE: {
+                ScheduleStore store = ScheduleStore.getInstance(context);
+                result.putString("epoch", store.syncEpoch());
+                result.putLong("revision", store.syncRevision());
+                break;
+            }
+            case METHOD_BLOCKING_TIMELINE: {
+                // The monitor owns the schedule files, read them here rather than from the UI process
+                ScheduleTimeline.Result timeline = ScheduleTimeline.compute(
+                    ScheduleStore.getInstance(context).loadAll().values(), extras.getLong("from"), extras.getLong("to"));
+                Bundle apps = new Bundle();
+                for (Map.Entry<String, List<long[]>> entry : timeline.perApp.entrySet()) {
+                    apps.putLongArray(entry.getKey(), flatten(entry.getValue()));
+                }
+                Bundle categories = new Bundle();
+                for (Map.Entry<String, List<long[]>> entry : timeline.perCategory.entrySet()) {
+                    categories.putLongArray(entry.getKey(), flatten(entry.getValue()));
+                }
+                result.putBundle("apps", apps);
+                result.putBundle("categories", categories);
+                result.putLongArray("combined", flatten(timeline.combined));
+                break;
+            }
+            case METHOD_QUOTES_REVISION:
+                result.putString("revision", OverlayContentCache.getInstance(context).quotesRevision());
+                break;
+            case METHOD_SET_QUOTES:
+                OverlayContentCache.getInstance(context)
+                    .setQuotes(extras.getStringArray("quotes"), extras.getString("revision"));
+                break;
+            case METHOD_UPDATE_QUOTES:
+                OverlayContentCache.getInstance(context).updateQuotes(
+                    extras.getStringArray("added"), extras.getStringArray("removed"), extras.getString("revision"));
+                break;
+            case METHOD_SET_APP_LABELS: {
+                OverlayContentCache cache = OverlayContentCache.getInstance(context);
+                String[] packages = extras.getStringArray("packages");
+                String[] labels = extras.getStringArray("labels");
+                for (int i = 0; i < packages.length; i++) {
+                    cache.putLabel(packages[i], labels[i]);
+                }
+                break;
+            }
+            case METHOD_SET_EMERGENCY_ALLOWANCE:
+                OverlayContentCache.getInstance(context).setWeeklyAllowance(extras.getInt("perWeek"));
+                break;
+            case METHOD_EMERGENCY_STATUS: {
+                OverlayContentCache cache = OverlayContentCache.getInstance(context);
+                result.putInt("allowance", cache.weeklyAllowance());
+                result.putInt("remaining", cache.emergencyUnlocksRemaining(System.currentTimeMillis()));
+                break;
+            }
+            case METHOD_CONSUME_EMERGENCY_UNLOCK:
+                result.putBoolean("consumed",
+                    OverlayContentCache.getInstance(context).tryConsumeEmergencyUnlock(System.currentTimeMillis()));
+                break;
+            case METHOD_LIFETIME_COUNTERS:
+                result.putString("counters", LockLedger.getInstance(context).lifetimeCountersJson());
+                break;
+            case METHOD_IMPORT_HISTORY:
+                // The history log has a single writer, the monitor process. Rows it already
+                // holds are skipped, so "rows" counts only what the import added.
+                try {
+                    result.putInt("rows", HistoryLog.getInstance(context).merge(HistoryArchive.readAll(new File(arg))));
+                } catch (Exception e) {
+                    Log.e(TAG, "History import failed", e);
+                    result.putString(KEY_ERROR, String.valueOf(e.getMessage()));
+                }
+                break;
+            case METHOD_RESTORE_SAMPLES:
+                result.putString("restores", EnforcementSupervisor.getInstance(context).restoreSamplesJson());
+                break;
+            case METHOD_SET_FOCUS_PROFILE: {
+                String[] packages = extras != null ? extras.getStringArray("packages") : null;
+                String error = FocusProfile.validate(packages, extras != null ? extras.getInt("durationMinutes", -1) : -1);
+                if (error != null) {
+                    Log.w(TAG, "Rejected focus profile: " + error);
+                    result.putString(KEY_ERROR, error);
+                    break;
+                }
+                FocusProfile.getInstance(context).set(packages, extras.getInt("durationMinutes"));
+                FocusSurfaces.getInstance(context).refresh();
+                break;
+            }
+            case METHOD_FOCUS_PROFILE: {
+                FocusProfile profile = FocusProfile.getInstance(context);
+                result.putStringArray("packages", profile.packages().toArray(new String[0]));
+                result.putInt("durationMinutes", profile.durationMinutes());
+                result.putBoolean("active", profile.isActive(System.currentTimeMillis()));
+                break;
+            }
+            default:
+                Log.w(TAG, "Unknown method " + method);
+                return null;
+        }
+        return result;
+    }
+
+    /** {start, end} intervals as one array of start0, end0, start1, end1, ... */
+    private static long[] flatten(List<long[]> intervals) {
+        long[] flat = new long[intervals.size() * 2];
+        for (int i = 0; i < intervals.size(); i++) {
+            flat[2 * i] = intervals.get(i)[0];
+            flat[2 * i + 1] = intervals.get(i)[1];
+        }
+        return flat;
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        return null;
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        return null;
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        return 0;
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        return 0;
+    }
+}
@@ -0,0 +1,268 @@
+package com.newfocusguard;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Everything the native block overlay shows, held in memory so the overlay is built
+ * without waking the JS runtime or touching the disk.
+ *
+ * JS pushes the quote pool once (MotivationService's category, default and custom quotes)
+ * and then only the quotes that changed; the pool and its revision are persisted so they
+ * survive process restarts, and JS skips the resend when the revision already matches.
+ * App labels are resolved from PackageManager off the main thread as soon as a package
+ * gets locked, directly or through a category or rule; {@link #labelOf} never blocks. The weekly emergency unlock budget is counted here too, so the overlay and
+ * the unlock button agree without a round trip.
+ */
+final class OverlayContentCache {
+    private static final String TAG = "FocusGuardOverlayContent";
+    private static final String PREFS_NAME = "FocusGuardOverlayContent";
+    private static final String KEY_QUOTES = "quotes";
+    private static final String KEY_REVISION = "quotesRevision";
+    private static final String KEY_CURSOR = "quoteCursor";
+    private static final String KEY_WEEKLY_ALLOWANCE = "emergencyUnlocksPerWeek";
+    private static final String KEY_WEEK_START = "emergencyWeekStart";
+    private static final String KEY_WEEK_USED = "emergencyUnlocksUsed";
+    static final String FALLBACK_QUOTE = "Focus on what matters most today.";
+    static final int DEFAULT_WEEKLY_ALLOWANCE = 3;
+
+    interface LabelListener {
+        void onLabel(String packageName, String label);
+    }
+
+    private static OverlayContentCache instance;
+
+    private final SharedPreferences prefs;
+    private final PackageManager packageManager;
+    private final ConcurrentHashMap<String, String> labels = new ConcurrentHashMap<>();
+    private final ExecutorService labelExecutor = Executors.newSingleThreadExecutor();
+
+    private volatile String[] quotes;
+    private volatile String quotesRevision;
+    private int quoteCursor;
+
+    private int weeklyAllowance;
+    private long weekStart;
+    private long weekEnd;
+    private int usedThisWeek;
+
+    private OverlayContentCache(Context context) {
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.packageManager = context.getPackageManager();
+        this.quotes = readQuotes();
+        this.quotesRevision = prefs.getString(KEY_REVISION, null);
+        this.quoteCursor = prefs.getInt(KEY_CURSOR, 0);
+        this.weeklyAllowance = prefs.getInt(KEY_WEEKLY_ALLOWANCE, DEFAULT_WEEKLY_ALLOWANCE);
+        this.weekStart = prefs.getLong(KEY_WEEK_START, 0);
+        this.usedThisWeek = prefs.getInt(KEY_WEEK_USED, 0);
+        Log.d(TAG, "Loaded " + quotes.length + " quotes (revision " + quotesRevision + "), "
+            + usedThisWeek + "/" + weeklyAllowance + " emergency unlocks used");
+    }
+
+    static synchronized OverlayContentCache getInstance(Context context) {
+        if (instance == null) {
+            instance = new OverlayContentCache(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    // Quotes
+
+    String quotesRevision() {
+        return quotesRevision;
+    }
+
+    /** Replaces the whole pool, e.g. on first sync or when the quote category changes. */
+    synchronized void setQuotes(String[] pool, String revision) {
+        quotes = pool.clone();
+        quoteCursor = 0;
+        persistQuotes(revision);
+    }
+
+    /** Applies a delta to the pool; quotes in {@code removed} go first, then {@code added} are appended. */
+    synchronized void updateQuotes(String[] added, String[] removed, String revision) {
+        List<String> pool = new ArrayList<>(Arrays.asList(quotes));
+        pool.removeAll(Arrays.asList(removed));
+        for (String quote : added) {
+            if (!pool.contains(quote)) {
+                pool.add(quote);
+            }
+        }
+        quotes = pool.toArray(new String[0]);
+        persistQuotes(revision);
+    }
+
+    /** Next quote of the rotation, so consecutive blocks do not repeat the same one. */
+    synchronized String nextQuote() {
+        String[] pool = quotes;
+        if (pool.length == 0) {
+            return FALLBACK_QUOTE;
+        }
+        String quote = pool[Math.floorMod(quoteCursor, pool.length)];
+        quoteCursor = (quoteCursor + 1) % pool.length;
+        prefs.edit().putInt(KEY_CURSOR, quoteCursor).apply();
+        return quote;
+    }
+
+    // App labels
+
+    /**
+     * Cached label of an app, or null on a miss. Safe on the main thread: a miss only queues
+     * the PackageManager lookup, the listener (if any) gets the label on the label thread.
+     */
+    String labelOf(String packageName, LabelListener listener) {
+        String label = labels.get(packageName);
+        if (label == null) {
+            labelExecutor.execute(() -> {
+                String resolved = loadLabel(packageName);
+                if (listener != null) {
+                    listener.onLabel(packageName, resolved);
+                }
+            });
+        }
+        return label;
+    }
+
+    /**
+     * Label of an app, the package name itself if it cannot be resolved. Looks it up in
+     * PackageManager on a miss, so only for background threads.
+     */
+    String loadLabel(String packageName) {
+        String label = labels.get(packageName);
+        if (label == null) {
+            label = resolveLabel(packageName);
+            labels.put(packageName, label);
+        }
+        return label;
+    }
+
+    boolean hasLabel(String packageName) {
+        return labels.containsKey(packageName);
+    }
+
+    /** Resolves a label in the background so a later {@link #labelOf} is a map read. */
+    void prefetchLabel(final String packageName) {
+        if (packageName == null || labels.containsKey(packageName)) {
+            return;
+        }
+        labelExecutor.execute(() -> loadLabel(packageName));
+    }
+
+    /** Queues {@code task} behind the pending lookups, on the label thread. */
+    void runOnLabelThread(Runnable task) {
+        labelExecutor.execute(task);
+    }
+
+    /** Labels JS already has (from the installed apps list) seed the cache without a PackageManager call. */
+    void putLabel(String packageName, String label) {
+        if (label != null && !label.isEmpty()) {
+            labels.put(packageName, label);
+        }
+    }
+
+    /** Forgets a label after the app was updated or removed. */
+    void invalidateLabel(String packageName) {
+        labels.remove(packageName);
+    }
+
+    private String resolveLabel(String packageName) {
+        try {
+            CharSequence label = packageManager.getApplicationLabel(packageManager.getApplicationInfo(packageName, 0));
+            return label != null ? label.toString() : packageName;
+        } catch (PackageManager.NameNotFoundException e) {
+            return packageName;
+        }
+    }
+
+    // Emergency unlock budget
+
+    synchronized void setWeeklyAllowance(int allowance) {
+        weeklyAllowance = Math.max(0, allowance);
+        prefs.edit().putInt(KEY_WEEKLY_ALLOWANCE, weeklyAllowance).apply();
+    }
+
+    synchronized int weeklyAllowance() {
+        return weeklyAllowance;
+    }
+
+    synchronized int emergencyUnlocksRemaining(long now) {
+        rollWeek(now);
+        return Math.max(0, weeklyAllowance - usedThisWeek);
+    }
+
+    /** Uses one emergency unlock of this week's budget; false if none is left. */
+    synchronized boolean tryConsumeEmergencyUnlock(long now) {
+        rollWeek(now);
+        if (usedThisWeek >= weeklyAllowance) {
+            return false;
+        }
+        usedThisWeek++;
+        prefs.edit().putLong(KEY_WEEK_START, weekStart).putInt(KEY_WEEK_USED, usedThisWeek).apply();
+        return true;
+    }
+
+    /** Starts a new budget when {@code now} is past the week the counter belongs to. */
+    private void rollWeek(long now) {
+        if (now >= weekStart && now < weekEnd) {
+            return;
+        }
+        Calendar cal = Calendar.getInstance();
+        cal.setTimeInMillis(now);
+        cal.set(Calendar.HOUR_OF_DAY, 0);
+        cal.set(Calendar.MINUTE, 0);
+        cal.set(Calendar.SECOND, 0);
+        cal.set(Calendar.MILLISECOND, 0);
+        while (cal.get(Calendar.DAY_OF_WEEK) != cal.getFirstDayOfWeek()) {
+            cal.add(Calendar.DAY_OF_MONTH, -1);
+        }
+        long start = cal.getTimeInMillis();
+        cal.add(Calendar.DAY_OF_MONTH, 7);
+        weekEnd = cal.getTimeInMillis();
+        if (start != weekStart) {
+            weekStart = start;
+            usedThisWeek = 0;
+            prefs.edit().putLong(KEY_WEEK_START, weekStart).putInt(KEY_WEEK_USED, 0).apply();
+        }
+    }
+
+    private void persistQuotes(String revision) {
+        quotesRevision = revision;
+        prefs.edit()
+            .putString(KEY_QUOTES, new JSONArray(Arrays.asList(quotes)).toString())
+            .putString(KEY_REVISION, revision)
+            .putInt(KEY_CURSOR, quoteCursor)
+            .apply();
+        Log.d(TAG, "Quote pool now has " + quotes.length + " quotes (revision " + revision + ")");
+    }
+
+    private String[] readQuotes() {
+        String json = prefs.getString(KEY_QUOTES, null);
+        if (json == null) {
+            return new String[0];
+        }
+        try {
+            JSONArray array = new JSONArray(json);
+            String[] pool = new String[array.length()];
+            for (int i = 0; i < pool.length; i++) {
+                pool[i] = array.getString(i);
+            }
+            return pool;
+        } catch (JSONException e) {
+            Log.e(TAG, "Dropping unreadable quote pool", e);
+            return new String[0];
+        }
+    }
+}
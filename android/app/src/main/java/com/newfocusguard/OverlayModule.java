@@ -1,18 +1,27 @@
 package com.newfocusguard;
 
 import android.app.Activity;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.graphics.PixelFormat;
 import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.Settings;
 import android.util.Log;
+import android.view.View;
 import android.view.WindowManager;
-import android.widget.FrameLayout;
 
 import com.facebook.react.ReactRootView;
 import com.facebook.react.ReactActivity;
 import com.facebook.react.ReactApplication;
 import com.facebook.react.ReactInstanceManager;
 import com.facebook.react.bridge.LifecycleEventListener;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMapKeySetIterator;
 import com.facebook.react.bridge.ReactApplicationContext;
 import com.facebook.react.bridge.ReactContextBaseJavaModule;
 import com.facebook.react.bridge.ReactMethod;
@@ -23,19 +32,112 @@ import com.facebook.react.bridge.Arguments;
 import com.facebook.react.common.LifecycleState;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
 
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The React lock overlay, for screens that show it from JS; enforcement itself draws the
+ * native overlay from the service.
+ *
+ * One ReactRootView running the "LockOverlay" component is mounted the first time it is
+ * needed, or ahead of time by {@link #prewarmOverlay}, and then kept in its window:
+ * hiding makes it invisible and untouchable, showing swaps the new app's props in with
+ * setAppProperties. The window turns visible once JS reports it rendered those props
+ * ({@link #overlayRendered}), or after {@link #REVEAL_TIMEOUT_MS}, so the overlay never
+ * flashes the previous app's content.
+ *
+ * Most sessions never show this overlay, so nothing is mounted up front: the root is
+ * prewarmed when the lock table gains a lock or the monitor reports a blocked app, and a
+ * root left hidden for {@link #IDLE_TEARDOWN_MS} is unmounted with its window. It is also
+ * unmounted when the system asks the process to free memory, and mounted again on the
+ * next lock, block or show.
+ */
 public class OverlayModule extends ReactContextBaseJavaModule implements LifecycleEventListener {
+    public static final String NAME = "OverlayModule";
     private static final String TAG = "OverlayModule";
+    private static final String COMPONENT_NAME = "LockOverlay"; // registered in OverlayService.ts
+    private static final long REVEAL_TIMEOUT_MS = 250;
+    private static final long IDLE_TEARDOWN_MS = 5 * 60 * 1000;
     private ReactRootView overlayView;
     private WindowManager windowManager;
     private WindowManager.LayoutParams params;
+    // Touched on the UI thread only
     private boolean isOverlayShowing = false;
+    private int showId = 0;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable revealFallback = new Runnable() {
+        @Override
+        public void run() {
+            Log.d(TAG, "No render report for show " + showId + ", revealing anyway");
+            reveal();
+        }
+    };
+    private final Runnable idleTeardown = new Runnable() {
+        @Override
+        public void run() {
+            releaseHiddenRoot("idle for " + IDLE_TEARDOWN_MS / 1000 + "s");
+        }
+    };
+    private final LockTable.DiffListener prewarmOnLock = new LockTable.DiffListener() {
+        @Override
+        public void onDiff(LockTable.Diff diff) {
+            if (!LockTable.getInstance(getReactApplicationContext()).snapshot().isEmpty()) {
+                prewarmOverlay();
+            }
+        }
+    };
+    private final MonitorClient.EventListener prewarmOnBlock = new MonitorClient.EventListener() {
+        @Override
+        public void onMonitorEvent(String eventName, Bundle params) {
+            if ("onAppBlocked".equals(eventName)) {
+                prewarmOverlay();
+            }
+        }
+    };
+    private final ComponentCallbacks2 memoryCallbacks = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+            // UI_HIDDEN is every trip to another app, which is when this overlay is wanted
+            if (level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                    || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL
+                    || level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+                releaseHiddenRoot("trim level " + level);
+            }
+        }
+
+        @Override
+        public void onLowMemory() {
+            releaseHiddenRoot("low memory");
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
+        }
+    };
 
     public OverlayModule(ReactApplicationContext reactContext) {
         super(reactContext);
+        // Most sessions never show the React overlay, window setup waits for the first lock, block or show
+    }
+
+    @Override
+    public void initialize() {
+        super.initialize();
+        ReactApplicationContext reactContext = getReactApplicationContext();
+        LockTable.getInstance(reactContext).addDiffListener(prewarmOnLock);
+        MonitorClient.getInstance(reactContext).addEventListener(prewarmOnBlock);
+    }
+
+    private void ensureWindow() {
+        if (windowManager != null) {
+            return;
+        }
+        ReactApplicationContext reactContext = getReactApplicationContext();
         reactContext.addLifecycleEventListener(this);
+        reactContext.getApplicationContext().registerComponentCallbacks(memoryCallbacks);
         windowManager = (WindowManager) reactContext.getSystemService(Context.WINDOW_SERVICE);
         
-        // Setup window parameters
+        // Setup window parameters; the root starts hidden, so untouchable
         params = new WindowManager.LayoutParams(
             WindowManager.LayoutParams.MATCH_PARENT,
             WindowManager.LayoutParams.MATCH_PARENT,
@@ -43,6 +145,7 @@ public class OverlayModule extends ReactContextBaseJavaModule implements Lifecyc
                 WindowManager.LayoutParams.TYPE_APPLICATION_OVERLAY :
                 WindowManager.LayoutParams.TYPE_PHONE,
             WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE |
+            WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE |
             WindowManager.LayoutParams.FLAG_LAYOUT_IN_SCREEN,
             PixelFormat.TRANSLUCENT
         );
@@ -50,7 +153,7 @@ public class OverlayModule extends ReactContextBaseJavaModule implements Lifecyc
 
     @Override
     public String getName() {
-        return "OverlayModule";
+        return NAME;
     }
 
     @ReactMethod
@@ -63,61 +166,63 @@ public class OverlayModule extends ReactContextBaseJavaModule implements Lifecyc
         // Keep: Required for RN built in Event Emitter
     }
 
+    /**
+     * Mounts the overlay root hidden, so the next showOverlay only has to swap props. A hidden
+     * root already there just has its idle teardown pushed back. Called on a lock or a block.
+     */
     @ReactMethod
-    public void showOverlay(final String appName, final String timeRemaining, final int emergencyUnlockChances, final String quote) {
-        if (isOverlayShowing) {
+    public void prewarmOverlay() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M && !Settings.canDrawOverlays(getReactApplicationContext())) {
             return;
         }
-
         UiThreadUtil.runOnUiThread(new Runnable() {
             @Override
             public void run() {
-                try {
-                    ReactApplicationContext context = getReactApplicationContext();
-                    if (context == null || !context.hasActiveReactInstance()) {
-                        Log.e(TAG, "Cannot show overlay: React context is null or has no active instance");
+                if (isOverlayShowing) {
+                    return;
+                }
+                if (overlayView == null) {
+                    if (!mountRoot(hiddenProps())) {
                         return;
                     }
+                    Log.d(TAG, "React overlay root pre-mounted");
+                }
+                scheduleIdleTeardown();
+            }
+        });
+    }
 
-                    // Get the React instance manager
-                    ReactInstanceManager reactInstanceManager = null;
-                    
-                    // Try to get it from the application
-                    Context appContext = context.getApplicationContext();
-                    if (appContext instanceof ReactApplication) {
-                        reactInstanceManager = ((ReactApplication) appContext).getReactNativeHost().getReactInstanceManager();
-                    }
-                    
-                    // If still null, try to get it from the current activity
-                    if (reactInstanceManager == null) {
-                        Activity currentActivity = getCurrentActivity();
-                        if (currentActivity instanceof ReactActivity) {
-                            Context activityContext = currentActivity.getApplicationContext();
-                            if (activityContext instanceof ReactApplication) {
-                                reactInstanceManager = ((ReactApplication) activityContext).getReactNativeHost().getReactInstanceManager();
-                            }
+    @ReactMethod
+    public void showOverlay(final String appName, final String timeRemaining, final int emergencyUnlockChances, final String quote) {
+        UiThreadUtil.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    mainHandler.removeCallbacks(idleTeardown);
+                    showId++;
+                    Bundle props = new Bundle();
+                    props.putString("appName", appName);
+                    props.putString("timeRemaining", timeRemaining);
+                    props.putInt("emergencyUnlockChances", emergencyUnlockChances);
+                    props.putString("quote", quote);
+                    props.putBoolean("visible", true);
+                    props.putInt("showId", showId);
+
+                    if (overlayView == null) {
+                        if (!mountRoot(props)) {
+                            return;
                         }
+                    } else {
+                        // Updated in place, the component keeps its state and native views
+                        overlayView.setAppProperties(props);
                     }
-                    
-                    if (reactInstanceManager == null) {
-                        Log.e(TAG, "Failed to get ReactInstanceManager");
-                        return;
-                    }
-
-                    // Create a new ReactRootView
-                    overlayView = new ReactRootView(context);
-                    
-                    // Start the React application
-                    overlayView.startReactApplication(
-                        reactInstanceManager,
-                        "LockOverlay", // This must match the component registered in AppRegistry
-                        null // Pass null instead of props.toHashMap() which is causing the error
-                    );
-
-                    // Add the view to the window
-                    windowManager.addView(overlayView, params);
+                    boolean wasShowing = isOverlayShowing;
                     isOverlayShowing = true;
-                    Log.d(TAG, "React overlay added successfully for " + appName);
+                    if (!wasShowing) {
+                        mainHandler.removeCallbacks(revealFallback);
+                        mainHandler.postDelayed(revealFallback, REVEAL_TIMEOUT_MS);
+                    }
+                    Log.d(TAG, "React overlay show " + showId + " for " + appName);
                 } catch (Exception e) {
                     Log.e(TAG, "Failed to show React overlay", e);
                 }
@@ -125,29 +230,167 @@ public class OverlayModule extends ReactContextBaseJavaModule implements Lifecyc
         });
     }
 
+    /** Called by the overlay component once it committed the props of the given show. */
     @ReactMethod
-    public void hideOverlay() {
-        if (!isOverlayShowing || overlayView == null) {
-            return;
-        }
+    public void overlayRendered(final int renderedShowId) {
+        UiThreadUtil.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                if (isOverlayShowing && renderedShowId == showId) {
+                    reveal();
+                }
+            }
+        });
+    }
 
+    @ReactMethod
+    public void hideOverlay() {
         UiThreadUtil.runOnUiThread(new Runnable() {
             @Override
             public void run() {
+                if (!isOverlayShowing || overlayView == null) {
+                    return;
+                }
                 try {
-                    windowManager.removeView(overlayView);
-                    overlayView = null;
+                    mainHandler.removeCallbacks(revealFallback);
                     isOverlayShowing = false;
-                    Log.d(TAG, "React overlay removed successfully");
+                    setRootVisible(false);
+                    Bundle props = new Bundle(overlayView.getAppProperties());
+                    props.putBoolean("visible", false);
+                    overlayView.setAppProperties(props);
+                    scheduleIdleTeardown();
+                    Log.d(TAG, "React overlay hidden");
                 } catch (Exception e) {
-                    Log.e(TAG, "Failed to remove React overlay", e);
+                    Log.e(TAG, "Failed to hide React overlay", e);
+                }
+            }
+        });
+    }
+
+    /** Unmounts the hidden root if nothing shows it for a while. On the UI thread. */
+    private void scheduleIdleTeardown() {
+        mainHandler.removeCallbacks(idleTeardown);
+        mainHandler.postDelayed(idleTeardown, IDLE_TEARDOWN_MS);
+    }
+
+    private static Bundle hiddenProps() {
+        Bundle props = new Bundle();
+        props.putBoolean("visible", false);
+        props.putInt("showId", 0);
+        return props;
+    }
+
+    private void reveal() {
+        mainHandler.removeCallbacks(revealFallback);
+        if (overlayView != null && overlayView.getVisibility() != View.VISIBLE) {
+            setRootVisible(true);
+        }
+    }
+
+    /** Invisible keeps the root measured and rendering, only drawing and touches stop. */
+    private void setRootVisible(boolean visible) {
+        overlayView.setVisibility(visible ? View.VISIBLE : View.INVISIBLE);
+        if (visible) {
+            params.flags &= ~WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE;
+        } else {
+            params.flags |= WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE;
+        }
+        windowManager.updateViewLayout(overlayView, params);
+    }
+
+    /** Starts the component in a new root and adds it to the window, invisible. On the UI thread. */
+    private boolean mountRoot(Bundle props) {
+        ReactApplicationContext context = getReactApplicationContext();
+        if (context == null || !context.hasActiveReactInstance()) {
+            Log.e(TAG, "Cannot mount overlay: React context is null or has no active instance");
+            return false;
+        }
+        ReactInstanceManager reactInstanceManager = reactInstanceManager(context);
+        if (reactInstanceManager == null) {
+            Log.e(TAG, "Failed to get ReactInstanceManager");
+            return false;
+        }
+        ensureWindow();
+        ReactRootView root = new ReactRootView(context);
+        root.startReactApplication(reactInstanceManager, COMPONENT_NAME, props);
+        root.setVisibility(View.INVISIBLE);
+        params.flags |= WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE;
+        try {
+            windowManager.addView(root, params);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to add React overlay window", e);
+            root.unmountReactApplication();
+            return false;
+        }
+        overlayView = root;
+        return true;
+    }
+
+    private ReactInstanceManager reactInstanceManager(ReactApplicationContext context) {
+        // Try to get it from the application
+        Context appContext = context.getApplicationContext();
+        if (appContext instanceof ReactApplication) {
+            return ((ReactApplication) appContext).getReactNativeHost().getReactInstanceManager();
+        }
+        // If still null, try to get it from the current activity
+        Activity currentActivity = getCurrentActivity();
+        if (currentActivity instanceof ReactActivity) {
+            Context activityContext = currentActivity.getApplicationContext();
+            if (activityContext instanceof ReactApplication) {
+                return ((ReactApplication) activityContext).getReactNativeHost().getReactInstanceManager();
+            }
+        }
+        return null;
+    }
+
+    private void releaseHiddenRoot(final String reason) {
+        UiThreadUtil.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                if (overlayView != null && !isOverlayShowing) {
+                    Log.d(TAG, "Unmounting hidden React overlay root (" + reason + ")");
+                    unmountRoot();
                 }
             }
         });
     }
 
+    /** Unmounts the component, so its React tree is freed, and removes the window. On the UI thread. */
+    private void unmountRoot() {
+        if (overlayView == null) {
+            return;
+        }
+        mainHandler.removeCallbacks(revealFallback);
+        mainHandler.removeCallbacks(idleTeardown);
+        ReactRootView root = overlayView;
+        overlayView = null;
+        isOverlayShowing = false;
+        try {
+            root.unmountReactApplication();
+            windowManager.removeView(root);
+        } catch (Exception e) {
+            Log.e(TAG, "Error cleaning up overlay", e);
+        }
+    }
+
+    /** Resolves true if an unlock was left in this week's budget and the overlay is gone, false if refused. */
     @ReactMethod
-    public void onEmergencyUnlock() {
+    public void onEmergencyUnlock(Promise promise) {
+        // The React overlay draws from the same weekly budget as the native one
+        boolean consumed;
+        try {
+            consumed = MonitorClient.getInstance(getReactApplicationContext()).tryConsumeEmergencyUnlock();
+        } catch (Exception e) {
+            Log.e(TAG, "Could not reach the monitor process for an emergency unlock", e);
+            promise.reject("EMERGENCY_UNLOCK_ERROR", e.getMessage(), e);
+            return;
+        }
+        if (!consumed) {
+            Log.d(TAG, "Emergency unlock refused, weekly budget used up");
+            showNoChancesLeft();
+            promise.resolve(false);
+            return;
+        }
         // Send event to JS side
         getReactApplicationContext()
             .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
@@ -155,6 +398,109 @@ public class OverlayModule extends ReactContextBaseJavaModule implements Lifecyc
         
         // Hide overlay
         hideOverlay();
+        promise.resolve(true);
+    }
+
+    /** Disables the unlock button of a shown overlay whose props still offered a chance. */
+    private void showNoChancesLeft() {
+        UiThreadUtil.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                if (!isOverlayShowing || overlayView == null) {
+                    return;
+                }
+                Bundle props = new Bundle(overlayView.getAppProperties());
+                props.putInt("emergencyUnlockChances", 0);
+                overlayView.setAppProperties(props);
+            }
+        });
+    }
+
+    // Native overlay content. The service renders its block overlay from OverlayContentCache,
+    // JS only has to keep the quote pool and the unlock allowance current. The cache lives in
+    // the :monitor process with the service, so these go through MonitorClient.
+
+    /** Resolves with the revision of the quote pool the native side holds, null if it never got one. */
+    @ReactMethod
+    public void getQuotesRevision(Promise promise) {
+        try {
+            promise.resolve(MonitorClient.getInstance(getReactApplicationContext()).quotesRevision());
+        } catch (Exception e) {
+            promise.reject("OVERLAY_CONTENT_ERROR", e.getMessage(), e);
+        }
+    }
+
+    @ReactMethod
+    public void setQuotes(ReadableArray quotes, String revision, Promise promise) {
+        try {
+            MonitorClient.getInstance(getReactApplicationContext()).setQuotes(toStrings(quotes), revision);
+            promise.resolve(null);
+        } catch (Exception e) {
+            promise.reject("OVERLAY_CONTENT_ERROR", e.getMessage(), e);
+        }
+    }
+
+    @ReactMethod
+    public void updateQuotes(ReadableArray added, ReadableArray removed, String revision, Promise promise) {
+        try {
+            MonitorClient.getInstance(getReactApplicationContext())
+                .updateQuotes(toStrings(added), toStrings(removed), revision);
+            promise.resolve(null);
+        } catch (Exception e) {
+            promise.reject("OVERLAY_CONTENT_ERROR", e.getMessage(), e);
+        }
+    }
+
+    /** Seeds app labels JS already resolved, {packageName: label}. */
+    @ReactMethod
+    public void setAppLabels(ReadableMap labels) {
+        List<String> packages = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        ReadableMapKeySetIterator iterator = labels.keySetIterator();
+        while (iterator.hasNextKey()) {
+            String packageName = iterator.nextKey();
+            packages.add(packageName);
+            names.add(labels.getString(packageName));
+        }
+        try {
+            MonitorClient.getInstance(getReactApplicationContext())
+                .setAppLabels(packages.toArray(new String[0]), names.toArray(new String[0]));
+        } catch (Exception e) {
+            // Only a seed, the monitor resolves missing labels itself
+            Log.e(TAG, "Could not pass app labels to the monitor process", e);
+        }
+    }
+
+    @ReactMethod
+    public void setEmergencyUnlockAllowance(int perWeek, Promise promise) {
+        try {
+            MonitorClient.getInstance(getReactApplicationContext()).setEmergencyUnlockAllowance(perWeek);
+            promise.resolve(null);
+        } catch (Exception e) {
+            promise.reject("OVERLAY_CONTENT_ERROR", e.getMessage(), e);
+        }
+    }
+
+    /** Resolves with {allowance, remaining} of this week's emergency unlocks. */
+    @ReactMethod
+    public void getEmergencyUnlockStatus(Promise promise) {
+        try {
+            Bundle budget = MonitorClient.getInstance(getReactApplicationContext()).emergencyUnlockStatus();
+            WritableMap status = Arguments.createMap();
+            status.putInt("allowance", budget.getInt("allowance"));
+            status.putInt("remaining", budget.getInt("remaining"));
+            promise.resolve(status);
+        } catch (Exception e) {
+            promise.reject("OVERLAY_CONTENT_ERROR", e.getMessage(), e);
+        }
+    }
+
+    private static String[] toStrings(ReadableArray array) {
+        String[] strings = new String[array.size()];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = array.getString(i);
+        }
+        return strings;
     }
 
     @Override
@@ -170,19 +516,29 @@ public class OverlayModule extends ReactContextBaseJavaModule implements Lifecyc
     @Override
     public void onHostDestroy() {
         // Clean up when host is destroyed
-        if (isOverlayShowing && overlayView != null) {
+        UiThreadUtil.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                unmountRoot();
+            }
+        });
+    }
+
+    @Override
+    public void invalidate() {
+        ReactApplicationContext reactContext = getReactApplicationContext();
+        LockTable.getInstance(reactContext).removeDiffListener(prewarmOnLock);
+        MonitorClient.getInstance(reactContext).removeEventListener(prewarmOnBlock);
+        if (windowManager != null) {
+            getReactApplicationContext().getApplicationContext().unregisterComponentCallbacks(memoryCallbacks);
+            getReactApplicationContext().removeLifecycleEventListener(this);
             UiThreadUtil.runOnUiThread(new Runnable() {
                 @Override
                 public void run() {
-                    try {
-                        windowManager.removeView(overlayView);
-                        overlayView = null;
-                        isOverlayShowing = false;
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error cleaning up overlay", e);
-                    }
+                    unmountRoot();
                 }
             });
         }
+        super.invalidate();
     }
-} 
\ No newline at end of file
+}
@@ -1,24 +1,29 @@
 package com.newfocusguard;
 
-import com.facebook.react.ReactPackage;
+import com.facebook.react.BaseReactPackage;
 import com.facebook.react.bridge.NativeModule;
 import com.facebook.react.bridge.ReactApplicationContext;
-import com.facebook.react.uimanager.ViewManager;
+import com.facebook.react.module.model.ReactModuleInfo;
+import com.facebook.react.module.model.ReactModuleInfoProvider;
 
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.List;
 
-public class OverlayPackage implements ReactPackage {
+/** Registers {@link OverlayModule} lazily: it is only constructed when JS first asks for it. */
+public class OverlayPackage extends BaseReactPackage {
     @Override
-    public List<NativeModule> createNativeModules(ReactApplicationContext reactContext) {
-        List<NativeModule> modules = new ArrayList<>();
-        modules.add(new OverlayModule(reactContext));
-        return modules;
+    public NativeModule getModule(String name, ReactApplicationContext reactContext) {
+        return OverlayModule.NAME.equals(name) ? new OverlayModule(reactContext) : null;
     }
 
     @Override
-    public List<ViewManager> createViewManagers(ReactApplicationContext reactContext) {
-        return Collections.emptyList();
+    public ReactModuleInfoProvider getReactModuleInfoProvider() {
+        return () -> Collections.singletonMap(OverlayModule.NAME, new ReactModuleInfo(
+            OverlayModule.NAME,
+            OverlayModule.class.getName(),
+            false, // canOverrideExistingModule
+            false, // needsEagerInit
+            false, // isCxxModule
+            false  // isTurboModule, served through the new architecture's interop layer
+        ));
     }
-} 
\ No newline at end of file
+}
@@ -20,6 +20,7 @@ import com.facebook.react.bridge.ReactMethod;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
 
 public class OverlayPermissionModule extends ReactContextBaseJavaModule {
+    public static final String NAME = "OverlayPermission";
     private static final int OVERLAY_PERMISSION_REQ_CODE = 1234;
     private static final String TAG = "FocusGuardPermissions";
     private final ReactApplicationContext reactContext;
@@ -35,20 +36,16 @@ public class OverlayPermissionModule extends ReactContextBaseJavaModule {
 
     @Override
     public String getName() {
-        return "OverlayPermission";
+        return NAME;
     }
 
     @ReactMethod
     public void checkPermission(Callback callback) {
         Log.d(TAG, "checkPermission called");
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            boolean hasPermission = Settings.canDrawOverlays(reactContext);
-            Log.d(TAG, "Overlay permission status: " + hasPermission);
-            callback.invoke(hasPermission);
-        } else {
-            Log.d(TAG, "Overlay permission not required (SDK < M), returning true");
-            callback.invoke(true);
-        }
+        // CapabilityMonitor watches the permission and already treats SDK < M as granted
+        boolean hasPermission = CapabilityMonitor.getInstance(reactContext).has(CapabilityMonitor.OVERLAY);
+        Log.d(TAG, "Overlay permission status: " + hasPermission);
+        callback.invoke(hasPermission);
     }
 
     @ReactMethod
@@ -1,24 +1,29 @@
 package com.newfocusguard;
 
-import com.facebook.react.ReactPackage;
+import com.facebook.react.BaseReactPackage;
 import com.facebook.react.bridge.NativeModule;
 import com.facebook.react.bridge.ReactApplicationContext;
-import com.facebook.react.uimanager.ViewManager;
+import com.facebook.react.module.model.ReactModuleInfo;
+import com.facebook.react.module.model.ReactModuleInfoProvider;
 
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.List;
 
-public class OverlayPermissionPackage implements ReactPackage {
+/** Registers {@link OverlayPermissionModule} lazily: it is only constructed when JS first asks for it. */
+public class OverlayPermissionPackage extends BaseReactPackage {
     @Override
-    public List<ViewManager> createViewManagers(ReactApplicationContext reactContext) {
-        return Collections.emptyList();
+    public NativeModule getModule(String name, ReactApplicationContext reactContext) {
+        return OverlayPermissionModule.NAME.equals(name) ? new OverlayPermissionModule(reactContext) : null;
     }
 
     @Override
-    public List<NativeModule> createNativeModules(ReactApplicationContext reactContext) {
-        List<NativeModule> modules = new ArrayList<>();
-        modules.add(new OverlayPermissionModule(reactContext));
-        return modules;
+    public ReactModuleInfoProvider getReactModuleInfoProvider() {
+        return () -> Collections.singletonMap(OverlayPermissionModule.NAME, new ReactModuleInfo(
+            OverlayPermissionModule.NAME,
+            OverlayPermissionModule.class.getName(),
+            false, // canOverrideExistingModule
+            false, // needsEagerInit
+            false, // isCxxModule
+            false  // isTurboModule, served through the new architecture's interop layer
+        ));
     }
-} 
\ No newline at end of file
+}
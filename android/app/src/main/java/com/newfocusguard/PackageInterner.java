@@ -0,0 +1,81 @@
+package com.newfocusguard;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps package names to dense int IDs (0, 1, 2, ...) for the lifetime of the process.
+ *
+ * IDs are never reused or removed, so they can index primitive arrays directly.
+ * Lookups are lock-free; only interning a new name takes the lock.
+ */
+final class PackageInterner {
+    static final int NO_ID = -1;
+
+    private static final PackageInterner INSTANCE = new PackageInterner();
+
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[64];
+    private volatile int size = 0;
+
+    private PackageInterner() {}
+
+    static PackageInterner getInstance() {
+        return INSTANCE;
+    }
+
+    /** Returns the ID for a package, assigning the next dense ID on first sight. */
+    int intern(String packageName) {
+        Integer id = ids.get(packageName);
+        if (id != null) {
+            return id;
+        }
+        synchronized (this) {
+            id = ids.get(packageName);
+            if (id != null) {
+                return id;
+            }
+            int next = size;
+            String[] current = names;
+            if (next == current.length) {
+                current = Arrays.copyOf(current, current.length * 2);
+            }
+            current[next] = packageName;
+            names = current;
+            size = next + 1;
+            ids.put(packageName, next);
+            return next;
+        }
+    }
+
+    /** Returns the ID for a package without interning it, or NO_ID if it was never seen. */
+    int lookup(String packageName) {
+        if (packageName == null) {
+            return NO_ID;
+        }
+        Integer id = ids.get(packageName);
+        return id != null ? id : NO_ID;
+    }
+
+    String nameOf(int id) {
+        return id >= 0 && id < size ? names[id] : null;
+    }
+
+    /** Number of IDs handed out so far; every valid ID is below this. */
+    int size() {
+        return size;
+    }
+
+    int[] internAll(Iterable<String> packageNames) {
+        int count = 0;
+        for (String ignored : packageNames) {
+            count++;
+        }
+        int[] result = new int[count];
+        int i = 0;
+        for (String packageName : packageNames) {
+            result[i++] = intern(packageName);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,246 @@
+package com.newfocusguard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Matches package names against wildcard rules, compiled into one segment trie.
+ *
+ * A rule is one or more space-separated patterns. Patterns are dot-separated segments
+ * where a {@code *} segment stands for one or more segments, so {@code com.facebook.*}
+ * covers com.facebook.katana and com.facebook.orca, and {@code *.game.*} any package
+ * with a "game" segment in the middle. A segment ending in {@code *} matches segments
+ * with that prefix plus any segments after them: {@code com.face*} covers com.facebook
+ * and com.facebook.katana. A {@code *} anywhere else in a segment is not supported and
+ * {@link #isValid} rejects it. A pattern starting with {@code !} excludes what
+ * it matches from its rule: {@code * !com.whatsapp !com.android.*} is "everything except
+ * the allowlist".
+ *
+ * Every pattern of every rule shares the trie, so a package name is matched against all
+ * rules in one pass over its segments. The result is cached per {@link PackageInterner} ID;
+ * it only depends on the name, so a matcher never needs invalidating and a changed rule
+ * set simply compiles a new matcher.
+ */
+final class PackageRuleMatcher {
+    static final int[] NO_MATCH = new int[0];
+
+    private static final class Node {
+        final Map<String, Node> children = new HashMap<>();
+        Node wildcard;         // child for a '*' segment
+        Map<String, Node> prefixes; // children for 'prefix*' segments, null until there is one
+        boolean isWildcard;    // this node is a '*' segment and may consume more segments
+        int[] includes = NO_MATCH; // rules whose include pattern ends here
+        int[] excludes = NO_MATCH; // rules whose exclude pattern ends here
+    }
+
+    private final Node root = new Node();
+    private final int ruleCount;
+    private final String[] neverMatched;
+    private final PackageInterner interner = PackageInterner.getInstance();
+    // Indexed by package ID, null until matched. Copied on every write, never changed once published.
+    private volatile int[][] cache = new int[0][];
+
+    private PackageRuleMatcher(int ruleCount, String[] neverMatched) {
+        this.ruleCount = ruleCount;
+        this.neverMatched = neverMatched;
+    }
+
+    /** True for a lock key that is a rule rather than a plain package name. */
+    static boolean isRule(String key) {
+        return key != null && (key.indexOf('*') >= 0 || key.indexOf('!') >= 0 || key.indexOf(' ') >= 0);
+    }
+
+    /**
+     * True if every pattern of the rule can be compiled: segments are non-empty, and a
+     * {@code *} is either a whole segment or the last character of one.
+     */
+    static boolean isValid(String rule) {
+        if (rule == null || rule.trim().isEmpty()) {
+            return false;
+        }
+        for (String pattern : normalize(rule).split(" ")) {
+            String body = pattern.charAt(0) == '!' ? pattern.substring(1) : pattern;
+            if (body.isEmpty() || body.indexOf('!') >= 0) {
+                return false;
+            }
+            for (String segment : body.split("\\.", -1)) {
+                int star = segment.indexOf('*');
+                if (segment.isEmpty() || (star >= 0 && star != segment.length() - 1)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The rule formed by the wildcard and exclusion entries of a package list, e.g. a schedule's
+     * ["*", "!com.whatsapp", "com.example.app"] gives "* !com.whatsapp". Null when every entry
+     * is a plain package name.
+     */
+    static String ruleOf(String[] entries) {
+        StringBuilder rule = new StringBuilder();
+        for (String entry : entries) {
+            if (isRule(entry)) {
+                rule.append(rule.length() > 0 ? " " : "").append(entry.trim());
+            }
+        }
+        return rule.length() > 0 ? normalize(rule.toString()) : null;
+    }
+
+    /** Canonical form of a rule, so equivalent rules share one lock entry. */
+    static String normalize(String rule) {
+        return rule.trim().replaceAll("\\s+", " ");
+    }
+
+    /**
+     * Compiles {@code rules}; the index of a rule in the array is what {@link #matchesOf} returns.
+     * Packages in {@code neverMatched} match no rule at all, whatever the patterns say.
+     */
+    static PackageRuleMatcher compile(String[] rules, String... neverMatched) {
+        PackageRuleMatcher matcher = new PackageRuleMatcher(rules.length, neverMatched);
+        for (int rule = 0; rule < rules.length; rule++) {
+            for (String pattern : rules[rule].split(" ")) {
+                if (pattern.isEmpty()) continue;
+                boolean exclude = pattern.charAt(0) == '!';
+                Node node = matcher.insert(exclude ? pattern.substring(1) : pattern);
+                if (exclude) {
+                    node.excludes = append(node.excludes, rule);
+                } else {
+                    node.includes = append(node.includes, rule);
+                }
+            }
+        }
+        return matcher;
+    }
+
+    int ruleCount() {
+        return ruleCount;
+    }
+
+    /** Indexes of the rules matching a package, sorted. Lock-free after the first call per package. */
+    int[] matchesOf(int packageId) {
+        if (ruleCount == 0 || packageId < 0) {
+            return NO_MATCH;
+        }
+        int[][] current = cache;
+        if (packageId < current.length && current[packageId] != null) {
+            return current[packageId];
+        }
+        int[] matches = match(interner.nameOf(packageId));
+        synchronized (this) {
+            // A reader may hold the published array, so write into a copy and publish that
+            int[][] next = Arrays.copyOf(cache, Math.max(cache.length, Math.max(packageId + 1, interner.size())));
+            next[packageId] = matches;
+            cache = next;
+        }
+        return matches;
+    }
+
+    /** Matches a name against every rule in one walk over its segments. */
+    int[] match(String packageName) {
+        if (packageName == null || Arrays.asList(neverMatched).contains(packageName)) {
+            return NO_MATCH;
+        }
+        List<Node> active = new ArrayList<>();
+        List<Node> next = new ArrayList<>();
+        active.add(root);
+        int start = 0;
+        while (start <= packageName.length() && !active.isEmpty()) {
+            int end = packageName.indexOf('.', start);
+            if (end < 0) end = packageName.length();
+            String segment = packageName.substring(start, end);
+            next.clear();
+            for (Node node : active) {
+                addOnce(next, node.children.get(segment));
+                addOnce(next, node.wildcard);
+                if (node.prefixes != null) {
+                    for (Map.Entry<String, Node> prefix : node.prefixes.entrySet()) {
+                        if (segment.startsWith(prefix.getKey())) {
+                            addOnce(next, prefix.getValue());
+                        }
+                    }
+                }
+                if (node.isWildcard) {
+                    addOnce(next, node); // '*' keeps consuming segments
+                }
+            }
+            List<Node> swap = active;
+            active = next;
+            next = swap;
+            start = end + 1;
+        }
+
+        boolean[] included = null;
+        boolean[] excluded = null;
+        for (Node node : active) {
+            for (int rule : node.includes) {
+                if (included == null) included = new boolean[ruleCount];
+                included[rule] = true;
+            }
+            for (int rule : node.excludes) {
+                if (excluded == null) excluded = new boolean[ruleCount];
+                excluded[rule] = true;
+            }
+        }
+        if (included == null) {
+            return NO_MATCH;
+        }
+        int[] matches = new int[ruleCount];
+        int count = 0;
+        for (int rule = 0; rule < ruleCount; rule++) {
+            if (included[rule] && (excluded == null || !excluded[rule])) {
+                matches[count++] = rule;
+            }
+        }
+        return count == 0 ? NO_MATCH : Arrays.copyOf(matches, count);
+    }
+
+    private Node insert(String pattern) {
+        Node node = root;
+        for (String segment : pattern.split("\\.")) {
+            if (segment.equals("*")) {
+                if (node.wildcard == null) {
+                    node.wildcard = new Node();
+                    node.wildcard.isWildcard = true;
+                }
+                node = node.wildcard;
+            } else if (segment.length() > 1 && segment.indexOf('*') == segment.length() - 1) {
+                String prefix = segment.substring(0, segment.length() - 1);
+                if (node.prefixes == null) {
+                    node.prefixes = new HashMap<>();
+                }
+                Node child = node.prefixes.get(prefix);
+                if (child == null) {
+                    child = new Node();
+                    child.isWildcard = true; // like '*', it may go on to consume more segments
+                    node.prefixes.put(prefix, child);
+                }
+                node = child;
+            } else {
+                Node child = node.children.get(segment);
+                if (child == null) {
+                    child = new Node();
+                    node.children.put(segment, child);
+                }
+                node = child;
+            }
+        }
+        return node;
+    }
+
+    private static void addOnce(List<Node> nodes, Node node) {
+        if (node != null && !nodes.contains(node)) {
+            nodes.add(node);
+        }
+    }
+
+    private static int[] append(int[] array, int value) {
+        int[] result = Arrays.copyOf(array, array.length + 1);
+        result[array.length] = value;
+        return result;
+    }
+}
@@ -0,0 +1,341 @@
+package com.newfocusguard;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Map;
+
+/**
+ * Per-app usage quotas, enforced by AppMonitoringService.
+ *
+ * A package can have a daily allowance that resets at a local time of day, a rolling
+ * allowance modelled as a token bucket ("10 minutes per hour" = 10 minutes of tokens
+ * refilled evenly over an hour), or both. Counters only advance when a foreground
+ * session ends, so there is no per-tick work; the service asks for
+ * {@link #msUntilExhausted} when an app comes to the foreground and arms a one-shot timer.
+ * Time the foreground app spends behind the lock overlay is not usage and is not charged.
+ *
+ * State is indexed by {@link PackageInterner} ID. Each package's counters are one
+ * SharedPreferences string, rewritten only when that package's session ends.
+ */
+final class QuotaTracker {
+    private static final String TAG = "FocusGuardQuota";
+    private static final String PREFS_NAME = "FocusGuardQuotas";
+    private static final String RULE_PREFIX = "rule:";
+    private static final String STATE_PREFIX = "state:";
+    static final long NO_QUOTA = Long.MAX_VALUE;
+
+    static final class Rule {
+        final long dailyLimitMs;    // 0 = no daily allowance
+        final int resetMinute;      // local minute of the day at which the daily counter resets
+        final long bucketCapacityMs; // 0 = no rolling allowance
+        final long bucketWindowMs;   // time to refill a full bucket
+
+        Rule(long dailyLimitMs, int resetMinute, long bucketCapacityMs, long bucketWindowMs) {
+            this.dailyLimitMs = Math.max(0, dailyLimitMs);
+            this.resetMinute = Math.max(0, Math.min(24 * 60 - 1, resetMinute));
+            this.bucketCapacityMs = bucketWindowMs > 0 ? Math.max(0, bucketCapacityMs) : 0;
+            this.bucketWindowMs = bucketWindowMs;
+        }
+
+        boolean hasDaily() {
+            return dailyLimitMs > 0;
+        }
+
+        boolean hasBucket() {
+            return bucketCapacityMs > 0;
+        }
+
+        String encode() {
+            return dailyLimitMs + "," + resetMinute + "," + bucketCapacityMs + "," + bucketWindowMs;
+        }
+
+        static Rule decode(String value) {
+            String[] parts = value.split(",");
+            return new Rule(Long.parseLong(parts[0]), Integer.parseInt(parts[1]),
+                Long.parseLong(parts[2]), Long.parseLong(parts[3]));
+        }
+    }
+
+    private static final class State {
+        final Rule rule;
+        long periodStart;  // start of the current daily period
+        long usedMs;       // daily usage within the period
+        long tokensMs;     // rolling allowance left at lastRefill
+        long lastRefill;
+        // Bounds of the daily period containing the last query, so the foreground check
+        // does not build a Calendar every tick
+        private long cachedPeriodStart = Long.MAX_VALUE;
+        private long cachedPeriodEnd = Long.MIN_VALUE;
+
+        State(Rule rule) {
+            this.rule = rule;
+            this.tokensMs = rule.bucketCapacityMs;
+        }
+
+        /** Most recent local reset time at or before {@code now}. */
+        long periodStartAt(long now) {
+            if (now >= cachedPeriodStart && now < cachedPeriodEnd) {
+                return cachedPeriodStart;
+            }
+            Calendar cal = Calendar.getInstance();
+            cal.setTimeInMillis(now);
+            cal.set(Calendar.HOUR_OF_DAY, rule.resetMinute / 60);
+            cal.set(Calendar.MINUTE, rule.resetMinute % 60);
+            cal.set(Calendar.SECOND, 0);
+            cal.set(Calendar.MILLISECOND, 0);
+            if (cal.getTimeInMillis() > now) {
+                cal.add(Calendar.DAY_OF_MONTH, -1);
+            }
+            cachedPeriodStart = cal.getTimeInMillis();
+            cal.add(Calendar.DAY_OF_MONTH, 1);
+            cachedPeriodEnd = cal.getTimeInMillis();
+            return cachedPeriodStart;
+        }
+    }
+
+    private static QuotaTracker instance;
+
+    private final SharedPreferences prefs;
+    private final PackageInterner interner = PackageInterner.getInstance();
+    private State[] states = new State[0];
+    private int foregroundId = PackageInterner.NO_ID;
+    private long foregroundSince;
+    private boolean foregroundBlocked; // the foreground app is behind the lock overlay
+
+    private QuotaTracker(Context context) {
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        load();
+    }
+
+    static synchronized QuotaTracker getInstance(Context context) {
+        if (instance == null) {
+            instance = new QuotaTracker(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    synchronized void setRule(String packageName, Rule rule) {
+        int id = interner.intern(packageName);
+        ensureCapacity(id);
+        long now = System.currentTimeMillis();
+        if (id == foregroundId) {
+            charge(now); // close out usage under the old rule
+        }
+        State previous = states[id];
+        State state = new State(rule);
+        if (previous != null) {
+            // Keep what was already used today, a new rule is not a free reset
+            state.periodStart = previous.periodStart;
+            state.usedMs = previous.usedMs;
+            state.tokensMs = Math.min(rule.bucketCapacityMs, previous.tokensMs);
+            state.lastRefill = previous.lastRefill;
+        }
+        states[id] = state;
+        prefs.edit().putString(RULE_PREFIX + packageName, rule.encode()).apply();
+        persist(id);
+        Log.d(TAG, "Quota for " + packageName + " set to " + rule.encode());
+    }
+
+    synchronized void removeRule(String packageName) {
+        int id = interner.lookup(packageName);
+        if (id == PackageInterner.NO_ID || id >= states.length || states[id] == null) {
+            return;
+        }
+        states[id] = null;
+        prefs.edit().remove(RULE_PREFIX + packageName).remove(STATE_PREFIX + packageName).apply();
+        Log.d(TAG, "Quota for " + packageName + " removed");
+    }
+
+    synchronized boolean hasRule(int packageId) {
+        return stateOf(packageId) != null;
+    }
+
+    /** Whether any app has a quota, which keeps the service running even with nothing locked. */
+    synchronized boolean hasAnyRule() {
+        for (State state : states) {
+            if (state != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Charges the session of the previous foreground app and starts timing the new one. */
+    synchronized void onForegroundChanged(int packageId, long now) {
+        charge(now);
+        foregroundId = packageId;
+        foregroundSince = now;
+        foregroundBlocked = false;
+    }
+
+    /**
+     * The lock overlay went up over the foreground app, or came down. Usage up to now is
+     * charged; while blocked the session stops counting until the overlay is gone.
+     */
+    synchronized void onForegroundBlocked(boolean blocked, long now) {
+        if (blocked == foregroundBlocked) {
+            return;
+        }
+        charge(now);
+        foregroundBlocked = blocked;
+    }
+
+    /** Allowance left for a package at {@code now}, counting the running session. NO_QUOTA without a rule. */
+    synchronized long remainingMs(int packageId, long now) {
+        State state = stateOf(packageId);
+        if (state == null) {
+            return NO_QUOTA;
+        }
+        long running = runningMs(packageId, now);
+        long remaining = NO_QUOTA;
+        if (state.rule.hasDaily()) {
+            remaining = Math.min(remaining, state.rule.dailyLimitMs - dailyUsed(state, packageId, now));
+        }
+        if (state.rule.hasBucket()) {
+            long tokens = refilled(state, now - running) - running + refillOver(state.rule, running);
+            remaining = Math.min(remaining, Math.min(tokens, state.rule.bucketCapacityMs));
+        }
+        return Math.max(0, remaining);
+    }
+
+    synchronized boolean isExhausted(int packageId, long now) {
+        return remainingMs(packageId, now) <= 0;
+    }
+
+    /**
+     * Milliseconds of continuous foreground use until the package runs out, NO_QUOTA if it
+     * never will. The token bucket keeps refilling while the app is used, so its allowance
+     * drains at (1 - capacity / window) instead of 1.
+     */
+    synchronized long msUntilExhausted(int packageId, long now) {
+        State state = stateOf(packageId);
+        if (state == null) {
+            return NO_QUOTA;
+        }
+        long running = runningMs(packageId, now);
+        long until = NO_QUOTA;
+        if (state.rule.hasDaily()) {
+            until = Math.min(until, Math.max(0, state.rule.dailyLimitMs - dailyUsed(state, packageId, now)));
+        }
+        if (state.rule.hasBucket() && state.rule.bucketCapacityMs < state.rule.bucketWindowMs) {
+            long tokens = Math.min(state.rule.bucketCapacityMs,
+                refilled(state, now - running) - running + refillOver(state.rule, running));
+            double drainPerMs = 1.0 - (double) state.rule.bucketCapacityMs / state.rule.bucketWindowMs;
+            until = Math.min(until, Math.max(0, (long) Math.ceil(tokens / drainPerMs)));
+        }
+        return until;
+    }
+
+    /** Daily usage so far for a package, including the running session. */
+    synchronized long usedTodayMs(int packageId, long now) {
+        State state = stateOf(packageId);
+        if (state == null) {
+            return 0;
+        }
+        return dailyUsed(state, packageId, now);
+    }
+
+    /** Usage in the current daily period, counting only the part of the running session after the reset. */
+    private long dailyUsed(State state, int packageId, long now) {
+        long periodStart = state.periodStartAt(now);
+        long used = periodStart == state.periodStart ? state.usedMs : 0;
+        if (packageId == foregroundId && !foregroundBlocked) {
+            used += Math.max(0, now - Math.max(foregroundSince, periodStart));
+        }
+        return used;
+    }
+
+    /** Uncharged usage of the running session, none while it is behind the overlay. */
+    private long runningMs(int packageId, long now) {
+        return packageId == foregroundId && !foregroundBlocked ? Math.max(0, now - foregroundSince) : 0;
+    }
+
+    /** Folds the running foreground session into its counters and persists them. */
+    private void charge(long now) {
+        State state = stateOf(foregroundId);
+        if (state == null || foregroundBlocked || now <= foregroundSince) {
+            foregroundSince = now;
+            return;
+        }
+        long sessionStart = foregroundSince;
+        if (state.rule.hasDaily()) {
+            long periodStart = state.periodStartAt(now);
+            if (periodStart != state.periodStart) {
+                state.periodStart = periodStart;
+                state.usedMs = 0;
+            }
+            // Only the part of the session after the reset counts against the new day
+            state.usedMs += now - Math.max(sessionStart, periodStart);
+        }
+        if (state.rule.hasBucket()) {
+            long elapsed = now - sessionStart;
+            long tokens = refilled(state, sessionStart) - elapsed + refillOver(state.rule, elapsed);
+            state.tokensMs = Math.max(0, Math.min(state.rule.bucketCapacityMs, tokens));
+            state.lastRefill = now;
+        }
+        foregroundSince = now;
+        persist(foregroundId);
+    }
+
+    private long refilled(State state, long at) {
+        if (state.lastRefill == 0 || at <= state.lastRefill) {
+            return state.tokensMs;
+        }
+        return Math.min(state.rule.bucketCapacityMs, state.tokensMs + refillOver(state.rule, at - state.lastRefill));
+    }
+
+    private static long refillOver(Rule rule, long elapsedMs) {
+        return (long) ((double) elapsedMs * rule.bucketCapacityMs / rule.bucketWindowMs);
+    }
+
+    private State stateOf(int packageId) {
+        return packageId >= 0 && packageId < states.length ? states[packageId] : null;
+    }
+
+    private void ensureCapacity(int packageId) {
+        if (packageId >= states.length) {
+            states = Arrays.copyOf(states, Math.max(packageId + 1, Math.max(16, states.length * 2)));
+        }
+    }
+
+    private void persist(int packageId) {
+        State state = stateOf(packageId);
+        if (state == null) {
+            return;
+        }
+        prefs.edit().putString(STATE_PREFIX + interner.nameOf(packageId),
+            state.periodStart + "," + state.usedMs + "," + state.tokensMs + "," + state.lastRefill).apply();
+    }
+
+    private void load() {
+        int count = 0;
+        for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+            if (!entry.getKey().startsWith(RULE_PREFIX)) {
+                continue;
+            }
+            String packageName = entry.getKey().substring(RULE_PREFIX.length());
+            try {
+                State state = new State(Rule.decode((String) entry.getValue()));
+                String saved = prefs.getString(STATE_PREFIX + packageName, null);
+                if (saved != null) {
+                    String[] parts = saved.split(",");
+                    state.periodStart = Long.parseLong(parts[0]);
+                    state.usedMs = Long.parseLong(parts[1]);
+                    state.tokensMs = Long.parseLong(parts[2]);
+                    state.lastRefill = Long.parseLong(parts[3]);
+                }
+                int id = interner.intern(packageName);
+                ensureCapacity(id);
+                states[id] = state;
+                count++;
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Dropping unreadable quota for " + packageName, e);
+            }
+        }
+        Log.d(TAG, "Loaded " + count + " quotas");
+    }
+}
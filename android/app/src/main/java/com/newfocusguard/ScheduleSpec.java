@@ -0,0 +1,189 @@
+package com.newfocusguard;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.util.Log;
+
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Wire and storage form of one schedule.
+ *
+ * Times are local minutes of the day and days a bitmask aligned with Calendar
+ * (bit 0 = Sunday ... bit 6 = Saturday), so compiling a spec into a
+ * {@link ScheduledLock} needs no date parsing. Specs travel to the service as a
+ * Parcelable Intent extra and are stored one file per schedule by {@link ScheduleStore}.
+ */
+final class ScheduleSpec implements Parcelable {
+    private static final String TAG = "ScheduleSpec";
+    private static final byte STORAGE_VERSION = 2; // 2 added categoryMask
+    static final int ALL_DAYS = 0x7F;
+
+    final String id;
+    final boolean isEnabled;
+    final String[] appPackageNames;
+    final int startMinute; // local minute of the day, 0..1439
+    final int endMinute;
+    final int daysMask;
+    final int categoryMask; // AppCategoryIndex bits, blocks every app in these categories too
+
+    ScheduleSpec(String id, boolean isEnabled, String[] appPackageNames, int startMinute, int endMinute, int daysMask,
+                 int categoryMask) {
+        this.id = id;
+        this.isEnabled = isEnabled;
+        this.appPackageNames = appPackageNames;
+        this.startMinute = startMinute;
+        this.endMinute = endMinute;
+        this.daysMask = daysMask & ALL_DAYS;
+        this.categoryMask = categoryMask;
+    }
+
+    ScheduleSpec withEnabled(boolean enabled) {
+        return new ScheduleSpec(id, enabled, appPackageNames, startMinute, endMinute, daysMask, categoryMask);
+    }
+
+    boolean isDaySelected(int calendarDayOfWeek) {
+        return (daysMask & (1 << (calendarDayOfWeek - Calendar.SUNDAY))) != 0;
+    }
+
+    /** Reads the map sent by ScheduleManager.ts: {id, isEnabled, appPackageNames, startMinute, endMinute, daysMask, categoryMask?}. */
+    static ScheduleSpec fromReadableMap(ReadableMap map) {
+        ReadableArray packages = map.getArray("appPackageNames");
+        String[] packageNames = new String[packages != null ? packages.size() : 0];
+        for (int i = 0; i < packageNames.length; i++) {
+            packageNames[i] = packages.getString(i);
+            if (PackageRuleMatcher.isRule(packageNames[i]) && !PackageRuleMatcher.isValid(packageNames[i])) {
+                throw new IllegalArgumentException("Unsupported app rule: " + packageNames[i]);
+            }
+        }
+        return new ScheduleSpec(
+            map.getString("id"),
+            map.getBoolean("isEnabled"),
+            packageNames,
+            map.getInt("startMinute"),
+            map.getInt("endMinute"),
+            map.getInt("daysMask"),
+            map.hasKey("categoryMask") ? map.getInt("categoryMask") : 0);
+    }
+
+    // Shared by every legacy schedule, only used once while migrating the old JSON blob.
+    private static SimpleDateFormat isoFormat;
+
+    private static synchronized int parseLocalMinute(String isoUtc) {
+        if (isoFormat == null) {
+            isoFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+            isoFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        }
+        try {
+            Date date = isoFormat.parse(isoUtc);
+            Calendar cal = Calendar.getInstance(); // local timezone
+            cal.setTime(date);
+            return cal.get(Calendar.HOUR_OF_DAY) * 60 + cal.get(Calendar.MINUTE);
+        } catch (ParseException e) {
+            Log.e(TAG, "Failed to parse date string " + isoUtc, e);
+            // Fall back to the raw UTC clock time rather than dropping the schedule
+            return Integer.parseInt(isoUtc.substring(11, 13)) * 60 + Integer.parseInt(isoUtc.substring(14, 16));
+        }
+    }
+
+    /** Parses one entry of the schedulesJson blob that SET_SCHEDULES used to store. */
+    static ScheduleSpec fromLegacyJson(JSONObject jsonObject) throws JSONException {
+        JSONArray packages = jsonObject.getJSONArray("appPackageNames");
+        String[] packageNames = new String[packages.length()];
+        for (int i = 0; i < packageNames.length; i++) {
+            packageNames[i] = packages.getString(i);
+        }
+        JSONObject scheduleConfig = jsonObject.getJSONObject("scheduleConfig");
+        // The JS boolean array is [Mon, Tue, Wed, Thu, Fri, Sat, Sun], the mask starts at Sunday
+        JSONArray days = scheduleConfig.getJSONArray("selectedDays");
+        int daysMask = 0;
+        for (int i = 0; i < 7; i++) {
+            if (days.getBoolean(i)) {
+                daysMask |= 1 << ((i + 1) % 7);
+            }
+        }
+        return new ScheduleSpec(
+            jsonObject.getString("id"),
+            jsonObject.getBoolean("isEnabled"),
+            packageNames,
+            parseLocalMinute(scheduleConfig.getString("startTime")),
+            parseLocalMinute(scheduleConfig.getString("endTime")),
+            daysMask,
+            0);
+    }
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeByte(STORAGE_VERSION);
+        out.writeUTF(id);
+        out.writeBoolean(isEnabled);
+        out.writeShort(startMinute);
+        out.writeShort(endMinute);
+        out.writeByte(daysMask);
+        out.writeInt(categoryMask);
+        out.writeShort(appPackageNames.length);
+        for (String packageName : appPackageNames) {
+            out.writeUTF(packageName);
+        }
+    }
+
+    static ScheduleSpec readFrom(DataInputStream in) throws IOException {
+        byte version = in.readByte();
+        if (version != 1 && version != STORAGE_VERSION) {
+            throw new IOException("Unsupported schedule version " + version);
+        }
+        String id = in.readUTF();
+        boolean enabled = in.readBoolean();
+        int start = in.readShort();
+        int end = in.readShort();
+        int days = in.readByte();
+        int categories = version >= 2 ? in.readInt() : 0;
+        String[] packageNames = new String[in.readShort()];
+        for (int i = 0; i < packageNames.length; i++) {
+            packageNames[i] = in.readUTF();
+        }
+        return new ScheduleSpec(id, enabled, packageNames, start, end, days, categories);
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeString(id);
+        dest.writeInt(isEnabled ? 1 : 0);
+        dest.writeStringArray(appPackageNames);
+        dest.writeInt(startMinute);
+        dest.writeInt(endMinute);
+        dest.writeInt(daysMask);
+        dest.writeInt(categoryMask);
+    }
+
+    public static final Parcelable.Creator<ScheduleSpec> CREATOR = new Parcelable.Creator<ScheduleSpec>() {
+        @Override
+        public ScheduleSpec createFromParcel(Parcel in) {
+            return new ScheduleSpec(in.readString(), in.readInt() != 0, in.createStringArray(),
+                in.readInt(), in.readInt(), in.readInt(), in.readInt());
+        }
+
+        @Override
+        public ScheduleSpec[] newArray(int size) {
+            return new ScheduleSpec[size];
+        }
+    };
+}
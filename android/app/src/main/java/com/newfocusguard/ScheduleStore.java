@@ -0,0 +1,194 @@
+package com.newfocusguard;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Persists schedules one small file per schedule, so upserting, deleting or toggling
+ * a schedule rewrites only that schedule no matter how many exist.
+ *
+ * On first use it migrates the single schedulesJson blob that SET_SCHEDULES used to
+ * keep in SharedPreferences.
+ *
+ * JS numbers its schedule operations: an epoch that names its schedule list and a revision
+ * bumped by every operation. The store remembers the last pair it applied, so a lost or
+ * reordered operation shows up as a gap and JS re-sends the whole list with
+ * {@link #replaceAll}.
+ */
+final class ScheduleStore {
+    private static final String TAG = "FocusGuardSchedules";
+    private static final String DIR_NAME = "schedules";
+    private static final String SUFFIX = ".sched";
+    private static final String LEGACY_PREFS_KEY = "schedulesJson";
+    private static final String SYNC_PREFS_NAME = "FocusGuardScheduleSync";
+
+    private static ScheduleStore instance;
+
+    private final File dir;
+    private final SharedPreferences legacyPrefs;
+    private final SharedPreferences syncPrefs;
+
+    private ScheduleStore(Context context) {
+        this.dir = new File(context.getFilesDir(), DIR_NAME);
+        this.legacyPrefs = context.getSharedPreferences(LockTable.PREFS_NAME, Context.MODE_PRIVATE);
+        this.syncPrefs = context.getSharedPreferences(SYNC_PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    static synchronized ScheduleStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new ScheduleStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    /** Reads every stored schedule, keyed by id, in no particular order. */
+    synchronized Map<String, ScheduleSpec> loadAll() {
+        migrateLegacyJson();
+        Map<String, ScheduleSpec> specs = new LinkedHashMap<>();
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return specs;
+        }
+        for (File file : files) {
+            if (!file.getName().endsWith(SUFFIX)) {
+                continue;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                ScheduleSpec spec = ScheduleSpec.readFrom(in);
+                specs.put(spec.id, spec);
+            } catch (IOException e) {
+                Log.e(TAG, "Dropping unreadable schedule file " + file.getName(), e);
+                file.delete();
+            }
+        }
+        Log.d(TAG, "Loaded " + specs.size() + " schedules");
+        return specs;
+    }
+
+    /** Writes one schedule, false if it could not be stored. */
+    synchronized boolean put(ScheduleSpec spec) {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            Log.e(TAG, "Cannot create schedule directory " + dir);
+            return false;
+        }
+        File target = fileFor(spec.id);
+        File temp = new File(dir, target.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            spec.writeTo(out);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write schedule " + spec.id, e);
+            temp.delete();
+            return false;
+        }
+        // Rename so a crash leaves either the old or the new schedule, never half of one
+        if (!temp.renameTo(target)) {
+            Log.e(TAG, "Failed to commit schedule " + spec.id);
+            temp.delete();
+            return false;
+        }
+        return true;
+    }
+
+    synchronized void remove(String scheduleId) {
+        File file = fileFor(scheduleId);
+        if (file.exists() && !file.delete()) {
+            Log.e(TAG, "Failed to delete schedule " + scheduleId);
+        }
+    }
+
+    /**
+     * Replaces every stored schedule with {@code specs}, the full list JS re-sends after a gap,
+     * and records it as (epoch, revision). False if a schedule could not be written; the
+     * sync point is then left behind so the next check asks for the list again.
+     */
+    synchronized boolean replaceAll(Collection<ScheduleSpec> specs, String epoch, long revision) {
+        Set<String> keep = new HashSet<>();
+        boolean stored = true;
+        for (ScheduleSpec spec : specs) {
+            stored &= put(spec);
+            keep.add(fileFor(spec.id).getName());
+        }
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(SUFFIX) && !keep.contains(file.getName()) && !file.delete()) {
+                    Log.e(TAG, "Failed to delete stale schedule file " + file.getName());
+                }
+            }
+        }
+        if (stored) {
+            syncPrefs.edit().putString("epoch", epoch).putLong("revision", revision).apply();
+        }
+        Log.d(TAG, "Replaced all schedules with " + specs.size() + " at " + epoch + "/" + revision);
+        return stored;
+    }
+
+    /**
+     * Records that the operation numbered (epoch, revision) was applied. Returns false when it
+     * does not directly follow the last one recorded, i.e. something was missed.
+     */
+    synchronized boolean advance(String epoch, long revision) {
+        boolean inSequence = epoch != null && epoch.equals(syncEpoch()) && revision == syncRevision() + 1;
+        if (inSequence) {
+            syncPrefs.edit().putLong("revision", revision).apply();
+        }
+        return inSequence;
+    }
+
+    synchronized String syncEpoch() {
+        return syncPrefs.getString("epoch", null);
+    }
+
+    synchronized long syncRevision() {
+        return syncPrefs.getLong("revision", -1);
+    }
+
+    /** Schedule ids come from JS, hex-encode them so any id is a safe file name. */
+    private File fileFor(String scheduleId) {
+        StringBuilder name = new StringBuilder();
+        for (byte b : scheduleId.getBytes(StandardCharsets.UTF_8)) {
+            name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return new File(dir, name.append(SUFFIX).toString());
+    }
+
+    private void migrateLegacyJson() {
+        String schedulesJson = legacyPrefs.getString(LEGACY_PREFS_KEY, null);
+        if (schedulesJson == null) {
+            return;
+        }
+        try {
+            JSONArray jsonArray = new JSONArray(schedulesJson);
+            for (int i = 0; i < jsonArray.length(); i++) {
+                if (!put(ScheduleSpec.fromLegacyJson(jsonArray.getJSONObject(i)))) {
+                    // Keep the blob, the next load tries again; put() is idempotent
+                    Log.w(TAG, "Legacy schedule migration incomplete, will retry");
+                    return;
+                }
+            }
+            Log.d(TAG, "Migrated " + jsonArray.length() + " schedules from SharedPreferences");
+        } catch (JSONException e) {
+            Log.e(TAG, "Failed to migrate legacy schedules JSON, dropping it", e);
+        }
+        legacyPrefs.edit().remove(LEGACY_PREFS_KEY).apply();
+    }
+}
@@ -0,0 +1,98 @@
+package com.newfocusguard;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Answers "what is blocked between from and to" from the compiled schedules.
+ *
+ * Each enabled schedule contributes its windows in the range; the windows of every
+ * app are then sorted and merged, so overlapping or back-to-back schedules come out
+ * as one interval. Cost is proportional to the number of windows, not to the
+ * length of the range in minutes.
+ */
+final class ScheduleTimeline {
+    private ScheduleTimeline() {}
+
+    static final class Result {
+        /** Merged {start, end} intervals per package. */
+        final Map<String, List<long[]>> perApp = new HashMap<>();
+        /** Merged intervals per category name, for schedules that target categories. */
+        final Map<String, List<long[]>> perCategory = new HashMap<>();
+        /** Union of the intervals of every package: when anything at all is blocked. */
+        List<long[]> combined;
+    }
+
+    static Result compute(Collection<ScheduleSpec> specs, long fromMs, long toMs) {
+        Map<String, List<long[]>> windowsByApp = new HashMap<>();
+        Map<String, List<long[]>> windowsByCategory = new HashMap<>();
+        List<long[]> all = new ArrayList<>();
+        List<long[]> windows = new ArrayList<>();
+        for (ScheduleSpec spec : specs) {
+            if (!spec.isEnabled) {
+                continue;
+            }
+            windows.clear();
+            new ScheduledLock(spec).collectWindows(fromMs, toMs, windows);
+            if (windows.isEmpty()) {
+                continue;
+            }
+            all.addAll(windows);
+            for (String packageName : spec.appPackageNames) {
+                if (!PackageRuleMatcher.isRule(packageName)) {
+                    add(windowsByApp, packageName, windows);
+                }
+            }
+            // A wildcard rule is reported under its own key, e.g. "com.facebook.*"
+            String rule = PackageRuleMatcher.ruleOf(spec.appPackageNames);
+            if (rule != null) {
+                add(windowsByApp, rule, windows);
+            }
+            for (int c = 0; c < AppCategoryIndex.CATEGORY_COUNT; c++) {
+                if ((spec.categoryMask & (1 << c)) != 0) {
+                    add(windowsByCategory, AppCategoryIndex.NAMES[c], windows);
+                }
+            }
+        }
+
+        Result result = new Result();
+        for (Map.Entry<String, List<long[]>> entry : windowsByApp.entrySet()) {
+            result.perApp.put(entry.getKey(), merge(entry.getValue()));
+        }
+        for (Map.Entry<String, List<long[]>> entry : windowsByCategory.entrySet()) {
+            result.perCategory.put(entry.getKey(), merge(entry.getValue()));
+        }
+        result.combined = merge(all);
+        return result;
+    }
+
+    private static void add(Map<String, List<long[]>> windowsByKey, String key, List<long[]> windows) {
+        List<long[]> keyWindows = windowsByKey.get(key);
+        if (keyWindows == null) {
+            keyWindows = new ArrayList<>();
+            windowsByKey.put(key, keyWindows);
+        }
+        keyWindows.addAll(windows);
+    }
+
+    /** Sorts by start and joins intervals that overlap or touch. */
+    static List<long[]> merge(List<long[]> intervals) {
+        List<long[]> sorted = new ArrayList<>(intervals);
+        Collections.sort(sorted, (a, b) -> Long.compare(a[0], b[0]));
+        List<long[]> result = new ArrayList<>();
+        long[] current = null;
+        for (long[] interval : sorted) {
+            if (current != null && interval[0] <= current[1]) {
+                current[1] = Math.max(current[1], interval[1]);
+            } else {
+                current = new long[] { interval[0], interval[1] };
+                result.add(current);
+            }
+        }
+        return result;
+    }
+}
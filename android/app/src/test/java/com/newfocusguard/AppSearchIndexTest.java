@@ -0,0 +1,115 @@
+package com.newfocusguard;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+public class AppSearchIndexTest {
+    private Locale previousLocale;
+
+    @Before
+    public void setUp() {
+        // Collation order depends on the default locale
+        previousLocale = Locale.getDefault();
+        Locale.setDefault(Locale.US);
+    }
+
+    @After
+    public void tearDown() {
+        Locale.setDefault(previousLocale);
+    }
+
+    private static AppSearchIndex index(String... packagesAndLabels) {
+        List<InstalledAppIndex.Entry> entries = new ArrayList<>();
+        for (int i = 0; i < packagesAndLabels.length; i += 2) {
+            entries.add(new InstalledAppIndex.Entry(packagesAndLabels[i], packagesAndLabels[i + 1], "", 1, false,
+                false, false, 1));
+        }
+        return new AppSearchIndex(entries);
+    }
+
+    @Test
+    public void normalizationFoldsAccentsAndCase() {
+        assertEquals("cafe nandu", AppSearchIndex.normalize("Caf\u00e9 \u00d1and\u00fa"));
+        assertEquals("uber", AppSearchIndex.normalize("\u00dcBER"));
+
+        AppSearchIndex search = index("com.example.cafe", "Caf\u00e9 Cr\u00e8me", "org.example.other", "Other");
+        assertArrayEquals(new String[] {"com.example.cafe"}, search.search("cafe creme", 0));
+        assertArrayEquals(new String[] {"com.example.cafe"}, search.search("CR\u00c8ME", 0));
+    }
+
+    @Test
+    public void equalMatchesFollowCollationOrder() {
+        AppSearchIndex search = index(
+            "com.zebra", "zebra",
+            "com.eclair", "\u00c9clair",
+            "com.banana", "Banana",
+            "com.apple", "apple");
+        // Every app matches on its "com" package segment, so the order is the Collator's alone:
+        // case and accents do not put "Banana" before "apple" or the accented "Eclair" after "zebra"
+        assertArrayEquals(new String[] {"com.apple", "com.banana", "com.eclair", "com.zebra"},
+            search.search("com", 0));
+        assertArrayEquals(new String[] {"com.apple", "com.banana"}, search.search("com", 2));
+    }
+
+    @Test
+    public void matchKindRanksBeforeCollation() {
+        AppSearchIndex search = index(
+            "com.example.anotes", "A Notes",           // label word
+            "com.example.notes", "Notes",              // label prefix
+            "com.notes.viewer", "Viewer",              // package segment
+            "com.example.keynotes", "Keynotes",        // substring
+            "com.example.nodes", "Nodes");             // no match, three letters allow no typo
+        assertArrayEquals(new String[] {
+            "com.example.notes", "com.example.anotes", "com.notes.viewer", "com.example.keynotes"
+        }, search.search("not", 0));
+    }
+
+    @Test
+    public void everyQueryWordHasToMatch() {
+        AppSearchIndex search = index(
+            "com.google.android.apps.maps", "Google Maps",
+            "com.google.android.gm", "Gmail",
+            "com.waze", "Waze Maps");
+        assertArrayEquals(new String[] {"com.google.android.apps.maps"}, search.search("goo maps", 0));
+        assertArrayEquals(new String[] {"com.google.android.apps.maps", "com.waze"}, search.search("maps", 0));
+        assertArrayEquals(new String[0], search.search("   ", 0));
+    }
+
+    @Test
+    public void typosFindAppsWhenPrefixesDoNot() {
+        AppSearchIndex search = index(
+            "com.instagram.android", "Instagram",
+            "com.spotify.music", "Spotify",
+            "com.whatsapp", "WhatsApp");
+        assertArrayEquals(new String[] {"com.instagram.android"}, search.search("instagarm", 0));
+        assertArrayEquals(new String[] {"com.spotify.music"}, search.search("spotfy", 0));
+        assertArrayEquals(new String[] {"com.whatsapp"}, search.search("whtsapp", 0));
+        assertArrayEquals(new String[0], search.search("spx", 0));
+    }
+
+    @Test
+    public void distanceCountsSwapsAsOneEdit() {
+        assertTrue(AppSearchIndex.withinDistance("instagarm", "instagram", 1));
+        assertFalse(AppSearchIndex.withinDistance("yuotbue", "youtube", 1));
+        assertTrue(AppSearchIndex.withinDistance("yuotbue", "youtube", 2));
+    }
+
+    @Test
+    public void distanceIsAgainstTokenPrefixes() {
+        assertTrue(AppSearchIndex.withinDistance("facx", "facebook", 1));
+        assertTrue(AppSearchIndex.withinDistance("spotfy", "spotify", 1));
+        assertTrue(AppSearchIndex.withinDistance("whatsap", "whatsapp", 0));
+        assertFalse(AppSearchIndex.withinDistance("fxcx", "facebook", 1));
+        assertFalse(AppSearchIndex.withinDistance("telegram", "tel", 2));
+    }
+}
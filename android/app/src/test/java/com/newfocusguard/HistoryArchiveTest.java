@@ -0,0 +1,126 @@
+package com.newfocusguard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class HistoryArchiveTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HistoryLog log;
+
+    @Before
+    public void setUp() throws IOException {
+        log = new HistoryLog(folder.newFile("history.log"), Long.MAX_VALUE, Long.MAX_VALUE);
+    }
+
+    @Test
+    public void roundTripsSeveralBlocks() throws IOException {
+        List<HistoryLog.Record> written = new ArrayList<>();
+        // More than one 4096-row block, with values of every size and a repeated dictionary
+        for (int i = 0; i < 10000; i++) {
+            HistoryLog.Record record = new HistoryLog.Record(
+                1_700_000_000_000L + i * 1000L,
+                (byte) (1 + i % 9),
+                "com.example.app" + (i % 37),
+                i % 5 == 0 ? -1 : (long) i * i * 7919);
+            log.append(record.timestamp, record.kind, record.packageName, record.value);
+            written.add(record);
+        }
+        File archive = folder.newFile("export.fgh");
+
+        assertEquals(10000, HistoryArchive.export(log, 0, Long.MAX_VALUE, archive));
+        assertRecords(written, HistoryArchive.readAll(archive));
+    }
+
+    @Test
+    public void exportHonoursTheRange() throws IOException {
+        log.append(100, HistoryLog.KIND_BLOCKED, "a", 0);
+        log.append(200, HistoryLog.KIND_BLOCKED, "b", 0);
+        log.append(300, HistoryLog.KIND_BLOCKED, "c", 0);
+        File archive = folder.newFile("export.fgh");
+
+        assertEquals(1, HistoryArchive.export(log, 200, 300, archive));
+        assertRecords(Arrays.asList(new HistoryLog.Record(200, HistoryLog.KIND_BLOCKED, "b", 0)),
+            HistoryArchive.readAll(archive));
+    }
+
+    @Test
+    public void mergesExtraRowsByTimestamp() throws IOException {
+        log.append(100, HistoryLog.KIND_BLOCKED, "a", 0);
+        log.append(300, HistoryLog.KIND_BLOCKED, "b", 0);
+        List<HistoryLog.Record> extra = Arrays.asList(
+            new HistoryLog.Record(400, HistoryLog.KIND_LOCK_EXPIRED, "legacy", 400),
+            new HistoryLog.Record(50, HistoryLog.KIND_LOCKED, "legacy", 400),
+            new HistoryLog.Record(9999, HistoryLog.KIND_SESSION, "outside", 1));
+        File archive = folder.newFile("export.fgh");
+
+        assertEquals(4, HistoryArchive.export(log, 0, 1000, extra, archive));
+        assertRecords(Arrays.asList(
+            new HistoryLog.Record(50, HistoryLog.KIND_LOCKED, "legacy", 400),
+            new HistoryLog.Record(100, HistoryLog.KIND_BLOCKED, "a", 0),
+            new HistoryLog.Record(300, HistoryLog.KIND_BLOCKED, "b", 0),
+            new HistoryLog.Record(400, HistoryLog.KIND_LOCK_EXPIRED, "legacy", 400)),
+            HistoryArchive.readAll(archive));
+    }
+
+    @Test
+    public void exportOfAnEmptyLogImportsNothing() throws IOException {
+        File archive = folder.newFile("export.fgh");
+
+        assertEquals(0, HistoryArchive.export(log, 0, Long.MAX_VALUE, archive));
+        assertEquals(0, HistoryArchive.readAll(archive).size());
+    }
+
+    @Test
+    public void rejectsAFileWithoutTheMagic() throws IOException {
+        File archive = folder.newFile("bogus.fgh");
+        try (FileOutputStream out = new FileOutputStream(archive)) {
+            out.write(new byte[] {'N', 'O', 'P', 'E', 1, 0, 0, 0});
+        }
+        try {
+            HistoryArchive.readAll(archive);
+            fail("Expected an IOException");
+        } catch (IOException expected) {
+            // not an export
+        }
+    }
+
+    @Test
+    public void importingAnExportTwiceAddsNothing() throws IOException {
+        log.append(100, HistoryLog.KIND_BLOCKED, "a", 0);
+        log.append(200, HistoryLog.KIND_SESSION, "b", 5000);
+        File archive = folder.newFile("export.fgh");
+        HistoryArchive.export(log, 0, Long.MAX_VALUE, archive);
+
+        HistoryLog target = new HistoryLog(folder.newFile("target.log"), Long.MAX_VALUE, Long.MAX_VALUE);
+        assertEquals(2, target.merge(HistoryArchive.readAll(archive)));
+        assertEquals(0, target.merge(HistoryArchive.readAll(archive)));
+        assertRecords(HistoryArchive.readAll(archive), HistoryLogTest.readLog(target));
+    }
+
+    static void assertRecords(List<HistoryLog.Record> expected, List<HistoryLog.Record> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            HistoryLog.Record want = expected.get(i);
+            HistoryLog.Record got = actual.get(i);
+            String at = "record " + i;
+            assertEquals(at, want.timestamp, got.timestamp);
+            assertEquals(at, want.kind, got.kind);
+            assertEquals(at, want.packageName, got.packageName);
+            assertEquals(at, want.value, got.value);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.newfocusguard;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class HistoryLogTest {
+    private static final long DAY_MS = 24L * 60 * 60 * 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void mergeSkipsKnownRowsAndKeepsTimestampOrder() throws IOException {
+        HistoryLog log = new HistoryLog(folder.newFile("history.log"), Long.MAX_VALUE, Long.MAX_VALUE);
+        log.append(100, HistoryLog.KIND_BLOCKED, "a", 0);
+        log.append(300, HistoryLog.KIND_BLOCKED, "a", 0);
+
+        int added = log.merge(Arrays.asList(
+            new HistoryLog.Record(400, HistoryLog.KIND_BLOCKED, "b", 0),
+            new HistoryLog.Record(300, HistoryLog.KIND_BLOCKED, "a", 42), // same event, other value
+            new HistoryLog.Record(200, HistoryLog.KIND_BLOCKED, "a", 0),
+            new HistoryLog.Record(200, HistoryLog.KIND_BLOCKED, "a", 0),  // duplicated in the input
+            new HistoryLog.Record(200, HistoryLog.KIND_SESSION, "a", 10)));
+
+        assertEquals(3, added);
+        HistoryArchiveTest.assertRecords(Arrays.asList(
+            new HistoryLog.Record(100, HistoryLog.KIND_BLOCKED, "a", 0),
+            new HistoryLog.Record(200, HistoryLog.KIND_BLOCKED, "a", 0),
+            new HistoryLog.Record(200, HistoryLog.KIND_SESSION, "a", 10),
+            new HistoryLog.Record(300, HistoryLog.KIND_BLOCKED, "a", 0),
+            new HistoryLog.Record(400, HistoryLog.KIND_BLOCKED, "b", 0)),
+            readLog(log));
+    }
+
+    @Test
+    public void appendsContinueAfterAMerge() throws IOException {
+        HistoryLog log = new HistoryLog(folder.newFile("history.log"), Long.MAX_VALUE, Long.MAX_VALUE);
+        log.append(100, HistoryLog.KIND_BLOCKED, "a", 0);
+        log.merge(Arrays.asList(new HistoryLog.Record(50, HistoryLog.KIND_BLOCKED, "b", 0)));
+        log.append(200, HistoryLog.KIND_BLOCKED, "c", 0);
+
+        assertEquals(3, readLog(log).size());
+        assertEquals("c", readLog(log).get(2).packageName);
+    }
+
+    @Test
+    public void compactionDropsRecordsPastRetention() throws IOException {
+        long now = 1000 * DAY_MS;
+        HistoryLog log = new HistoryLog(folder.newFile("history.log"), Long.MAX_VALUE, 10 * DAY_MS);
+        log.append(now - 20 * DAY_MS, HistoryLog.KIND_BLOCKED, "old", 0);
+        log.append(now - 5 * DAY_MS, HistoryLog.KIND_BLOCKED, "recent", 0);
+
+        log.compact(now);
+
+        List<HistoryLog.Record> records = readLog(log);
+        assertEquals(1, records.size());
+        assertEquals("recent", records.get(0).packageName);
+    }
+
+    @Test
+    public void appendPastTheSizeLimitDropsTheOldestRecords() throws IOException {
+        File file = folder.newFile("history.log");
+        long maxBytes = 4096;
+        HistoryLog log = new HistoryLog(file, maxBytes, Long.MAX_VALUE);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 1000; i++) {
+            log.append(start + i, HistoryLog.KIND_BLOCKED, "com.example.app", i);
+        }
+
+        assertTrue("log stays bounded, was " + file.length(), file.length() <= maxBytes);
+        List<HistoryLog.Record> records = readLog(log);
+        assertTrue(records.size() > 0);
+        // The newest record always survives and order is kept
+        assertEquals(999, records.get(records.size() - 1).value);
+        for (int i = 1; i < records.size(); i++) {
+            assertEquals(records.get(i - 1).value + 1, records.get(i).value);
+        }
+    }
+
+    static List<HistoryLog.Record> readLog(HistoryLog log) throws IOException {
+        final List<HistoryLog.Record> records = new ArrayList<>();
+        log.scan(Long.MIN_VALUE, Long.MAX_VALUE, (timestamp, kind, packageName, value) ->
+            records.add(new HistoryLog.Record(timestamp, kind, packageName, value)));
+        return records;
+    }
+}
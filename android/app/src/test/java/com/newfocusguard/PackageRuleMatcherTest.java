@@ -0,0 +1,107 @@
+package com.newfocusguard;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PackageRuleMatcherTest {
+
+    private static int[] match(String rule, String packageName) {
+        return PackageRuleMatcher.compile(new String[] {rule}).match(packageName);
+    }
+
+    private static void assertMatches(String rule, String packageName) {
+        assertArrayEquals(rule + " should match " + packageName, new int[] {0}, match(rule, packageName));
+    }
+
+    private static void assertNoMatch(String rule, String packageName) {
+        assertArrayEquals(rule + " should not match " + packageName, PackageRuleMatcher.NO_MATCH, match(rule, packageName));
+    }
+
+    @Test
+    public void wildcardSegmentCoversOneOrMoreSegments() {
+        assertMatches("com.facebook.*", "com.facebook.katana");
+        assertMatches("com.facebook.*", "com.facebook.katana.lite");
+        assertNoMatch("com.facebook.*", "com.facebook");
+        assertNoMatch("com.facebook.*", "com.facebookx.katana");
+        assertMatches("*.game.*", "com.example.game.puzzle");
+        assertNoMatch("*.game.*", "com.example.games.puzzle");
+    }
+
+    @Test
+    public void plainPatternMatchesOnlyThatPackage() {
+        assertMatches("com.whatsapp", "com.whatsapp");
+        assertNoMatch("com.whatsapp", "com.whatsapp.w4b");
+        assertNoMatch("com.whatsapp", "com");
+    }
+
+    @Test
+    public void prefixSegmentMatchesByPrefixAndLaterSegments() {
+        assertMatches("com.face*", "com.facebook");
+        assertMatches("com.face*", "com.facebook.katana");
+        assertMatches("com.face*", "com.face");
+        assertNoMatch("com.face*", "com.instagram.android");
+        assertNoMatch("com.face*", "org.facebook");
+        assertMatches("com.face*.lite", "com.facebook.lite");
+        assertNoMatch("com.face*.lite", "com.facebook.katana");
+    }
+
+    @Test
+    public void negationRemovesPackagesFromItsOwnRuleOnly() {
+        assertMatches("* !com.whatsapp !com.android.*", "com.instagram.android");
+        assertNoMatch("* !com.whatsapp !com.android.*", "com.whatsapp");
+        assertNoMatch("* !com.whatsapp !com.android.*", "com.android.chrome");
+        assertNoMatch("com.face* !com.facebook.orca", "com.facebook.orca");
+        assertMatches("com.face* !com.facebook.orca", "com.facebook.katana");
+
+        PackageRuleMatcher matcher = PackageRuleMatcher.compile(new String[] {"* !com.whatsapp", "com.whatsapp"});
+        assertArrayEquals(new int[] {1}, matcher.match("com.whatsapp"));
+        assertArrayEquals(new int[] {0}, matcher.match("com.reddit.frontpage"));
+    }
+
+    @Test
+    public void oneWalkReportsEveryMatchingRuleSorted() {
+        PackageRuleMatcher matcher = PackageRuleMatcher.compile(new String[] {
+            "com.google.*", "org.*", "*.youtube", "com.goo*"
+        });
+        assertArrayEquals(new int[] {0, 2, 3}, matcher.match("com.google.android.youtube"));
+        assertArrayEquals(new int[] {1}, matcher.match("org.mozilla.firefox"));
+        assertArrayEquals(PackageRuleMatcher.NO_MATCH, matcher.match("net.example"));
+    }
+
+    @Test
+    public void neverMatchedPackagesMatchNoRule() {
+        PackageRuleMatcher matcher = PackageRuleMatcher.compile(new String[] {"*"}, "com.android.systemui");
+        assertArrayEquals(PackageRuleMatcher.NO_MATCH, matcher.match("com.android.systemui"));
+        assertArrayEquals(new int[] {0}, matcher.match("com.android.chrome"));
+    }
+
+    @Test
+    public void matchesOfCachesPerPackageId() {
+        PackageInterner interner = PackageInterner.getInstance();
+        PackageRuleMatcher matcher = PackageRuleMatcher.compile(new String[] {"com.face*"});
+        int facebook = interner.intern("com.facebook.katana");
+        int other = interner.intern("com.example.other");
+
+        int[] first = matcher.matchesOf(facebook);
+        assertArrayEquals(new int[] {0}, first);
+        assertArrayEquals(PackageRuleMatcher.NO_MATCH, matcher.matchesOf(other));
+        assertSame(first, matcher.matchesOf(facebook));
+    }
+
+    @Test
+    public void validationAcceptsWholeAndTrailingWildcardsOnly() {
+        assertTrue(PackageRuleMatcher.isValid("com.facebook.*"));
+        assertTrue(PackageRuleMatcher.isValid("com.face*"));
+        assertTrue(PackageRuleMatcher.isValid("*  !com.whatsapp"));
+        assertFalse(PackageRuleMatcher.isValid("com.*book"));
+        assertFalse(PackageRuleMatcher.isValid("com.f*k.app"));
+        assertFalse(PackageRuleMatcher.isValid("com..app"));
+        assertFalse(PackageRuleMatcher.isValid("!"));
+        assertFalse(PackageRuleMatcher.isValid("com.a!b"));
+        assertFalse(PackageRuleMatcher.isValid("   "));
+    }
+}
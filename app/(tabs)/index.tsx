@@ -1,43 +1,30 @@
 import { ThemedText } from '@/components/ThemedText';
 import { ThemedView } from '@/components/ThemedView';
-import React, { useEffect, useState } from 'react';
-import { Alert, FlatList, Platform, SafeAreaView, StyleSheet, Text, TextInput, TouchableOpacity, View } from 'react-native';
+import React, { useEffect, useMemo, useState } from 'react';
+import { Alert, FlatList, NativeModules, Platform, SafeAreaView, StyleSheet, Text, TextInput, TouchableOpacity, View } from 'react-native';
 // We'll use a simple grid icon for now, you might want to replace this later
 import { MaterialIcons } from '@expo/vector-icons';
-// Only import getInstalledApps, we will define the type locally
 import { Colors } from '@/constants/Colors';
 import { AppCard } from '@/src/components/AppCard';
+import InstalledAppsModule, { getIndexedApps, InstalledAppMetadata, subscribeToIndexedApps } from '@/src/modules/InstalledAppsModule';
 import { LockDurationModal } from '@/src/components/LockDurationModal'; // Import LockDurationModal
 import { ScheduleModal } from '@/src/components/ScheduleModal';
 import { useAppLocking } from '@/src/hooks/useAppLocking';
 import { scheduleManager } from '@/src/services/ScheduleManager';
-import { ScheduleConfig, ScheduledLock } from '@/src/types/LockManagerTypes'; // Import ActiveLock and ScheduledLock
+import { ScheduleConfig } from '@/src/types/LockManagerTypes';
 import { checkOverlayPermission, requestOverlayPermission } from '@/src/utils/OverlayPermission';
 import AsyncStorage from '@react-native-async-storage/async-storage'; // Import AsyncStorage
-import { NativeModules } from 'react-native';
 
-const { InstalledApps, AppMonitoringModule } = NativeModules;
+const { AppMonitoringModule } = NativeModules;
 
 // Key for storing selected apps in AsyncStorage (temporary selection on this screen)
 const SELECTED_APPS_UI_STORAGE_KEY = '@FocusGuard:selectedAppsUIState';
-// Key for storing actual active locks
-const ACTIVE_LOCKS_STORAGE_KEY = '@FocusGuard:activeLocks';
-// Key for storing scheduled locks
-const SCHEDULED_LOCKS_STORAGE_KEY = '@FocusGuard:scheduledLocks';
-
-// Define the type based on actual library output confirmed from logs
-interface InstalledAppFromLibrary {
-  appName: string;
-  packageName: string;
-  versionName?: string;
-  icon?: string;
-}
 
 // Define a type for our app data structure, using packageName as id
 interface DisplayAppInfo {
   id: string; // Will be packageName
   name: string;
-  icon?: string; // Base64 encoded icon
+  icon?: string; // file:// URI, AppCard loads it when absent
 }
 
 // This is the type ScheduleModal uses internally for its onConfirm callback
@@ -59,76 +46,42 @@ export default function AppsScreen() {
   const [isScheduleModalVisible, setIsScheduleModalVisible] = useState(false);
   const [isLockDurationModalVisible, setIsLockDurationModalVisible] = useState(false);
   const { lockApp, unlockApp, isAppLocked } = useAppLocking();
-  
-  // This state will trigger the sync effect when schedules change
-  const [scheduledLocks, setScheduledLocks] = useState<ScheduledLock[]>([]);
 
   useEffect(() => {
     // Removed the automatic permission check at startup
-    loadApps();
-    loadSchedules(); // Load schedules on initial component mount
+    const unsubscribeApps = loadApps();
+    syncSchedules(); // Make sure the service has every schedule on initial component mount
+    return unsubscribeApps;
   }, []);
   
-  // Effect to sync schedules with the native module
-  useEffect(() => {
-    if (scheduledLocks.length > 0) {
-      console.log('[AppsScreen] Syncing schedules with native module. Count:', scheduledLocks.length);
-      console.log('[AppsScreen] Schedule details:', JSON.stringify(scheduledLocks, null, 2));
-      
-      const schedulesJson = JSON.stringify(scheduledLocks);
-      AppMonitoringModule.setScheduledLocks(schedulesJson)
-        .then(() => console.log('[AppsScreen] Successfully synced schedules with native module.'))
-        .catch((e: any) => {
-          console.error('[AppsScreen] Failed to sync schedules with native module:', e);
-          console.error('[AppsScreen] Error details:', e.message);
-        });
-    } else {
-      console.log('[AppsScreen] No schedules to sync with native module');
-    }
-  }, [scheduledLocks]);
-
-  const loadSchedules = async () => {
+  const syncSchedules = async () => {
     try {
-      console.log('[AppsScreen] Loading schedules from storage');
-      // Load schedules from storage
-      const firestoreSchedules = await scheduleManager.getSchedulesForUser();
-      console.log('[AppsScreen] Loaded schedules count:', firestoreSchedules.length);
-      
-      setScheduledLocks(firestoreSchedules);
-      
-      // Sync with native module
-      if (firestoreSchedules.length > 0) {
-        console.log('[AppsScreen] Preparing to sync schedules with native module');
-        const schedulesJson = JSON.stringify(firestoreSchedules);
-        await AppMonitoringModule.setScheduledLocks(schedulesJson);
-        console.log('[AppsScreen] Successfully synced schedules with native module');
-      } else {
-        console.log('[AppsScreen] No schedules to sync');
-      }
+      // The native service keeps its own copy, updated per schedule by scheduleManager;
+      // the whole list is only re-sent if it missed an update.
+      await scheduleManager.resyncIfNeeded();
     } catch (error) {
-      console.error('[AppsScreen] Failed to load or sync schedules:', error);
-      Alert.alert(
-        "Schedule Sync Error",
-        "Failed to sync schedules. Some scheduled locks may not work properly."
-      );
+      console.error('[AppsScreen] Failed to sync schedules:', error);
     }
   };
 
-  const loadApps = async () => {
-    try {
-      setIsLoadingApps(true);
-      const installedApps = await InstalledApps.getInstalledApps();
-      const formattedApps: DisplayAppInfo[] = installedApps.map((app: InstalledAppFromLibrary) => ({
-        id: app.packageName,
-        name: app.appName,
-        icon: app.icon
-      }));
+  // The native index keeps the app list in memory, so this is a read of what changed since the
+  // last visit. Icons are not part of it, each AppCard loads its own.
+  const loadApps = () => {
+    const showApps = (indexedApps: InstalledAppMetadata[]) => {
+      const formattedApps: DisplayAppInfo[] = indexedApps
+        .map(app => ({ id: app.packageName, name: app.appName }))
+        .sort((a, b) => a.name.localeCompare(b.name));
       setApps(formattedApps);
-    } catch (error) {
-      console.error('Error loading apps:', error);
-    } finally {
       setIsLoadingApps(false);
-    }
+    };
+    getIndexedApps()
+      .then(showApps)
+      .catch(error => {
+        console.error('Error loading apps:', error);
+        setIsLoadingApps(false);
+      });
+    // Installs and uninstalls while the screen is open
+    return subscribeToIndexedApps(showApps);
   };
 
   const toggleAppSelection = (app: DisplayAppInfo) => {
@@ -304,10 +257,6 @@ export default function AppsScreen() {
       const scheduleId = await scheduleManager.addSchedule(selectedApps, modalScheduleConfig);
       console.log('[AppsScreen] Schedule saved with ID:', scheduleId);
       
-      // Reload schedules to sync with native module
-      console.log('[AppsScreen] Reloading schedules to sync');
-      await loadSchedules();
-      
       Alert.alert("Schedule Set", "Your schedule has been saved and synced.");
       
       // Clear UI state
@@ -317,7 +266,7 @@ export default function AppsScreen() {
       console.error('[AppsScreen] Failed to save schedule:', error);
       Alert.alert(
         "Error",
-        "Failed to save the schedule. Please try again."
+        error instanceof Error ? error.message : "Failed to save the schedule. Please try again."
       );
     }
   };
@@ -341,9 +290,16 @@ export default function AppsScreen() {
     setIsLockDurationModalVisible(true);
   };
 
-  const filteredApps = apps.filter(app =>
-    app.name.toLowerCase().includes(searchQuery.toLowerCase())
-  );
+  // Searched natively over a prebuilt index, results come back ranked
+  const appsById = useMemo(() => new Map(apps.map(app => [app.id, app])), [apps]);
+  const filteredApps = useMemo(() => {
+    if (!searchQuery.trim()) {
+      return apps;
+    }
+    return InstalledAppsModule.searchApps(searchQuery, 0)
+      .map(packageName => appsById.get(packageName))
+      .filter((app): app is DisplayAppInfo => app !== undefined);
+  }, [apps, appsById, searchQuery]);
 
   return (
     <SafeAreaView style={styles.safeArea}>
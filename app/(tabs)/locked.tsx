@@ -1,15 +1,15 @@
 import { ThemedText } from '@/components/ThemedText';
 import { Colors } from '@/src/constants/Colors';
-import InstalledAppsModule, { InstalledAppInfo } from '@/src/modules/InstalledAppsModule';
-import AppMonitoringService from '@/src/services/AppMonitoringService';
+import { AppIcon } from '@/src/components/AppIcon';
+import { getIndexedApps, InstalledAppMetadata, subscribeToIndexedApps } from '@/src/modules/InstalledAppsModule';
+import AppMonitoringService, { NativeLockState } from '@/src/services/AppMonitoringService';
 import { useFocusEffect } from '@react-navigation/native';
 import React, { useCallback, useEffect, useState } from 'react';
-import { FlatList, Image, StyleSheet, Text, View } from 'react-native';
+import { FlatList, StyleSheet, Text, View } from 'react-native';
 
 interface LockedAppInfo {
   packageName: string;
   appName: string;
-  icon: string;
   unlockTime: number | undefined;
   remainingTime: string;
 }
@@ -17,32 +17,26 @@ interface LockedAppInfo {
 export default function LockedScreen() {
   const [lockedApps, setLockedApps] = useState<LockedAppInfo[]>([]);
   const [loading, setLoading] = useState(true);
-  const [installedApps, setInstalledApps] = useState<InstalledAppInfo[]>([]);
+  const [installedApps, setInstalledApps] = useState<InstalledAppMetadata[]>([]);
+  const [lockState, setLockState] = useState<NativeLockState | null>(null);
 
-  // Fetch installed apps once when component mounts
+  // Fetch installed apps when the component mounts and follow installs and removals
   useEffect(() => {
-    const getInstalledApps = async () => {
-      try {
-        const apps = await InstalledAppsModule.getInstalledApps();
-        setInstalledApps(apps);
-      } catch (error) {
-        console.error('Failed to get installed apps:', error);
-      }
-    };
-    
-    getInstalledApps();
+    // Names come from the native app index, icons load per row
+    getIndexedApps()
+      .then(setInstalledApps)
+      .catch(error => console.error('Failed to get installed apps:', error));
+    return subscribeToIndexedApps(setInstalledApps);
   }, []);
 
-  // Function to fetch locked apps
-  const fetchLockedApps = useCallback(async () => {
-    setLoading(true);
+  // Build the list from the mirrored lock table, no native reads involved
+  const buildLockedApps = useCallback((state: NativeLockState) => {
     try {
       const appMonitoringService = AppMonitoringService.getInstance();
-      const lockedAppsMap = appMonitoringService.getLockedApps();
+      const lockedAppsMap = appMonitoringService.getLockedApps(state);
       
       if (!lockedAppsMap || lockedAppsMap.size === 0) {
         setLockedApps([]);
-        setLoading(false);
         return;
       }
 
@@ -56,7 +50,6 @@ export default function LockedScreen() {
           
           // Use found app info or fallback to basic info
           const appName = appInfo?.appName || packageName.split('.').pop() || packageName;
-          const icon = appInfo?.icon || '';
           
           // Calculate remaining time
           let remainingTime = 'Indefinite';
@@ -74,16 +67,14 @@ export default function LockedScreen() {
                 remainingTime = `${minutes}m`;
               }
             } else {
-              // Lock has expired, remove it
-              await appMonitoringService.unlockApp(packageName);
-              continue; // Skip adding to the list
+              // Expired, the service removes it and a diff follows shortly
+              continue;
             }
           }
           
           lockedAppsArray.push({
             packageName,
             appName,
-            icon,
             unlockTime,
             remainingTime
           });
@@ -94,39 +85,41 @@ export default function LockedScreen() {
       
       setLockedApps(lockedAppsArray);
     } catch (error) {
-      console.error('Failed to fetch locked apps:', error);
-    } finally {
-      setLoading(false);
+      console.error('Failed to build locked apps:', error);
     }
   }, [installedApps]);
 
-  // Refresh the list when the screen comes into focus
+  // Follow the lock table while the screen is focused
   useFocusEffect(
     useCallback(() => {
-      fetchLockedApps();
-      
-      // Set up interval to update remaining times
-      const intervalId = setInterval(() => {
-        fetchLockedApps();
-      }, 60000); // Update every minute
-      
-      return () => clearInterval(intervalId);
-    }, [fetchLockedApps])
+      const unsubscribe = AppMonitoringService.getInstance().subscribeToLockState(state => {
+        setLockState(state);
+        setLoading(false);
+      });
+      return unsubscribe;
+    }, [])
   );
 
+  useEffect(() => {
+    if (!lockState) return;
+    buildLockedApps(lockState);
+
+    // Remaining times only need a local recompute, the lock table itself has not changed
+    const intervalId = setInterval(() => buildLockedApps(lockState), 60000); // Update every minute
+    return () => clearInterval(intervalId);
+  }, [lockState, buildLockedApps]);
+
   // Render a locked app item
   const renderLockedApp = ({ item }: { item: LockedAppInfo }) => (
     <View style={styles.appItem}>
-      {item.icon ? (
-        <Image 
-          source={{ uri: `data:image/png;base64,${item.icon}` }} 
-          style={styles.appIcon} 
-        />
-      ) : (
-        <View style={styles.appIconPlaceholder}>
-          <Text style={styles.appIconText}>{item.appName.charAt(0).toUpperCase()}</Text>
-        </View>
-      )}
+      <AppIcon
+        packageName={item.packageName}
+        appName={item.appName}
+        sizeDp={50}
+        iconStyle={styles.appIcon}
+        placeholderStyle={styles.appIconPlaceholder}
+        placeholderTextStyle={styles.appIconText}
+      />
       <View style={styles.appInfo}>
         <Text style={styles.appName}>{item.appName}</Text>
         <View style={styles.timeContainer}>
@@ -1,40 +1,38 @@
 import { ThemedText } from '@/components/ThemedText';
+import { AppIcon } from '@/src/components/AppIcon';
+import { startOfDay, WeekTimeline } from '@/src/components/WeekTimeline';
 import { Colors } from '@/src/constants/Colors';
-import InstalledAppsModule, { InstalledAppInfo } from '@/src/modules/InstalledAppsModule';
-import { scheduleManager } from '@/src/services/ScheduleManager';
+import { getIndexedApps, InstalledAppMetadata, subscribeToIndexedApps } from '@/src/modules/InstalledAppsModule';
+import { BlockingTimeline, scheduleManager } from '@/src/services/ScheduleManager';
 import { ScheduledLock } from '@/src/types/LockManagerTypes';
 import { useFocusEffect } from '@react-navigation/native';
 import React, { useCallback, useEffect, useState } from 'react';
-import { FlatList, Image, StyleSheet, Text, View } from 'react-native';
+import { FlatList, StyleSheet, Text, View } from 'react-native';
 
 interface EnhancedScheduledLock extends ScheduledLock {
   apps: {
     packageName: string;
     appName: string;
-    icon: string;
   }[];
   formattedTime: string;
   formattedDays: string;
   isActive: boolean;
 }
 
+
 export default function ScheduledScreen() {
   const [schedules, setSchedules] = useState<EnhancedScheduledLock[]>([]);
-  const [installedApps, setInstalledApps] = useState<InstalledAppInfo[]>([]);
+  const [installedApps, setInstalledApps] = useState<InstalledAppMetadata[]>([]);
   const [loading, setLoading] = useState(true);
+  const [weekTimeline, setWeekTimeline] = useState<{ timeline: BlockingTimeline; weekStart: number } | null>(null);
 
-  // Fetch installed apps once when component mounts
+  // Fetch installed apps when the component mounts and follow installs and removals
   useEffect(() => {
-    const getInstalledApps = async () => {
-      try {
-        const apps = await InstalledAppsModule.getInstalledApps();
-        setInstalledApps(apps);
-      } catch (error) {
-        console.error('Failed to get installed apps:', error);
-      }
-    };
-    
-    getInstalledApps();
+    // Names come from the native app index, icons load per row
+    getIndexedApps()
+      .then(setInstalledApps)
+      .catch(error => console.error('Failed to get installed apps:', error));
+    return subscribeToIndexedApps(setInstalledApps);
   }, []);
 
   // Format time from Date objects
@@ -210,7 +208,6 @@ export default function ScheduledScreen() {
           return {
             packageName,
             appName: appInfo?.appName || packageName.split('.').pop() || packageName,
-            icon: appInfo?.icon || ''
           };
         });
         
@@ -254,6 +251,17 @@ export default function ScheduledScreen() {
       });
       
       setSchedules(enhancedSchedules);
+
+      // What the schedules will block over the 7 days from today's midnight, merged natively
+      const weekStart = startOfDay(Date.now());
+      const weekEnd = new Date(weekStart);
+      weekEnd.setDate(weekEnd.getDate() + 7);
+      try {
+        const timeline = await scheduleManager.getBlockingTimeline(weekStart, weekEnd.getTime());
+        setWeekTimeline({ timeline, weekStart });
+      } catch (error) {
+        console.error('Failed to load blocking timeline:', error);
+      }
     } catch (error) {
       console.error('Failed to fetch schedules:', error);
     } finally {
@@ -285,16 +293,14 @@ export default function ScheduledScreen() {
       <View style={styles.appIconsContainer}>
         {displayApps.map((app, index) => (
           <View key={index} style={styles.appIconWrapper}>
-            {app.icon ? (
-              <Image 
-                source={{ uri: `data:image/png;base64,${app.icon}` }} 
-                style={styles.appIcon} 
-              />
-            ) : (
-              <View style={styles.appIconPlaceholder}>
-                <Text style={styles.appIconText}>{app.appName.charAt(0).toUpperCase()}</Text>
-              </View>
-            )}
+            <AppIcon
+              packageName={app.packageName}
+              appName={app.appName}
+              sizeDp={40}
+              iconStyle={styles.appIcon}
+              placeholderStyle={styles.appIconPlaceholder}
+              placeholderTextStyle={styles.appIconText}
+            />
           </View>
         ))}
         {remainingCount > 0 && (
@@ -351,6 +357,9 @@ export default function ScheduledScreen() {
           renderItem={renderScheduleItem}
           keyExtractor={item => item.id}
           contentContainerStyle={styles.listContent}
+          ListHeaderComponent={
+            weekTimeline ? <WeekTimeline timeline={weekTimeline.timeline} weekStart={weekTimeline.weekStart} /> : null
+          }
         />
       ) : (
         <View style={styles.emptyContainer}>
@@ -1,6 +1,8 @@
 import { AddQuoteModal } from '@/src/components/AddQuoteModal';
+import { FocusProfileModal } from '@/src/components/FocusProfileModal';
 import { Colors } from '@/src/constants/Colors';
 import { useAuth } from '@/src/contexts/AuthContext';
+import AppMonitoringService, { FocusProfile } from '@/src/services/AppMonitoringService';
 import MotivationService from '@/src/services/MotivationService';
 import { Ionicons } from '@expo/vector-icons';
 import { router } from 'expo-router';
@@ -25,6 +27,10 @@ export default function SettingsScreen() {
   const [quoteCategory, setQuoteCategory] = useState('Motivation');
   const [quoteSource, setQuoteSource] = useState<'default' | 'custom' | 'both'>('both');
   const [isAddQuoteModalVisible, setIsAddQuoteModalVisible] = useState(false);
+
+  // Apps the Quick Settings focus tile locks
+  const [focusProfile, setFocusProfile] = useState<FocusProfile | null>(null);
+  const [isFocusProfileModalVisible, setIsFocusProfileModalVisible] = useState(false);
   
   // Load motivation settings on component mount
   useEffect(() => {
@@ -42,6 +48,9 @@ export default function SettingsScreen() {
     };
     
     loadMotivationSettings();
+    AppMonitoringService.getInstance().getFocusProfile()
+      .then(setFocusProfile)
+      .catch(error => console.error('Error loading focus profile:', error));
   }, []);
   
   const handleSignOut = async () => {
@@ -85,6 +94,17 @@ export default function SettingsScreen() {
     }
   };
 
+  const handleSaveFocusProfile = async (packageNames: string[], durationMinutes: number) => {
+    try {
+      const appMonitoringService = AppMonitoringService.getInstance();
+      await appMonitoringService.setFocusProfile(packageNames, durationMinutes);
+      setFocusProfile(await appMonitoringService.getFocusProfile());
+      setIsFocusProfileModalVisible(false);
+    } catch (error) {
+      Alert.alert("Error", "Failed to save the focus tile apps. Please try again.");
+    }
+  };
+
   const handleSelectQuoteCategory = () => {
     Alert.alert(
       "Select Quote Category",
@@ -331,6 +351,18 @@ export default function SettingsScreen() {
               onValueChange={() => Alert.alert("Strict Mode", "When enabled, FocusGuard will prevent you from disabling app locks before they expire. This helps maintain your focus and discipline.\n\nThis feature will be available in a future update.")}
             />
           </View>
+
+          <TouchableOpacity 
+            style={styles.optionItem}
+            onPress={() => setIsFocusProfileModalVisible(true)}
+          >
+            <Ionicons name="flash-outline" size={24} color={Colors.light.tint} />
+            <Text style={styles.optionText}>Focus Tile Apps</Text>
+            <Text style={styles.optionValue}>
+              {focusProfile ? `${focusProfile.packageNames.length} apps` : ''}
+            </Text>
+            <Ionicons name="chevron-forward" size={20} color="#999" />
+          </TouchableOpacity>
           
 
         </View>
@@ -421,6 +453,14 @@ export default function SettingsScreen() {
         onAdd={handleAddQuote}
         category={quoteCategory}
       />
+
+      {/* Focus Tile Apps Modal */}
+      <FocusProfileModal
+        isVisible={isFocusProfileModalVisible}
+        profile={focusProfile}
+        onClose={() => setIsFocusProfileModalVisible(false)}
+        onSave={handleSaveFocusProfile}
+      />
     </ScrollView>
   );
 }
@@ -5,6 +5,7 @@ import { Platform } from 'react-native';
 import 'react-native-reanimated';
 import { AuthProvider, useAuth } from '../src/contexts/AuthContext';
 import AppMonitoringService from '../src/services/AppMonitoringService';
+import MotivationService from '../src/services/MotivationService';
 
 const ONBOARDING_KEY = 'hasCompletedOnboarding';
 
@@ -67,6 +68,8 @@ function InitialLayout() {
                 // Just get the instance but don't start monitoring
                 AppMonitoringService.getInstance();
                 // Removed the startMonitoring call to prevent automatic permission requests
+                // The native block overlay shows these quotes without waking JS
+                MotivationService.getInstance().syncNativeQuotes();
               } catch (error) {
                 console.error('Failed to initialize app monitoring service:', error);
                 // Continue despite errors - don't block the app loading
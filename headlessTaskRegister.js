@@ -1,9 +1,12 @@
-import { AppRegistry } from 'react-native';
-import AppBlockedTask from './src/services/AppBlockedTask'; // Path to your headless task
+import { AppRegistry, DeviceEventEmitter } from 'react-native';
+import HeadlessWorkTask from './src/services/HeadlessWorkTask'; // Path to your headless task
 
-// Register the headless task
-AppRegistry.registerHeadlessTask('AppBlocked', () => AppBlockedTask);
+// Register the headless task; native starts it once per burst of events with the whole batch
+AppRegistry.registerHeadlessTask('FocusGuardWork', () => HeadlessWorkTask);
+
+// With the app in the foreground the batch arrives as an event instead of a task
+DeviceEventEmitter.addListener('onHeadlessWork', HeadlessWorkTask);
 
 // Note: Do NOT call AppRegistry.registerComponent('main', () => App) here 
 // if you are using Expo Router, as it handles app registration.
-// This file is solely for the headless task registration. 
\ No newline at end of file
+// This file is solely for the headless task registration.
@@ -1,6 +1,10 @@
 import { MaterialIcons } from '@expo/vector-icons';
-import React from 'react';
+import React, { useEffect, useState } from 'react';
 import { Image, StyleSheet, Text, TouchableOpacity, View } from 'react-native';
+import { loadAppIcon } from '../modules/AppIconModule';
+
+// Icons are rendered natively at exactly this size, keep it in step with styles.icon
+const ICON_SIZE_DP = 32;
 
 interface App {
   id: string;
@@ -21,6 +25,24 @@ export const AppCard: React.FC<AppCardProps> = ({
   isSelected = false,
   onSelect,
 }) => {
+  // Lists streamed without icons load each one when its card is first rendered
+  const [loadedIcon, setLoadedIcon] = useState<string | undefined>(undefined);
+  useEffect(() => {
+    if (app.icon) {
+      return;
+    }
+    let active = true;
+    loadAppIcon(app.id, ICON_SIZE_DP).then(icon => {
+      if (active) {
+        setLoadedIcon(icon);
+      }
+    });
+    return () => {
+      active = false;
+    };
+  }, [app.id, app.icon]);
+  const icon = app.icon ?? loadedIcon;
+
   return (
     <TouchableOpacity
       style={[
@@ -32,9 +54,9 @@ export const AppCard: React.FC<AppCardProps> = ({
       activeOpacity={0.7}
     >
       <View style={styles.appInfo}>
-        {app.icon ? (
+        {icon ? (
           <Image
-            source={{ uri: `data:image/png;base64,${app.icon}` }}
+            source={{ uri: icon }}
             style={styles.icon}
           />
         ) : (
@@ -78,8 +100,8 @@ const styles = StyleSheet.create({
     width: '100%',
   },
   icon: {
-    width: 32,
-    height: 32,
+    width: ICON_SIZE_DP,
+    height: ICON_SIZE_DP,
     borderRadius: 6,
     marginBottom: 3,
   },
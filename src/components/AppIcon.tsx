@@ -0,0 +1,45 @@
+import React, { useEffect, useState } from 'react';
+import { Image, ImageStyle, StyleProp, Text, TextStyle, View, ViewStyle } from 'react-native';
+import { loadAppIcon } from '../modules/AppIconModule';
+
+interface AppIconProps {
+  packageName: string;
+  appName: string;
+  sizeDp: number; // rendered natively at exactly this size, keep it in step with iconStyle
+  iconStyle: StyleProp<ImageStyle>;
+  placeholderStyle: StyleProp<ViewStyle>;
+  placeholderTextStyle: StyleProp<TextStyle>;
+}
+
+// App icon loaded on first render through the batched icon cache; the app's initial stands in until then
+export const AppIcon: React.FC<AppIconProps> = ({
+  packageName,
+  appName,
+  sizeDp,
+  iconStyle,
+  placeholderStyle,
+  placeholderTextStyle,
+}) => {
+  const [icon, setIcon] = useState<string | undefined>(undefined);
+  useEffect(() => {
+    let active = true;
+    setIcon(undefined);
+    loadAppIcon(packageName, sizeDp).then(uri => {
+      if (active) {
+        setIcon(uri);
+      }
+    });
+    return () => {
+      active = false;
+    };
+  }, [packageName, sizeDp]);
+
+  if (icon) {
+    return <Image source={{ uri: icon }} style={iconStyle} />;
+  }
+  return (
+    <View style={placeholderStyle}>
+      <Text style={placeholderTextStyle}>{appName.charAt(0).toUpperCase()}</Text>
+    </View>
+  );
+};
@@ -0,0 +1,297 @@
+import { Colors } from '@/src/constants/Colors';
+import InstalledAppsModule, { getIndexedApps, InstalledAppMetadata, subscribeToIndexedApps } from '@/src/modules/InstalledAppsModule';
+import { FocusProfile } from '@/src/services/AppMonitoringService';
+import { MaterialIcons } from '@expo/vector-icons';
+import React, { useEffect, useMemo, useState } from 'react';
+import { FlatList, Modal, StyleSheet, Text, TextInput, TouchableOpacity, View } from 'react-native';
+import { AppIcon } from './AppIcon';
+
+interface FocusProfileModalProps {
+  isVisible: boolean;
+  profile: FocusProfile | null; // preselected apps and duration, null while loading
+  onClose: () => void;
+  onSave: (packageNames: string[], durationMinutes: number) => Promise<void>;
+}
+
+// 0 keeps the apps locked until the tile is tapped again
+const DURATIONS: { minutes: number; label: string }[] = [
+  { minutes: 0, label: 'Until off' },
+  { minutes: 30, label: '30m' },
+  { minutes: 60, label: '1h' },
+  { minutes: 120, label: '2h' },
+];
+
+const PRIMARY_COLOR = Colors.light.tint;
+
+// Picks the apps the Quick Settings focus tile locks, and for how long
+export const FocusProfileModal: React.FC<FocusProfileModalProps> = ({
+  isVisible,
+  profile,
+  onClose,
+  onSave,
+}) => {
+  const [apps, setApps] = useState<InstalledAppMetadata[]>([]);
+  const [selected, setSelected] = useState<Set<string>>(new Set());
+  const [durationMinutes, setDurationMinutes] = useState(0);
+  const [searchQuery, setSearchQuery] = useState('');
+  const [saving, setSaving] = useState(false);
+
+  useEffect(() => {
+    if (!isVisible) {
+      return;
+    }
+    getIndexedApps()
+      .then(indexed => setApps([...indexed].sort((a, b) => a.appName.localeCompare(b.appName))))
+      .catch(error => console.error('Failed to get installed apps:', error));
+    return subscribeToIndexedApps(indexed => setApps([...indexed].sort((a, b) => a.appName.localeCompare(b.appName))));
+  }, [isVisible]);
+
+  useEffect(() => {
+    if (isVisible) {
+      setSelected(new Set(profile?.packageNames ?? []));
+      setDurationMinutes(profile?.durationMinutes ?? 0);
+      setSearchQuery('');
+    }
+  }, [isVisible, profile]);
+
+  // Searched natively over the prebuilt index, results come back ranked
+  const visibleApps = useMemo(() => {
+    if (!searchQuery.trim()) {
+      return apps;
+    }
+    const byPackage = new Map(apps.map(app => [app.packageName, app]));
+    return InstalledAppsModule.searchApps(searchQuery, 0)
+      .map(packageName => byPackage.get(packageName))
+      .filter((app): app is InstalledAppMetadata => app !== undefined);
+  }, [apps, searchQuery]);
+
+  const toggle = (packageName: string) => {
+    setSelected(previous => {
+      const next = new Set(previous);
+      if (!next.delete(packageName)) {
+        next.add(packageName);
+      }
+      return next;
+    });
+  };
+
+  const handleSave = async () => {
+    setSaving(true);
+    try {
+      await onSave(Array.from(selected), durationMinutes);
+    } finally {
+      setSaving(false);
+    }
+  };
+
+  return (
+    <Modal
+      visible={isVisible}
+      transparent
+      animationType="slide"
+      onRequestClose={onClose}
+    >
+      <View style={styles.modalOverlay}>
+        <View style={styles.modalContent}>
+          <Text style={styles.title}>Focus Tile Apps</Text>
+          <Text style={styles.subtitle}>
+            The Quick Settings tile locks these apps in one tap
+          </Text>
+
+          <View style={styles.durations}>
+            {DURATIONS.map(option => (
+              <TouchableOpacity
+                key={option.minutes}
+                style={[styles.durationChip, durationMinutes === option.minutes && styles.durationChipSelected]}
+                onPress={() => setDurationMinutes(option.minutes)}
+              >
+                <Text style={[styles.durationText, durationMinutes === option.minutes && styles.durationTextSelected]}>
+                  {option.label}
+                </Text>
+              </TouchableOpacity>
+            ))}
+          </View>
+
+          <View style={styles.searchBar}>
+            <MaterialIcons name="search" size={20} color="#666" />
+            <TextInput
+              style={styles.searchInput}
+              placeholder="Search apps"
+              placeholderTextColor="#999"
+              value={searchQuery}
+              onChangeText={setSearchQuery}
+            />
+          </View>
+
+          <FlatList
+            style={styles.list}
+            data={visibleApps}
+            keyExtractor={item => item.packageName}
+            extraData={selected}
+            renderItem={({ item }) => (
+              <TouchableOpacity style={styles.appRow} onPress={() => toggle(item.packageName)}>
+                <AppIcon
+                  packageName={item.packageName}
+                  appName={item.appName}
+                  sizeDp={32}
+                  iconStyle={styles.appIcon}
+                  placeholderStyle={styles.appIconPlaceholder}
+                  placeholderTextStyle={styles.appIconPlaceholderText}
+                />
+                <Text style={styles.appName} numberOfLines={1}>{item.appName}</Text>
+                <MaterialIcons
+                  name={selected.has(item.packageName) ? 'check-box' : 'check-box-outline-blank'}
+                  size={22}
+                  color={selected.has(item.packageName) ? PRIMARY_COLOR : '#999'}
+                />
+              </TouchableOpacity>
+            )}
+          />
+
+          <View style={styles.buttons}>
+            <TouchableOpacity style={[styles.button, styles.cancelButton]} onPress={onClose}>
+              <Text style={styles.buttonText}>Cancel</Text>
+            </TouchableOpacity>
+            <TouchableOpacity
+              style={[styles.button, styles.confirmButton, saving && { opacity: 0.5 }]}
+              onPress={handleSave}
+              disabled={saving}
+            >
+              <Text style={[styles.buttonText, styles.confirmButtonText]}>
+                Save ({selected.size})
+              </Text>
+            </TouchableOpacity>
+          </View>
+        </View>
+      </View>
+    </Modal>
+  );
+};
+
+const styles = StyleSheet.create({
+  modalOverlay: {
+    flex: 1,
+    backgroundColor: 'rgba(0, 0, 0, 0.5)',
+    justifyContent: 'center',
+    alignItems: 'center',
+  },
+  modalContent: {
+    backgroundColor: '#fff',
+    borderRadius: 16,
+    padding: 20,
+    width: '90%',
+    maxWidth: 400,
+    maxHeight: '85%',
+  },
+  title: {
+    fontSize: 20,
+    fontWeight: 'bold',
+    marginBottom: 4,
+    textAlign: 'center',
+  },
+  subtitle: {
+    fontSize: 14,
+    color: '#666',
+    marginBottom: 16,
+    textAlign: 'center',
+  },
+  durations: {
+    flexDirection: 'row',
+    justifyContent: 'space-between',
+    marginBottom: 12,
+  },
+  durationChip: {
+    flex: 1,
+    paddingVertical: 8,
+    marginHorizontal: 4,
+    borderRadius: 8,
+    borderWidth: 1,
+    borderColor: '#ddd',
+    alignItems: 'center',
+  },
+  durationChipSelected: {
+    backgroundColor: PRIMARY_COLOR,
+    borderColor: PRIMARY_COLOR,
+  },
+  durationText: {
+    fontSize: 14,
+    color: '#333',
+  },
+  durationTextSelected: {
+    color: '#fff',
+  },
+  searchBar: {
+    flexDirection: 'row',
+    alignItems: 'center',
+    borderWidth: 1,
+    borderColor: '#ddd',
+    borderRadius: 8,
+    paddingHorizontal: 10,
+    marginBottom: 8,
+  },
+  searchInput: {
+    flex: 1,
+    paddingVertical: 8,
+    marginLeft: 6,
+    fontSize: 15,
+  },
+  list: {
+    flexGrow: 0,
+    maxHeight: 320,
+  },
+  appRow: {
+    flexDirection: 'row',
+    alignItems: 'center',
+    paddingVertical: 8,
+    borderBottomWidth: 1,
+    borderBottomColor: '#F0F0F0',
+  },
+  appIcon: {
+    width: 32,
+    height: 32,
+    borderRadius: 8,
+  },
+  appIconPlaceholder: {
+    width: 32,
+    height: 32,
+    borderRadius: 8,
+    backgroundColor: '#E0E0E0',
+    justifyContent: 'center',
+    alignItems: 'center',
+  },
+  appIconPlaceholderText: {
+    fontSize: 14,
+    fontWeight: 'bold',
+    color: '#666',
+  },
+  appName: {
+    flex: 1,
+    fontSize: 15,
+    color: '#333',
+    marginLeft: 12,
+  },
+  buttons: {
+    flexDirection: 'row',
+    justifyContent: 'space-between',
+    marginTop: 16,
+  },
+  button: {
+    flex: 1,
+    padding: 12,
+    borderRadius: 8,
+    marginHorizontal: 8,
+  },
+  cancelButton: {
+    backgroundColor: '#f0f0f0',
+  },
+  confirmButton: {
+    backgroundColor: PRIMARY_COLOR,
+  },
+  buttonText: {
+    textAlign: 'center',
+    fontSize: 16,
+  },
+  confirmButtonText: {
+    color: '#fff',
+  },
+});
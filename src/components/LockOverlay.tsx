@@ -9,6 +9,7 @@ interface LockOverlayProps {
   onEmergencyUnlock?: () => void;
   emergencyUnlockChances?: number;
   quote?: string;
+  showId?: number; // changes on every show of the reused overlay root
 }
 
 export const LockOverlay: React.FC<LockOverlayProps> = ({
@@ -17,6 +18,7 @@ export const LockOverlay: React.FC<LockOverlayProps> = ({
   onEmergencyUnlock,
   emergencyUnlockChances = 3,
   quote,
+  showId,
 }) => {
   const [currentQuote, setCurrentQuote] = useState<Quote | null>(null);
   const [showProductivityStats, setShowProductivityStats] = useState(true);
@@ -54,7 +56,7 @@ export const LockOverlay: React.FC<LockOverlayProps> = ({
     };
     
     loadQuoteAndSettings();
-  }, []);
+  }, [showId]);
 
   // Placeholder productivity stats
   const productivityStats = {
@@ -124,8 +126,9 @@ export const LockOverlay: React.FC<LockOverlayProps> = ({
         
         {onEmergencyUnlock && (
           <TouchableOpacity
-            style={styles.emergencyButton}
+            style={[styles.emergencyButton, emergencyUnlockChances === 0 && { opacity: 0.5 }]}
             onPress={onEmergencyUnlock}
+            disabled={emergencyUnlockChances === 0}
           >
             <Text style={styles.emergencyButtonText}>Emergency Unlock</Text>
           </TouchableOpacity>
@@ -0,0 +1,199 @@
+import React from 'react';
+import { StyleSheet, Text, View } from 'react-native';
+import { Colors } from '../constants/Colors';
+import { BlockingInterval, BlockingTimeline } from '../services/ScheduleManager';
+
+const DAY_MS = 24 * 60 * 60 * 1000;
+const DAY_NAMES = ['Sun', 'Mon', 'Tue', 'Wed', 'Thu', 'Fri', 'Sat'];
+const HOUR_TICKS = [0, 6, 12, 18, 24];
+
+interface WeekTimelineProps {
+  timeline: BlockingTimeline;
+  weekStart: number; // local midnight of the first day, ms since epoch
+}
+
+interface DayRow {
+  label: string;
+  dayStart: number;
+  dayEnd: number;
+  blocks: BlockingInterval[]; // clipped to the day
+  blockedMinutes: number;
+}
+
+// Local midnight of the day containing time
+export const startOfDay = (time: number): number => {
+  const date = new Date(time);
+  date.setHours(0, 0, 0, 0);
+  return date.getTime();
+};
+
+const formatMinutes = (total: number): string => {
+  const hours = Math.floor(total / 60);
+  const minutes = total % 60;
+  if (hours === 0) {
+    return `${minutes}m`;
+  }
+  return minutes === 0 ? `${hours}h` : `${hours}h ${minutes}m`;
+};
+
+// Splits the merged intervals into the 7 local days from weekStart. Days are advanced with
+// setDate, not by adding 24h, so a DST change does not shift the rows.
+const toDayRows = (combined: BlockingInterval[], weekStart: number): DayRow[] => {
+  const rows: DayRow[] = [];
+  const cursor = new Date(weekStart);
+  for (let day = 0; day < 7; day++) {
+    const dayStart = cursor.getTime();
+    cursor.setDate(cursor.getDate() + 1);
+    const dayEnd = cursor.getTime();
+    const blocks: BlockingInterval[] = [];
+    for (const [start, end] of combined) {
+      if (end > dayStart && start < dayEnd) {
+        blocks.push([Math.max(start, dayStart), Math.min(end, dayEnd)]);
+      }
+    }
+    rows.push({
+      label: day === 0 ? 'Today' : DAY_NAMES[new Date(dayStart).getDay()],
+      dayStart,
+      dayEnd,
+      blocks,
+      blockedMinutes: Math.round(blocks.reduce((sum, [start, end]) => sum + (end - start), 0) / 60000),
+    });
+  }
+  return rows;
+};
+
+// Seven rows, one per day, each a 24 hour bar with the blocked stretches filled in
+export const WeekTimeline: React.FC<WeekTimelineProps> = ({ timeline, weekStart }) => {
+  const rows = toDayRows(timeline.combined, weekStart);
+  const now = Date.now();
+  const totalMinutes = rows.reduce((sum, row) => sum + row.blockedMinutes, 0);
+  const appCount = Object.keys(timeline.apps).length;
+
+  return (
+    <View style={styles.container}>
+      <Text style={styles.title}>This week</Text>
+      <Text style={styles.summary}>
+        {totalMinutes > 0
+          ? `${formatMinutes(totalMinutes)} blocked across ${appCount} app${appCount === 1 ? '' : 's'}`
+          : 'Nothing scheduled in the next 7 days'}
+      </Text>
+      <View style={styles.tickRow}>
+        <View style={styles.labelColumn} />
+        <View style={styles.ticks}>
+          {HOUR_TICKS.map(hour => (
+            <Text key={hour} style={[styles.tick, { left: `${(hour / 24) * 100}%` }]}>
+              {hour}
+            </Text>
+          ))}
+        </View>
+        <View style={styles.totalColumn} />
+      </View>
+      {rows.map(row => {
+        const length = row.dayEnd - row.dayStart || DAY_MS;
+        return (
+          <View key={row.dayStart} style={styles.dayRow}>
+            <Text style={styles.dayLabel}>{row.label}</Text>
+            <View style={styles.bar}>
+              {row.blocks.map(([start, end]) => (
+                <View
+                  key={start}
+                  style={[
+                    styles.block,
+                    {
+                      left: `${((start - row.dayStart) / length) * 100}%`,
+                      width: `${((end - start) / length) * 100}%`,
+                    },
+                  ]}
+                />
+              ))}
+              {now >= row.dayStart && now < row.dayEnd && (
+                <View style={[styles.nowMarker, { left: `${((now - row.dayStart) / length) * 100}%` }]} />
+              )}
+            </View>
+            <Text style={styles.dayTotal}>{row.blockedMinutes > 0 ? formatMinutes(row.blockedMinutes) : ''}</Text>
+          </View>
+        );
+      })}
+    </View>
+  );
+};
+
+const styles = StyleSheet.create({
+  container: {
+    backgroundColor: '#FFFFFF',
+    borderRadius: 12,
+    padding: 16,
+    marginBottom: 12,
+    shadowColor: '#000',
+    shadowOffset: { width: 0, height: 1 },
+    shadowOpacity: 0.1,
+    shadowRadius: 3,
+    elevation: 2,
+  },
+  title: {
+    fontSize: 16,
+    fontWeight: 'bold',
+    color: '#333333',
+  },
+  summary: {
+    fontSize: 13,
+    color: '#666666',
+    marginTop: 2,
+    marginBottom: 10,
+  },
+  tickRow: {
+    flexDirection: 'row',
+    height: 14,
+  },
+  ticks: {
+    flex: 1,
+  },
+  tick: {
+    position: 'absolute',
+    fontSize: 10,
+    color: '#999999',
+    marginLeft: -3,
+  },
+  dayRow: {
+    flexDirection: 'row',
+    alignItems: 'center',
+    marginTop: 6,
+  },
+  labelColumn: {
+    width: 44,
+  },
+  dayLabel: {
+    width: 44,
+    fontSize: 12,
+    color: '#333333',
+  },
+  bar: {
+    flex: 1,
+    height: 14,
+    borderRadius: 3,
+    backgroundColor: '#F0F0F0',
+    overflow: 'hidden',
+  },
+  block: {
+    position: 'absolute',
+    top: 0,
+    bottom: 0,
+    backgroundColor: Colors.light.tint,
+  },
+  nowMarker: {
+    position: 'absolute',
+    top: 0,
+    bottom: 0,
+    width: 2,
+    backgroundColor: '#E53935',
+  },
+  totalColumn: {
+    width: 52,
+  },
+  dayTotal: {
+    width: 52,
+    fontSize: 11,
+    color: '#666666',
+    textAlign: 'right',
+  },
+});
@@ -0,0 +1,76 @@
+import { NativeModules, PixelRatio } from 'react-native';
+
+export interface AppIconResult {
+  uri: string; // file:// URI of the cached icon
+}
+
+interface AppIconModuleInterface {
+  getAppIcon(packageName: string): Promise<AppIconResult>;
+  // packageName -> file:// URI, icons rendered sizePx square
+  getAppIcons(packages: string[], sizePx: number): Promise<Record<string, string>>;
+}
+
+const AppIconModule = NativeModules.AppIconModule as AppIconModuleInterface;
+
+// Rows rendered in the same frame are fetched in one call, a batch at most this big
+const MAX_BATCH = 16;
+
+type PendingIcon = { resolve: (uri: string | undefined) => void };
+
+// One request per package and size for the lifetime of the JS context, however often a row re-renders
+const iconRequests = new Map<string, Promise<string | undefined>>();
+const pendingBySize = new Map<number, Map<string, PendingIcon[]>>();
+let flushScheduled = false;
+
+function flush() {
+  flushScheduled = false;
+  pendingBySize.forEach((pending, sizePx) => {
+    const packages = Array.from(pending.keys());
+    for (let i = 0; i < packages.length; i += MAX_BATCH) {
+      const batch = packages.slice(i, i + MAX_BATCH);
+      AppIconModule.getAppIcons(batch, sizePx)
+        .catch(error => {
+          console.warn('[AppIconModule] getAppIcons failed:', error);
+          return {} as Record<string, string>;
+        })
+        .then(uris => {
+          batch.forEach(packageName => {
+            const uri = uris[packageName];
+            if (!uri) {
+              // Let a later render try again
+              iconRequests.delete(`${packageName}@${sizePx}`);
+            }
+            pending.get(packageName)?.forEach(waiter => waiter.resolve(uri));
+          });
+        });
+    }
+  });
+  pendingBySize.clear();
+}
+
+/** Icon URI of a package at sizeDp, loaded on first use. Resolves undefined if it cannot be read. */
+export function loadAppIcon(packageName: string, sizeDp: number = 32): Promise<string | undefined> {
+  const sizePx = PixelRatio.getPixelSizeForLayoutSize(sizeDp);
+  const key = `${packageName}@${sizePx}`;
+  let request = iconRequests.get(key);
+  if (!request) {
+    request = new Promise(resolve => {
+      let pending = pendingBySize.get(sizePx);
+      if (!pending) {
+        pending = new Map();
+        pendingBySize.set(sizePx, pending);
+      }
+      const waiters = pending.get(packageName) ?? [];
+      waiters.push({ resolve });
+      pending.set(packageName, waiters);
+      if (!flushScheduled) {
+        flushScheduled = true;
+        setTimeout(flush, 0);
+      }
+    });
+    iconRequests.set(key, request);
+  }
+  return request;
+}
+
+export default AppIconModule;
@@ -0,0 +1,57 @@
+import { NativeModules } from 'react-native';
+
+export interface HistoryExportResult {
+  path: string;  // Absolute path of the columnar .fgh export file
+  rows: number;
+  bytes: number;
+}
+
+export interface LockCounters {
+  blocks: number;
+  emergencyUnlocks: number;
+  expiries: number;
+  scheduleActivations: number;
+  manualLocks: number;
+  bypassRate: number; // emergencyUnlocks / blocks, 0..1
+}
+
+export interface AppLockCounters extends LockCounters {
+  packageName: string;
+}
+
+export interface LockStats extends LockCounters {
+  blockCountByHourOfDay: number[]; // block counts in 24 buckets by local hour, not a rate
+  apps: AppLockCounters[];
+}
+
+// Kinds of the native history log, see HistoryLog.java
+export const HistoryKind = {
+  SESSION: 1,          // value = foreground duration in ms
+  EMERGENCY_UNLOCK: 3,
+  LOCK_EXPIRED: 4,     // value = original unlock time
+  LOCKED: 7,           // value = unlock time, -1 for indefinite
+} as const;
+
+// A history row kept outside the native log, merged into an export by timestamp
+export interface HistoryRow {
+  timestamp: number;
+  kind: number;
+  packageName: string;
+  value: number;
+}
+
+interface HistoryModuleInterface {
+  // Streams native usage/lock history in [fromMs, toMs), plus extraRows, into a compact columnar file.
+  exportHistory(fromMs: number | null, toMs: number | null, extraRows: HistoryRow[] | null): Promise<HistoryExportResult>;
+  // Merges a previously exported file into the native history log, skipping rows it already has
+  // (same timestamp, kind and package). Resolves with the number of rows added.
+  importHistory(path: string): Promise<number>;
+  // Aggregates the native lock ledger (blocks, emergency unlocks, expiries, schedule starts) for a range.
+  getLockStats(fromMs?: number, toMs?: number): Promise<LockStats>;
+  // Per-app all-time counters, kept incrementally by the native ledger.
+  getLifetimeLockCounters(): Promise<AppLockCounters[]>;
+}
+
+const HistoryModule = NativeModules.HistoryModule as HistoryModuleInterface;
+
+export default HistoryModule;
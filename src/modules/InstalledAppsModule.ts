@@ -1,16 +1,109 @@
-import { NativeModules } from 'react-native';
+import { NativeEventEmitter, NativeModules } from 'react-native';
 
-export interface InstalledAppInfo {
+// Metadata only; icons are loaded per row through AppIconModule
+export interface InstalledAppMetadata {
   appName: string;
   packageName: string;
   versionName: string;
-  icon: string; // Base64 encoded string
+  workProfile?: boolean; // installed only in a work profile; set by the app index, not the stream
+}
+
+interface InstalledAppsPage {
+  streamId: number;
+  page: number;
+  apps: InstalledAppMetadata[];
+}
+
+// Delta from the native app index. With reset set, apps is the full list and everything held before is stale.
+export interface InstalledAppChanges {
+  epoch: number;
+  generation: number;
+  reset: boolean;
+  apps: InstalledAppMetadata[]; // added or updated
+  removed: string[]; // package names
 }
 
 interface InstalledAppsModuleInterface {
-  getInstalledApps(): Promise<InstalledAppInfo[]>;
+  getAppChangesSince(epoch: number, generation: number): Promise<InstalledAppChanges>;
+  // Ranked package names for a query (labels and package names, accent-insensitive, typo-tolerant)
+  searchApps(query: string, limit: number): string[];
+  streamInstalledApps(streamId: number, pageSize: number): Promise<number>;
+  cancelInstalledAppsStream(streamId: number): void;
 }
 
 const InstalledAppsModule = NativeModules.InstalledApps as InstalledAppsModuleInterface;
 
-export default InstalledAppsModule; 
\ No newline at end of file
+const eventEmitter = new NativeEventEmitter(NativeModules.InstalledApps);
+let nextStreamId = 1;
+
+/**
+ * Lists installed apps page by page as the native side produces them. Pages can arrive out of
+ * order. Resolves with the total once every page is delivered; call the returned cancel to stop early.
+ */
+export function streamInstalledApps(
+  onPage: (apps: InstalledAppMetadata[]) => void,
+  pageSize: number = 32,
+): { done: Promise<number>; cancel: () => void } {
+  const streamId = nextStreamId++;
+  const subscription = eventEmitter.addListener('onInstalledAppsPage', (page: InstalledAppsPage) => {
+    if (page.streamId === streamId) {
+      onPage(page.apps);
+    }
+  });
+  const done = InstalledAppsModule.streamInstalledApps(streamId, pageSize).finally(() => subscription.remove());
+  return {
+    done,
+    cancel: () => {
+      subscription.remove();
+      InstalledAppsModule.cancelInstalledAppsStream(streamId);
+    },
+  };
+}
+
+// Last state read from the index, shared by every screen for the life of the JS context
+let knownEpoch = 0;
+let knownGeneration = 0;
+const knownApps = new Map<string, InstalledAppMetadata>();
+let pendingRefresh: Promise<InstalledAppMetadata[]> | null = null;
+
+/**
+ * Installed apps from the native index. After the first call only the changes since the last
+ * one cross the bridge, usually none. On a cold start the first answer is the persisted
+ * snapshot; the native rescan's corrections follow as onInstalledAppsChanged.
+ */
+export function getIndexedApps(): Promise<InstalledAppMetadata[]> {
+  if (!pendingRefresh) {
+    pendingRefresh = InstalledAppsModule.getAppChangesSince(knownEpoch, knownGeneration)
+      .then(changes => {
+        if (changes.reset) {
+          knownApps.clear();
+        }
+        changes.removed.forEach(packageName => knownApps.delete(packageName));
+        changes.apps.forEach(app => knownApps.set(app.packageName, app));
+        knownEpoch = changes.epoch;
+        knownGeneration = changes.generation;
+        return Array.from(knownApps.values());
+      })
+      .finally(() => {
+        pendingRefresh = null;
+      });
+  }
+  return pendingRefresh;
+}
+
+/** Calls listener with the full list whenever an app is installed, updated or removed. */
+export function subscribeToIndexedApps(listener: (apps: InstalledAppMetadata[]) => void): () => void {
+  const subscription = eventEmitter.addListener('onInstalledAppsChanged', (event: { epoch: number; generation: number }) => {
+    if (event.epoch !== knownEpoch || event.generation !== knownGeneration) {
+      // A read already in flight may predate this change, so read again once it is done
+      (pendingRefresh ?? Promise.resolve())
+        .catch(() => undefined)
+        .then(() => getIndexedApps())
+        .then(listener)
+        .catch(error => console.error('[InstalledApps] Refresh failed:', error));
+    }
+  });
+  return () => subscription.remove();
+}
+
+export default InstalledAppsModule;
@@ -1,5 +1,7 @@
 import { NativeEventEmitter, NativeModules, Platform } from 'react-native';
 import InsightsService from './InsightsService';
+import { scheduleManager } from './ScheduleManager';
+import { AppCategory } from '../types/LockManagerTypes';
 
 interface AppMonitoringServiceInterface {
   startMonitoring(): Promise<void>;
@@ -8,18 +10,105 @@ interface AppMonitoringServiceInterface {
   lockApp(packageName: string, duration?: number): Promise<void>;
   unlockApp(packageName: string): Promise<void>;
   getLockedApps(): Map<string, number | undefined>;
+  isAppLocked(packageName: string): boolean;
+  getRemainingLockTime(packageName: string): number;
   cleanup(): void;
 }
 
+// Why a package is locked: its manual lock (unlock time, -1 for indefinite, null if none)
+// and how many active schedules cover it. Schedules ending never touch the manual lock.
+export interface LockSources {
+  manual: number | null;
+  schedules: number;
+}
+
+// Snapshot of the native lock table: packageName -> unlock time (-1 for indefinite).
+// (epoch, version) identifies it; versions restart whenever the native process does.
+export interface NativeLockState {
+  epoch: number;
+  version: number;
+  locks: { [packageName: string]: number };
+  sources: { [packageName: string]: LockSources };
+  // Locked categories. They also lock every app in them, which `locks` does not list.
+  categories: { [category: string]: LockEntry };
+  // Wildcard rule locks such as "com.facebook.*" or "* !com.whatsapp", keyed by the rule
+  rules: { [rule: string]: LockEntry };
+}
+
+export interface LockEntry extends LockSources {
+  unlockTime: number;
+}
+
+// One native lock table version, pushed as 'onLockTableDiff'
+export interface LockTableDiff {
+  epoch: number;
+  version: number;
+  added: { [packageName: string]: LockEntry };
+  changed: { [packageName: string]: LockEntry };
+  removed: string[];
+  // Present only when a category lock changed, and then holds every locked category
+  categories?: { [category: string]: LockEntry };
+  // Present only when a rule lock changed, and then holds every rule lock
+  rules?: { [rule: string]: LockEntry };
+}
+
+// Usage quota for one app. Either part can be left out:
+// - a daily allowance, reset every day at resetMinute (local minutes after midnight, default 0)
+// - a rolling allowance, e.g. 10 minutes per 60 minutes, refilled evenly over the window
+export interface AppQuotaRule {
+  dailyLimitMinutes?: number;
+  resetMinute?: number;
+  rollingAllowanceMinutes?: number;
+  rollingWindowMinutes?: number;
+}
+
+export interface AppQuotaStatus {
+  hasQuota: boolean;
+  remainingMs?: number;
+  usedTodayMs?: number;
+}
+
+// Apps the Quick Settings tile locks in one tap
+export interface FocusProfile {
+  packageNames: string[];
+  durationMinutes: number; // 0 keeps them locked until the tile is tapped again
+  active: boolean;
+}
+
+// Special permissions enforcement depends on, as cached natively. Without usageStats the
+// service cannot see the foreground app; without overlay it falls back to sending the user home.
+export interface AppCapabilities {
+  usageStats: boolean;
+  overlay: boolean;
+  exactAlarms: boolean;
+}
+
+// How long enforcement took to come back after a reboot, an app update or a service restart.
+export interface EnforcementRestore {
+  reason: 'lockedBoot' | 'boot' | 'packageReplaced' | 'restart';
+  delayMs: number;
+  timestamp: number;
+}
+
+// How long unlockApp waits for the lock table to reflect the unlock
+const LOCK_STATE_ACK_TIMEOUT_MS = 2000;
+
+type LockDiffsSinceResult =
+  | { reset: true; state: NativeLockState }
+  | { reset: false; diffs: LockTableDiff[] };
+
 class AppMonitoringService {
   private static instance: AppMonitoringService;
   private eventEmitter: NativeEventEmitter;
   private isRunning: boolean = false;
   private listeners: Map<string, () => void> = new Map();
-  private lockedApps: Map<string, number | undefined> = new Map(); // packageName -> unlock time (or undefined for indefinite)
   private appBlockedSubscription: (() => void) | null = null;
   private currentApp: { packageName: string; appName: string; startTime: number } | null = null;
   private insightsService: InsightsService | null = null;
+  // Lock table mirror kept current by native diffs while anyone is subscribed
+  private lockState: NativeLockState | null = null;
+  private lockStateListeners: Set<(state: NativeLockState) => void> = new Set();
+  private lockDiffSubscription: { remove(): void } | null = null;
 
   private constructor() {
     console.log('[AppMonitoringService] Constructor called');
@@ -79,6 +168,15 @@ class AppMonitoringService {
 
     // Add app change listener to track app usage
     this.addAppChangeListener(this.handleAppChange.bind(this));
+
+    // The service already dropped an uninstalled app from its locks and schedules, follow suit
+    const uninstalledSubscription = this.eventEmitter.addListener('onAppUninstalled', (event: { packageName: string }) => {
+      console.log(`[AppMonitoringService] App uninstalled: ${event.packageName}`);
+      scheduleManager.forgetUninstalledApp(event.packageName).catch(error => {
+        console.error('[AppMonitoringService] Failed to prune uninstalled app from schedules:', error);
+      });
+    });
+    this.listeners.set('onAppUninstalledListener', () => uninstalledSubscription.remove());
   }
 
   private handleAppChange(packageName: string): void {
@@ -101,7 +199,7 @@ class AppMonitoringService {
       
       // If the previous app was locked and we're switching away from it,
       // record a successful lock event (user respected the lock)
-      if (this.lockedApps.has(this.currentApp.packageName)) {
+      if (this.isAppLocked(this.currentApp.packageName)) {
         this.insightsService.recordLockEvent(
           this.currentApp.appName || this.currentApp.packageName,
           this.currentApp.packageName,
@@ -192,20 +290,12 @@ class AppMonitoringService {
     return this.isRunning;
   }
 
+  // packageName can also be a wildcard rule: "com.facebook.*", "*.game.*", or
+  // "* !com.whatsapp !com.android.*" for everything except an allowlist
   public async lockApp(packageName: string, duration?: number): Promise<void> {
     console.log(`[AppMonitoringService] lockApp called for packageName: ${packageName}, duration: ${duration} minutes`);
     try {
-      // Store the lock information
-      if (duration) {
-        const unlockTime = Date.now() + duration * 60 * 1000; // Convert minutes to milliseconds
-        this.lockedApps.set(packageName, unlockTime);
-        console.log(`[AppMonitoringService] App ${packageName} locked until ${new Date(unlockTime)}`);
-      } else {
-        this.lockedApps.set(packageName, undefined); // Indefinite lock
-        console.log(`[AppMonitoringService] App ${packageName} locked indefinitely`);
-      }
-      console.log(`[AppMonitoringService] lockedApps map size: ${this.lockedApps.size}, current app ${packageName} added/updated. Map keys: ${JSON.stringify(Array.from(this.lockedApps.keys()))}`);
-
+      // The native lock table is the single source of truth, nothing is stored on the JS side.
       // Start monitoring if not already running
       if (!this.isRunning) {
         console.log('[AppMonitoringService] Monitoring not running, attempting to start it via lockApp.');
@@ -228,9 +318,13 @@ class AppMonitoringService {
   public async unlockApp(packageName: string): Promise<void> {
     console.log(`[AppMonitoringService] unlockApp called for packageName: ${packageName}`);
     try {
-      const wasLocked = this.lockedApps.has(packageName);
-      this.lockedApps.delete(packageName);
-      console.log(`[AppMonitoringService] App ${packageName} unlocked. Remaining locked apps map size: ${this.lockedApps.size}`);
+      const wasLocked = this.isAppLocked(packageName);
+      // The service applies the unlock asynchronously; count what is left from the lock
+      // table version that no longer has the app, not from the table as it was before.
+      const unlocked = this.waitForLockState(state => state.locks[packageName] === undefined);
+      await NativeModules.AppMonitoringModule.unlockApp(packageName);
+      const remainingLocks = Object.keys((await unlocked).locks).length;
+      console.log(`[AppMonitoringService] App ${packageName} unlocked. Remaining locked apps: ${remainingLocks}`);
 
       // If the unlocked app was the one potentially showing an overlay, hide it.
       // This is a simplification; ideally, we'd only hide if no OTHER locked app is active.
@@ -241,7 +335,7 @@ class AppMonitoringService {
       }
 
       // If no more apps are locked, stop monitoring
-      if (this.lockedApps.size === 0) {
+      if (remainingLocks === 0) {
         console.log('[AppMonitoringService] No more locked apps, attempting to stop monitoring.');
         await this.stopMonitoring();
       }
@@ -251,11 +345,203 @@ class AppMonitoringService {
     }
   }
 
-  // Get the current locked apps map
-  public getLockedApps(): Map<string, number | undefined> {
-    console.log('[AppMonitoringService] getLockedApps called');
-    // Return a copy of the map to prevent direct modification
-    return new Map(this.lockedApps);
+  // Locks every app in a category, including apps installed later. duration is in minutes.
+  public async lockCategory(category: AppCategory, duration?: number): Promise<void> {
+    console.log(`[AppMonitoringService] lockCategory called for ${category}, duration: ${duration} minutes`);
+    if (!this.isRunning) {
+      await this.startMonitoring();
+    }
+    await NativeModules.AppMonitoringModule.lockCategory(category, duration);
+  }
+
+  public async unlockCategory(category: AppCategory): Promise<void> {
+    console.log(`[AppMonitoringService] unlockCategory called for ${category}`);
+    await NativeModules.AppMonitoringModule.unlockCategory(category);
+  }
+
+  // Replaces the categories Android reports for an app; null goes back to the detected ones
+  public async setCategoryOverride(packageName: string, categories: AppCategory[] | null): Promise<void> {
+    await NativeModules.AppMonitoringModule.setCategoryOverride(packageName, categories);
+  }
+
+  public getAppCategories(packageName: string): AppCategory[] {
+    return NativeModules.AppMonitoringModule.getAppCategories(packageName);
+  }
+
+  // Synchronous read of the cached permission state
+  public getCapabilities(): AppCapabilities {
+    return NativeModules.AppMonitoringModule.getCapabilities();
+  }
+
+  // Listener gets the current capabilities right away and then every change pushed by native
+  public subscribeToCapabilities(listener: (capabilities: AppCapabilities) => void): () => void {
+    listener(this.getCapabilities());
+    const subscription = this.eventEmitter.addListener('onCapabilitiesChanged', listener);
+    return () => subscription.remove();
+  }
+
+  // Synchronous read of the native lock table snapshot
+  public getLockState(): NativeLockState {
+    return NativeModules.AppMonitoringModule.getLockState();
+  }
+
+  // Subscribe to the lock table. The listener gets the current state right away and then
+  // every new version; the mirror is patched from native diffs instead of re-read.
+  public subscribeToLockState(listener: (state: NativeLockState) => void): () => void {
+    this.lockStateListeners.add(listener);
+    if (!this.lockDiffSubscription) {
+      this.lockDiffSubscription = this.eventEmitter.addListener('onLockTableDiff', (diff: LockTableDiff) => {
+        this.applyLockDiff(diff);
+      });
+      // Resume from the last version we saw, or read the full table the first time
+      this.resyncLockState();
+    }
+    if (this.lockState) {
+      listener(this.lockState);
+    }
+    return () => {
+      this.lockStateListeners.delete(listener);
+      if (this.lockStateListeners.size === 0 && this.lockDiffSubscription) {
+        this.lockDiffSubscription.remove();
+        this.lockDiffSubscription = null;
+      }
+    };
+  }
+
+  // Resolves with the first lock table version that satisfies the predicate, the current one
+  // included. Gives up after timeoutMs and resolves with a fresh native read instead.
+  private waitForLockState(
+    predicate: (state: NativeLockState) => boolean,
+    timeoutMs: number = LOCK_STATE_ACK_TIMEOUT_MS
+  ): Promise<NativeLockState> {
+    return new Promise(resolve => {
+      let settled = false;
+      let unsubscribe: (() => void) | null = null;
+      const finish = (state: NativeLockState) => {
+        if (settled) {
+          return;
+        }
+        settled = true;
+        clearTimeout(timer);
+        unsubscribe?.();
+        resolve(state);
+      };
+      const timer = setTimeout(() => finish(this.getLockState()), timeoutMs);
+      unsubscribe = this.subscribeToLockState(state => {
+        if (predicate(state)) {
+          finish(state);
+        }
+      });
+      if (settled) {
+        unsubscribe();
+      }
+    });
+  }
+
+  private resyncLockState(): void {
+    if (!this.lockState) {
+      this.setLockState(this.getLockState());
+      return;
+    }
+    const result: LockDiffsSinceResult = NativeModules.AppMonitoringModule.getLockDiffsSince(
+      this.lockState.epoch,
+      this.lockState.version
+    );
+    if (result.reset) {
+      console.log('[AppMonitoringService] Lock diffs no longer available, reloading lock table');
+      this.setLockState(result.state);
+    } else {
+      result.diffs.forEach(diff => this.applyLockDiff(diff));
+    }
+  }
+
+  private applyLockDiff(diff: LockTableDiff): void {
+    const state = this.lockState;
+    if (!state || diff.epoch !== state.epoch || diff.version !== state.version + 1) {
+      if (state && diff.epoch === state.epoch && diff.version <= state.version) {
+        return; // already applied during a resync
+      }
+      this.resyncLockState();
+      return;
+    }
+    const locks = { ...state.locks };
+    const sources = { ...state.sources };
+    const upsert = (entries: { [packageName: string]: LockEntry }) => {
+      Object.keys(entries).forEach(packageName => {
+        const { unlockTime, manual, schedules } = entries[packageName];
+        locks[packageName] = unlockTime;
+        sources[packageName] = { manual, schedules };
+      });
+    };
+    upsert(diff.added);
+    upsert(diff.changed);
+    diff.removed.forEach(packageName => {
+      delete locks[packageName];
+      delete sources[packageName];
+    });
+    const categories = diff.categories ?? state.categories;
+    const rules = diff.rules ?? state.rules;
+    this.setLockState({ epoch: diff.epoch, version: diff.version, locks, sources, categories, rules });
+  }
+
+  private setLockState(state: NativeLockState): void {
+    this.lockState = state;
+    this.lockStateListeners.forEach(listener => listener(state));
+  }
+
+  // Get the current locked apps map (unlock time, or undefined for indefinite locks)
+  public getLockedApps(state: NativeLockState = this.getLockState()): Map<string, number | undefined> {
+    const { locks } = state;
+    const lockedApps = new Map<string, number | undefined>();
+    Object.keys(locks).forEach(packageName => {
+      const unlockTime = locks[packageName];
+      lockedApps.set(packageName, unlockTime === -1 ? undefined : unlockTime);
+    });
+    return lockedApps;
+  }
+
+  public isAppLocked(packageName: string): boolean {
+    return NativeModules.AppMonitoringModule.isLocked(packageName);
+  }
+
+  // Remaining lock time in ms: -1 for an indefinite lock, 0 when the app is not locked
+  public getRemainingLockTime(packageName: string): number {
+    return NativeModules.AppMonitoringModule.getRemainingLockTime(packageName);
+  }
+
+  // Quotas are enforced natively: the service blocks the app the moment its allowance runs out
+  public async setAppQuota(packageName: string, rule: AppQuotaRule): Promise<void> {
+    console.log(`[AppMonitoringService] setAppQuota for ${packageName}:`, rule);
+    await NativeModules.AppMonitoringModule.setAppQuota(packageName, rule);
+  }
+
+  public async removeAppQuota(packageName: string): Promise<void> {
+    console.log(`[AppMonitoringService] removeAppQuota for ${packageName}`);
+    await NativeModules.AppMonitoringModule.removeAppQuota(packageName);
+  }
+
+  public getQuotaStatus(packageName: string): Promise<AppQuotaStatus> {
+    return NativeModules.AppMonitoringModule.getQuotaStatus(packageName);
+  }
+
+  public async getEnforcementRestores(): Promise<EnforcementRestore[]> {
+    return NativeModules.AppMonitoringModule.getEnforcementRestores();
+  }
+
+  // Apps the Quick Settings tile locks in one tap; durationMinutes 0 keeps them locked until
+  // the tile is tapped again
+  public async setFocusProfile(packageNames: string[], durationMinutes: number = 0): Promise<void> {
+    await NativeModules.AppMonitoringModule.setFocusProfile(packageNames, durationMinutes);
+  }
+
+  public getFocusProfile(): Promise<FocusProfile> {
+    return NativeModules.AppMonitoringModule.getFocusProfile();
+  }
+
+  // Events arriving while the UI is not running are batched into one headless task,
+  // whose timeout is baseMs + perItemMs per event, capped at maxMs
+  public async setHeadlessTaskBudget(baseMs: number, perItemMs: number, maxMs: number): Promise<void> {
+    await NativeModules.AppMonitoringModule.setHeadlessTaskBudget(baseMs, perItemMs, maxMs);
   }
 
   public cleanup(): void {
@@ -281,9 +567,6 @@ class AppMonitoringService {
       console.log('[AppMonitoringService] Attempting to hide overlay during cleanup.');
       NativeModules.OverlayPermission.hideOverlay();
     }
-
-    // Clear locked apps
-    this.lockedApps.clear();
   }
 
   public addAppChangeListener(callback: (packageName: string) => void): () => void {
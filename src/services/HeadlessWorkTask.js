@@ -0,0 +1,31 @@
+import AppBlockedTask from './AppBlockedTask';
+import { scheduleManager } from './ScheduleManager';
+
+// Handlers for events the native side batched while the UI was not running
+const handlers = {
+  onAppBlocked: (params) => AppBlockedTask(params),
+  onAppUninstalled: (params) => scheduleManager.forgetUninstalledApp(params.packageName),
+};
+
+// Drains one batch, {items: [{eventName, params}]}, in order. Runs as the headless task,
+// or from the onHeadlessWork event when the app was in the foreground.
+const HeadlessWorkTask = async (batch) => {
+  const items = (batch && batch.items) || [];
+  console.log(`[HeadlessWorkTask] Draining ${items.length} item(s)`);
+
+  for (const item of items) {
+    const handler = handlers[item.eventName];
+    if (!handler) {
+      console.warn(`[HeadlessWorkTask] No handler for ${item.eventName}`);
+      continue;
+    }
+    try {
+      await handler(item.params || {});
+    } catch (e) {
+      // One failed item must not cost the rest of the batch
+      console.error(`[HeadlessWorkTask] ${item.eventName} failed`, e);
+    }
+  }
+};
+
+export default HeadlessWorkTask;
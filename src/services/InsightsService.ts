@@ -1,4 +1,5 @@
 import AsyncStorage from '@react-native-async-storage/async-storage';
+import HistoryModule, { HistoryExportResult, HistoryKind, HistoryRow, LockStats } from '../modules/HistoryModule';
 
 // Storage keys
 const APP_USAGE_KEY = '@FocusGuard:appUsage';
@@ -206,7 +207,7 @@ class InsightsService {
       const locksHistory: LockEvent[] = locksHistoryJson ? JSON.parse(locksHistoryJson) : [];
       
       // Filter data based on selected time period
-      const { filteredDailyUsage, filteredLocksHistory } = this.filterDataByTimePeriod(
+      const { filteredDailyUsage, filteredLocksHistory, cutoffTime } = this.filterDataByTimePeriod(
         dailyUsage,
         locksHistory,
         timePeriod
@@ -262,8 +263,17 @@ class InsightsService {
         });
       
       // 4. Lock effectiveness
-      const successfulLocks = filteredLocksHistory.filter(lock => lock.wasSuccessful).length;
-      const totalLocks = filteredLocksHistory.length;
+      // Prefer the native ledger: it records blocks and emergency unlocks even when JS isn't running.
+      const nativeLockStats = await this.getNativeLockStats(cutoffTime);
+      let successfulLocks: number;
+      let totalLocks: number;
+      if (nativeLockStats) {
+        totalLocks = nativeLockStats.blocks;
+        successfulLocks = Math.max(0, nativeLockStats.blocks - nativeLockStats.emergencyUnlocks);
+      } else {
+        successfulLocks = filteredLocksHistory.filter(lock => lock.wasSuccessful).length;
+        totalLocks = filteredLocksHistory.length;
+      }
       const successRate = totalLocks > 0 ? (successfulLocks / totalLocks) * 100 : 0;
       
       insights.push({
@@ -309,7 +319,7 @@ class InsightsService {
     dailyUsage: DailyUsage[],
     locksHistory: LockEvent[],
     timePeriod: TimePeriod
-  ): { filteredDailyUsage: DailyUsage[]; filteredLocksHistory: LockEvent[]; periodLabel: string } {
+  ): { filteredDailyUsage: DailyUsage[]; filteredLocksHistory: LockEvent[]; periodLabel: string; cutoffTime: number } {
     const now = new Date();
     let cutoffDate = new Date();
     let periodLabel = '';
@@ -348,7 +358,20 @@ class InsightsService {
     // Filter lock history
     const filteredLocksHistory = locksHistory.filter(lock => lock.startTime >= cutoffTime);
     
-    return { filteredDailyUsage, filteredLocksHistory, periodLabel };
+    return { filteredDailyUsage, filteredLocksHistory, periodLabel, cutoffTime };
+  }
+
+  // Lock stats from the native ledger, or null when the native module is unavailable
+  private async getNativeLockStats(fromMs: number): Promise<LockStats | null> {
+    if (!HistoryModule || !HistoryModule.getLockStats) {
+      return null;
+    }
+    try {
+      return await HistoryModule.getLockStats(fromMs, Date.now());
+    } catch (error) {
+      console.error('Failed to read native lock stats:', error);
+      return null;
+    }
   }
 
   // Helper method to get most used app for a time period
@@ -535,6 +558,26 @@ class InsightsService {
     }
   }
 
+  // Export the native history together with the lock and usage history kept in AsyncStorage
+  public async exportHistory(fromMs?: number, toMs?: number): Promise<HistoryExportResult> {
+    const [locksHistory, appUsage] = await Promise.all([this.getLocksHistory(), this.getAppUsage()]);
+    const rows: HistoryRow[] = [];
+    for (const lock of locksHistory) {
+      rows.push({ timestamp: lock.startTime, kind: HistoryKind.LOCKED, packageName: lock.packageName, value: lock.endTime });
+      rows.push({
+        timestamp: lock.endTime,
+        kind: lock.wasSuccessful ? HistoryKind.LOCK_EXPIRED : HistoryKind.EMERGENCY_UNLOCK,
+        packageName: lock.packageName,
+        value: lock.wasSuccessful ? lock.endTime : 0,
+      });
+    }
+    for (const app of appUsage) {
+      // Only the running total survives in AsyncStorage, recorded at its last use
+      rows.push({ timestamp: app.lastUsed, kind: HistoryKind.SESSION, packageName: app.packageName, value: app.totalTimeMs });
+    }
+    return HistoryModule.exportHistory(fromMs ?? null, toMs ?? null, rows);
+  }
+
   // Format time in ms to a readable string (e.g. "2h 30m")
   private formatTime(ms: number): string {
     const seconds = Math.floor(ms / 1000);
@@ -1,4 +1,5 @@
 import AsyncStorage from '@react-native-async-storage/async-storage';
+import { NativeModules, Platform } from 'react-native';
 
 // Keys for AsyncStorage
 const QUOTE_CATEGORY_KEY = 'quoteCategory';
@@ -48,6 +49,16 @@ export interface Quote {
 
 export type QuoteSource = 'default' | 'custom' | 'both';
 
+// Cheap content hash, only used to tell whether the native quote pool is current
+const revisionOf = (quotes: string[]): string => {
+  let hash = 5381;
+  const joined = quotes.join('\n');
+  for (let i = 0; i < joined.length; i++) {
+    hash = ((hash << 5) + hash + joined.charCodeAt(i)) | 0;
+  }
+  return `${quotes.length}-${(hash >>> 0).toString(16)}`;
+};
+
 export interface MotivationSettings {
   quoteCategory: string;
   showProductivityStats: boolean;
@@ -57,6 +68,8 @@ export interface MotivationSettings {
 
 class MotivationService {
   private static instance: MotivationService;
+  // Pool last pushed to the native overlay cache, the base for the next delta
+  private nativePool: string[] | null = null;
   
   private constructor() {}
   
@@ -67,52 +80,58 @@ class MotivationService {
     return MotivationService.instance;
   }
   
-  // Get a random quote based on the selected category and source preference
-  public async getRandomQuote(): Promise<Quote> {
+  // Quotes the block overlay may show, for the selected category and source preference
+  public async getQuotePool(): Promise<Quote[]> {
+    const category = await this.getQuoteCategory();
+    const quoteSource = await this.getQuoteSource();
+    const defaults = DEFAULT_QUOTES[category as keyof typeof DEFAULT_QUOTES] ?? DEFAULT_QUOTES.Motivation;
+    const toQuotes = () => defaults.map((text, index) => ({
+      id: `default-${category}-${index}`,
+      text,
+      category,
+      isCustom: false
+    }));
+    let pool: Quote[] = quoteSource === 'custom' ? [] : toQuotes();
+    if (quoteSource !== 'default') {
+      const customQuotes = await this.getCustomQuotes();
+      pool = [...pool, ...customQuotes.filter(q => q.category === category)];
+    }
+    return pool.length > 0 ? pool : toQuotes();
+  }
+
+  // Keeps the native overlay's quote pool current. The first sync of a session sends the
+  // whole pool unless the native side already has it; later ones only send what changed.
+  public async syncNativeQuotes(): Promise<void> {
+    const { OverlayModule } = NativeModules;
+    if (Platform.OS !== 'android' || !OverlayModule?.setQuotes) {
+      return;
+    }
     try {
-      // Get the user's preferred category and source
-      const category = await this.getQuoteCategory();
-      const quoteSource = await this.getQuoteSource();
-      
-      // Get quotes based on source preference
-      let availableQuotes: Quote[] = [];
-      
-      // Get default quotes if needed
-      if (quoteSource === 'default' || quoteSource === 'both') {
-        availableQuotes = [
-          ...availableQuotes,
-          ...DEFAULT_QUOTES[category as keyof typeof DEFAULT_QUOTES].map((text, index) => ({
-            id: `default-${category}-${index}`,
-            text,
-            category,
-            isCustom: false
-          }))
-        ];
+      const pool = (await this.getQuotePool()).map(q => q.text);
+      const revision = revisionOf(pool);
+      const nativeRevision: string | null = await OverlayModule.getQuotesRevision();
+      if (nativeRevision === revision) {
+        this.nativePool = pool;
+        return;
       }
-      
-      // Get custom quotes if needed
-      if (quoteSource === 'custom' || quoteSource === 'both') {
-        const customQuotes = await this.getCustomQuotes();
-        const categoryCustomQuotes = customQuotes.filter(q => q.category === category);
-        
-        if (categoryCustomQuotes.length > 0) {
-          availableQuotes = [...availableQuotes, ...categoryCustomQuotes];
-        }
+      if (this.nativePool && nativeRevision === revisionOf(this.nativePool)) {
+        const added = pool.filter(text => !this.nativePool!.includes(text));
+        const removed = this.nativePool.filter(text => !pool.includes(text));
+        await OverlayModule.updateQuotes(added, removed, revision);
+      } else {
+        await OverlayModule.setQuotes(pool, revision);
       }
-      
-      // If no quotes are available (e.g., no custom quotes when source is 'custom'),
-      // fall back to default quotes
-      if (availableQuotes.length === 0) {
-        availableQuotes = DEFAULT_QUOTES[category as keyof typeof DEFAULT_QUOTES].map((text, index) => ({
-          id: `default-${category}-${index}`,
-          text,
-          category,
-          isCustom: false
-        }));
-        
-        console.log('No quotes available for selected source. Falling back to defaults.');
-      }
-      
+      this.nativePool = pool;
+    } catch (error) {
+      console.error('Error syncing quotes to the native overlay:', error);
+    }
+  }
+
+  // Get a random quote based on the selected category and source preference
+  public async getRandomQuote(): Promise<Quote> {
+    try {
+      const availableQuotes = await this.getQuotePool();
+
       // Return a random quote
       const randomIndex = Math.floor(Math.random() * availableQuotes.length);
       return availableQuotes[randomIndex];
@@ -143,6 +162,7 @@ class MotivationService {
   public async setQuoteCategory(category: string): Promise<void> {
     try {
       await AsyncStorage.setItem(QUOTE_CATEGORY_KEY, category);
+      await this.syncNativeQuotes();
     } catch (error) {
       console.error('Error setting quote category:', error);
     }
@@ -191,6 +211,7 @@ class MotivationService {
       
       quotes.push(newQuote);
       await AsyncStorage.setItem(CUSTOM_QUOTES_KEY, JSON.stringify(quotes));
+      await this.syncNativeQuotes();
       
       return newQuote;
     } catch (error) {
@@ -205,6 +226,7 @@ class MotivationService {
       const quotes = await this.getCustomQuotes();
       const updatedQuotes = quotes.filter(q => q.id !== id);
       await AsyncStorage.setItem(CUSTOM_QUOTES_KEY, JSON.stringify(updatedQuotes));
+      await this.syncNativeQuotes();
     } catch (error) {
       console.error('Error deleting custom quote:', error);
       throw error;
@@ -226,6 +248,7 @@ class MotivationService {
   public async setQuoteSource(source: QuoteSource): Promise<void> {
     try {
       await AsyncStorage.setItem(QUOTE_SOURCE_KEY, source);
+      await this.syncNativeQuotes();
     } catch (error) {
       console.error('Error setting quote source preference:', error);
     }
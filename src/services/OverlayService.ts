@@ -1,13 +1,62 @@
+import React, { useLayoutEffect } from 'react';
 import { AppRegistry, NativeEventEmitter, NativeModules } from 'react-native';
 import { LockOverlay } from '../components/LockOverlay';
 import { ensureOverlayPermission } from '../utils/OverlayPermission';
 
 const { OverlayModule } = NativeModules;
 
+// Props OverlayModule hands the overlay root; replaced in place on every show
+interface OverlayRootProps {
+  appName?: string;
+  timeRemaining?: string;
+  emergencyUnlockChances?: number;
+  quote?: string;
+  visible?: boolean;
+  showId?: number;
+}
+
+const LockOverlayRoot: React.FC<OverlayRootProps> = ({
+  appName,
+  timeRemaining,
+  emergencyUnlockChances,
+  quote,
+  visible = false,
+  showId = 0,
+}) => {
+  // The native window stays invisible until this show's props are on screen
+  useLayoutEffect(() => {
+    if (visible) {
+      OverlayModule?.overlayRendered?.(showId);
+    }
+  }, [visible, showId]);
+
+  if (!appName) {
+    return null; // pre-mounted, nothing shown yet
+  }
+  return React.createElement(LockOverlay, {
+    appName,
+    timeRemaining: timeRemaining || undefined,
+    // Missing chances mean none: LockOverlay's own default would offer unlocks the budget may not have
+    emergencyUnlockChances: emergencyUnlockChances ?? 0,
+    quote: quote || undefined,
+    showId,
+    onEmergencyUnlock: () => OverlayService.getInstance().emergencyUnlock(),
+  });
+};
+
+// Registered once, the native root is mounted a single time and reused
+AppRegistry.registerComponent('LockOverlay', () => LockOverlayRoot);
+
+export interface EmergencyUnlockStatus {
+  allowance: number; // emergency unlocks per week
+  remaining: number; // left this week
+}
+
 export class OverlayService {
   private static instance: OverlayService;
   private isOverlayVisible: boolean = false;
   private eventEmitter: NativeEventEmitter | null = null;
+  private onEmergencyUnlock?: () => void;
 
   private constructor() {
     // Set up event listener for emergency unlock
@@ -16,6 +65,7 @@ export class OverlayService {
       this.eventEmitter.addListener('onEmergencyUnlock', () => {
         this.isOverlayVisible = false;
       });
+      // The overlay root is prewarmed natively on the first lock or block, not here
     }
   }
 
@@ -33,10 +83,7 @@ export class OverlayService {
     emergencyUnlockChances?: number,
     quote?: string
   ) {
-    if (this.isOverlayVisible) {
-      return;
-    }
-
+    // Calling again while shown updates the content in place
     const hasPermission = await ensureOverlayPermission();
     if (!hasPermission) {
       console.error('Overlay permission not granted');
@@ -44,35 +91,19 @@ export class OverlayService {
     }
 
     this.isOverlayVisible = true;
-    
-    // Register the overlay component for React Native
-    AppRegistry.registerComponent('LockOverlay', () => () => 
-      LockOverlay({ 
-        appName, 
-        timeRemaining, 
-        emergencyUnlockChances,
-        quote,
-        onEmergencyUnlock: () => {
-          if (onEmergencyUnlock) {
-            onEmergencyUnlock();
-          }
-          
-          // Call native module to handle emergency unlock
-          if (OverlayModule && OverlayModule.onEmergencyUnlock) {
-            OverlayModule.onEmergencyUnlock();
-          } else {
-            this.hideLockOverlay();
-          }
-        }
-      })
-    );
+    this.onEmergencyUnlock = onEmergencyUnlock;
 
     // Show the overlay using the native module
     if (OverlayModule && OverlayModule.showOverlay) {
+      let chances = emergencyUnlockChances;
+      if (chances === undefined) {
+        // Without the budget show none left rather than offer an unlock the monitor may refuse
+        chances = await this.getEmergencyUnlockStatus().then(status => status.remaining, () => 0);
+      }
       OverlayModule.showOverlay(
         appName,
         timeRemaining || '',
-        emergencyUnlockChances || 0,
+        chances,
         quote || ''
       );
     } else {
@@ -80,6 +111,44 @@ export class OverlayService {
     }
   }
 
+  // Resolves false when this week's budget is used up; the overlay then stays and nothing is unlocked
+  async emergencyUnlock(): Promise<boolean> {
+    if (!OverlayModule || !OverlayModule.onEmergencyUnlock) {
+      // Only the monitor can charge the weekly budget, so there is no unlock without it
+      console.warn('Native OverlayModule not available, emergency unlock refused');
+      return false;
+    }
+    try {
+      const consumed: boolean = await OverlayModule.onEmergencyUnlock();
+      if (!consumed) {
+        console.warn('Emergency unlock refused, no unlocks left this week');
+        return false;
+      }
+    } catch (error) {
+      console.error('Emergency unlock failed:', error);
+      return false;
+    }
+
+    if (this.onEmergencyUnlock) {
+      this.onEmergencyUnlock();
+    }
+    return true;
+  }
+
+  // The weekly emergency unlock budget is kept natively, shared by both overlays
+  getEmergencyUnlockStatus(): Promise<EmergencyUnlockStatus> {
+    return OverlayModule.getEmergencyUnlockStatus();
+  }
+
+  async setEmergencyUnlockAllowance(perWeek: number): Promise<void> {
+    await OverlayModule.setEmergencyUnlockAllowance(perWeek);
+  }
+
+  // Labels the app already resolved, so the native overlay never shows a raw package name
+  setAppLabels(labels: { [packageName: string]: string }): void {
+    OverlayModule?.setAppLabels?.(labels);
+  }
+
   hideLockOverlay() {
     if (!this.isOverlayVisible) {
       return;
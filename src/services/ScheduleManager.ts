@@ -1,9 +1,142 @@
 import AsyncStorage from '@react-native-async-storage/async-storage';
-import { ScheduleConfig, ScheduledLock } from '../types/LockManagerTypes';
+import { NativeEventEmitter, NativeModules } from 'react-native';
+import { APP_CATEGORIES, ScheduleConfig, ScheduledLock } from '../types/LockManagerTypes';
 
 const SCHEDULES_STORAGE_KEY = '@FocusGuard:schedules';
+const SCHEDULE_SYNC_STORAGE_KEY = '@FocusGuard:scheduleSync';
+
+// Every schedule operation sent to the native service is numbered: epoch names this list,
+// revision goes up by one per operation. The service remembers the last pair it applied and
+// reports a gap (a lost or failed operation) with onSchedulesOutOfSync; the whole list is
+// then re-sent with replaceSchedules.
+interface ScheduleSync {
+  epoch: string;
+  revision: number;
+}
+
+// Compact form the native service compiles directly: local minutes of the day and a
+// days bitmask aligned with java.util.Calendar (bit 0 = Sunday ... bit 6 = Saturday).
+// categoryMask has bit i set for APP_CATEGORIES[i].
+interface NativeScheduleSpec {
+  id: string;
+  isEnabled: boolean;
+  appPackageNames: string[];
+  startMinute: number;
+  endMinute: number;
+  daysMask: number;
+  categoryMask: number;
+}
+
+// [start, end) in ms since epoch
+export type BlockingInterval = [number, number];
+
+export interface BlockingTimeline {
+  apps: { [packageName: string]: BlockingInterval[] }; // merged and sorted per app
+  categories: { [category: string]: BlockingInterval[] }; // same, for schedules that target categories
+  combined: BlockingInterval[]; // when anything at all is blocked
+}
+
+const toNativeSchedule = (schedule: ScheduledLock): NativeScheduleSpec => {
+  const start = new Date(schedule.scheduleConfig.startTime);
+  const end = new Date(schedule.scheduleConfig.endTime);
+  // selectedDays is [Mon, Tue, Wed, Thu, Fri, Sat, Sun]
+  const daysMask = schedule.scheduleConfig.selectedDays.reduce(
+    (mask, selected, i) => (selected ? mask | (1 << ((i + 1) % 7)) : mask),
+    0
+  );
+  return {
+    id: schedule.id,
+    isEnabled: schedule.isEnabled,
+    appPackageNames: schedule.appPackageNames,
+    startMinute: start.getHours() * 60 + start.getMinutes(),
+    endMinute: end.getHours() * 60 + end.getMinutes(),
+    daysMask,
+    categoryMask: (schedule.categories ?? []).reduce((mask, category) => {
+      // A stored category this build no longer knows adds no bit, like AppCategoryIndex.bitOf
+      const bit = APP_CATEGORIES.indexOf(category);
+      return bit < 0 ? mask : mask | (1 << bit);
+    }, 0),
+  };
+};
 
 class ScheduleManager {
+  private outOfSyncSubscription: { remove(): void } | null = null;
+  private syncQueue: Promise<void> = Promise.resolve();
+
+  // Runs numbered operations one at a time, so each reserves its revision and reaches the
+  // service in that order; two in flight at once would otherwise look like a gap
+  private serialized<T>(task: () => Promise<T>): Promise<T> {
+    const result = this.syncQueue.then(task);
+    this.syncQueue = result.then(() => undefined, () => undefined);
+    return result;
+  }
+
+  // Reserves the next operation number. Only called from a serialized task.
+  private async nextSync(): Promise<ScheduleSync> {
+    const json = await AsyncStorage.getItem(SCHEDULE_SYNC_STORAGE_KEY);
+    const current: ScheduleSync = json ? JSON.parse(json) : { epoch: `${Date.now()}`, revision: -1 };
+    const next = { epoch: current.epoch, revision: current.revision + 1 };
+    await AsyncStorage.setItem(SCHEDULE_SYNC_STORAGE_KEY, JSON.stringify(next));
+    return next;
+  }
+
+  // Sends one numbered operation. The local list is already saved, so if the service cannot
+  // take the operation it gets the whole list instead.
+  private async sendOperation(send: (epoch: string, revision: number) => Promise<void>): Promise<void> {
+    try {
+      await this.serialized(async () => {
+        const sync = await this.nextSync();
+        await send(sync.epoch, sync.revision);
+      });
+    } catch (error) {
+      console.warn('[ScheduleManager] Monitoring service did not take the operation, resyncing:', error);
+      try {
+        await this.resync();
+      } catch (resyncError) {
+        console.error('[ScheduleManager] Resync failed:', resyncError);
+        throw new Error('Schedule saved, but the monitoring service could not be updated');
+      }
+    }
+  }
+
+  /**
+   * Re-sends every stored schedule to the native service, replacing its copy.
+   */
+  resync(): Promise<void> {
+    return this.serialized(() => this.replaceAll());
+  }
+
+  private async replaceAll(): Promise<void> {
+    const schedules = await this.getSchedulesForUser();
+    const sync = await this.nextSync();
+    console.log('[ScheduleManager] Resyncing', schedules.length, 'schedules at', `${sync.epoch}/${sync.revision}`);
+    await NativeModules.AppMonitoringModule.replaceSchedules(schedules.map(toNativeSchedule), sync.epoch, sync.revision);
+  }
+
+  /**
+   * Compares the last operation the native service applied with the last one sent and
+   * resyncs on any difference. Also starts listening for gaps the service reports later.
+   */
+  async resyncIfNeeded(): Promise<void> {
+    if (!this.outOfSyncSubscription) {
+      const emitter = new NativeEventEmitter(NativeModules.AppMonitoringModule);
+      this.outOfSyncSubscription = emitter.addListener('onSchedulesOutOfSync', () => {
+        this.resync().catch(error => console.error('[ScheduleManager] Resync failed:', error));
+      });
+    }
+    // In the queue, so an operation in flight cannot pass for a difference
+    await this.serialized(async () => {
+      const [json, native] = await Promise.all([
+        AsyncStorage.getItem(SCHEDULE_SYNC_STORAGE_KEY),
+        NativeModules.AppMonitoringModule.getScheduleSyncState() as Promise<{ epoch: string | null; revision: number }>,
+      ]);
+      const local: ScheduleSync | null = json ? JSON.parse(json) : null;
+      if (!local || local.epoch !== native.epoch || local.revision !== native.revision) {
+        await this.replaceAll();
+      }
+    });
+  }
+
   /**
    * Adds a new lock schedule to local storage.
    * @param appPackageNames - An array of package names to be scheduled.
@@ -38,11 +171,16 @@ class ScheduleManager {
       
       console.log('[ScheduleManager] Schedule saved successfully. New total count:', updatedSchedules.length);
       console.log('[ScheduleManager] Full schedule details:', JSON.stringify(newSchedule, null, 2));
-      return scheduleId;
     } catch (error) {
       console.error('[ScheduleManager] Failed to save schedule locally:', error);
       throw new Error('Failed to save schedule locally');
     }
+
+    // Only the new schedule goes to the native service
+    await this.sendOperation((epoch, revision) =>
+      NativeModules.AppMonitoringModule.upsertSchedule(toNativeSchedule(newSchedule), epoch, revision)
+    );
+    return scheduleId;
   }
 
   /**
@@ -77,6 +215,7 @@ class ScheduleManager {
     console.log('[ScheduleManager] Updating schedule:', scheduleId);
     console.log('[ScheduleManager] Update details:', JSON.stringify(updates));
     
+    let updated: ScheduledLock | undefined;
     try {
       const schedules = await this.getSchedulesForUser();
       const updatedSchedules = schedules.map(schedule => 
@@ -85,10 +224,23 @@ class ScheduleManager {
       
       await AsyncStorage.setItem(SCHEDULES_STORAGE_KEY, JSON.stringify(updatedSchedules));
       console.log('[ScheduleManager] Schedule updated successfully');
+      updated = updatedSchedules.find(schedule => schedule.id === scheduleId);
     } catch (error) {
       console.error('[ScheduleManager] Failed to update schedule:', error);
       throw new Error('Failed to update schedule');
     }
+
+    if (!updated) {
+      return;
+    }
+    const schedule = updated;
+    const keys = Object.keys(updates);
+    await this.sendOperation((epoch, revision) =>
+      keys.length === 1 && keys[0] === 'isEnabled'
+        // A toggle does not need the schedule at all, just its id
+        ? NativeModules.AppMonitoringModule.setScheduleEnabled(scheduleId, schedule.isEnabled, epoch, revision)
+        : NativeModules.AppMonitoringModule.upsertSchedule(toNativeSchedule(schedule), epoch, revision)
+    );
   }
 
   /**
@@ -108,6 +260,38 @@ class ScheduleManager {
       console.error('[ScheduleManager] Failed to delete schedule:', error);
       throw new Error('Failed to delete schedule');
     }
+
+    await this.sendOperation((epoch, revision) =>
+      NativeModules.AppMonitoringModule.deleteSchedule(scheduleId, epoch, revision)
+    );
+  }
+
+  /**
+   * Removes an uninstalled app from the stored schedules. Local copy only: the native
+   * service pruned its own specs when it saw the package go.
+   * @param packageName - The package that was uninstalled.
+   */
+  async forgetUninstalledApp(packageName: string): Promise<void> {
+    const schedules = await this.getSchedulesForUser();
+    if (!schedules.some(schedule => schedule.appPackageNames.includes(packageName))) {
+      return;
+    }
+    const updatedSchedules = schedules.map(schedule => ({
+      ...schedule,
+      appPackageNames: schedule.appPackageNames.filter(name => name !== packageName),
+    }));
+    await AsyncStorage.setItem(SCHEDULES_STORAGE_KEY, JSON.stringify(updatedSchedules));
+    console.log('[ScheduleManager] Removed uninstalled app from schedules:', packageName);
+  }
+
+  /**
+   * Returns what the enabled schedules block between from and to, computed natively
+   * with interval arithmetic (overnight ranges and DST included), no sampling in JS.
+   * @param from - Range start, ms since epoch.
+   * @param to - Range end, ms since epoch, at most 366 days after from.
+   */
+  async getBlockingTimeline(from: number, to: number): Promise<BlockingTimeline> {
+    return NativeModules.AppMonitoringModule.getBlockingTimeline(from, to);
   }
 
   /**
@@ -16,10 +16,28 @@ export interface ScheduleConfig {
   selectedDays: boolean[]; 
 }
 
+// Mirrors AppCategoryIndex.NAMES on the native side
+export type AppCategory =
+  | 'game'
+  | 'audio'
+  | 'video'
+  | 'image'
+  | 'social'
+  | 'news'
+  | 'maps'
+  | 'productivity'
+  | 'accessibility';
+
+export const APP_CATEGORIES: AppCategory[] = [
+  'game', 'audio', 'video', 'image', 'social', 'news', 'maps', 'productivity', 'accessibility',
+];
+
 export interface ScheduledLock {
   id: string; // Unique identifier for the schedule
   userId: string; // Firebase Auth user ID
   appPackageNames: string[];
+  // App categories blocked as a whole, including apps installed after the schedule was made
+  categories?: AppCategory[];
   scheduleConfig: ScheduleConfig;
   isEnabled: boolean;
   // This will be a server-generated timestamp upon creation.